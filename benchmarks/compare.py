@@ -0,0 +1,98 @@
+#!/usr/bin/env python3
+"""
+比较两次 JMH 运行（-rf json 输出）的结果，标出性能回退。
+
+用法：
+    java -jar target/benchmarks.jar -rf json -rff baseline.json   # 改动前
+    java -jar target/benchmarks.jar -rf json -rff candidate.json  # 改动后
+    python3 compare.py baseline.json candidate.json [--threshold 5]
+
+同一基准（名称 + 参数）的得分变化超过阈值、且两次结果的误差区间不重叠时才判定为回退或提升。
+吞吐模式（thrpt）分数越高越好，其余模式（avgt / sample / ss）越低越好。存在回退时退出码为 1。
+"""
+import argparse
+import json
+import math
+import sys
+
+
+def load(path):
+    with open(path, encoding="utf-8") as f:
+        runs = json.load(f)
+    results = {}
+    for run in runs:
+        params = ",".join(f"{k}={v}" for k, v in sorted((run.get("params") or {}).items()))
+        key = run["benchmark"] + (f"({params})" if params else "")
+        metric = run["primaryMetric"]
+        error = metric.get("scoreError")
+        if error is None or (isinstance(error, float) and math.isnan(error)) or error == "NaN":
+            error = 0.0
+        results[key] = {
+            "mode": run["mode"],
+            "score": float(metric["score"]),
+            "error": float(error),
+            "unit": metric["scoreUnit"],
+        }
+    return results
+
+
+def short_name(key):
+    # 去掉包名，只保留 类名.方法名(参数)
+    name, _, params = key.partition("(")
+    parts = name.split(".")
+    return ".".join(parts[-2:]) + (f"({params}" if params else "")
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Flag JMH regressions between two runs")
+    parser.add_argument("baseline")
+    parser.add_argument("candidate")
+    parser.add_argument("--threshold", type=float, default=5.0,
+                        help="minimum relative change in percent to report (default 5)")
+    args = parser.parse_args()
+
+    baseline = load(args.baseline)
+    candidate = load(args.candidate)
+
+    regressions = 0
+    rows = []
+    for key in sorted(baseline.keys() | candidate.keys()):
+        before = baseline.get(key)
+        after = candidate.get(key)
+        if before is None or after is None:
+            rows.append((short_name(key), "-", "-", "-", "only in " + ("candidate" if before is None else "baseline")))
+            continue
+        if before["unit"] != after["unit"] or before["mode"] != after["mode"]:
+            rows.append((short_name(key), "-", "-", "-", "mode/unit changed"))
+            continue
+        change = (after["score"] - before["score"]) / before["score"] * 100 if before["score"] else 0.0
+        higher_is_better = before["mode"] == "thrpt"
+        worse = change < 0 if higher_is_better else change > 0
+        # 误差区间重叠时视为噪声
+        overlap = (abs(after["score"] - before["score"]) <= before["error"] + after["error"])
+        if abs(change) < args.threshold or overlap:
+            verdict = "~"
+        elif worse:
+            verdict = "REGRESSION"
+            regressions += 1
+        else:
+            verdict = "improved"
+        rows.append((short_name(key),
+                     f"{before['score']:.3f} ± {before['error']:.3f}",
+                     f"{after['score']:.3f} ± {after['error']:.3f} {after['unit']}",
+                     f"{change:+.1f}%",
+                     verdict))
+
+    headers = ("benchmark", "baseline", "candidate", "change", "")
+    widths = [max(len(str(row[i])) for row in rows + [headers]) for i in range(len(headers))]
+    for row in [headers] + rows:
+        print("  ".join(str(cell).ljust(widths[i]) for i, cell in enumerate(row)).rstrip())
+
+    if regressions:
+        print(f"\n{regressions} regression(s) above {args.threshold:.1f}%", file=sys.stderr)
+        return 1
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
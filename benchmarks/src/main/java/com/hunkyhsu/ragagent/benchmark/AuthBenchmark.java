@@ -0,0 +1,72 @@
+package com.hunkyhsu.ragagent.benchmark;
+
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.service.AuthService;
+import com.hunkyhsu.ragagent.service.JwtService;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌签发、解析校验与刷新令牌摘要（SHA-256 + hex）的单次耗时。
+ * 运行：java -jar target/benchmarks.jar AuthBenchmark -rf json -rff auth.json
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthBenchmark {
+
+    // hashToken 是私有方法，通过 MethodHandle 调用，static final 保证被 JIT 内联
+    private static final MethodHandle HASH_TOKEN;
+
+    static {
+        try {
+            HASH_TOKEN = MethodHandles.privateLookupIn(AuthService.class, MethodHandles.lookup())
+                    .findVirtual(AuthService.class, "hashToken", MethodType.methodType(String.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private JwtService jwtService;
+    private AuthService authService;
+    private User user;
+    private String accessToken;
+    private String refreshToken;
+
+    @Setup
+    public void setUp() {
+        jwtService = Fixtures.jwtService();
+        authService = new AuthService(null, null, null, jwtService, null);
+        user = Fixtures.user();
+        accessToken = jwtService.generateToken(user);
+        refreshToken = jwtService.generateRefreshToken(user);
+    }
+
+    @Benchmark
+    public String generateAccessToken() {
+        return jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public String extractUsername() {
+        return jwtService.extractUsername(accessToken);
+    }
+
+    // 过滤器每个请求实际执行的校验：解析两次（用户名 + 过期时间）
+    @Benchmark
+    public Boolean validateAccessToken() {
+        return jwtService.isValidToken(accessToken, user);
+    }
+
+    @Benchmark
+    public String hashRefreshToken() throws Throwable {
+        return (String) HASH_TOKEN.invokeExact(authService, refreshToken);
+    }
+}
@@ -0,0 +1,75 @@
+package com.hunkyhsu.ragagent.benchmark;
+
+import com.hunkyhsu.ragagent.dto.ConversationResponse;
+import com.hunkyhsu.ragagent.dto.MessageResponse;
+import com.hunkyhsu.ragagent.entity.Conversation;
+import com.hunkyhsu.ragagent.entity.Message;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.repository.ConversationRepository;
+import com.hunkyhsu.ragagent.repository.MessageRepository;
+import com.hunkyhsu.ragagent.service.ConversationService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConversationService 中实体到 DTO 的映射。仓库为返回预置实体的桩，测得的是服务层本身的开销
+ * 运行：java -jar target/benchmarks.jar ConversationMappingBenchmark -rf json -rff mapping.json
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversationMappingBenchmark {
+
+    @Param({"20", "200"})
+    public int rows;
+
+    private ConversationService conversationService;
+    private User user;
+
+    @Setup
+    public void setUp() {
+        user = Fixtures.user();
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 9, 0);
+        Conversation conversation = Conversation.builder()
+                .id(1001L).user(user).title("Benchmark").createdTime(start).build();
+        List<Conversation> conversations = new ArrayList<>(rows);
+        List<Message> messages = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            conversations.add(Conversation.builder()
+                    .id((long) i + 1).user(user).title("Conversation " + i).createdTime(start.plusMinutes(i)).build());
+            messages.add(Message.builder()
+                    .id((long) i + 1)
+                    .conversation(conversation)
+                    .role(i % 2 == 0 ? Message.Role.USER : Message.Role.ASSISTANT)
+                    .content("Message " + i)
+                    .tokenCount(3)
+                    .createdTime(start.plusSeconds(i))
+                    .build());
+        }
+        ConversationRepository conversationRepository = Fixtures.stub(ConversationRepository.class, Map.of(
+                "findByUserOrderByCreatedTimeDesc", args -> conversations,
+                "findByIdAndUser", args -> Optional.of(conversation)));
+        MessageRepository messageRepository = Fixtures.stub(MessageRepository.class, Map.of(
+                "findByConversationOrderByCreatedTimeAsc", args -> messages));
+        conversationService = new ConversationService(conversationRepository, messageRepository, null, null);
+    }
+
+    @Benchmark
+    public List<ConversationResponse> listConversations() {
+        return conversationService.listConversations(user);
+    }
+
+    @Benchmark
+    public List<MessageResponse> conversationHistory() {
+        return conversationService.getConversationHistory(user, 1001L);
+    }
+}
@@ -0,0 +1,73 @@
+package com.hunkyhsu.ragagent.benchmark;
+
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.service.JwtService;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Base64;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 基准测试共用的替身：按生产配置填充的 JwtService，以及只实现个别方法的仓库桩
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static JwtService jwtService() {
+        JwtService jwtService = new JwtService();
+        set(jwtService, "secretKeyBase64", Base64.getEncoder().encodeToString(
+                "benchmark-secret-key-with-at-least-256-bits".getBytes()));
+        set(jwtService, "accessTokenExpirationTime", 15 * 60 * 1000L);
+        set(jwtService, "refreshTokenExpirationTime", 7 * 24 * 3600 * 1000L);
+        set(jwtService, "issuer", "ragagent");
+        set(jwtService, "audience", "ragagent-web");
+        set(jwtService, "clockSkewSeconds", 30L);
+        return jwtService;
+    }
+
+    static User user() {
+        return User.builder()
+                .id(42L)
+                .username("benchmark-user")
+                .password("{noop}unused")
+                .email("bench@example.com")
+                .role(User.Role.USER)
+                .orgTags("engineering,platform")
+                .build();
+    }
+
+    /**
+     * 仓库接口的桩实现：按方法名返回预置结果，未登记的方法直接失败
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Function<Object[], Object> answer = answers.get(method.getName());
+            if (answer != null) {
+                return answer.apply(args);
+            }
+            return switch (method.getName()) {
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                case "toString" -> type.getSimpleName() + " stub";
+                default -> throw new UnsupportedOperationException(method.getName());
+            };
+        };
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    static void set(Object target, String name, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot set " + name, e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.hunkyhsu.ragagent.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hunkyhsu.ragagent.config.JwtAuthenticationFilter;
+import com.hunkyhsu.ragagent.config.WhiteListConfig;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.metrics.ChatMetrics;
+import com.hunkyhsu.ragagent.repository.UserRepository;
+import com.hunkyhsu.ragagent.retrieval.OrgTagRegistry;
+import com.hunkyhsu.ragagent.service.JwtService;
+import com.hunkyhsu.ragagent.service.UserDetailsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JwtAuthenticationFilter 端到端：白名单匹配、令牌解析、用户加载（仓库桩）、组织标签驻留和安全上下文建立。
+ * 运行：java -jar target/benchmarks.jar JwtFilterBenchmark -rf json -rff filter.json
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtFilterBenchmark {
+
+    private JwtAuthenticationFilter filter;
+    private String validHeader;
+    private String tamperedHeader;
+
+    @Setup
+    public void setUp() {
+        JwtService jwtService = Fixtures.jwtService();
+        User user = Fixtures.user();
+        UserRepository userRepository = Fixtures.stub(UserRepository.class, Map.of(
+                "findByUsername", args -> Optional.of(Fixtures.user())));
+        WhiteListConfig whiteListConfig = new WhiteListConfig();
+        whiteListConfig.setWhiteList(List.of("/api/auth/**", "/actuator/health"));
+        filter = new JwtAuthenticationFilter(jwtService, new UserDetailsService(userRepository), whiteListConfig,
+                new ObjectMapper(), new OrgTagRegistry(), new ChatMetrics(new SimpleMeterRegistry()));
+        String token = jwtService.generateToken(user);
+        validHeader = "Bearer " + token;
+        // 篡改签名的最后一个字符，走解析失败并写 401 的分支
+        char last = token.charAt(token.length() - 1);
+        tamperedHeader = "Bearer " + token.substring(0, token.length() - 1) + (last == 'A' ? 'B' : 'A');
+    }
+
+    @Benchmark
+    public int authenticated() throws Exception {
+        return run(validHeader, "/api/conversations/list");
+    }
+
+    @Benchmark
+    public int rejected() throws Exception {
+        return run(tamperedHeader, "/api/conversations/list");
+    }
+
+    @Benchmark
+    public int whiteListed() throws Exception {
+        return run(null, "/api/auth/login");
+    }
+
+    private int run(String authorization, String path) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        if (authorization != null) {
+            request.addHeader(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = new MockFilterChain();
+        try {
+            filter.doFilter(request, response, chain);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+        return response.getStatus();
+    }
+}
@@ -0,0 +1,68 @@
+package com.hunkyhsu.ragagent.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hunkyhsu.ragagent.dto.MessageResponse;
+import com.hunkyhsu.ragagent.entity.Message;
+import com.hunkyhsu.ragagent.ws.WsEnvelope;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson 序列化：历史消息列表（REST）与流式封包（WS，每个 token 一次）。
+ * ObjectMapper 由 Jackson2ObjectMapperBuilder 构建，与 Spring Boot 默认配置一致。
+ * 运行：java -jar target/benchmarks.jar SerializationBenchmark -rf json -rff serialization.json
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"20", "200"})
+    public int messages;
+
+    private ObjectMapper objectMapper;
+    private List<MessageResponse> history;
+    private WsEnvelope streamFrame;
+    private String sendPayload;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        history = new ArrayList<>(messages);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 9, 0);
+        for (int i = 0; i < messages; i++) {
+            Message.Role role = i % 2 == 0 ? Message.Role.USER : Message.Role.ASSISTANT;
+            history.add(new MessageResponse((long) i + 1, role,
+                    "Message " + i + " about retrieval augmented generation and token budgets.",
+                    start.plusSeconds(i * 7L)));
+        }
+        streamFrame = WsEnvelope.stream(1001L, "3f2b9c1e-5a77-4d8e-9a51-0c1d2e3f4a5b", 17, " retrieval");
+        sendPayload = objectMapper.writeValueAsString(new WsEnvelope(WsEnvelope.CHAT_SEND, 1001L,
+                "3f2b9c1e-5a77-4d8e-9a51-0c1d2e3f4a5b", null, null,
+                "How does the prompt budget work?", null, null, null));
+    }
+
+    @Benchmark
+    public String messageHistory() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(history);
+    }
+
+    @Benchmark
+    public String streamEnvelope() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(streamFrame);
+    }
+
+    @Benchmark
+    public WsEnvelope parseSendEnvelope() throws JsonProcessingException {
+        return objectMapper.readValue(sendPayload, WsEnvelope.class);
+    }
+}
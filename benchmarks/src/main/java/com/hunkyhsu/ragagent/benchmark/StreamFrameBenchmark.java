@@ -0,0 +1,78 @@
+package com.hunkyhsu.ragagent.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hunkyhsu.ragagent.ws.StreamFrameEncoder;
+import com.hunkyhsu.ragagent.ws.WsEnvelope;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * chat.stream 帧编码：ObjectMapper 对照 StreamFrameEncoder。增量片段取自 chat-corpus.txt，按 4 个字符切分模拟 token。
+ * 吞吐与分配一起看：java -jar target/benchmarks.jar StreamFrameBenchmark -prof gc
+ * 关注 gc.alloc.rate.norm（每帧分配字节数）
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamFrameBenchmark {
+
+    private static final long CONVERSATION_ID = 1001L;
+    private static final String MESSAGE_ID = "3f2b9c1e-5a77-4d8e-9a51-0c1d2e3f4a5b";
+
+    private ObjectMapper objectMapper;
+    private StreamFrameEncoder encoder;
+    private WsEnvelope[] frames;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        encoder = StreamFrameEncoder.forStream(CONVERSATION_ID, MESSAGE_ID);
+        List<WsEnvelope> deltas = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Objects.requireNonNull(getClass().getResourceAsStream("/chat-corpus.txt")), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                for (int i = 0; i < line.length(); i += 4) {
+                    deltas.add(WsEnvelope.stream(CONVERSATION_ID, MESSAGE_ID, deltas.size() + 1,
+                            line.substring(i, Math.min(line.length(), i + 4))));
+                }
+            }
+        }
+        frames = deltas.toArray(WsEnvelope[]::new);
+        for (WsEnvelope frame : frames) {
+            if (!objectMapper.writeValueAsString(frame).equals(encoder.encode(frame))) {
+                throw new IllegalStateException("encoder output differs from Jackson for " + frame);
+            }
+        }
+    }
+
+    private WsEnvelope nextFrame() {
+        WsEnvelope frame = frames[next];
+        next = next + 1 == frames.length ? 0 : next + 1;
+        return frame;
+    }
+
+    @Benchmark
+    public String jackson() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(nextFrame());
+    }
+
+    @Benchmark
+    public String encoder() {
+        return encoder.encode(nextFrame());
+    }
+}
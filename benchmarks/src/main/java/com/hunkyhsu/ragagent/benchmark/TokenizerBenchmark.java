@@ -0,0 +1,82 @@
+package com.hunkyhsu.ragagent.benchmark;
+
+import com.hunkyhsu.ragagent.tokenizer.BpeEncoding;
+import com.hunkyhsu.ragagent.tokenizer.BpeTokenizer;
+import com.hunkyhsu.ragagent.tokenizer.HeuristicTokenCounter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BPE 分词吞吐量，tokens 辅助计数器即每秒处理的 token 数。
+ * 运行：java -jar target/benchmarks.jar TokenizerBenchmark -p vocab=/path/to/cl100k_base.tiktoken
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    @Param("cl100k_base.tiktoken")
+    public String vocab;
+
+    @Param("CL100K_BASE")
+    public String encoding;
+
+    private BpeTokenizer tokenizer;
+    private HeuristicTokenCounter heuristic;
+    private String[] messages;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+        public long tokens;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream in = Files.newInputStream(Path.of(vocab))) {
+            tokenizer = BpeTokenizer.load(in, BpeEncoding.valueOf(encoding));
+        }
+        heuristic = new HeuristicTokenCounter();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Objects.requireNonNull(getClass().getResourceAsStream("/chat-corpus.txt")), StandardCharsets.UTF_8))) {
+            messages = reader.lines().toArray(String[]::new);
+        }
+    }
+
+    @Benchmark
+    public void bpeCount(Tokens counter) {
+        for (String message : messages) {
+            counter.tokens += tokenizer.count(message);
+        }
+    }
+
+    @Benchmark
+    public void bpeEncode(Tokens counter, Blackhole blackhole) {
+        for (String message : messages) {
+            int[] ids = tokenizer.encode(message);
+            counter.tokens += ids.length;
+            blackhole.consume(ids);
+        }
+    }
+
+    // 对照组：字符数近似估算
+    @Benchmark
+    public void heuristicCount(Tokens counter) {
+        for (String message : messages) {
+            counter.tokens += heuristic.count(message);
+        }
+    }
+}
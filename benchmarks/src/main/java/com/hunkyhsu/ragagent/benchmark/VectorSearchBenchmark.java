@@ -0,0 +1,165 @@
+package com.hunkyhsu.ragagent.benchmark;
+
+import com.hunkyhsu.ragagent.config.VectorIndexProperties;
+import com.hunkyhsu.ragagent.vector.VectorEncoding;
+import com.hunkyhsu.ragagent.vector.VectorHit;
+import com.hunkyhsu.ragagent.vector.VectorIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * HNSW 与暴力检索的延迟对比。数据为若干高斯簇上的归一化向量，
+ * 索引构建后落盘为单个映射段，召回率（相对暴力检索的 recall@k）在 setup 阶段计算并打印。
+ * 运行：java -jar target/benchmarks.jar VectorSearchBenchmark -p size=1000000 -p encoding=INT8
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VectorSearchBenchmark {
+
+    private static final int QUERIES = 1024;
+    private static final int RECALL_QUERIES = 200;
+
+    @Param("100000")
+    public int size;
+
+    @Param("128")
+    public int dimensions;
+
+    @Param({"FLOAT32", "INT8"})
+    public String encoding;
+
+    @Param("64")
+    public int efSearch;
+
+    @Param("10")
+    public int k;
+
+    private float[][] data;
+    private float[][] queries;
+    private Path directory;
+    private VectorIndex index;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        float[][] centers = new float[64][dimensions];
+        for (float[] center : centers) {
+            for (int i = 0; i < dimensions; i++) {
+                center[i] = (float) random.nextGaussian();
+            }
+        }
+        data = new float[size][];
+        for (int j = 0; j < size; j++) {
+            data[j] = around(centers[random.nextInt(centers.length)], 0.7f, random);
+        }
+        queries = new float[QUERIES][];
+        for (int j = 0; j < QUERIES; j++) {
+            queries[j] = around(data[random.nextInt(size)], 0.05f, random);
+        }
+
+        VectorIndexProperties properties = new VectorIndexProperties();
+        properties.setEncoding(VectorEncoding.valueOf(encoding));
+        properties.setEfSearch(efSearch);
+        properties.setFlushThreshold(size);
+        directory = Files.createTempDirectory("vector-bench");
+        index = VectorIndex.open(directory, dimensions, properties);
+        long started = System.nanoTime();
+        IntStream.range(0, size).parallel().forEach(j -> index.add(j, data[j]));
+        index.flush();
+        System.out.printf("%nbuilt %d vectors in %.1f s, ", size, (System.nanoTime() - started) / 1e9);
+
+        // 关闭后重新打开，测量的是映射段上的检索
+        index.close();
+        started = System.nanoTime();
+        index = VectorIndex.open(directory, dimensions, properties);
+        System.out.printf("reopened in %.1f ms, ", (System.nanoTime() - started) / 1e6);
+
+        int found = 0;
+        for (int q = 0; q < RECALL_QUERIES; q++) {
+            Set<Long> truth = new HashSet<>();
+            for (VectorHit hit : bruteForce(queries[q])) {
+                truth.add(hit.id());
+            }
+            for (VectorHit hit : index.search(queries[q], k)) {
+                if (truth.contains(hit.id())) {
+                    found++;
+                }
+            }
+        }
+        System.out.printf("recall@%d = %.4f (efSearch=%d, %s)%n",
+                k, found / (double) (RECALL_QUERIES * k), efSearch, encoding);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        index.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<VectorHit> hnsw() {
+        return index.search(nextQuery(), k);
+    }
+
+    @Benchmark
+    public List<VectorHit> bruteForce() {
+        return bruteForce(nextQuery());
+    }
+
+    private float[] nextQuery() {
+        return queries[next++ & (QUERIES - 1)];
+    }
+
+    private List<VectorHit> bruteForce(float[] query) {
+        PriorityQueue<VectorHit> top = new PriorityQueue<>(Comparator.comparingDouble(VectorHit::score));
+        for (int j = 0; j < data.length; j++) {
+            float[] vector = data[j];
+            float score = 0f;
+            for (int i = 0; i < dimensions; i++) {
+                score += query[i] * vector[i];
+            }
+            if (top.size() < k) {
+                top.add(new VectorHit(j, score));
+            } else if (score > top.peek().score()) {
+                top.poll();
+                top.add(new VectorHit(j, score));
+            }
+        }
+        return top.stream().sorted(Comparator.comparingDouble(VectorHit::score).reversed()).toList();
+    }
+
+    private static float[] around(float[] center, float noise, Random random) {
+        float[] vector = new float[center.length];
+        double norm = 0;
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = center[i] + (float) random.nextGaussian() * noise;
+            norm += vector[i] * vector[i];
+        }
+        float inverse = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= inverse;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,189 @@
+package com.hunkyhsu.ragagent.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对外协议的最小客户端：REST 走同步 HttpClient，聊天走 JDK WebSocket
+ */
+final class ApiClient {
+
+    private final HttpClient http;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final URI baseUrl;
+    private final URI wsUrl;
+    private final Duration timeout;
+
+    ApiClient(LoadOptions options, Executor executor) {
+        this.baseUrl = URI.create(options.baseUrl());
+        this.wsUrl = URI.create(options.wsUrl());
+        this.timeout = options.requestTimeout();
+        this.http = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    JsonNode post(String path, Map<String, ?> body, String accessToken) {
+        return send(request(path, accessToken)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(write(body)))
+                .build());
+    }
+
+    JsonNode get(String path, String accessToken) {
+        return send(request(path, accessToken).GET().build());
+    }
+
+    /**
+     * 发送一条 chat.send 并等待 chat.done，返回首 token 与完成时刻（System.nanoTime）
+     */
+    ChatTiming chat(String accessToken, long conversationId, String messageId, String content) {
+        ChatListener listener = new ChatListener(messageId);
+        WebSocket socket;
+        try {
+            socket = http.newWebSocketBuilder()
+                    .subprotocols("jwt." + accessToken)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .buildAsync(wsUrl, listener)
+                    .get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (Exception ex) {
+            throw StepFailure.of(ex);
+        }
+        try {
+            long sentAt = System.nanoTime();
+            socket.sendText(new String(write(Map.of(
+                    "type", "chat.send",
+                    "conversationId", conversationId,
+                    "messageId", messageId,
+                    "content", content))), true);
+            long doneAt = listener.done.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            return new ChatTiming(sentAt, listener.firstTokenAt, doneAt, listener.frames);
+        } catch (Exception ex) {
+            throw StepFailure.of(ex);
+        } finally {
+            socket.sendClose(WebSocket.NORMAL_CLOSURE, "bye");
+        }
+    }
+
+    record ChatTiming(long sentAt, long firstTokenAt, long doneAt, int frames) { }
+
+    private HttpRequest.Builder request(String path, String accessToken) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(baseUrl.resolve(path)).timeout(timeout);
+        if (accessToken != null) {
+            builder.header("Authorization", "Bearer " + accessToken);
+        }
+        return builder;
+    }
+
+    private JsonNode send(HttpRequest request) {
+        HttpResponse<byte[]> response;
+        try {
+            response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StepFailure("interrupted", ex.getMessage());
+        } catch (IOException ex) {
+            throw StepFailure.of(ex);
+        }
+        if (response.statusCode() >= 400) {
+            throw new StepFailure("http_" + response.statusCode(), new String(response.body()));
+        }
+        try {
+            return response.body().length == 0 ? mapper.nullNode() : mapper.readTree(response.body());
+        } catch (IOException ex) {
+            throw new StepFailure("bad_json", ex.getMessage());
+        }
+    }
+
+    private byte[] write(Object body) {
+        try {
+            return mapper.writeValueAsBytes(body);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private final class ChatListener implements WebSocket.Listener {
+
+        private final String messageId;
+        private final CompletableFuture<Long> done = new CompletableFuture<>();
+        private final StringBuilder partial = new StringBuilder();
+        private volatile long firstTokenAt;
+        private volatile int frames;
+
+        ChatListener(String messageId) {
+            this.messageId = messageId;
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                onFrame(partial.toString());
+                partial.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            done.completeExceptionally(new StepFailure("ws_closed_" + statusCode, reason));
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            done.completeExceptionally(StepFailure.of(error));
+        }
+
+        private void onFrame(String text) {
+            JsonNode frame;
+            try {
+                frame = mapper.readTree(text);
+            } catch (IOException ex) {
+                done.completeExceptionally(new StepFailure("bad_frame", ex.getMessage()));
+                return;
+            }
+            // 心跳等与本条消息无关的帧直接忽略
+            String type = frame.path("type").asText();
+            if (!"error".equals(type) && !messageId.equals(frame.path("messageId").asText())) {
+                return;
+            }
+            switch (type) {
+                case "chat.stream" -> {
+                    if (firstTokenAt == 0) {
+                        firstTokenAt = System.nanoTime();
+                    }
+                    frames++;
+                }
+                case "chat.done" -> done.complete(System.nanoTime());
+                case "error" -> done.completeExceptionally(new StepFailure(
+                        frame.path("error").path("code").asText("ws_error"),
+                        frame.path("error").path("msg").asText()));
+                default -> { }
+            }
+        }
+    }
+}
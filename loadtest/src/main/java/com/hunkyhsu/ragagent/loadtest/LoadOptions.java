@@ -0,0 +1,64 @@
+package com.hunkyhsu.ragagent.loadtest;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 命令行参数，形如 --stages=2,5,10,20 --stage-duration=60s
+ */
+record LoadOptions(
+        String baseUrl,
+        String wsUrl,
+        // 每个阶段的到达率（新用户/秒），开放模型：到达不受响应快慢影响
+        double[] stages,
+        Duration stageDuration,
+        // 轮次之间的平均思考时间，按指数分布抽样
+        Duration thinkTime,
+        int turns,
+        int maxUsers,
+        Duration requestTimeout,
+        Duration firstTokenSlo,
+        double maxErrorRate,
+        String orgTags
+) {
+
+    static LoadOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("unexpected argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            values.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+        }
+        String baseUrl = values.getOrDefault("base-url", "http://localhost:8080");
+        return new LoadOptions(
+                baseUrl,
+                values.getOrDefault("ws-url", baseUrl.replaceFirst("^http", "ws") + "/ws/chat"),
+                Arrays.stream(values.getOrDefault("stages", "2,5,10,20,40").split(","))
+                        .mapToDouble(Double::parseDouble).toArray(),
+                duration(values.getOrDefault("stage-duration", "60s")),
+                duration(values.getOrDefault("think-time", "2s")),
+                Integer.parseInt(values.getOrDefault("turns", "3")),
+                Integer.parseInt(values.getOrDefault("max-users", "2000")),
+                duration(values.getOrDefault("request-timeout", "60s")),
+                duration(values.getOrDefault("ttft-slo", "2000ms")),
+                Double.parseDouble(values.getOrDefault("max-error-rate", "0.01")),
+                values.getOrDefault("org-tags", "loadtest"));
+    }
+
+    // 支持 500ms / 30s / 2m
+    static Duration duration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        return switch (value.charAt(value.length() - 1)) {
+            case 's' -> Duration.ofSeconds(amount);
+            case 'm' -> Duration.ofMinutes(amount);
+            default -> throw new IllegalArgumentException("bad duration: " + value);
+        };
+    }
+}
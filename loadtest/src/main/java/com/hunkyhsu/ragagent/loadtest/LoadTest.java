@@ -0,0 +1,143 @@
+package com.hunkyhsu.ragagent.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 端到端压测入口。按阶段逐级提高到达率，每个阶段输出各步骤的延迟分位数和错误分类，
+ * 首个 p95 首 token 延迟超过 SLO 或错误率超标的阶段即为饱和点，随后停止加压。
+ * <p>
+ * java -jar target/loadtest.jar --base-url=http://localhost:8080 --stages=2,5,10,20 --stage-duration=60s
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadOptions options = LoadOptions.parse(args);
+        AtomicInteger threadSeq = new AtomicInteger();
+        // 每个虚拟用户占一个线程；上限即最大并发用户数，超出的到达直接丢弃并计数
+        ThreadPoolExecutor users = new ThreadPoolExecutor(0, options.maxUsers(), 30, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "vu-" + threadSeq.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        ExecutorService io = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        Scenario scenario = new Scenario(new ApiClient(options, io), options);
+
+        System.out.printf(Locale.ROOT, "target %s, ws %s, %d turns/user, think %dms, first-token SLO %dms%n",
+                options.baseUrl(), options.wsUrl(), options.turns(), options.thinkTime().toMillis(),
+                options.firstTokenSlo().toMillis());
+        Double saturatedAt = null;
+        for (double rate : options.stages()) {
+            StageResult result = runStage(users, scenario, options, rate);
+            result.print(options);
+            if (result.saturated(options)) {
+                saturatedAt = rate;
+                break;
+            }
+        }
+        users.shutdownNow();
+        io.shutdownNow();
+        if (saturatedAt != null) {
+            System.out.printf(Locale.ROOT, "%nSATURATED at %.1f users/s%n", saturatedAt);
+            System.exit(1);
+        }
+        System.out.printf("%nno saturation within configured stages%n");
+    }
+
+    private static StageResult runStage(ThreadPoolExecutor users, Scenario scenario, LoadOptions options,
+                                        double rate) throws InterruptedException {
+        Map<String, StepStats> stats = new LinkedHashMap<>();
+        for (String step : Scenario.STEPS) {
+            stats.put(step, new StepStats());
+        }
+        LongAdder dropped = new LongAdder();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        long started = System.nanoTime();
+        long deadline = started + options.stageDuration().toNanos();
+        // 泊松到达：间隔按指数分布抽样，按绝对时间推进避免调度误差累积
+        long next = started;
+        while (true) {
+            next += (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) / rate * 1e9);
+            if (next >= deadline) {
+                break;
+            }
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            try {
+                users.execute(() -> {
+                    peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        scenario.run(stats);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                dropped.increment();
+            }
+        }
+        // 等本阶段已到达的用户跑完，结果只归属本阶段
+        long drainDeadline = System.nanoTime() + options.requestTimeout().toNanos() * (options.turns() + 4);
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        Map<String, StepStats.Snapshot> snapshots = new LinkedHashMap<>();
+        stats.forEach((step, stepStats) -> snapshots.put(step, stepStats.snapshot()));
+        return new StageResult(rate, (System.nanoTime() - started) / 1e9, snapshots,
+                dropped.sum(), peak.get(), inFlight.get());
+    }
+
+    private record StageResult(double rate, double seconds, Map<String, StepStats.Snapshot> steps,
+                               long dropped, int peakUsers, int unfinished) {
+
+        double errorRate() {
+            long ok = 0;
+            long failed = dropped;
+            for (StepStats.Snapshot step : steps.values()) {
+                ok += step.successes();
+                failed += step.failures();
+            }
+            return ok + failed == 0 ? 0 : (double) failed / (ok + failed);
+        }
+
+        boolean saturated(LoadOptions options) {
+            double p95 = steps.get("chat_first_token").percentileMillis(95);
+            return p95 > options.firstTokenSlo().toMillis() || errorRate() > options.maxErrorRate() || unfinished > 0;
+        }
+
+        void print(LoadOptions options) {
+            System.out.printf(Locale.ROOT, "%n== stage %.1f users/s, %.0fs, peak %d concurrent users, %d dropped, %d unfinished%n",
+                    rate, seconds, peakUsers, dropped, unfinished);
+            System.out.printf(Locale.ROOT, "%-20s %8s %7s %9s %9s %9s %9s %9s%n",
+                    "step", "count", "err%", "p50", "p90", "p99", "p99.9", "max");
+            steps.forEach((step, s) -> {
+                System.out.printf(Locale.ROOT, "%-20s %8d %6.2f%% %7.1fms %7.1fms %7.1fms %7.1fms %7.1fms%n",
+                        step, s.successes(), s.errorRate() * 100, s.percentileMillis(50), s.percentileMillis(90),
+                        s.percentileMillis(99), s.percentileMillis(99.9), s.histogram().getMaxValue() / 1_000.0);
+                s.errors().forEach((code, count) -> System.out.printf(Locale.ROOT, "%-20s %8d  %s%n", "", count, code));
+            });
+            System.out.printf(Locale.ROOT, "first token p95 %.1fms (SLO %dms), error rate %.2f%% (max %.2f%%) -> %s%n",
+                    steps.get("chat_first_token").percentileMillis(95), options.firstTokenSlo().toMillis(),
+                    errorRate() * 100, options.maxErrorRate() * 100, saturated(options) ? "SATURATED" : "ok");
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.hunkyhsu.ragagent.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 单个虚拟用户的完整会话：注册 -> 登录 -> 建会话 -> 多轮流式聊天 -> 拉历史 -> 刷新令牌
+ */
+final class Scenario {
+
+    static final List<String> STEPS = List.of(
+            "register", "login", "create_conversation", "chat_first_token", "chat_complete", "history", "refresh");
+
+    private static final List<String> QUESTIONS = List.of(
+            "请总结一下知识库里关于报销流程的规定",
+            "What is the on-call escalation policy for production incidents?",
+            "新员工入职第一周需要完成哪些培训？",
+            "Explain the difference between the staging and production deploy pipelines.",
+            "年假如何申请，审批需要几天？");
+
+    // 用户名在进程内递增，加上运行 id 避免与上一次压测的账号冲突
+    private static final String RUN_ID = Long.toString(System.currentTimeMillis(), 36);
+    private static final AtomicLong USER_SEQ = new AtomicLong();
+
+    private final ApiClient client;
+    private final LoadOptions options;
+
+    Scenario(ApiClient client, LoadOptions options) {
+        this.client = client;
+        this.options = options;
+    }
+
+    /**
+     * 执行一次完整会话，任一步骤失败即终止该用户，失败计入对应步骤
+     */
+    void run(Map<String, StepStats> stats) throws InterruptedException {
+        String username = "lt_" + RUN_ID + "_" + USER_SEQ.incrementAndGet();
+        String password = "loadtest-" + username;
+
+        Map<String, Object> register = new LinkedHashMap<>();
+        register.put("username", username);
+        register.put("password", password);
+        register.put("email", username + "@loadtest.local");
+        register.put("orgTags", options.orgTags());
+        if (timed(stats, "register", () -> client.post("/api/auth/register", register, null)) == null) {
+            return;
+        }
+
+        JsonNode tokens = timed(stats, "login", () -> client.post("/api/auth/login",
+                Map.of("username", username, "password", password), null));
+        if (tokens == null) {
+            return;
+        }
+        String accessToken = tokens.path("accessToken").asText();
+
+        JsonNode conversation = timed(stats, "create_conversation", () -> client.post("/api/conversations/create",
+                Map.of("title", "load test " + username), accessToken));
+        if (conversation == null) {
+            return;
+        }
+        long conversationId = conversation.path("id").asLong();
+
+        for (int turn = 0; turn < options.turns(); turn++) {
+            if (turn > 0) {
+                think();
+            }
+            String question = QUESTIONS.get(ThreadLocalRandom.current().nextInt(QUESTIONS.size()));
+            try {
+                ApiClient.ChatTiming timing = client.chat(accessToken, conversationId,
+                        UUID.randomUUID().toString(), question);
+                if (timing.firstTokenAt() != 0) {
+                    stats.get("chat_first_token").success(timing.firstTokenAt() - timing.sentAt());
+                }
+                stats.get("chat_complete").success(timing.doneAt() - timing.sentAt());
+            } catch (StepFailure ex) {
+                stats.get("chat_complete").failure(ex.code());
+                return;
+            }
+        }
+
+        if (timed(stats, "history", () -> client.get(
+                "/api/conversations/" + conversationId + "/messages", accessToken)) == null) {
+            return;
+        }
+        timed(stats, "refresh", () -> client.post("/api/auth/refresh",
+                Map.of("refreshToken", tokens.path("refreshToken").asText()), null));
+    }
+
+    private static JsonNode timed(Map<String, StepStats> stats, String step, Supplier<JsonNode> call) {
+        long start = System.nanoTime();
+        try {
+            JsonNode result = call.get();
+            stats.get(step).success(System.nanoTime() - start);
+            return result;
+        } catch (StepFailure ex) {
+            stats.get(step).failure(ex.code());
+            return null;
+        }
+    }
+
+    // 指数分布的思考时间，均值为 --think-time
+    private void think() throws InterruptedException {
+        long meanMillis = options.thinkTime().toMillis();
+        if (meanMillis > 0) {
+            Thread.sleep((long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanMillis));
+        }
+    }
+}
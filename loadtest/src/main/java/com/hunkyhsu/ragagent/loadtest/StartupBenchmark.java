@@ -0,0 +1,104 @@
+package com.hunkyhsu.ragagent.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动耗时基准：反复拉起服务进程，记录从进程创建到探测请求首次返回 2xx 的时间（time-to-first-successful-request），
+ * 每轮结束后关闭进程。标准构建和 fast-startup 构建各跑一次即可对比。
+ * <p>
+ * java -cp target/loadtest.jar com.hunkyhsu.ragagent.loadtest.StartupBenchmark --runs=5 --label=cds \
+ *   -- java -XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true -Dstartup.fast=true -jar ragagent-0.0.1-SNAPSHOT-exec.jar
+ */
+public final class StartupBenchmark {
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int split = Arrays.asList(args).indexOf("--");
+        if (split < 0 || split == args.length - 1) {
+            throw new IllegalArgumentException("usage: StartupBenchmark [--runs=5] [--probe-url=...] [--timeout=120s]"
+                    + " [--label=...] [--workdir=.] -- <command...>");
+        }
+        Map<String, String> values = new HashMap<>();
+        for (String arg : Arrays.copyOfRange(args, 0, split)) {
+            int eq = arg.indexOf('=');
+            values.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+        }
+        List<String> command = List.of(Arrays.copyOfRange(args, split + 1, args.length));
+        int runs = Integer.parseInt(values.getOrDefault("runs", "5"));
+        URI probe = URI.create(values.getOrDefault("probe-url", "http://localhost:8080/actuator/health"));
+        Duration timeout = LoadOptions.duration(values.getOrDefault("timeout", "120s"));
+        String label = values.getOrDefault("label", "default");
+        File workdir = new File(values.getOrDefault("workdir", "."));
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+        long[] samples = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            samples[run] = measure(client, command, workdir, probe, timeout);
+            System.out.printf(Locale.ROOT, "[%s] run %d: %d ms%n", label, run + 1, samples[run]);
+        }
+        Arrays.sort(samples);
+        System.out.printf(Locale.ROOT, "[%s] time-to-first-successful-request over %d runs: min %d ms, p50 %d ms, max %d ms%n",
+                label, runs, samples[0], samples[runs / 2], samples[runs - 1]);
+    }
+
+    private static long measure(HttpClient client, List<String> command, File workdir, URI probe, Duration timeout)
+            throws IOException, InterruptedException {
+        // 端口被上一轮残留进程占用时探测会直接成功，先确认端口已空闲
+        if (succeeds(client, probe)) {
+            throw new IllegalStateException("probe already succeeds before launch, is another instance running? " + probe);
+        }
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(workdir)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        long started = System.nanoTime();
+        Process process = builder.start();
+        try {
+            long deadline = started + timeout.toNanos();
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("process exited with " + process.exitValue() + " before first success");
+                }
+                if (succeeds(client, probe)) {
+                    return (System.nanoTime() - started) / 1_000_000;
+                }
+                Thread.sleep(20);
+            }
+            throw new IllegalStateException("no successful response within " + timeout.toSeconds() + "s");
+        } finally {
+            stop(process);
+        }
+    }
+
+    private static boolean succeeds(HttpClient client, URI probe) throws InterruptedException {
+        try {
+            HttpResponse<Void> response = client.send(HttpRequest.newBuilder(probe).timeout(Duration.ofSeconds(2)).GET().build(),
+                    HttpResponse.BodyHandlers.discarding());
+            return response.statusCode() / 100 == 2;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // 先 SIGTERM 让服务走优雅停机，超时再强杀，保证下一轮端口可用
+    private static void stop(Process process) throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(60, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+}
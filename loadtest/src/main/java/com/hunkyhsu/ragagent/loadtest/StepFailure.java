@@ -0,0 +1,39 @@
+package com.hunkyhsu.ragagent.loadtest;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 步骤失败，code 作为错误分类计入报告：http_4xx/http_5xx、服务端 error 帧的 code、timeout、io 等
+ */
+final class StepFailure extends RuntimeException {
+
+    private final String code;
+
+    StepFailure(String code, String message) {
+        super(message, null, false, false);
+        this.code = code;
+    }
+
+    String code() {
+        return code;
+    }
+
+    static StepFailure of(Throwable ex) {
+        Throwable cause = ex;
+        while (cause.getCause() != null && !(cause instanceof StepFailure)) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof StepFailure failure) {
+            return failure;
+        }
+        if (cause instanceof HttpTimeoutException || cause instanceof TimeoutException) {
+            return new StepFailure("timeout", cause.getMessage());
+        }
+        if (cause instanceof IOException) {
+            return new StepFailure("io", cause.toString());
+        }
+        return new StepFailure("client_error", cause.toString());
+    }
+}
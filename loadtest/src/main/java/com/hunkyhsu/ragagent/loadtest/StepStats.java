@@ -0,0 +1,55 @@
+package com.hunkyhsu.ragagent.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个步骤的延迟分布与错误计数。Recorder 支持多线程无锁写入，报告时一次性取出区间直方图
+ */
+final class StepStats {
+
+    // 1 微秒到 5 分钟，3 位有效数字
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private final Recorder recorder = new Recorder(MAX_MICROS, 3);
+    private final LongAdder successes = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    void success(long nanos) {
+        recorder.recordValue(Math.min(MAX_MICROS, Math.max(1, nanos / 1_000)));
+        successes.increment();
+    }
+
+    void failure(String code) {
+        errors.computeIfAbsent(code, key -> new LongAdder()).increment();
+    }
+
+    Snapshot snapshot() {
+        Histogram histogram = recorder.getIntervalHistogram();
+        Map<String, Long> errorCounts = new TreeMap<>();
+        errors.forEach((code, count) -> errorCounts.put(code, count.sum()));
+        return new Snapshot(histogram, successes.sum(), errorCounts);
+    }
+
+    record Snapshot(Histogram histogram, long successes, Map<String, Long> errors) {
+
+        long failures() {
+            return errors.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        double errorRate() {
+            long total = successes + failures();
+            return total == 0 ? 0 : (double) failures() / total;
+        }
+
+        double percentileMillis(double percentile) {
+            return histogram.getTotalCount() == 0 ? 0 : histogram.getValueAtPercentile(percentile) / 1_000.0;
+        }
+    }
+}
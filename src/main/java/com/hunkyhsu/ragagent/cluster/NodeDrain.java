@@ -0,0 +1,96 @@
+package com.hunkyhsu.ragagent.cluster;
+
+import com.hunkyhsu.ragagent.config.ClusterProperties;
+import com.hunkyhsu.ragagent.ws.ChatWebSocketHandler;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+/**
+ * 滚动发布时的连接排空：停止接受新连接和新的 chat.send，通知客户端带着 messageId/seq 重连到其他节点，
+ * 并等待进行中的回复生成完毕（结果已落库或写入 StreamBus）后才放行后续停机流程
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NodeDrain implements SmartLifecycle, HandshakeInterceptor {
+
+    // 先于 Web 服务器的优雅停机（DEFAULT_PHASE - 1024）执行，排空期间 HTTP 仍可用
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 512;
+
+    private final ChatWebSocketHandler chatWebSocketHandler;
+    private final StreamRelay streamRelay;
+    private final ClusterProperties clusterProperties;
+    private volatile boolean running;
+    private volatile boolean draining;
+
+    @Override
+    public boolean beforeHandshake(@NonNull ServerHttpRequest request,
+                                   @NonNull ServerHttpResponse response,
+                                   @NonNull WebSocketHandler wsHandler,
+                                   @NonNull Map<String, Object> attributes) {
+        if (draining) {
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set("Retry-After", "1");
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(@NonNull ServerHttpRequest request,
+                               @NonNull ServerHttpResponse response,
+                               @NonNull WebSocketHandler wsHandler,
+                               Exception exception) {
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        draining = true;
+        long start = System.nanoTime();
+        log.info("node_drain_started node={} sessions={} generations={}", clusterProperties.getNodeId(),
+                chatWebSocketHandler.sessionCount(), streamRelay.inFlight());
+        streamRelay.draining();
+        chatWebSocketHandler.refuseNewStreams();
+        // 能跨节点续接时立即让客户端重连，生成继续在本节点跑完并写入 StreamBus
+        if (streamRelay.crossNode()) {
+            chatWebSocketHandler.reconnectAll();
+        }
+        try {
+            if (!streamRelay.awaitIdle(clusterProperties.getDrainTimeout())) {
+                log.warn("node_drain_timeout generations={}", streamRelay.inFlight());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        chatWebSocketHandler.reconnectAll();
+        streamRelay.leave();
+        running = false;
+        log.info("node_drain_finished node={} tookMs={}", clusterProperties.getNodeId(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
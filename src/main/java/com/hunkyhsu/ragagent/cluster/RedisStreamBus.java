@@ -0,0 +1,220 @@
+package com.hunkyhsu.ragagent.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hunkyhsu.ragagent.config.ClusterProperties;
+import com.hunkyhsu.ragagent.logging.LogFields;
+import com.hunkyhsu.ragagent.ws.WsEnvelope;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.ConnectableFlux;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于 Redis 的回复流通道。键布局（prefix 默认 ragagent:）：
+ * stream:{userId}:{messageId}          流归属 hash：node / userId / conversationId
+ * stream-log:{userId}:{messageId}      已生成帧的 JSON 列表，供断线后重放
+ * stream-channel:{userId}:{messageId}  实时帧的 pub/sub 频道
+ * node:{nodeId}               节点心跳 hash：startedAt / heartbeatAt / draining，TTL 过期即下线
+ * node:{nodeId}:connections   本节点上的连接 sessionId -> userId
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "cluster", name = "mode", havingValue = "redis")
+public class RedisStreamBus implements StreamBus {
+
+    private static final long TTL_REFRESH_FRAMES = 64;
+
+    private final ReactiveStringRedisTemplate redis;
+    private final ReactiveRedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+    private final ClusterProperties properties;
+    private final String nodeKey;
+    private final String connectionsKey;
+    private Disposable heartbeat;
+
+    public RedisStreamBus(ReactiveStringRedisTemplate redis, ReactiveRedisConnectionFactory connectionFactory,
+                          ObjectMapper objectMapper, ClusterProperties properties) {
+        this.redis = redis;
+        this.listenerContainer = new ReactiveRedisMessageListenerContainer(connectionFactory);
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.nodeKey = properties.getKeyPrefix() + "node:" + properties.getNodeId();
+        this.connectionsKey = nodeKey + ":connections";
+    }
+
+    @PostConstruct
+    void startHeartbeat() {
+        String startedAt = Long.toString(System.currentTimeMillis());
+        heartbeat = Flux.interval(Duration.ZERO, properties.getHeartbeat())
+                .onBackpressureDrop()
+                .concatMap(tick -> beat(startedAt)
+                        .onErrorResume(ex -> {
+                            log.warn("cluster_heartbeat_failed node={}: {}", properties.getNodeId(), ex.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @Override
+    public void register(String streamId, Long userId, Long conversationId) {
+        String key = streamKey(streamId);
+        redis.opsForHash().putAll(key, Map.of(
+                        "node", properties.getNodeId(),
+                        "userId", String.valueOf(userId),
+                        "conversationId", String.valueOf(conversationId)))
+                .then(redis.expire(key, properties.getResumeTtl()))
+                .subscribe(null, ex -> log.warn("stream_register_failed streamId={}: {}", streamId, ex.getMessage()));
+    }
+
+    @Override
+    public void append(String streamId, WsEnvelope frame) {
+        String json = write(frame);
+        // 先入日志再发布：续接方先订阅频道再读日志，两边按 seq 去重即可不丢帧
+        redis.opsForList().rightPush(logKey(streamId), json)
+                .flatMap(length -> length % TTL_REFRESH_FRAMES == 1 ? refreshTtl(streamId) : Mono.just(true))
+                .then(redis.convertAndSend(channel(streamId), json))
+                .subscribe(null, ex -> log.warn(LogFields.PER_TOKEN, "stream_append_failed streamId={}: {}", streamId, ex.getMessage()));
+    }
+
+    // 帧日志从第一帧起就带 TTL，节点在生成中途宕机时不会永久残留；长时间的生成每隔若干帧续期一次
+    private Mono<Boolean> refreshTtl(String streamId) {
+        return redis.expire(logKey(streamId), properties.getResumeTtl())
+                .then(redis.expire(streamKey(streamId), properties.getResumeTtl()));
+    }
+
+    @Override
+    public void complete(String streamId) {
+        redis.expire(logKey(streamId), properties.getResumeTtl())
+                .then(redis.expire(streamKey(streamId), properties.getResumeTtl()))
+                .subscribe(null, ex -> log.warn("stream_complete_failed streamId={}: {}", streamId, ex.getMessage()));
+    }
+
+    @Override
+    public StreamOwner lookup(String streamId) {
+        Map<Object, Object> fields = redis.opsForHash().entries(streamKey(streamId))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .block(properties.getRedisTimeout());
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        return new StreamOwner((String) fields.get("node"),
+                parseLong(fields.get("userId")), parseLong(fields.get("conversationId")));
+    }
+
+    @Override
+    public Flux<WsEnvelope> replay(String streamId, long afterSeq) {
+        AtomicLong lastSeq = new AtomicLong(afterSeq);
+        return listenerContainer.receiveLater(ChannelTopic.of(channel(streamId)))
+                .flatMapMany(live -> {
+                    // 读日志期间到达的实时帧先缓存，日志读完后接着输出
+                    ConnectableFlux<String> buffered = live.map(ReactiveSubscription.Message::getMessage).replay();
+                    Disposable connection = buffered.connect();
+                    return Flux.concat(redis.opsForList().range(logKey(streamId), 0, -1), buffered)
+                            .doFinally(signal -> connection.dispose());
+                })
+                .map(this::read)
+                .filter(frame -> frame.seq() == null || frame.seq() > lastSeq.get())
+                .doOnNext(frame -> {
+                    if (frame.seq() != null) {
+                        lastSeq.set(frame.seq());
+                    }
+                })
+                .takeUntil(StreamRelay::isTerminal)
+                .timeout(properties.getResumeIdleTimeout(), Mono.fromSupplier(() -> WsEnvelope.error(
+                        null, StreamRelay.messageId(streamId), "UPSTREAM", "stream_lost")));
+    }
+
+    @Override
+    public void connected(String sessionId, Long userId) {
+        redis.opsForHash().put(connectionsKey, sessionId, String.valueOf(userId))
+                .subscribe(null, ex -> log.debug("connection_register_failed: {}", ex.getMessage()));
+    }
+
+    @Override
+    public void disconnected(String sessionId) {
+        redis.opsForHash().remove(connectionsKey, sessionId)
+                .subscribe(null, ex -> log.debug("connection_unregister_failed: {}", ex.getMessage()));
+    }
+
+    @Override
+    public void draining() {
+        redis.opsForHash().put(nodeKey, "draining", "true")
+                .block(properties.getRedisTimeout());
+    }
+
+    @Override
+    public void leave() {
+        if (heartbeat != null) {
+            heartbeat.dispose();
+        }
+        redis.delete(nodeKey, connectionsKey)
+                .onErrorResume(ex -> {
+                    log.warn("cluster_leave_failed node={}: {}", properties.getNodeId(), ex.getMessage());
+                    return Mono.empty();
+                })
+                .block(properties.getRedisTimeout());
+    }
+
+    @PreDestroy
+    void destroy() {
+        if (heartbeat != null) {
+            heartbeat.dispose();
+        }
+        listenerContainer.destroy();
+    }
+
+    private Mono<Boolean> beat(String startedAt) {
+        return redis.opsForHash().putAll(nodeKey, Map.of(
+                        "startedAt", startedAt,
+                        "heartbeatAt", Long.toString(System.currentTimeMillis())))
+                .then(redis.expire(nodeKey, properties.getNodeTtl()))
+                .then(redis.expire(connectionsKey, properties.getNodeTtl()));
+    }
+
+    private String streamKey(String streamId) {
+        return properties.getKeyPrefix() + "stream:" + streamId;
+    }
+
+    private String logKey(String streamId) {
+        return properties.getKeyPrefix() + "stream-log:" + streamId;
+    }
+
+    private String channel(String streamId) {
+        return properties.getKeyPrefix() + "stream-channel:" + streamId;
+    }
+
+    private String write(WsEnvelope frame) {
+        try {
+            return objectMapper.writeValueAsString(frame);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private WsEnvelope read(String json) {
+        try {
+            return objectMapper.readValue(json, WsEnvelope.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Long parseLong(Object value) {
+        return value == null || "null".equals(value) ? null : Long.valueOf(value.toString());
+    }
+}
@@ -0,0 +1,41 @@
+package com.hunkyhsu.ragagent.cluster;
+
+import com.hunkyhsu.ragagent.ws.WsEnvelope;
+import reactor.core.publisher.Flux;
+
+/**
+ * 跨节点的回复流通道：生成节点登记并写入每一帧，其他节点按流标识重放并接收后续帧。
+ * 流标识为 userId:messageId（见 StreamRelay#streamId）。未配置时回复流只能在生成它的节点上续接
+ */
+public interface StreamBus {
+
+    void register(String streamId, Long userId, Long conversationId);
+
+    /**
+     * 异步写入一帧，调用方不等待结果；同一条流的帧按调用顺序送达
+     */
+    void append(String streamId, WsEnvelope frame);
+
+    void complete(String streamId);
+
+    /**
+     * @return 流的归属，不存在或已过期时返回 null
+     */
+    StreamOwner lookup(String streamId);
+
+    /**
+     * 先订阅实时帧再读取已写入的帧，按 seq 去重后输出 afterSeq 之后的帧，直到 chat.done 或 error
+     */
+    Flux<WsEnvelope> replay(String streamId, long afterSeq);
+
+    void connected(String sessionId, Long userId);
+
+    void disconnected(String sessionId);
+
+    /**
+     * 停机时标记本节点正在排空，负载均衡和运维可据此摘除节点
+     */
+    void draining();
+
+    void leave();
+}
@@ -0,0 +1,7 @@
+package com.hunkyhsu.ragagent.cluster;
+
+/**
+ * 注册表中一条回复流的归属：由哪个节点生成、属于哪个用户
+ */
+public record StreamOwner(String nodeId, Long userId, Long conversationId) {
+}
@@ -0,0 +1,215 @@
+package com.hunkyhsu.ragagent.cluster;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hunkyhsu.ragagent.config.ClusterProperties;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.ws.WsEnvelope;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 回复流与 WebSocket 连接解耦：生成过程独立订阅上游，帧写入重放缓冲（以及 StreamBus），
+ * 连接只是其中一个订阅者。连接断开、节点排空都不会中断生成，客户端凭 messageId + 已收到的 seq 续接。
+ * messageId 由客户端生成，流按 userId:messageId 登记，不同用户碰巧（或故意）使用相同 messageId 时互不覆盖
+ */
+@Slf4j
+@Component
+public class StreamRelay {
+
+    private final StreamBus streamBus;
+    private final ConcurrentMap<String, LocalStream> inFlight = new ConcurrentHashMap<>();
+    // 已完成的流保留一段时间，供晚到的重连续接
+    private final Cache<String, LocalStream> finished;
+
+    public StreamRelay(ClusterProperties properties, Optional<StreamBus> streamBus, MeterRegistry meterRegistry) {
+        this.streamBus = streamBus.orElse(null);
+        this.finished = Caffeine.newBuilder()
+                .expireAfterWrite(properties.getResumeTtl())
+                .maximumSize(10_000)
+                .build();
+        Gauge.builder("chat.generations.in_flight", inFlight, ConcurrentMap::size)
+                .description("Reply generations still running, attached to a socket or not")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 启动一次回复生成，返回可供当前连接订阅的帧流；取消该订阅不会取消生成
+     */
+    public Flux<WsEnvelope> start(User user, WsEnvelope send, Flux<WsEnvelope> replies) {
+        Claim claim = claim(user, send);
+        return claim != null ? claim.start(replies) : resume(user, send.messageId(), 0);
+    }
+
+    /**
+     * 在落库、发布事件和调用工具之前先登记 messageId，同一用户的同一 messageId 只会生成一次
+     *
+     * @return 该 messageId 已在生成时返回 null，调用方应改为续接已有的流
+     */
+    public Claim claim(User user, WsEnvelope send) {
+        // 没有 messageId 的请求无法续接，仍然登记以便排空时等待
+        String key = streamId(user.getId(), send.messageId() != null ? send.messageId() : UUID.randomUUID().toString());
+        LocalStream stream = new LocalStream(user.getId(), Sinks.many().replay().all());
+        if (inFlight.putIfAbsent(key, stream) != null) {
+            return null;
+        }
+        return new Claim(key, stream, send.conversationId(), send.messageId() != null && streamBus != null);
+    }
+
+    /**
+     * 已登记但尚未开始的生成，必须调用 start 或 abandon 之一
+     */
+    public final class Claim {
+
+        private final String key;
+        private final LocalStream stream;
+        private final Long conversationId;
+        private final boolean shared;
+
+        private Claim(String key, LocalStream stream, Long conversationId, boolean shared) {
+            this.key = key;
+            this.stream = stream;
+            this.conversationId = conversationId;
+            this.shared = shared;
+        }
+
+        public Flux<WsEnvelope> start(Flux<WsEnvelope> replies) {
+            if (shared) {
+                streamBus.register(key, stream.userId, conversationId);
+            }
+            replies.subscribe(
+                    frame -> {
+                        stream.sink.tryEmitNext(frame);
+                        if (shared) {
+                            streamBus.append(key, frame);
+                        }
+                    },
+                    error -> {
+                        log.warn("generation_failed streamId={}", key, error);
+                        finish(key, stream, shared);
+                        stream.sink.tryEmitError(error);
+                    },
+                    () -> {
+                        finish(key, stream, shared);
+                        stream.sink.tryEmitComplete();
+                    });
+            return stream.sink.asFlux();
+        }
+
+        /**
+         * 生成未能开始（如校验失败）：撤销登记，让客户端可以用同一 messageId 重试，
+         * 登记期间接到这条流上的重复请求收到同一个错误帧
+         */
+        public void abandon(WsEnvelope error) {
+            inFlight.remove(key, stream);
+            stream.sink.tryEmitNext(error);
+            stream.sink.tryEmitComplete();
+        }
+    }
+
+    /**
+     * 续接 messageId 对应的回复流，只输出 seq 大于 afterSeq 的帧。本节点没有时查 StreamBus。
+     *
+     * @return 流不存在、已过期或不属于该用户时返回 null
+     */
+    public Flux<WsEnvelope> resume(User user, String messageId, long afterSeq) {
+        String key = streamId(user.getId(), messageId);
+        LocalStream local = inFlight.get(key);
+        if (local == null) {
+            local = finished.getIfPresent(key);
+        }
+        if (local != null) {
+            return Objects.equals(local.userId, user.getId())
+                    ? local.sink.asFlux().filter(frame -> frame.seq() == null || frame.seq() > afterSeq)
+                    : null;
+        }
+        if (streamBus == null) {
+            return null;
+        }
+        StreamOwner owner = streamBus.lookup(key);
+        if (owner == null || !Objects.equals(owner.userId(), user.getId())) {
+            return null;
+        }
+        return streamBus.replay(key, afterSeq);
+    }
+
+    /**
+     * 是否能在其他节点续接；为 false 时排空必须等生成结束再断开连接
+     */
+    public boolean crossNode() {
+        return streamBus != null;
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!inFlight.isEmpty()) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(100);
+        }
+        return true;
+    }
+
+    public void connected(String sessionId, User user) {
+        if (streamBus != null) {
+            streamBus.connected(sessionId, user.getId());
+        }
+    }
+
+    public void disconnected(String sessionId) {
+        if (streamBus != null) {
+            streamBus.disconnected(sessionId);
+        }
+    }
+
+    public void draining() {
+        if (streamBus != null) {
+            streamBus.draining();
+        }
+    }
+
+    public void leave() {
+        if (streamBus != null) {
+            streamBus.leave();
+        }
+    }
+
+    static String streamId(Long userId, String messageId) {
+        return userId + ":" + messageId;
+    }
+
+    static String messageId(String streamId) {
+        return streamId.substring(streamId.indexOf(':') + 1);
+    }
+
+    static boolean isTerminal(WsEnvelope frame) {
+        return WsEnvelope.CHAT_DONE.equals(frame.type()) || WsEnvelope.ERROR.equals(frame.type());
+    }
+
+    private void finish(String key, LocalStream stream, boolean shared) {
+        finished.put(key, stream);
+        inFlight.remove(key, stream);
+        if (shared) {
+            streamBus.complete(key);
+        }
+    }
+
+    private record LocalStream(Long userId, Sinks.Many<WsEnvelope> sink) {
+    }
+}
@@ -0,0 +1,95 @@
+package com.hunkyhsu.ragagent.config;
+
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.tokenizer.BpeEncoding;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@ConfigurationProperties(prefix = "ai")
+@Data
+public class AiProperties {
+    // 当前启用的 AiProvider，默认使用本地 mock，便于离线开发
+    private String provider = "mock";
+    private String model = "gpt-4o-mini";
+    private String systemPrompt = "You are a helpful assistant.";
+    // mock provider 每个增量片段之间的间隔
+    private Duration mockTokenDelay = Duration.ofMillis(20);
+    private Cache cache = new Cache();
+    private Context context = new Context();
+    private Tokenizer tokenizer = new Tokenizer();
+    private Scheduler scheduler = new Scheduler();
+
+    @Data
+    public static class Cache {
+        private boolean enabled = true;
+        private Duration ttl = Duration.ofMinutes(30);
+        // 缓存容量上限，按回答字符数计权，超出后按 LRU 淘汰
+        private long maxWeightChars = 20_000_000L;
+    }
+
+    @Data
+    public static class Context {
+        // 历史上下文（含滚动摘要）的默认 token 预算
+        private int defaultBudgetTokens = 6000;
+        // 按模型覆盖的 token 预算
+        private Map<String, Integer> modelBudgets = new HashMap<>();
+        // 从预算中为滚动摘要预留的 token 数
+        private int summaryBudgetTokens = 512;
+        // 缓存已组装上下文的会话数
+        private long cacheSize = 10_000;
+        // 会话闲置超过该时长后丢弃缓存的上下文，下次从摘要和最近消息重新组装
+        private Duration cacheExpireAfterAccess = Duration.ofMinutes(30);
+        // 本实例记录的待落库消息超过该时长仍未被增量读到（事件被跳过或落库失败）即从窗口丢弃
+        private Duration pendingTtl = Duration.ofMinutes(2);
+
+        public int budgetFor(String model) {
+            return modelBudgets.getOrDefault(model, defaultBudgetTokens);
+        }
+    }
+
+    @Data
+    public static class Tokenizer {
+        private BpeEncoding encoding = BpeEncoding.CL100K_BASE;
+        // tiktoken 格式的词表文件，如 file:/opt/ragagent/cl100k_base.tiktoken；为空时退化为近似估算
+        private String vocabPath = "";
+    }
+
+    @Data
+    public static class Scheduler {
+        private boolean enabled = true;
+        // 上游并发上限的初始值与上下界，运行中按 AIMD 调整
+        private int initialLimit = 8;
+        private int minLimit = 1;
+        private int maxLimit = 64;
+        // 首 token 延迟超过该值即视为上游过载并收缩上限，应明显低于上游超时
+        private Duration latencyTarget = Duration.ofSeconds(2);
+        // 乘性减小的系数，每个 latencyTarget 周期最多收缩一次
+        private double backoffRatio = 0.75;
+        // 排队总数与单用户排队数上限，超出直接返回 429
+        private int maxQueued = 500;
+        private int maxQueuedPerUser = 4;
+        // 排队超过该时长仍未获得配额的请求直接失败
+        private Duration maxQueueWait = Duration.ofSeconds(30);
+        // 排队时是否向客户端下发 chat.queued 帧
+        private boolean notifyQueued = true;
+        // 同一租户内按角色分配的权重
+        private Map<User.Role, Integer> roleWeights = new EnumMap<>(Map.of(User.Role.USER, 1, User.Role.ADMIN, 2));
+        // 租户（规范化后的 orgTags）之间的权重，未配置的租户为 1
+        private Map<String, Integer> tenantWeights = new HashMap<>();
+
+        public int weightOf(User.Role role) {
+            return Math.max(1, roleWeights.getOrDefault(role, 1));
+        }
+
+        public int weightOfTenant(String tenant) {
+            return Math.max(1, tenantWeights.getOrDefault(tenant, 1));
+        }
+    }
+}
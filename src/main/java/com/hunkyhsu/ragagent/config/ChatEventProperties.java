@@ -0,0 +1,22 @@
+package com.hunkyhsu.ragagent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "chat.events")
+@Data
+public class ChatEventProperties {
+    private String topic = "chat-events";
+    // 分区数决定持久化消费者的最大并行度，同一会话始终落在同一分区
+    private int partitions = 12;
+    private short replicas = 1;
+    // 请求线程等待 broker 确认的上限
+    private Duration sendTimeout = Duration.ofSeconds(5);
+    private String persistenceGroup = "chat-persistence";
+    private int consumerConcurrency = 3;
+    private int maxPollRecords = 500;
+}
@@ -0,0 +1,29 @@
+package com.hunkyhsu.ragagent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.UUID;
+
+@Configuration
+@ConfigurationProperties(prefix = "cluster")
+@Data
+public class ClusterProperties {
+    // local：回复流只能在本节点续接；redis：通过 Redis 注册表和 pub/sub 跨节点续接
+    private String mode = "local";
+    // 节点标识，容器内默认取 HOSTNAME（即 Pod 名）。也用作广播消费组的后缀，必须在实例间唯一
+    private String nodeId = System.getenv().getOrDefault("HOSTNAME", UUID.randomUUID().toString().substring(0, 8));
+    private String keyPrefix = "ragagent:";
+    // 节点心跳间隔与存活 TTL，TTL 过期即视为节点下线
+    private Duration heartbeat = Duration.ofSeconds(5);
+    private Duration nodeTtl = Duration.ofSeconds(15);
+    // 回复流完成后仍可续接的时长，本地重放缓冲和 Redis 帧日志都按此过期
+    private Duration resumeTtl = Duration.ofMinutes(5);
+    // 续接远端流时超过该时长没有新帧，认为所属节点已失联
+    private Duration resumeIdleTimeout = Duration.ofSeconds(30);
+    // 停机时等待进行中的回复生成完毕的上限
+    private Duration drainTimeout = Duration.ofSeconds(60);
+    private Duration redisTimeout = Duration.ofSeconds(2);
+}
@@ -0,0 +1,16 @@
+package com.hunkyhsu.ragagent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "cors")
+@Data
+public class CorsProperties {
+    // 允许跨域访问 REST 接口和 /ws/chat 握手的来源，默认只放行本地前端开发服务器
+    private List<String> allowedOrigins = new ArrayList<>(List.of("http://localhost:5173"));
+}
@@ -0,0 +1,55 @@
+package com.hunkyhsu.ragagent.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 快速启动模式下监听容器和用量拓扑不随上下文启动（autoStartup=false），就绪后延迟启动。
+ * 持久化消费组从已提交位点继续，不丢事件；广播消费组（缓存失效）晚几秒开始读。
+ * 配额快照消费者不在此列，它随上下文启动，否则推迟期间的请求不受配额限制
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeferredKafkaStartup {
+
+	private final StartupProperties startupProperties;
+	private final KafkaListenerEndpointRegistry listenerRegistry;
+	private final ObjectProvider<StreamsBuilderFactoryBean> streamsBuilders;
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void startConsumers() {
+		if (!startupProperties.isFast()) {
+			return;
+		}
+		long delay = startupProperties.getConsumerStartDelay().toMillis();
+		CompletableFuture.runAsync(this::startAll, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+				.exceptionally(ex -> {
+					log.error("Deferred Kafka consumer start failed", ex);
+					return null;
+				});
+	}
+
+	private void startAll() {
+		long started = System.nanoTime();
+		for (MessageListenerContainer container : listenerRegistry.getListenerContainers()) {
+			if (!container.isRunning()) {
+				container.start();
+			}
+		}
+		streamsBuilders.orderedStream()
+				.filter(factory -> !factory.isRunning())
+				.forEach(StreamsBuilderFactoryBean::start);
+		log.info("Deferred Kafka consumers started in {} ms", (System.nanoTime() - started) / 1_000_000);
+	}
+}
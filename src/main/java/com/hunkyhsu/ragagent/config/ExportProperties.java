@@ -0,0 +1,26 @@
+package com.hunkyhsu.ragagent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "export")
+@Data
+public class ExportProperties {
+    // 导出文件目录；多实例部署时必须是共享卷，任务可能由任意实例接手，下载也可能落到任意实例
+    private String directory = "data/exports";
+    // 每个实例同时执行的导出数，导出只在每页查询期间占用一个连接，不与聊天请求争抢连接池
+    private int workers = 2;
+    // 每页读取的行数，每页结束时落盘并写检查点
+    private int pageSize = 1000;
+    // 两页之间的停顿，给在线请求让出数据库
+    private Duration pagePause = Duration.ofMillis(20);
+    // 心跳超过该时长未更新的 RUNNING 任务视为执行实例已失联，可被其他实例接手
+    private Duration lease = Duration.ofMinutes(2);
+    private Duration pollInterval = Duration.ofSeconds(10);
+    // 完成后文件保留多久
+    private Duration retention = Duration.ofDays(7);
+}
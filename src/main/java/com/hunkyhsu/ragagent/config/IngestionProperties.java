@@ -0,0 +1,26 @@
+package com.hunkyhsu.ragagent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "ingestion")
+@Data
+public class IngestionProperties {
+    // 嵌入模型实现，默认使用离线可复现的本地哈希嵌入
+    private String embedder = "local";
+    private int localDimensions = 384;
+    private int chunkTargetTokens = 400;
+    private int chunkOverlapTokens = 60;
+    private int parseWorkers = Runtime.getRuntime().availableProcessors();
+    private int embedWorkers = Runtime.getRuntime().availableProcessors();
+    private int embedBatchSize = 64;
+    // 解析与嵌入线程池的有界队列长度，队列满时由提交线程自己执行，形成背压
+    private int queueCapacity = 256;
+    private long maxDocumentBytes = 20L * 1024 * 1024;
+    // 导入中的文档超过这么久没有任何进度即视为执行实例已退出：清理未切换的新片段并标记为 FAILED
+    private Duration stallTimeout = Duration.ofMinutes(15);
+}
@@ -4,12 +4,17 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.logging.LogFields;
+import com.hunkyhsu.ragagent.metrics.ChatMetrics;
+import com.hunkyhsu.ragagent.retrieval.OrgTagRegistry;
 import com.hunkyhsu.ragagent.service.UserDetailsService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.MDC;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -32,16 +37,22 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 	private final UserDetailsService userDetailsService;
 	private final WhiteListConfig whiteListConfig;
 	private final ObjectMapper objectMapper;
+	private final OrgTagRegistry orgTagRegistry;
+	private final ChatMetrics chatMetrics;
 	private final AntPathMatcher pathMatcher = new AntPathMatcher();
 
 	public JwtAuthenticationFilter(JwtService jwtService,
 								   UserDetailsService userDetailsService,
 								   WhiteListConfig whiteListConfig,
-								   ObjectMapper objectMapper) {
+								   ObjectMapper objectMapper,
+								   OrgTagRegistry orgTagRegistry,
+								   ChatMetrics chatMetrics) {
 		this.jwtService = jwtService;
 		this.userDetailsService = userDetailsService;
 		this.whiteListConfig = whiteListConfig;
 		this.objectMapper = objectMapper;
+		this.orgTagRegistry = orgTagRegistry;
+		this.chatMetrics = chatMetrics;
 	}
 
 	@Override
@@ -65,12 +76,25 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 		}
 		String token = authHeader.substring(BEARER_PREFIX.length()).trim();
 
+		long start = System.nanoTime();
+		Long userId = null;
 		try {
 			String username = jwtService.extractUsername(token);
 			if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+				// 令牌解析与用户查询分开计时，两段 JWT 校验耗时合并记录
+				long parsed = System.nanoTime();
 				UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+				long loaded = System.nanoTime();
+				chatMetrics.userLookup(loaded - parsed);
 				// 校验逻辑包含：Token 有效性或宽限期校验
-				if (jwtService.isValidToken(token, userDetails)) {
+				boolean valid = jwtService.isValidToken(token, userDetails);
+				chatMetrics.jwtVerified((parsed - start) + (System.nanoTime() - loaded), valid);
+				if (valid) {
+					// 标签在校验时驻留为整数 id，后续检索直接按 id 取位图
+					if (userDetails instanceof User user) {
+						user.setOrgTagIds(orgTagRegistry.intern(user.orgTagSet()));
+						userId = user.getId();
+					}
 					UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
 							userDetails, null, userDetails.getAuthorities());
 					authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -78,11 +102,22 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 				}
 			}
 		} catch (Exception ex) {
+			chatMetrics.jwtVerified(System.nanoTime() - start, false);
 			SecurityContextHolder.clearContext();
 			writeAuthError(response, "invalid_token");
 			return;
 		}
-		filterChain.doFilter(request, response);
+		if (userId == null) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+		// 校验通过的用户 id 写入 MDC，本请求线程上的日志都带 userId 字段
+		MDC.put(LogFields.USER_ID, userId.toString());
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			MDC.remove(LogFields.USER_ID);
+		}
 	}
 
 	private void writeAuthError(HttpServletResponse response, String message) throws IOException {
@@ -0,0 +1,101 @@
+package com.hunkyhsu.ragagent.config;
+
+import com.hunkyhsu.ragagent.event.ChatEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+import org.springframework.kafka.core.MicrometerProducerListener;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.util.backoff.ExponentialBackOff;
+
+import java.util.Map;
+
+@Configuration
+public class KafkaConfig {
+
+	@Bean
+	public NewTopic chatEventsTopic(ChatEventProperties properties) {
+		return TopicBuilder.name(properties.getTopic())
+				.partitions(properties.getPartitions())
+				.replicas(properties.getReplicas())
+				.build();
+	}
+
+	@Bean
+	public ProducerFactory<String, ChatEvent> chatEventProducerFactory(KafkaProperties kafkaProperties,
+																	   MeterRegistry meterRegistry) {
+		Map<String, Object> config = kafkaProperties.buildProducerProperties(null);
+		config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+		config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+		config.put(JsonSerializer.ADD_TYPE_INFO_HEADERS, false);
+		// 幂等生产者 + acks=all：重试不会产生重复或乱序，确认即代表已写入全部同步副本
+		config.put(ProducerConfig.ACKS_CONFIG, "all");
+		config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+		config.put(ProducerConfig.LINGER_MS_CONFIG, 2);
+		DefaultKafkaProducerFactory<String, ChatEvent> factory = new DefaultKafkaProducerFactory<>(config);
+		// 客户端指标：发送缓冲占用、请求延迟、重试次数等
+		factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+		return factory;
+	}
+
+	@Bean
+	public KafkaTemplate<String, ChatEvent> chatEventKafkaTemplate(ProducerFactory<String, ChatEvent> chatEventProducerFactory) {
+		return new KafkaTemplate<>(chatEventProducerFactory);
+	}
+
+	@Bean
+	public ConsumerFactory<String, ChatEvent> chatEventConsumerFactory(KafkaProperties kafkaProperties,
+																	   ChatEventProperties properties,
+																	   MeterRegistry meterRegistry) {
+		Map<String, Object> config = kafkaProperties.buildConsumerProperties(null);
+		config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+		// 无法解析的记录交给 ErrorHandlingDeserializer，批次中以 null 出现而不是卡住分区
+		config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+		config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class);
+		config.put(JsonDeserializer.VALUE_DEFAULT_TYPE, ChatEvent.class.getName());
+		config.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);
+		config.put(JsonDeserializer.TRUSTED_PACKAGES, ChatEvent.class.getPackageName());
+		config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+		config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+		config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, properties.getMaxPollRecords());
+		DefaultKafkaConsumerFactory<String, ChatEvent> factory = new DefaultKafkaConsumerFactory<>(config);
+		// 消费滞后（records-lag-max）即持久化队列的积压深度
+		factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+		return factory;
+	}
+
+	@Bean
+	public ConcurrentKafkaListenerContainerFactory<String, ChatEvent> chatEventListenerFactory(
+			ConsumerFactory<String, ChatEvent> chatEventConsumerFactory,
+			ChatEventProperties properties,
+			StartupProperties startupProperties) {
+		ConcurrentKafkaListenerContainerFactory<String, ChatEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
+		factory.setConsumerFactory(chatEventConsumerFactory);
+		// 快速启动时由 DeferredKafkaStartup 在就绪后启动
+		factory.setAutoStartup(!startupProperties.isFast());
+		factory.setBatchListener(true);
+		factory.setConcurrency(properties.getConsumerConcurrency());
+		// 数据库不可用时整批退避重试，不跳过事件；写入是幂等的，重放已写入的部分没有副作用
+		ExponentialBackOff backOff = new ExponentialBackOff(500L, 2.0);
+		backOff.setMaxInterval(30_000L);
+		factory.setCommonErrorHandler(new DefaultErrorHandler(backOff));
+		return factory;
+	}
+}
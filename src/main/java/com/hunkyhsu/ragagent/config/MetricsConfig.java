@@ -0,0 +1,39 @@
+package com.hunkyhsu.ragagent.config;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Set;
+
+@Configuration
+public class MetricsConfig {
+
+	// 由框架注册的计时器：仓库调用（Spring Data 自动计时，tag 为 repository/method/state）和 HTTP 请求
+	private static final Set<String> FRAMEWORK_TIMERS = Set.of(
+			"spring.data.repository.invocations",
+			"http.server.requests"
+	);
+
+	/**
+	 * 为框架计时器打开百分位直方图，Prometheus 侧用 histogram_quantile 聚合多实例的 p99。
+	 * 有 trace 上下文时 Prometheus 注册表会把当前 traceId 作为 exemplar 附在桶上
+	 */
+	@Bean
+	public MeterFilter frameworkTimerHistograms() {
+		return new MeterFilter() {
+			@Override
+			public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+				if (FRAMEWORK_TIMERS.contains(id.getName())) {
+					return DistributionStatisticConfig.builder()
+							.percentilesHistogram(true)
+							.build()
+							.merge(config);
+				}
+				return config;
+			}
+		};
+	}
+}
@@ -0,0 +1,22 @@
+package com.hunkyhsu.ragagent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "provisioning")
+@Data
+public class ProvisioningProperties {
+    // BCrypt 计算线程数，默认只占四分之一的核，给在线登录和聊天留出 CPU
+    private int hashWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+    // 每块的行数：块内并行哈希、一次批量写入、一次输出结果
+    private int chunkSize = 500;
+    private int maxRows = 50_000;
+    // 结果流超时的下限；实际超时按需要哈希的行数、单次哈希耗时和线程数估算，取两者中较大的一个
+    private Duration timeout = Duration.ofMinutes(30);
+    // 单个哈希线程上一次 BCrypt 的耗时估计（默认强度 10，与在线请求争用 CPU 时偏慢），估算时再留一倍余量
+    private Duration hashCost = Duration.ofMillis(250);
+}
@@ -0,0 +1,27 @@
+package com.hunkyhsu.ragagent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "retrieval")
+@Data
+public class RetrievalProperties {
+    private boolean enabled = true;
+    // 最终放入 prompt 的片段数
+    private int topK = 5;
+    // BM25 与向量检索各自取回的候选数，融合后再截取 topK
+    private int candidates = 50;
+    // RRF 平滑常数，原论文取 60
+    private int rrfK = 60;
+    private float bm25K1 = 1.2f;
+    private float bm25B = 0.75f;
+    // 查询向量缓存和检索结果缓存，结果缓存按组织的索引版本失效
+    private boolean cacheEnabled = true;
+    private int embeddingCacheSize = 20_000;
+    private int resultCacheSize = 20_000;
+    private Duration resultCacheTtl = Duration.ofMinutes(30);
+}
@@ -0,0 +1,27 @@
+package com.hunkyhsu.ragagent.config;
+
+import com.hunkyhsu.ragagent.search.SearchIndex;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class SearchIndexConfig {
+
+	// 关闭时把内存段落盘，下次启动只需补齐回看窗口内的消息
+	@Bean(destroyMethod = "close")
+	public SearchIndex searchIndex(SearchProperties properties, MeterRegistry meterRegistry) throws IOException {
+		SearchIndex index = SearchIndex.open(Path.of(properties.getDirectory()), properties);
+		Gauge.builder("search.index.size", index, SearchIndex::size)
+				.description("Messages held by the conversation search index, including not yet merged duplicates")
+				.register(meterRegistry);
+		Gauge.builder("search.index.segments", index, SearchIndex::segmentCount)
+				.description("Flushed segments of the conversation search index")
+				.register(meterRegistry);
+		return index;
+	}
+}
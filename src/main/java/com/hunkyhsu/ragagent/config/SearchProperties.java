@@ -0,0 +1,28 @@
+package com.hunkyhsu.ragagent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "search")
+@Data
+public class SearchProperties {
+    // 会话搜索的段文件目录，启动时直接映射其中已有的段
+    private String directory = "data/search-index";
+    // 内存段写满多少条消息后封存并落盘
+    private int flushThreshold = 50_000;
+    // 段数达到该值时在后台合并相邻的段
+    private int mergeFactor = 4;
+    // 启动补齐时从已落盘的最新消息时间再往前回看这么久，覆盖持久化消费者的滞后
+    private Duration catchUpOverlap = Duration.ofMinutes(5);
+    private int maxPageSize = 50;
+    // page * size 的上限，深翻页需要对全部命中打分排序
+    private int maxResultWindow = 500;
+    private int maxQueryTerms = 32;
+    private int snippetLength = 160;
+    private float bm25K1 = 1.2f;
+    private float bm25B = 0.75f;
+}
@@ -18,6 +18,8 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import com.hunkyhsu.ragagent.metrics.ChatMetrics;
+import com.hunkyhsu.ragagent.metrics.TimedPasswordEncoder;
 import com.hunkyhsu.ragagent.service.UserDetailsService;
 
 import java.util.List;
@@ -53,6 +55,9 @@ public class SecurityConfig {
 		http.sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
 		http.authorizeHttpRequests(auth -> auth
 				.requestMatchers(whiteListConfig.getWhiteList().toArray(new String[0])).permitAll()
+				// WS 握手在 WsAuthHandshakeInterceptor 中通过子协议里的 JWT 鉴权
+				.requestMatchers("/ws/**").permitAll()
+				.requestMatchers("/api/admin/**").hasRole("ADMIN")
 				.anyRequest().authenticated()
 
 		);
@@ -80,8 +85,8 @@ public class SecurityConfig {
 	}
 
 	@Bean
-	public PasswordEncoder passwordEncoder() {
-		return new BCryptPasswordEncoder();
+	public PasswordEncoder passwordEncoder(ChatMetrics chatMetrics) {
+		return new TimedPasswordEncoder(new BCryptPasswordEncoder(), chatMetrics);
 	}
 
 	@Bean
@@ -0,0 +1,17 @@
+package com.hunkyhsu.ragagent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "startup")
+@Data
+public class StartupProperties {
+    // 扩容节点的快速启动模式：Kafka 消费者推迟到就绪之后启动，库表版本已是最新时跳过 Flyway 校验
+    private boolean fast = false;
+    // 就绪后再等这么久才启动消费者，让首批请求先拿到 CPU
+    private Duration consumerStartDelay = Duration.ofSeconds(3);
+}
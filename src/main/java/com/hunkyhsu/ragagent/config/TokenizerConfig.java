@@ -0,0 +1,33 @@
+package com.hunkyhsu.ragagent.config;
+
+import com.hunkyhsu.ragagent.tokenizer.BpeTokenizer;
+import com.hunkyhsu.ragagent.tokenizer.HeuristicTokenCounter;
+import com.hunkyhsu.ragagent.tokenizer.TokenCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@Slf4j
+@Configuration
+public class TokenizerConfig {
+
+	@Bean
+	public TokenCounter tokenCounter(AiProperties aiProperties, ResourceLoader resourceLoader) throws IOException {
+		AiProperties.Tokenizer properties = aiProperties.getTokenizer();
+		if (properties.getVocabPath() == null || properties.getVocabPath().isBlank()) {
+			log.warn("ai.tokenizer.vocab-path not set, token counts fall back to heuristic estimation");
+			return new HeuristicTokenCounter();
+		}
+		Resource vocabulary = resourceLoader.getResource(properties.getVocabPath());
+		try (InputStream in = vocabulary.getInputStream()) {
+			BpeTokenizer tokenizer = BpeTokenizer.load(in, properties.getEncoding());
+			log.info("BPE tokenizer loaded: encoding={}, vocabulary={}", properties.getEncoding(), tokenizer.vocabularySize());
+			return tokenizer;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.hunkyhsu.ragagent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "tools")
+@Data
+public class ToolProperties {
+    // 工具线程池大小，各轮对话的工具调用共享
+    private int workers = 32;
+    // 线程池队列满时新调用直接以 REJECTED 返回，不在调用线程上执行
+    private int queueCapacity = 256;
+    // 一轮对话中全部工具调用共享的截止时间
+    private Duration turnBudget = Duration.ofSeconds(3);
+    // 每轮在生成前执行的工具，各自以用户输入为 query 参数并行执行，结果依次拼入上下文
+    private List<String> turnTools = new ArrayList<>(List.of("knowledge_search"));
+    // 声明为 cacheable 的工具结果按会话缓存
+    private int cacheConversations = 10_000;
+    private int cacheEntriesPerConversation = 64;
+    private Duration cacheTtl = Duration.ofMinutes(10);
+}
@@ -0,0 +1,32 @@
+package com.hunkyhsu.ragagent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "usage")
+@Data
+public class UsageProperties {
+    // Kafka Streams 应用 id，同时作为消费组和内部 topic 的前缀
+    private String applicationId = "ragagent-usage";
+    // RocksDB 状态目录，实例重启后从本地状态恢复，只需回放 changelog 的增量
+    private String stateDir = "data/kafka-streams";
+    // 聚合结果的 compact topic，每个 key 只保留最新窗口的快照
+    private String snapshotTopic = "usage-snapshots";
+    // 配额窗口，按 epoch 对齐的滚动窗口
+    private Duration window = Duration.ofDays(1);
+    // 迟到事件的宽限期
+    private Duration grace = Duration.ofMinutes(5);
+    // 窗口在本地状态中的保留时长，用量看板可查询的历史范围
+    private Duration retention = Duration.ofDays(30);
+    // 提交间隔同时决定快照的刷新频率
+    private Duration commitInterval = Duration.ofSeconds(1);
+    private int streamThreads = 1;
+    // 单个用户每个窗口的 token 上限，0 表示不限制
+    private long userTokenLimit = 500_000;
+    // 单个组织标签每个窗口的 token 上限，0 表示不限制
+    private long orgTokenLimit = 10_000_000;
+}
@@ -0,0 +1,90 @@
+package com.hunkyhsu.ragagent.config;
+
+import com.hunkyhsu.ragagent.usage.QuotaSnapshot;
+import com.hunkyhsu.ragagent.usage.UsageTopology;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.errors.LogAndContinueExceptionHandler;
+import org.apache.kafka.streams.errors.StreamsUncaughtExceptionHandler;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaStreamsConfiguration;
+import org.springframework.kafka.config.KafkaStreamsInfrastructureCustomizer;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.streams.KafkaStreamsMicrometerListener;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.util.Map;
+
+@Slf4j
+@Configuration
+public class UsageStreamsConfig {
+
+	@Bean
+	public NewTopic usageSnapshotsTopic(UsageProperties properties, ChatEventProperties chatEventProperties) {
+		return TopicBuilder.name(properties.getSnapshotTopic())
+				.partitions(chatEventProperties.getPartitions())
+				.replicas(chatEventProperties.getReplicas())
+				.compact()
+				.build();
+	}
+
+	@Bean
+	public StreamsBuilderFactoryBean usageStreamsBuilder(KafkaProperties kafkaProperties,
+														 UsageProperties properties,
+														 ChatEventProperties chatEventProperties,
+														 MeterRegistry meterRegistry,
+														 StartupProperties startupProperties) {
+		Map<String, Object> config = kafkaProperties.buildStreamsProperties(null);
+		config.put(StreamsConfig.APPLICATION_ID_CONFIG, properties.getApplicationId());
+		config.put(StreamsConfig.STATE_DIR_CONFIG, properties.getStateDir());
+		config.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, properties.getStreamThreads());
+		config.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, properties.getCommitInterval().toMillis());
+		// 坏记录跳过而不是让整个拓扑停下；at-least-once 下崩溃重放可能略微多计，配额场景可以接受，核算以 token_usage 为准
+		config.put(StreamsConfig.DEFAULT_DESERIALIZATION_EXCEPTION_HANDLER_CLASS_CONFIG, LogAndContinueExceptionHandler.class);
+		StreamsBuilderFactoryBean factory = new StreamsBuilderFactoryBean(new KafkaStreamsConfiguration(config));
+		factory.setInfrastructureCustomizer(new KafkaStreamsInfrastructureCustomizer() {
+			@Override
+			public void configureBuilder(StreamsBuilder builder) {
+				UsageTopology.build(builder, chatEventProperties.getTopic(), properties);
+			}
+		});
+		factory.setStreamsUncaughtExceptionHandler(ex -> {
+			log.error("Usage stream thread failed, replacing it", ex);
+			return StreamsUncaughtExceptionHandler.StreamThreadExceptionResponse.REPLACE_THREAD;
+		});
+		factory.addListener(new KafkaStreamsMicrometerListener(meterRegistry));
+		factory.setAutoStartup(!startupProperties.isFast());
+		return factory;
+	}
+
+	@Bean
+	public ConcurrentKafkaListenerContainerFactory<String, QuotaSnapshot> quotaSnapshotListenerFactory(
+			KafkaProperties kafkaProperties) {
+		Map<String, Object> config = kafkaProperties.buildConsumerProperties(null);
+		config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+		config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+		config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class);
+		config.put(JsonDeserializer.VALUE_DEFAULT_TYPE, QuotaSnapshot.class.getName());
+		config.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);
+		config.put(JsonDeserializer.TRUSTED_PACKAGES, QuotaSnapshot.class.getPackageName());
+		// 每个实例从头读取 compact topic，启动后即拥有全部 key 的最新快照
+		config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+		config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+		ConcurrentKafkaListenerContainerFactory<String, QuotaSnapshot> factory = new ConcurrentKafkaListenerContainerFactory<>();
+		factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(config));
+		factory.setBatchListener(true);
+		// 快速启动时也随上下文启动：配额校验依赖快照，推迟消费期间新节点上的配额形同虚设
+		return factory;
+	}
+}
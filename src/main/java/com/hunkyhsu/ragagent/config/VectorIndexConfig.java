@@ -0,0 +1,37 @@
+package com.hunkyhsu.ragagent.config;
+
+import com.hunkyhsu.ragagent.ingestion.Embedder;
+import com.hunkyhsu.ragagent.retrieval.OrgTagBitmaps;
+import com.hunkyhsu.ragagent.vector.VectorIndex;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class VectorIndexConfig {
+
+	// 关闭时把内存段落盘，下次启动直接映射
+	@Bean(destroyMethod = "close")
+	public VectorIndex vectorIndex(VectorIndexProperties properties, Embedder embedder,
+								   OrgTagBitmaps orgTagBitmaps, MeterRegistry meterRegistry) throws IOException {
+		VectorIndex index = VectorIndex.open(Path.of(properties.getDirectory()), embedder.dimensions(), properties);
+		// 下线片段的向量被合并清除后，标签位图不必再记住它们
+		index.onTombstonesReclaimed(orgTagBitmaps::forget);
+		Gauge.builder("vector.index.size", index, VectorIndex::size)
+				.description("Vectors held by the in-process index")
+				.register(meterRegistry);
+		// 段数持续上涨说明合并跟不上写入
+		Gauge.builder("vector.index.segments", index, VectorIndex::segmentCount)
+				.description("Sealed and active segments of the vector index")
+				.register(meterRegistry);
+		// 已删除但尚未被合并清除的向量
+		Gauge.builder("vector.index.tombstones", index, VectorIndex::tombstoneCount)
+				.description("Deleted vectors not yet reclaimed by segment merges")
+				.register(meterRegistry);
+		return index;
+	}
+}
@@ -0,0 +1,24 @@
+package com.hunkyhsu.ragagent.config;
+
+import com.hunkyhsu.ragagent.vector.VectorEncoding;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "vector")
+@Data
+public class VectorIndexProperties {
+    // 段文件目录，启动时直接映射其中已有的段
+    private String directory = "data/vector-index";
+    private VectorEncoding encoding = VectorEncoding.FLOAT32;
+    // HNSW 每层邻居上限（第 0 层为 2M）
+    private int m = 16;
+    private int efConstruction = 200;
+    private int efSearch = 64;
+    // 内存段写满多少向量后封存并落盘
+    private int flushThreshold = 100_000;
+    // 段数达到该值时在后台合并相邻的段
+    private int mergeFactor = 4;
+    private int mergeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+}
@@ -0,0 +1,52 @@
+package com.hunkyhsu.ragagent.config;
+
+import com.hunkyhsu.ragagent.cluster.NodeDrain;
+import com.hunkyhsu.ragagent.ws.ChatWebSocketHandler;
+import com.hunkyhsu.ragagent.ws.JwtSubProtocolHandshakeHandler;
+import com.hunkyhsu.ragagent.ws.PerMessageDeflateFilter;
+import com.hunkyhsu.ragagent.ws.PerMessageDeflatePolicy;
+import com.hunkyhsu.ragagent.ws.WsAuthHandshakeInterceptor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+	private final ChatWebSocketHandler chatWebSocketHandler;
+	private final WsAuthHandshakeInterceptor wsAuthHandshakeInterceptor;
+	private final NodeDrain nodeDrain;
+	private final CorsProperties corsProperties;
+
+	public WebSocketConfig(ChatWebSocketHandler chatWebSocketHandler,
+						   WsAuthHandshakeInterceptor wsAuthHandshakeInterceptor,
+						   NodeDrain nodeDrain,
+						   CorsProperties corsProperties) {
+		this.chatWebSocketHandler = chatWebSocketHandler;
+		this.wsAuthHandshakeInterceptor = wsAuthHandshakeInterceptor;
+		this.nodeDrain = nodeDrain;
+		this.corsProperties = corsProperties;
+	}
+
+	// 只作用于 WS 端点：握手前按压缩策略改写客户端的 permessage-deflate 提议
+	@Bean
+	public FilterRegistrationBean<PerMessageDeflateFilter> perMessageDeflateFilter(PerMessageDeflatePolicy perMessageDeflatePolicy) {
+		FilterRegistrationBean<PerMessageDeflateFilter> registration =
+				new FilterRegistrationBean<>(new PerMessageDeflateFilter(perMessageDeflatePolicy));
+		registration.addUrlPatterns("/ws/chat");
+		return registration;
+	}
+
+	@Override
+	public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+		registry.addHandler(chatWebSocketHandler, "/ws/chat")
+				// 排空中的节点在鉴权之前直接拒绝握手
+				.addInterceptors(nodeDrain, wsAuthHandshakeInterceptor)
+				.setHandshakeHandler(new JwtSubProtocolHandshakeHandler())
+				.setAllowedOrigins(corsProperties.getAllowedOrigins().toArray(new String[0]));
+	}
+}
@@ -0,0 +1,25 @@
+package com.hunkyhsu.ragagent.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "ws.compression")
+@Data
+public class WsCompressionProperties {
+    // 关闭后握手时剥离客户端的 permessage-deflate 提议，所有连接不压缩
+    private boolean enabled = true;
+    // false 时协商 server_no_context_takeover：每条消息独立压缩，小帧压缩率略降，但不依赖跨消息状态
+    private boolean serverContextTakeover = false;
+    // false 时协商 client_no_context_takeover，客户端与服务端的解压状态每条消息重置
+    private boolean clientContextTakeover = true;
+    // 同时启用压缩的连接数上限，每个压缩连接约占 330KB 本机内存，超出后新连接不压缩
+    private int maxConnections = 1000;
+    // 压缩连接空闲超过该时长即通知重连并关闭，释放 Deflater/Inflater，0 表示不释放
+    private Duration idleRelease = Duration.ofMinutes(10);
+    // 每个压缩连接每 N 个出站帧抽样一次，估算压缩率和 CPU 开销，需为 2 的幂
+    private int sampleEvery = 64;
+}
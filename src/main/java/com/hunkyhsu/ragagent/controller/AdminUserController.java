@@ -0,0 +1,33 @@
+package com.hunkyhsu.ragagent.controller;
+
+import com.hunkyhsu.ragagent.dto.BulkProvisionRequest;
+import com.hunkyhsu.ragagent.service.UserProvisioningService;
+import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+// /api/admin/** 仅限 ADMIN 角色，见 SecurityConfig
+@RestController
+@RequestMapping("/api/admin/users")
+public class AdminUserController {
+
+    private final UserProvisioningService userProvisioningService;
+
+    public AdminUserController(UserProvisioningService userProvisioningService) {
+        this.userProvisioningService = userProvisioningService;
+    }
+
+    @PostMapping("/bulk")
+    public ResponseEntity<ResponseBodyEmitter> provisionUsers(
+            @Valid @RequestBody BulkProvisionRequest request
+    ) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(userProvisioningService.provision(request));
+    }
+}
@@ -2,9 +2,11 @@ package com.hunkyhsu.ragagent.controller;
 
 import com.hunkyhsu.ragagent.dto.ConversationCreateRequest;
 import com.hunkyhsu.ragagent.dto.ConversationResponse;
+import com.hunkyhsu.ragagent.dto.ConversationSearchResponse;
 import com.hunkyhsu.ragagent.dto.ConversationUpdateRequest;
 import com.hunkyhsu.ragagent.dto.MessageResponse;
 import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.service.ConversationSearchService;
 import com.hunkyhsu.ragagent.service.ConversationService;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
@@ -18,9 +20,12 @@ import java.util.List;
 public class ConversationController {
 
     private final ConversationService conversationService;
+    private final ConversationSearchService conversationSearchService;
 
-    public ConversationController(ConversationService conversationService) {
+    public ConversationController(ConversationService conversationService,
+                                  ConversationSearchService conversationSearchService) {
         this.conversationService = conversationService;
+        this.conversationSearchService = conversationSearchService;
     }
 
     @PostMapping("/create")
@@ -38,6 +43,16 @@ public class ConversationController {
         return ResponseEntity.ok(conversationService.listConversations(user));
     }
 
+    @GetMapping("/search")
+    public ResponseEntity<ConversationSearchResponse> searchConversations(
+            @AuthenticationPrincipal User user,
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        return ResponseEntity.ok(conversationSearchService.search(user, query, page, size));
+    }
+
     @GetMapping("/{conversationId}/messages")
     public ResponseEntity<List<MessageResponse>> getConversationMessages(
             @AuthenticationPrincipal User user,
@@ -0,0 +1,120 @@
+package com.hunkyhsu.ragagent.controller;
+
+import com.hunkyhsu.ragagent.dto.DocumentRegisterRequest;
+import com.hunkyhsu.ragagent.dto.DocumentResponse;
+import com.hunkyhsu.ragagent.dto.DocumentUpdateRequest;
+import com.hunkyhsu.ragagent.entity.KnowledgeDocument;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.service.IngestionService;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+@RestController
+@RequestMapping("/api/documents")
+public class DocumentController {
+
+    private final IngestionService ingestionService;
+
+    public DocumentController(IngestionService ingestionService) {
+        this.ingestionService = ingestionService;
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<DocumentResponse> registerDocument(
+            @AuthenticationPrincipal User user,
+            @Valid @RequestBody DocumentRegisterRequest request
+    ) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(ingestionService.register(
+                user, request.title(), request.mediaType(), request.orgTag(), request.content()));
+    }
+
+    @PostMapping(path = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<DocumentResponse> uploadDocument(
+            @AuthenticationPrincipal User user,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "orgTag", required = false) String orgTag,
+            @RequestParam(value = "title", required = false) String title
+    ) throws IOException {
+        String filename = file.getOriginalFilename() == null ? "" : file.getOriginalFilename();
+        String finalTitle = (title == null || title.isBlank()) ? filename : title;
+        if (finalTitle.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "title_required");
+        }
+        String content = new String(file.getBytes(), StandardCharsets.UTF_8);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(ingestionService.register(
+                user, finalTitle, mediaTypeOf(filename, file.getContentType()), orgTag, content));
+    }
+
+    // 重新导入：只处理有变化的片段，新版本就绪前检索仍使用旧版本
+    @PutMapping(path = "/{documentId}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<DocumentResponse> updateDocument(
+            @AuthenticationPrincipal User user,
+            @PathVariable Long documentId,
+            @Valid @RequestBody DocumentUpdateRequest request
+    ) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(ingestionService.reindex(
+                user, documentId, request.content()));
+    }
+
+    @PutMapping(path = "/{documentId}/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<DocumentResponse> uploadDocumentUpdate(
+            @AuthenticationPrincipal User user,
+            @PathVariable Long documentId,
+            @RequestParam("file") MultipartFile file
+    ) throws IOException {
+        String content = new String(file.getBytes(), StandardCharsets.UTF_8);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(ingestionService.reindex(user, documentId, content));
+    }
+
+    @GetMapping
+    public ResponseEntity<List<DocumentResponse>> listDocuments(
+            @AuthenticationPrincipal User user
+    ) {
+        return ResponseEntity.ok(ingestionService.listDocuments(user));
+    }
+
+    @GetMapping("/{documentId}")
+    public ResponseEntity<DocumentResponse> getDocument(
+            @AuthenticationPrincipal User user,
+            @PathVariable Long documentId
+    ) {
+        return ResponseEntity.ok(ingestionService.getDocument(user, documentId));
+    }
+
+    // 优先按扩展名判断，浏览器上传 .md 时 Content-Type 往往只是 application/octet-stream
+    private static KnowledgeDocument.MediaType mediaTypeOf(String filename, String contentType) {
+        String name = filename.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".md") || name.endsWith(".markdown")) {
+            return KnowledgeDocument.MediaType.MARKDOWN;
+        }
+        if (name.endsWith(".html") || name.endsWith(".htm")) {
+            return KnowledgeDocument.MediaType.HTML;
+        }
+        if (name.endsWith(".txt")) {
+            return KnowledgeDocument.MediaType.TEXT;
+        }
+        if (contentType != null) {
+            if (contentType.startsWith("text/markdown")) {
+                return KnowledgeDocument.MediaType.MARKDOWN;
+            }
+            if (contentType.startsWith("text/html")) {
+                return KnowledgeDocument.MediaType.HTML;
+            }
+            if (contentType.startsWith("text/plain")) {
+                return KnowledgeDocument.MediaType.TEXT;
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "unsupported_media_type");
+    }
+}
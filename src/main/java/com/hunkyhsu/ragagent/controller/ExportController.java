@@ -0,0 +1,66 @@
+package com.hunkyhsu.ragagent.controller;
+
+import com.hunkyhsu.ragagent.dto.ExportResponse;
+import com.hunkyhsu.ragagent.entity.ExportJob;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.service.ExportService;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/exports")
+public class ExportController {
+
+    private final ExportService exportService;
+
+    public ExportController(ExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    @PostMapping
+    public ResponseEntity<ExportResponse> requestExport(
+            @AuthenticationPrincipal User user,
+            @RequestParam(defaultValue = "NDJSON") ExportJob.Format format
+    ) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(exportService.requestExport(user, format));
+    }
+
+    @GetMapping
+    public ResponseEntity<List<ExportResponse>> listExports(
+            @AuthenticationPrincipal User user
+    ) {
+        return ResponseEntity.ok(exportService.listExports(user));
+    }
+
+    @GetMapping("/{exportId}")
+    public ResponseEntity<ExportResponse> getExport(
+            @AuthenticationPrincipal User user,
+            @PathVariable Long exportId
+    ) {
+        return ResponseEntity.ok(exportService.getExport(user, exportId));
+    }
+
+    // 直接返回文件资源，Spring MVC 按块流式发送并处理 Range 请求，大文件可以断点续传
+    @GetMapping("/{exportId}/download")
+    public ResponseEntity<FileSystemResource> download(
+            @AuthenticationPrincipal User user,
+            @PathVariable Long exportId
+    ) {
+        FileSystemResource file = exportService.download(user, exportId);
+        boolean gzip = file.getFilename().endsWith(".gz");
+        return ResponseEntity.ok()
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip")
+                        : MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(file.getFilename()).build().toString())
+                .body(file);
+    }
+}
@@ -0,0 +1,30 @@
+package com.hunkyhsu.ragagent.controller;
+
+import com.hunkyhsu.ragagent.dto.UsageResponse;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.usage.UsageQuotas;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/usage")
+public class UsageController {
+
+    private final UsageQuotas usageQuotas;
+
+    public UsageController(UsageQuotas usageQuotas) {
+        this.usageQuotas = usageQuotas;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<UsageResponse>> currentUsage(
+            @AuthenticationPrincipal User user
+    ) {
+        return ResponseEntity.ok(usageQuotas.current(user));
+    }
+}
@@ -0,0 +1,16 @@
+package com.hunkyhsu.ragagent.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * 逐行校验放在服务端按行报告，这里不对 users 做级联校验，一行不合法不会让整批被拒
+ */
+public record BulkProvisionRequest(
+        @Size(max = 255)
+        String orgTags,
+        @NotEmpty
+        List<ProvisionUserRequest> users
+) { }
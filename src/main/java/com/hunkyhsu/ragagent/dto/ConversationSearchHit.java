@@ -0,0 +1,15 @@
+package com.hunkyhsu.ragagent.dto;
+
+import com.hunkyhsu.ragagent.entity.Message;
+
+import java.time.LocalDateTime;
+
+public record ConversationSearchHit(
+        Long conversationId,
+        String conversationTitle,
+        String messageId,
+        Message.Role role,
+        String snippet,
+        float score,
+        LocalDateTime createdTime
+) { }
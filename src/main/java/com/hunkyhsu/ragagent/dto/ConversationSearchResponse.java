@@ -0,0 +1,10 @@
+package com.hunkyhsu.ragagent.dto;
+
+import java.util.List;
+
+public record ConversationSearchResponse(
+        long total,
+        int page,
+        int size,
+        List<ConversationSearchHit> hits
+) { }
@@ -0,0 +1,19 @@
+package com.hunkyhsu.ragagent.dto;
+
+import com.hunkyhsu.ragagent.entity.KnowledgeDocument;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+public record DocumentRegisterRequest(
+        @NotBlank
+        @Size(max = 255)
+        String title,
+        @NotNull
+        KnowledgeDocument.MediaType mediaType,
+        // 为空时使用上传者唯一的组织标签
+        @Size(max = 64)
+        String orgTag,
+        @NotBlank
+        String content
+) { }
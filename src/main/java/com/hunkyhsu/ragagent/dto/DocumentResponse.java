@@ -0,0 +1,18 @@
+package com.hunkyhsu.ragagent.dto;
+
+import com.hunkyhsu.ragagent.entity.KnowledgeDocument;
+
+import java.time.LocalDateTime;
+
+public record DocumentResponse(
+        Long id,
+        String title,
+        KnowledgeDocument.MediaType mediaType,
+        String orgTag,
+        KnowledgeDocument.Status status,
+        // 当前可见的版本
+        int version,
+        int totalChunks,
+        int embeddedChunks,
+        LocalDateTime createdTime
+) { }
@@ -0,0 +1,9 @@
+package com.hunkyhsu.ragagent.dto;
+
+import jakarta.validation.constraints.NotBlank;
+
+public record DocumentUpdateRequest(
+        // 文档的新全文，媒体类型和组织标签沿用原文档
+        @NotBlank
+        String content
+) { }
@@ -0,0 +1,20 @@
+package com.hunkyhsu.ragagent.dto;
+
+import com.hunkyhsu.ragagent.entity.ExportJob;
+
+import java.time.LocalDateTime;
+
+public record ExportResponse(
+        Long id,
+        ExportJob.Format format,
+        ExportJob.Status status,
+        long exportedConversations,
+        long exportedMessages,
+        long bytes,
+        // 完成后才有下载地址
+        String downloadUrl,
+        String errorMessage,
+        LocalDateTime createdTime,
+        LocalDateTime completedTime,
+        LocalDateTime expiresTime
+) { }
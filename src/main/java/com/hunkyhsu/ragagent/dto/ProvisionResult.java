@@ -0,0 +1,36 @@
+package com.hunkyhsu.ragagent.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * 结果流中的一行：type 为 row 时对应请求中下标为 index 的用户，最后一行 type 为 summary
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ProvisionResult(
+        String type,
+        Integer index,
+        String username,
+        Status status,
+        Long id,
+        String error,
+        Integer created,
+        Integer failed,
+        Long elapsedMs
+) {
+
+    public static ProvisionResult created(int index, String username, long id) {
+        return new ProvisionResult("row", index, username, Status.CREATED, id, null, null, null, null);
+    }
+
+    public static ProvisionResult failed(int index, String username, String error) {
+        return new ProvisionResult("row", index, username, Status.FAILED, null, error, null, null, null);
+    }
+
+    public static ProvisionResult summary(int created, int failed, long elapsedMs) {
+        return new ProvisionResult("summary", null, null, null, null, null, created, failed, elapsedMs);
+    }
+
+    public enum Status {
+        CREATED, FAILED
+    }
+}
@@ -0,0 +1,24 @@
+package com.hunkyhsu.ragagent.dto;
+
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+
+public record ProvisionUserRequest(
+        @NotBlank
+        @Size(min = 3, max = 64)
+        String username,
+        // password 与 passwordHash 二选一；从其他系统迁移时可以直接带入已有的 BCrypt 哈希
+        @Size(min = 8, max = 128)
+        String password,
+        @Pattern(regexp = "\\$2[aby]?\\$\\d{2}\\$[./A-Za-z0-9]{53}")
+        String passwordHash,
+        @NotBlank
+        @Email
+        @Size(max = 255)
+        String email,
+        // 为空时使用批次级的 orgTags
+        @Size(max = 255)
+        String orgTags
+) { }
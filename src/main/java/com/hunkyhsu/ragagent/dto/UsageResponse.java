@@ -0,0 +1,15 @@
+package com.hunkyhsu.ragagent.dto;
+
+import java.time.Instant;
+
+public record UsageResponse(
+        String key,
+        Instant windowStart,
+        Instant windowEnd,
+        long promptTokens,
+        long completionTokens,
+        long totalTokens,
+        long requests,
+        // 0 表示不限制
+        long limit
+) { }
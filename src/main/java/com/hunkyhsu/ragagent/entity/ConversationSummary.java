@@ -0,0 +1,38 @@
+package com.hunkyhsu.ragagent.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * 会话的滚动摘要：覆盖 id <= coveredUntilMessageId 的所有历史消息
+ */
+@Data
+@Entity
+@Table(name = "conversation_summaries")
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationSummary {
+
+    @Id
+    @Column(name = "conversation_id")
+    private Long conversationId;
+
+    @Column(nullable = false, columnDefinition = "MEDIUMTEXT")
+    private String summary;
+
+    @Column(name = "covered_until_message_id", nullable = false)
+    private Long coveredUntilMessageId;
+
+    @Column(name = "token_count", nullable = false)
+    private int tokenCount;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedTime;
+}
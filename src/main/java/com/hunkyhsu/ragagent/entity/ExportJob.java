@@ -0,0 +1,82 @@
+package com.hunkyhsu.ragagent.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "export_jobs", indexes = {
+        @Index(name = "idx_export_jobs_user", columnList = "user_id, created_time"),
+        @Index(name = "idx_export_jobs_status", columnList = "status, heartbeat_time")
+})
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Format format;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    // 正在执行该任务的实例，心跳超时后其他实例可以接手
+    @Column(length = 36)
+    private String owner;
+
+    @Column(name = "heartbeat_time")
+    private LocalDateTime heartbeatTime;
+
+    // 检查点：最后写出的会话和消息主键，以及此时文件的长度
+    @Column(name = "cursor_conversation_id", nullable = false)
+    private long cursorConversationId;
+
+    @Column(name = "cursor_message_id", nullable = false)
+    private long cursorMessageId;
+
+    @Column(name = "bytes_written", nullable = false)
+    private long bytesWritten;
+
+    @Column(name = "exported_conversations", nullable = false)
+    private long exportedConversations;
+
+    @Column(name = "exported_messages", nullable = false)
+    private long exportedMessages;
+
+    @Column(name = "error_message", length = 512)
+    private String errorMessage;
+
+    @CreationTimestamp
+    @Column(name = "created_time", nullable = false, updatable = false)
+    private LocalDateTime createdTime;
+
+    @Column(name = "completed_time")
+    private LocalDateTime completedTime;
+
+    @Column(name = "expires_time")
+    private LocalDateTime expiresTime;
+
+    public enum Format {
+        NDJSON, GZIP
+    }
+
+    public enum Status {
+        PENDING, RUNNING, COMPLETED, FAILED, EXPIRED
+    }
+}
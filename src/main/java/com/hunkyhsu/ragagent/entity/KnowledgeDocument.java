@@ -0,0 +1,77 @@
+package com.hunkyhsu.ragagent.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "documents", indexes = {
+        @Index(name = "idx_documents_org_tag", columnList = "org_tag")
+})
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class KnowledgeDocument {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "uploaded_by", nullable = false)
+    private User uploadedBy;
+
+    // 文档可见范围：上传者所属的某一个组织标签
+    @Column(name = "org_tag", nullable = false, length = 64)
+    private String orgTag;
+
+    @Column(nullable = false)
+    private String title;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "media_type", nullable = false, length = 16)
+    private MediaType mediaType;
+
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+
+    // 当前可见的版本，重新导入成功后才切换到新版本
+    @Builder.Default
+    @Column(nullable = false)
+    private int version = 1;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    @Column(name = "total_chunks", nullable = false)
+    private int totalChunks;
+
+    @Column(name = "embedded_chunks", nullable = false)
+    private int embeddedChunks;
+
+    @Column(name = "error_message", length = 512)
+    private String errorMessage;
+
+    @CreationTimestamp
+    @Column(name = "created_time", nullable = false, updatable = false)
+    private LocalDateTime createdTime;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedTime;
+
+    public enum MediaType {
+        TEXT, MARKDOWN, HTML
+    }
+
+    public enum Status {
+        PENDING, PROCESSING, READY, FAILED
+    }
+}
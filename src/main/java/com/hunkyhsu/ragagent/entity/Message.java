@@ -13,6 +13,8 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "messages", indexes = {
         @Index(name = "idx_msg_conv", columnList = "conv_id")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_messages_conv_message", columnNames = {"conv_id", "message_id"})
 })
 @Builder
 @NoArgsConstructor
@@ -27,6 +29,10 @@ public class Message {
     @JoinColumn(name = "conv_id", nullable = false)
     private Conversation conversation;
 
+    // 产生该消息的 ChatEvent id，消费者据此做幂等写入
+    @Column(name = "message_id", length = 36)
+    private String messageId;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false, length = 16)
     private Role role;
@@ -34,6 +40,10 @@ public class Message {
     @Column(nullable = false, columnDefinition = "MEDIUMTEXT")
     private String content;
 
+    // 写入时计算的 token 数，历史消息（迁移前写入）可能为空
+    @Column(name = "token_count")
+    private Integer tokenCount;
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdTime;
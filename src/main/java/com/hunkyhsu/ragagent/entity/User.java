@@ -12,7 +12,9 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.time.LocalDateTime;
 
 @Data
@@ -43,6 +45,10 @@ public class User implements UserDetails {
     @Column(name = "org_tags")
     private String orgTags; // 用户所属组织标签，多个用逗号分隔
 
+    // 令牌校验时由 OrgTagRegistry 驻留得到的标签 id，只在本次请求/连接内有效，不落库
+    @Transient
+    private int[] orgTagIds;
+
     @CreationTimestamp
     private LocalDateTime createdTime;
 
@@ -63,6 +69,21 @@ public class User implements UserDetails {
         return List.of(new SimpleGrantedAuthority("ROLE_" + role.name()));
     }
 
+    /**
+     * 解析逗号分隔的 orgTags，去掉空白和重复项
+     */
+    public Set<String> orgTagSet() {
+        Set<String> tags = new LinkedHashSet<>();
+        if (orgTags != null) {
+            for (String tag : orgTags.split(",")) {
+                if (!tag.isBlank()) {
+                    tags.add(tag.trim());
+                }
+            }
+        }
+        return tags;
+    }
+
     // 账号状态检查
     @Override public boolean isAccountNonExpired() { return true; }
     @Override public boolean isAccountNonLocked() { return true; }
@@ -0,0 +1,93 @@
+package com.hunkyhsu.ragagent.event;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.hunkyhsu.ragagent.entity.Message;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 聊天事件，按 conversationId 作为 Kafka key 分区，同一会话的事件严格有序。
+ * 消息类事件的 eventId 同时作为 messages.message_id，用于消费端去重。
+ * ASSISTANT_COMPLETED 事件携带本轮用量，既写入 token_usage 也驱动实时配额聚合。
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ChatEvent(
+        String eventId,
+        Type type,
+        Long conversationId,
+        Long userId,
+        Message.Role role,
+        String content,
+        Integer tokenCount,
+        String title,
+        Usage usage,
+        long timestamp
+) {
+
+    /**
+     * 一轮问答的用量，completion token 数即事件的 tokenCount
+     */
+    public record Usage(
+            String model,
+            int promptTokens,
+            Integer firstTokenMs,
+            // 发送时用户所属的组织标签，按组织聚合配额
+            List<String> orgTags,
+            // 回答来自缓存或与并发的相同请求共用上游，本轮没有调用模型，不计入用量；旧事件没有该字段
+            Boolean cached
+    ) {
+        @JsonIgnore
+        public boolean billable() {
+            return !Boolean.TRUE.equals(cached);
+        }
+    }
+
+    public enum Type {
+        MESSAGE_ACCEPTED,
+        ASSISTANT_COMPLETED,
+        CONVERSATION_RENAMED,
+        CONVERSATION_DELETED
+    }
+
+    public static ChatEvent message(Long conversationId, Long userId, Message.Role role,
+                                    String content, int tokenCount) {
+        Type type = role == Message.Role.ASSISTANT ? Type.ASSISTANT_COMPLETED : Type.MESSAGE_ACCEPTED;
+        return new ChatEvent(newId(), type, conversationId, userId, role, content, tokenCount, null, null,
+                System.currentTimeMillis());
+    }
+
+    public static ChatEvent completed(Long conversationId, Long userId, String content, int tokenCount, Usage usage) {
+        return new ChatEvent(newId(), Type.ASSISTANT_COMPLETED, conversationId, userId, Message.Role.ASSISTANT,
+                content, tokenCount, null, usage, System.currentTimeMillis());
+    }
+
+    public static ChatEvent renamed(Long conversationId, Long userId, String title) {
+        return new ChatEvent(newId(), Type.CONVERSATION_RENAMED, conversationId, userId, null, null, null, title, null,
+                System.currentTimeMillis());
+    }
+
+    public static ChatEvent deleted(Long conversationId, Long userId) {
+        return new ChatEvent(newId(), Type.CONVERSATION_DELETED, conversationId, userId, null, null, null, null, null,
+                System.currentTimeMillis());
+    }
+
+    @JsonIgnore
+    public boolean isMessage() {
+        return type == Type.MESSAGE_ACCEPTED || type == Type.ASSISTANT_COMPLETED;
+    }
+
+    // 计费的 completion token 数，不计费的轮次为 0；消息本身的 tokenCount 仍用于上下文预算
+    public int completionTokens() {
+        return tokenCount == null || (usage != null && !usage.billable()) ? 0 : tokenCount;
+    }
+
+    public int totalTokens() {
+        return completionTokens() + (usage == null ? 0 : usage.promptTokens());
+    }
+
+    private static String newId() {
+        return UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,38 @@
+package com.hunkyhsu.ragagent.event;
+
+import com.hunkyhsu.ragagent.service.PromptContextAssembler;
+import com.hunkyhsu.ragagent.tool.ToolResultCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 缓存失效消费者：每个实例使用以节点标识命名的独立消费组（广播），
+ * 任意实例上的会话删除都会让所有实例丢弃该会话的上下文缓存和工具结果缓存。
+ * 组名在重启后保持不变，不会每次启动遗留一个新的消费组；重启后补消费停机期间的删除事件，缓存此时为空，无副作用
+ */
+@Component
+@RequiredArgsConstructor
+public class ChatEventCacheListener {
+
+    private final PromptContextAssembler promptContextAssembler;
+    private final ToolResultCache toolResultCache;
+
+    @KafkaListener(
+            topics = "#{@chatEventProperties.topic}",
+            groupId = "#{'chat-cache-' + @clusterProperties.nodeId}",
+            containerFactory = "chatEventListenerFactory",
+            concurrency = "1",
+            properties = "auto.offset.reset=latest"
+    )
+    public void onEvents(List<ChatEvent> events) {
+        for (ChatEvent event : events) {
+            if (event != null && event.type() == ChatEvent.Type.CONVERSATION_DELETED) {
+                promptContextAssembler.invalidate(event.conversationId());
+                toolResultCache.invalidate(event.conversationId());
+            }
+        }
+    }
+}
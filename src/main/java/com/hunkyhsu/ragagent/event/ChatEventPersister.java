@@ -0,0 +1,63 @@
+package com.hunkyhsu.ragagent.event;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 持久化消费者：所有实例共用一个消费组，每个分区只由一个实例按序处理
+ */
+@Slf4j
+@Component
+public class ChatEventPersister {
+
+    private final ChatEventStore chatEventStore;
+    private final Map<ChatEvent.Type, Counter> consumed = new EnumMap<>(ChatEvent.Type.class);
+
+    public ChatEventPersister(ChatEventStore chatEventStore, MeterRegistry meterRegistry) {
+        this.chatEventStore = chatEventStore;
+        for (ChatEvent.Type type : ChatEvent.Type.values()) {
+            consumed.put(type, Counter.builder("chat.events.persisted")
+                    .description("Chat events handled by the persistence consumer")
+                    .tag("type", type.name())
+                    .register(meterRegistry));
+        }
+    }
+
+    @KafkaListener(
+            topics = "#{@chatEventProperties.topic}",
+            groupId = "#{@chatEventProperties.persistenceGroup}",
+            containerFactory = "chatEventListenerFactory"
+    )
+    public void persist(List<ChatEvent> events) {
+        List<ChatEvent> messages = new ArrayList<>(events.size());
+        List<ChatEvent> completions = new ArrayList<>();
+        for (ChatEvent event : events) {
+            if (event == null) {
+                // 反序列化失败的记录，ErrorHandlingDeserializer 已记录原因
+                log.warn("Skipping undecodable chat event");
+                continue;
+            }
+            if (event.isMessage()) {
+                messages.add(event);
+            }
+            if (event.usage() != null) {
+                completions.add(event);
+            }
+        }
+        chatEventStore.insertMessages(messages);
+        chatEventStore.insertUsage(completions);
+        for (ChatEvent event : events) {
+            if (event != null) {
+                consumed.get(event.type()).increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.hunkyhsu.ragagent.event;
+
+import com.hunkyhsu.ragagent.config.ChatEventProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 请求线程只等待 broker 确认，落库由消费者异步完成
+ */
+@Component
+@RequiredArgsConstructor
+public class ChatEventPublisher {
+
+    private final KafkaTemplate<String, ChatEvent> chatEventKafkaTemplate;
+    private final ChatEventProperties properties;
+
+    public void publish(ChatEvent event) {
+        try {
+            chatEventKafkaTemplate.send(properties.getTopic(), String.valueOf(event.conversationId()), event)
+                    .get(properties.getSendTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "event_log_unavailable", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "event_log_unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.hunkyhsu.ragagent.event;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+public class ChatEventStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 按事件顺序批量写入消息。重复投递由 (conv_id, message_id) 唯一键去重，只有唯一键冲突被吞掉，
+     * 截断、外键等其他错误照常抛出交给错误处理器重试；
+     * 会话已被删除时 SELECT 不产生行，迟到的消息直接丢弃
+     */
+    public void insertMessages(List<ChatEvent> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO messages (conv_id, message_id, role, content, token_count, created_at) "
+                        + "SELECT id, ?, ?, ?, ?, ? FROM conversations WHERE id = ? "
+                        + "ON DUPLICATE KEY UPDATE messages.id = messages.id",
+                messages, messages.size(), (ps, event) -> {
+                    ps.setString(1, event.eventId());
+                    ps.setString(2, event.role().name());
+                    ps.setString(3, event.content());
+                    if (event.tokenCount() == null) {
+                        ps.setNull(4, Types.INTEGER);
+                    } else {
+                        ps.setInt(4, event.tokenCount());
+                    }
+                    ps.setTimestamp(5, new Timestamp(event.timestamp()));
+                    ps.setLong(6, event.conversationId());
+                });
+    }
+
+    /**
+     * 写入用量流水，message_id 唯一键保证重复投递只记一次，其他错误照常抛出
+     */
+    public void insertUsage(List<ChatEvent> completions) {
+        if (completions.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO token_usage (message_id, conv_id, user_id, model, prompt_tokens, "
+                        + "completion_tokens, total_tokens, first_token_ms, created_at) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE id = id",
+                completions, completions.size(), (ps, event) -> {
+                    ChatEvent.Usage usage = event.usage();
+                    ps.setString(1, event.eventId());
+                    ps.setLong(2, event.conversationId());
+                    ps.setLong(3, event.userId());
+                    ps.setString(4, usage.model());
+                    ps.setInt(5, usage.promptTokens());
+                    ps.setInt(6, event.completionTokens());
+                    ps.setInt(7, event.totalTokens());
+                    if (usage.firstTokenMs() == null) {
+                        ps.setNull(8, Types.INTEGER);
+                    } else {
+                        ps.setInt(8, usage.firstTokenMs());
+                    }
+                    ps.setTimestamp(9, new Timestamp(event.timestamp()));
+                });
+    }
+}
@@ -0,0 +1,121 @@
+package com.hunkyhsu.ragagent.export;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 导出用的只读游标：按 (会话主键, 消息主键) 做键集分页，每页若干次只进查询。
+ * 先按主键取该用户的下一批会话，再逐个会话按 idx_msg_conv 读取消息，每次查询都是索引上的范围扫描，
+ * 不会像会话与消息连接后再排序那样每页都对剩余的全部消息排序。
+ * 每次查询结束即归还连接，长时间的导出不会一直占着连接池里的连接，也不会在 MySQL 侧留下长事务
+ */
+@Component
+@RequiredArgsConstructor
+public class ChatArchiveStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 读取游标之后的一页；没有消息的会话以 messageId 为 null 的一行出现
+     *
+     * @return 本页行数，小于 limit 表示已经读完
+     */
+    public int readPage(long userId, long afterConversationId, long afterMessageId, int limit,
+                        Consumer<ArchiveRow> consumer) {
+        int count = 0;
+        // 游标所在的会话可能还有未读完的消息
+        if (afterConversationId > 0) {
+            Conversation current = findConversation(userId, afterConversationId);
+            if (current != null) {
+                count += readMessages(current, afterMessageId, limit, consumer);
+            }
+        }
+        long after = afterConversationId;
+        while (count < limit) {
+            int wanted = limit - count;
+            List<Conversation> conversations = findConversations(userId, after, wanted);
+            for (Conversation conversation : conversations) {
+                int read = readMessages(conversation, 0L, limit - count, consumer);
+                if (read == 0) {
+                    consumer.accept(new ArchiveRow(conversation.id(), conversation.title(),
+                            conversation.createdTime(), null, null, null, null, null, null));
+                    read = 1;
+                }
+                count += read;
+                if (count >= limit) {
+                    break;
+                }
+            }
+            if (conversations.size() < wanted) {
+                break;
+            }
+            after = conversations.get(conversations.size() - 1).id();
+        }
+        return count;
+    }
+
+    private Conversation findConversation(long userId, long conversationId) {
+        List<Conversation> found = jdbcTemplate.query(
+                "SELECT id, title, created_at FROM conversations WHERE id = ? AND user_id = ?",
+                (rs, rowNum) -> new Conversation(rs.getLong(1), rs.getString(2), toLocal(rs.getTimestamp(3))),
+                conversationId, userId);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    private List<Conversation> findConversations(long userId, long afterConversationId, int limit) {
+        return jdbcTemplate.query(
+                "SELECT id, title, created_at FROM conversations WHERE user_id = ? AND id > ? ORDER BY id LIMIT ?",
+                (rs, rowNum) -> new Conversation(rs.getLong(1), rs.getString(2), toLocal(rs.getTimestamp(3))),
+                userId, afterConversationId, limit);
+    }
+
+    private int readMessages(Conversation conversation, long afterMessageId, int limit, Consumer<ArchiveRow> consumer) {
+        int[] count = new int[1];
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT id, message_id, role, content, token_count, created_at FROM messages "
+                            + "WHERE conv_id = ? AND id > ? ORDER BY id LIMIT ?",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(limit);
+            ps.setLong(1, conversation.id());
+            ps.setLong(2, afterMessageId);
+            ps.setInt(3, limit);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            int tokenCount = rs.getInt(5);
+            boolean hasTokenCount = !rs.wasNull();
+            consumer.accept(new ArchiveRow(conversation.id(), conversation.title(), conversation.createdTime(),
+                    rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                    hasTokenCount ? tokenCount : null, toLocal(rs.getTimestamp(6))));
+            count[0]++;
+        });
+        return count[0];
+    }
+
+    private static LocalDateTime toLocal(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+
+    public record ArchiveRow(
+            long conversationId,
+            String conversationTitle,
+            LocalDateTime conversationCreatedTime,
+            Long messageId,
+            String eventId,
+            String role,
+            String content,
+            Integer tokenCount,
+            LocalDateTime createdTime
+    ) { }
+
+    private record Conversation(long id, String title, LocalDateTime createdTime) { }
+}
@@ -0,0 +1,115 @@
+package com.hunkyhsu.ragagent.export;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hunkyhsu.ragagent.entity.ExportJob;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 以页为单位追加写 NDJSON 文件。每页结束时刷盘并返回文件长度作为检查点；
+ * GZIP 格式下每页是一个独立的 gzip member，多个 member 直接拼接仍是合法的 gzip 文件，
+ * 因此从检查点恢复时只需把文件截断到上次的长度继续追加
+ */
+public final class ChatArchiveWriter implements Closeable {
+
+    private static final byte NEWLINE = '\n';
+
+    private final FileChannel channel;
+    private final ObjectMapper objectMapper;
+    private final boolean gzip;
+    private OutputStream page;
+    private GZIPOutputStream member;
+
+    private ChatArchiveWriter(FileChannel channel, ObjectMapper objectMapper, boolean gzip) {
+        this.channel = channel;
+        this.objectMapper = objectMapper;
+        this.gzip = gzip;
+    }
+
+    /**
+     * 打开导出文件并截断到检查点，丢弃上次检查点之后写了一半的内容
+     */
+    public static ChatArchiveWriter open(Path file, ExportJob.Format format, long checkpoint,
+                                         ObjectMapper objectMapper) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < checkpoint) {
+                throw new IOException("export file " + file + " is shorter than its checkpoint " + checkpoint);
+            }
+            channel.truncate(checkpoint);
+            channel.position(checkpoint);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new ChatArchiveWriter(channel, objectMapper, format == ExportJob.Format.GZIP);
+    }
+
+    public static String fileName(long jobId, ExportJob.Format format) {
+        return "export-" + jobId + (format == ExportJob.Format.GZIP ? ".ndjson.gz" : ".ndjson");
+    }
+
+    public void writeConversation(long id, String title, LocalDateTime createdTime) throws IOException {
+        writeLine(new ArchivedConversation("conversation", id, title, createdTime));
+    }
+
+    public void writeMessage(ChatArchiveStore.ArchiveRow row) throws IOException {
+        writeLine(new ArchivedMessage("message", row.conversationId(), row.messageId(), row.eventId(),
+                row.role(), row.content(), row.tokenCount(), row.createdTime()));
+    }
+
+    /**
+     * 结束当前页并刷盘
+     *
+     * @return 文件当前长度，作为下一次恢复的截断点
+     */
+    public long endPage() throws IOException {
+        if (page != null) {
+            if (member != null) {
+                member.finish();
+            }
+            page.flush();
+            page = null;
+            member = null;
+        }
+        channel.force(false);
+        return channel.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void writeLine(Object line) throws IOException {
+        if (page == null) {
+            // 不关闭这些包装流，关闭会连带关闭底层 channel
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+            if (gzip) {
+                member = new GZIPOutputStream(out, 64 * 1024);
+                page = member;
+            } else {
+                page = out;
+            }
+        }
+        page.write(objectMapper.writeValueAsBytes(line));
+        page.write(NEWLINE);
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record ArchivedConversation(String type, long id, String title, LocalDateTime createdTime) { }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record ArchivedMessage(String type, long conversationId, Long id, String messageId, String role,
+                           String content, Integer tokenCount, LocalDateTime createdTime) { }
+}
@@ -1,6 +1,8 @@
 package com.hunkyhsu.ragagent.handler;
 
 import com.hunkyhsu.ragagent.exception.InvalidTokenException;
+import com.hunkyhsu.ragagent.metrics.ChatMetrics;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -16,7 +18,11 @@ import java.util.Map;
 
 @RestControllerAdvice
 @Slf4j
+@RequiredArgsConstructor
 public class GlobalExceptionHandler {
+
+    private final ChatMetrics chatMetrics;
+
     /**
      * 处理自定义的令牌失效异常
      */
@@ -70,6 +76,7 @@ public class GlobalExceptionHandler {
      * 通用的异常响应构建方法
      */
     private ResponseEntity<Map<String, Object>> buildErrorResponse(HttpStatus status, String message, String errorCode) {
+        chatMetrics.error(errorCode);
         Map<String, Object> body = new HashMap<>();
         body.put("timestamp", System.currentTimeMillis());
         body.put("status", status.value());
@@ -0,0 +1,222 @@
+package com.hunkyhsu.ragagent.ingestion;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 片段与向量的批量读写。IDENTITY 主键会让 Hibernate 放弃批量插入，因此这里直接走 JDBC batch
+ * （MySQL 连接串需开启 rewriteBatchedStatements=true 才能合并为多值 INSERT）。
+ * 片段带 first_version，大于文档当前 version 的片段属于尚未切换的新版本，遍历时不可见。
+ */
+@Component
+@RequiredArgsConstructor
+public class ChunkStore {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String VISIBLE = "c.first_version <= d.version";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    /**
+     * @param version 片段所属的文档版本
+     * @return 按 ordinal 排序的片段主键
+     */
+    public List<Long> insertChunks(long documentId, int version, List<TextChunk> chunks) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO document_chunks (document_id, first_version, ordinal, heading, content, content_hash, "
+                        + "token_count) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                chunks, BATCH_SIZE, (ps, chunk) -> {
+                    ps.setLong(1, documentId);
+                    ps.setInt(2, version);
+                    ps.setInt(3, chunk.ordinal());
+                    ps.setString(4, chunk.heading());
+                    ps.setString(5, chunk.content());
+                    ps.setString(6, chunk.contentHash());
+                    ps.setInt(7, chunk.tokenCount());
+                });
+        return jdbcTemplate.queryForList(
+                "SELECT id FROM document_chunks WHERE document_id = ? AND first_version = ? ORDER BY ordinal",
+                Long.class, documentId, version);
+    }
+
+    /**
+     * 文档当前可见版本的片段，按 ordinal 排序，用于和新版本逐片段比对
+     */
+    public List<ChunkHash> findVisibleChunks(long documentId) {
+        return jdbcTemplate.query(
+                "SELECT c.id, c.ordinal, c.content_hash FROM document_chunks c "
+                        + "JOIN documents d ON d.id = c.document_id WHERE c.document_id = ? AND " + VISIBLE
+                        + " ORDER BY c.ordinal",
+                (rs, row) -> new ChunkHash(rs.getLong(1), rs.getInt(2), rs.getString(3)), documentId);
+    }
+
+    /**
+     * 切换文档的可见版本：在同一事务中更新文档行、删除被替换的片段、改写保留片段的序号。
+     * 文档版本已不是 expectedVersion，或已不在导入中（停滞后被标记为失败）时不做任何修改
+     *
+     * @param ordinals 保留片段在新版本中的序号，只需包含序号有变化的片段
+     * @return 是否切换成功
+     */
+    @Transactional
+    public boolean publishVersion(long documentId, int expectedVersion, int version, String contentHash,
+                                  int totalChunks, Collection<Long> retiredIds, Map<Long, Integer> ordinals) {
+        int updated = jdbcTemplate.update(
+                "UPDATE documents SET version = ?, content_hash = ?, status = 'READY', total_chunks = ?, "
+                        + "embedded_chunks = ?, error_message = NULL, updated_time = CURRENT_TIMESTAMP "
+                        + "WHERE id = ? AND version = ? AND status = 'PROCESSING'",
+                version, contentHash, totalChunks, totalChunks, documentId, expectedVersion);
+        if (updated == 0) {
+            return false;
+        }
+        List<Long> retired = new ArrayList<>(retiredIds);
+        for (int from = 0; from < retired.size(); from += BATCH_SIZE) {
+            namedParameterJdbcTemplate.update("DELETE FROM document_chunks WHERE id IN (:ids)",
+                    new MapSqlParameterSource("ids", retired.subList(from, Math.min(retired.size(), from + BATCH_SIZE))));
+        }
+        jdbcTemplate.batchUpdate("UPDATE document_chunks SET ordinal = ? WHERE id = ?",
+                List.copyOf(ordinals.entrySet()), BATCH_SIZE, (ps, entry) -> {
+                    ps.setInt(1, entry.getValue());
+                    ps.setLong(2, entry.getKey());
+                });
+        return true;
+    }
+
+    /**
+     * 尚未切换为可见的新版本片段
+     */
+    public List<Long> findStagedChunkIds(long documentId) {
+        return jdbcTemplate.queryForList(
+                "SELECT c.id FROM document_chunks c JOIN documents d ON d.id = c.document_id "
+                        + "WHERE c.document_id = ? AND c.first_version > d.version", Long.class, documentId);
+    }
+
+    /**
+     * 删除尚未切换为可见的新版本片段，重新导入失败或停滞时调用
+     */
+    public void deleteStagedChunks(long documentId) {
+        jdbcTemplate.update(
+                "DELETE c FROM document_chunks c JOIN documents d ON d.id = c.document_id "
+                        + "WHERE c.document_id = ? AND c.first_version > d.version", documentId);
+    }
+
+    /**
+     * 删除某个版本写入的全部片段，首次导入失败时调用
+     */
+    public void deleteChunks(long documentId, int version) {
+        jdbcTemplate.update("DELETE FROM document_chunks WHERE document_id = ? AND first_version = ?",
+                documentId, version);
+    }
+
+    /**
+     * 返回已经用该模型嵌入过的内容哈希及其向量
+     */
+    public Map<String, float[]> findEmbeddings(String model, Collection<String> contentHashes) {
+        Map<String, float[]> embeddings = new HashMap<>();
+        List<String> hashes = new ArrayList<>(contentHashes);
+        for (int from = 0; from < hashes.size(); from += BATCH_SIZE) {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("model", model)
+                    .addValue("hashes", hashes.subList(from, Math.min(hashes.size(), from + BATCH_SIZE)));
+            namedParameterJdbcTemplate.query(
+                    "SELECT content_hash, vector FROM chunk_embeddings WHERE model = :model AND content_hash IN (:hashes)",
+                    params, (RowCallbackHandler) rs -> embeddings.put(rs.getString(1), toFloats(rs.getBytes(2))));
+        }
+        return embeddings;
+    }
+
+    /**
+     * 按 id 升序流式遍历 id 大于 afterId 的可见且已嵌入的片段，用于重建向量索引（中断后可从断点继续）；
+     * MySQL 驱动在 fetchSize 为 Integer.MIN_VALUE 时逐行读取
+     */
+    public void forEachEmbeddedChunk(String model, long afterId, BiConsumer<Long, float[]> consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT c.id, e.vector FROM document_chunks c "
+                            + "JOIN documents d ON d.id = c.document_id "
+                            + "JOIN chunk_embeddings e ON e.content_hash = c.content_hash AND e.model = ? "
+                            + "WHERE c.id > ? AND " + VISIBLE + " ORDER BY c.id",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setString(1, model);
+            ps.setLong(2, afterId);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getLong(1), toFloats(rs.getBytes(2))));
+    }
+
+    public Map<Long, StoredChunk> findChunks(Collection<Long> chunkIds) {
+        Map<Long, StoredChunk> chunks = new HashMap<>();
+        if (chunkIds.isEmpty()) {
+            return chunks;
+        }
+        namedParameterJdbcTemplate.query(
+                "SELECT c.id, c.document_id, d.org_tag, c.heading, c.content FROM document_chunks c "
+                        + "JOIN documents d ON d.id = c.document_id WHERE c.id IN (:ids)",
+                new MapSqlParameterSource("ids", chunkIds),
+                (RowCallbackHandler) rs -> chunks.put(rs.getLong(1), toStoredChunk(rs)));
+        return chunks;
+    }
+
+    /**
+     * 流式遍历全部可见片段，用于重建内存中的关键词索引和标签位图
+     */
+    public void forEachChunk(Consumer<StoredChunk> consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT c.id, c.document_id, d.org_tag, c.heading, c.content FROM document_chunks c "
+                            + "JOIN documents d ON d.id = c.document_id WHERE " + VISIBLE,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(toStoredChunk(rs)));
+    }
+
+    // 并发文档可能同时嵌入同一段内容，INSERT IGNORE 保证只保留一份
+    public void insertEmbeddings(String model, List<String> contentHashes, List<float[]> vectors) {
+        List<Object[]> rows = new ArrayList<>(contentHashes.size());
+        for (int i = 0; i < contentHashes.size(); i++) {
+            float[] vector = vectors.get(i);
+            rows.add(new Object[]{contentHashes.get(i), model, vector.length, toBytes(vector)});
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT IGNORE INTO chunk_embeddings (content_hash, model, dimensions, vector) VALUES (?, ?, ?, ?)",
+                rows);
+    }
+
+    public record ChunkHash(long id, int ordinal, String contentHash) { }
+
+    private static StoredChunk toStoredChunk(ResultSet rs) throws SQLException {
+        return new StoredChunk(rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getString(4), rs.getString(5));
+    }
+
+    // float32 小端序
+    public static byte[] toBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    public static float[] toFloats(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
@@ -0,0 +1,28 @@
+package com.hunkyhsu.ragagent.ingestion;
+
+import java.util.List;
+
+/**
+ * 抽取后的文档结构单元：标题路径 + 按段落/列表/代码块切分的文本块
+ */
+public record DocumentSection(
+        // 形如 "安装 > 环境变量"，无标题时为空串
+        String heading,
+        List<String> blocks
+) {
+
+    // 把各级标题拼成路径，未设置的层级跳过
+    static String headingPath(String[] headings) {
+        StringBuilder path = new StringBuilder();
+        for (String heading : headings) {
+            if (heading == null || heading.isEmpty()) {
+                continue;
+            }
+            if (!path.isEmpty()) {
+                path.append(" > ");
+            }
+            path.append(heading);
+        }
+        return path.toString();
+    }
+}
@@ -0,0 +1,16 @@
+package com.hunkyhsu.ragagent.ingestion;
+
+import java.util.List;
+
+/**
+ * 可插拔的文本嵌入模型，按批调用
+ */
+public interface Embedder {
+
+    // 模型标识，参与向量去重的主键，更换模型后会重新嵌入
+    String model();
+
+    int dimensions();
+
+    List<float[]> embed(List<String> texts);
+}
@@ -0,0 +1,73 @@
+package com.hunkyhsu.ragagent.ingestion;
+
+import com.hunkyhsu.ragagent.entity.KnowledgeDocument;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 以 h1 ~ h6 划分章节，段落、列表项、表格行、代码块作为文本块；脚本、样式和导航等内容直接丢弃
+ */
+@Component
+public class HtmlExtractor implements TextExtractor {
+
+    private static final String NOISE = "script, style, noscript, nav, header, footer, aside, form, iframe, svg";
+    private static final String BLOCKS = "h1, h2, h3, h4, h5, h6, p, li, pre, blockquote, tr, dt, dd, figcaption";
+
+    @Override
+    public KnowledgeDocument.MediaType mediaType() {
+        return KnowledgeDocument.MediaType.HTML;
+    }
+
+    @Override
+    public List<DocumentSection> extract(String raw) {
+        Document document = Jsoup.parse(raw);
+        document.select(NOISE).remove();
+
+        List<DocumentSection> sections = new ArrayList<>();
+        String[] headings = new String[6];
+        String currentHeading = "";
+        List<String> blocks = new ArrayList<>();
+        for (Element element : document.body().select(BLOCKS)) {
+            // 嵌套的块元素（如 li 中的 p）只取最外层，避免文本重复
+            if (hasBlockAncestor(element)) {
+                continue;
+            }
+            String tag = element.normalName();
+            if (tag.length() == 2 && tag.charAt(0) == 'h' && Character.isDigit(tag.charAt(1))) {
+                if (!blocks.isEmpty()) {
+                    sections.add(new DocumentSection(currentHeading, blocks));
+                    blocks = new ArrayList<>();
+                }
+                int level = tag.charAt(1) - '0';
+                headings[level - 1] = element.text().strip();
+                for (int i = level; i < headings.length; i++) {
+                    headings[i] = null;
+                }
+                currentHeading = DocumentSection.headingPath(headings);
+                continue;
+            }
+            String text = "pre".equals(tag) ? element.wholeText().strip() : element.text().strip();
+            if (!text.isEmpty()) {
+                blocks.add(text);
+            }
+        }
+        if (!blocks.isEmpty()) {
+            sections.add(new DocumentSection(currentHeading, blocks));
+        }
+        return sections;
+    }
+
+    private static boolean hasBlockAncestor(Element element) {
+        for (Element parent = element.parent(); parent != null; parent = parent.parent()) {
+            if (parent.is(BLOCKS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,84 @@
+package com.hunkyhsu.ragagent.ingestion;
+
+import com.hunkyhsu.ragagent.config.IngestionProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 确定性的本地嵌入：词和字符三元组做特征哈希后 L2 归一化。
+ * 只反映词面相似度，用于离线开发和测试，同样的输入在任何机器上都得到同样的向量。
+ */
+@Component
+@ConditionalOnProperty(prefix = "ingestion", name = "embedder", havingValue = "local", matchIfMissing = true)
+public class LocalHashEmbedder implements Embedder {
+
+    private final int dimensions;
+
+    public LocalHashEmbedder(IngestionProperties properties) {
+        this.dimensions = properties.getLocalDimensions();
+    }
+
+    @Override
+    public String model() {
+        return "local-hash-" + dimensions;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            vectors.add(embedOne(text));
+        }
+        return vectors;
+    }
+
+    private float[] embedOne(String text) {
+        float[] vector = new float[dimensions];
+        String normalized = text.toLowerCase(Locale.ROOT);
+        int wordStart = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean letter = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (letter && wordStart < 0) {
+                wordStart = i;
+            } else if (!letter && wordStart >= 0) {
+                add(vector, normalized, wordStart, i, 1.0f);
+                wordStart = -1;
+            }
+        }
+        // 字符三元组兼顾中文等无空格语言
+        for (int i = 0; i + 3 <= normalized.length(); i++) {
+            add(vector, normalized, i, i + 3, 0.5f);
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private void add(float[] vector, String text, int from, int to, float weight) {
+        int h = 0x811C9DC5;
+        for (byte b : text.substring(from, to).getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xFF)) * 0x01000193;
+        }
+        int index = Math.floorMod(h, dimensions);
+        // 用哈希的另一位决定符号，减少碰撞带来的偏置
+        vector[index] += ((h >>> 31) == 0 ? weight : -weight);
+    }
+}
@@ -0,0 +1,90 @@
+package com.hunkyhsu.ragagent.ingestion;
+
+import com.hunkyhsu.ragagent.entity.KnowledgeDocument;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 按 ATX 标题（# ~ ######）切分章节，段落、列表、代码块各作为一个文本块
+ */
+@Component
+public class MarkdownExtractor implements TextExtractor {
+
+    private static final Pattern HEADING = Pattern.compile("^(#{1,6})\\s+(.*?)\\s*#*\\s*$");
+    private static final Pattern FENCE = Pattern.compile("^\\s*(```|~~~).*$");
+    private static final Pattern LINK = Pattern.compile("!?\\[([^\\]]*)]\\([^)]*\\)");
+    private static final Pattern EMPHASIS = Pattern.compile("(\\*\\*|__|\\*|_|`)(\\S(?:.*?\\S)?)\\1");
+
+    @Override
+    public KnowledgeDocument.MediaType mediaType() {
+        return KnowledgeDocument.MediaType.MARKDOWN;
+    }
+
+    @Override
+    public List<DocumentSection> extract(String raw) {
+        List<DocumentSection> sections = new ArrayList<>();
+        String[] headings = new String[6];
+        String currentHeading = "";
+        List<String> blocks = new ArrayList<>();
+        StringBuilder block = new StringBuilder();
+        boolean inFence = false;
+
+        for (String line : raw.split("\\R", -1)) {
+            if (FENCE.matcher(line).matches()) {
+                // 代码块整体保留原样，不做行内标记清理
+                block.append(line).append('\n');
+                if (inFence) {
+                    flush(block, blocks);
+                }
+                inFence = !inFence;
+                continue;
+            }
+            if (inFence) {
+                block.append(line).append('\n');
+                continue;
+            }
+            Matcher heading = HEADING.matcher(line);
+            if (heading.matches()) {
+                flush(block, blocks);
+                if (!blocks.isEmpty()) {
+                    sections.add(new DocumentSection(currentHeading, blocks));
+                    blocks = new ArrayList<>();
+                }
+                int level = heading.group(1).length();
+                headings[level - 1] = clean(heading.group(2));
+                for (int i = level; i < headings.length; i++) {
+                    headings[i] = null;
+                }
+                currentHeading = DocumentSection.headingPath(headings);
+                continue;
+            }
+            if (line.isBlank()) {
+                flush(block, blocks);
+            } else {
+                block.append(clean(line)).append('\n');
+            }
+        }
+        flush(block, blocks);
+        if (!blocks.isEmpty()) {
+            sections.add(new DocumentSection(currentHeading, blocks));
+        }
+        return sections;
+    }
+
+    private static void flush(StringBuilder block, List<String> blocks) {
+        String text = block.toString().strip();
+        if (!text.isEmpty()) {
+            blocks.add(text);
+        }
+        block.setLength(0);
+    }
+
+    private static String clean(String line) {
+        String text = LINK.matcher(line).replaceAll("$1");
+        return EMPHASIS.matcher(text).replaceAll("$2");
+    }
+}
@@ -0,0 +1,28 @@
+package com.hunkyhsu.ragagent.ingestion;
+
+import com.hunkyhsu.ragagent.entity.KnowledgeDocument;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+@Component
+public class PlainTextExtractor implements TextExtractor {
+
+    private static final Pattern BLANK_LINES = Pattern.compile("\\R\\s*\\R");
+
+    @Override
+    public KnowledgeDocument.MediaType mediaType() {
+        return KnowledgeDocument.MediaType.TEXT;
+    }
+
+    @Override
+    public List<DocumentSection> extract(String raw) {
+        List<String> paragraphs = Arrays.stream(BLANK_LINES.split(raw))
+                .map(String::strip)
+                .filter(paragraph -> !paragraph.isEmpty())
+                .toList();
+        return paragraphs.isEmpty() ? List.of() : List.of(new DocumentSection("", paragraphs));
+    }
+}
@@ -0,0 +1,13 @@
+package com.hunkyhsu.ragagent.ingestion;
+
+public record StoredChunk(
+        long id,
+        long documentId,
+        String orgTag,
+        String heading,
+        String content
+) {
+    public String indexText() {
+        return heading == null || heading.isEmpty() ? content : heading + "\n" + content;
+    }
+}
@@ -0,0 +1,141 @@
+package com.hunkyhsu.ragagent.ingestion;
+
+import com.hunkyhsu.ragagent.config.IngestionProperties;
+import com.hunkyhsu.ragagent.tokenizer.TokenCounter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 结构感知分块：片段不跨章节；优先在块边界切分，块过长时退到句子边界，句子仍过长才按长度硬切。
+ * 相邻片段之间保留约 chunkOverlapTokens 的重叠，避免答案恰好落在切分点上。
+ */
+@Component
+@RequiredArgsConstructor
+public class StructureAwareChunker {
+
+    private static final Pattern SENTENCE_BOUNDARY = Pattern.compile("(?<=[.!?。！？；;])");
+    // document_chunks.heading 为 VARCHAR(512)
+    static final int MAX_HEADING_CHARS = 512;
+    private static final String ELLIPSIS = "…";
+
+    private final TokenCounter tokenCounter;
+    private final IngestionProperties properties;
+
+    public List<TextChunk> chunk(List<DocumentSection> sections) {
+        int target = properties.getChunkTargetTokens();
+        int overlap = Math.min(properties.getChunkOverlapTokens(), target / 2);
+        List<TextChunk> chunks = new ArrayList<>();
+        for (DocumentSection section : sections) {
+            String heading = fitHeading(section.heading());
+            Deque<Piece> current = new ArrayDeque<>();
+            int tokens = 0;
+            // current 中是否有尚未输出过的内容（重叠部分不算）
+            boolean fresh = false;
+            for (Piece piece : pieces(section, target)) {
+                if (tokens + piece.tokens() > target && !current.isEmpty()) {
+                    if (fresh) {
+                        chunks.add(toChunk(chunks.size(), heading, current));
+                    }
+                    tokens = retainOverlap(current, overlap);
+                    if (tokens + piece.tokens() > target) {
+                        current.clear();
+                        tokens = 0;
+                    }
+                }
+                current.addLast(piece);
+                tokens += piece.tokens();
+                fresh = true;
+            }
+            if (fresh) {
+                chunks.add(toChunk(chunks.size(), heading, current));
+            }
+        }
+        return chunks;
+    }
+
+    // 把块拆成不超过 target 的单元，blockStart 标记单元是否为新块的开头
+    private List<Piece> pieces(DocumentSection section, int target) {
+        List<Piece> pieces = new ArrayList<>();
+        for (String block : section.blocks()) {
+            int tokens = tokenCounter.count(block);
+            if (tokens <= target) {
+                pieces.add(new Piece(block, tokens, true));
+                continue;
+            }
+            boolean blockStart = true;
+            for (String sentence : SENTENCE_BOUNDARY.split(block)) {
+                int sentenceTokens = tokenCounter.count(sentence);
+                if (sentenceTokens <= target) {
+                    pieces.add(new Piece(sentence, sentenceTokens, blockStart));
+                } else {
+                    int window = Math.max(1, (int) ((long) sentence.length() * target / sentenceTokens));
+                    for (int start = 0; start < sentence.length(); start += window) {
+                        String part = sentence.substring(start, Math.min(sentence.length(), start + window));
+                        pieces.add(new Piece(part, tokenCounter.count(part), blockStart && start == 0));
+                    }
+                }
+                blockStart = false;
+            }
+        }
+        return pieces;
+    }
+
+    /**
+     * 标题路径过长时保留末尾（最具体的几级），开头以省略号代替；按码点截断，不拆开代理对
+     */
+    static String fitHeading(String heading) {
+        if (heading.codePointCount(0, heading.length()) <= MAX_HEADING_CHARS) {
+            return heading;
+        }
+        int keep = MAX_HEADING_CHARS - ELLIPSIS.length();
+        int start = heading.offsetByCodePoints(heading.length(), -keep);
+        return ELLIPSIS + heading.substring(start);
+    }
+
+    private static int retainOverlap(Deque<Piece> current, int overlap) {
+        Deque<Piece> tail = new ArrayDeque<>();
+        int tokens = 0;
+        while (!current.isEmpty() && tokens + current.peekLast().tokens() <= overlap) {
+            Piece piece = current.removeLast();
+            tail.addFirst(piece);
+            tokens += piece.tokens();
+        }
+        current.clear();
+        current.addAll(tail);
+        return tokens;
+    }
+
+    private TextChunk toChunk(int ordinal, String heading, Deque<Piece> pieces) {
+        StringBuilder content = new StringBuilder();
+        for (Piece piece : pieces) {
+            if (!content.isEmpty() && piece.blockStart()) {
+                content.append("\n\n");
+            }
+            content.append(piece.text());
+        }
+        String text = content.toString().strip();
+        String embeddingInput = heading.isEmpty() ? text : heading + "\n" + text;
+        return new TextChunk(ordinal, heading, text, tokenCounter.count(text), sha256(embeddingInput));
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record Piece(String text, int tokens, boolean blockStart) { }
+}
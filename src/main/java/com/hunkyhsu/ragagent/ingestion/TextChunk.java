@@ -0,0 +1,15 @@
+package com.hunkyhsu.ragagent.ingestion;
+
+public record TextChunk(
+        int ordinal,
+        String heading,
+        String content,
+        int tokenCount,
+        // 嵌入输入（标题 + 正文）的 SHA-256，用于跨文档去重
+        String contentHash
+) {
+    // 标题参与嵌入，使脱离上下文的片段仍能被章节主题检索到
+    public String embeddingInput() {
+        return heading.isEmpty() ? content : heading + "\n" + content;
+    }
+}
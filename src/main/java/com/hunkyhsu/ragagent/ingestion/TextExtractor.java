@@ -0,0 +1,12 @@
+package com.hunkyhsu.ragagent.ingestion;
+
+import com.hunkyhsu.ragagent.entity.KnowledgeDocument;
+
+import java.util.List;
+
+public interface TextExtractor {
+
+    KnowledgeDocument.MediaType mediaType();
+
+    List<DocumentSection> extract(String raw);
+}
@@ -0,0 +1,87 @@
+package com.hunkyhsu.ragagent.logging;
+
+import com.fasterxml.jackson.core.JsonStreamContext;
+import net.logstash.logback.mask.ValueMasker;
+
+/**
+ * 编码 JSON 时对字符串值做凭据脱敏：Bearer 头和 JWT 形态的片段替换为 ****。
+ * 只做 indexOf 和字符类判断，不对整条日志跑正则；按字段名的脱敏由 MaskingJsonGeneratorDecorator 的 path 配置完成
+ */
+public class CredentialValueMasker implements ValueMasker {
+
+    private static final String MASK = "****";
+    // JWT 头部 {"alg" / {"typ" 的 base64url 编码均以 eyJ 开头
+    private static final String JWT_PREFIX = "eyJ";
+    private static final String BEARER = "Bearer ";
+
+    @Override
+    public Object mask(JsonStreamContext context, Object value) {
+        if (!(value instanceof String text) || text.length() < 16) {
+            return null;
+        }
+        int jwt = text.indexOf(JWT_PREFIX);
+        int bearer = text.indexOf(BEARER);
+        if (jwt < 0 && bearer < 0) {
+            return null;
+        }
+        StringBuilder masked = null;
+        int copied = 0;
+        int from = 0;
+        while (true) {
+            jwt = text.indexOf(JWT_PREFIX, from);
+            bearer = text.indexOf(BEARER, from);
+            int start;
+            int end;
+            if (bearer >= 0 && (jwt < 0 || bearer < jwt)) {
+                start = bearer + BEARER.length();
+                end = tokenEnd(text, start);
+            } else if (jwt >= 0) {
+                start = jwt;
+                end = tokenEnd(text, start);
+                if (dots(text, start, end) != 2) {
+                    from = start + JWT_PREFIX.length();
+                    continue;
+                }
+            } else {
+                break;
+            }
+            if (end > start) {
+                if (masked == null) {
+                    masked = new StringBuilder(text.length());
+                }
+                masked.append(text, copied, start).append(MASK);
+                copied = end;
+            }
+            from = Math.max(end, start + 1);
+        }
+        if (masked == null) {
+            return null;
+        }
+        return masked.append(text, copied, text.length()).toString();
+    }
+
+    // JWT 由 base64url 字符和两个点组成
+    private static int tokenEnd(String text, int start) {
+        int i = start;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '=') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static int dots(String text, int start, int end) {
+        int dots = 0;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '.') {
+                dots++;
+            }
+        }
+        return dots;
+    }
+}
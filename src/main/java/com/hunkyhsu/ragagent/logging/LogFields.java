@@ -0,0 +1,78 @@
+package com.hunkyhsu.ragagent.logging;
+
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+/**
+ * 结构化日志字段名与 MDC 作用域。traceId 由 tracing 桥接写入，这里只负责用户和会话上下文
+ */
+public final class LogFields {
+
+    public static final String TRACE_ID = "traceId";
+    public static final String USER_ID = "userId";
+    public static final String CONV_ID = "convId";
+    public static final String MESSAGE_ID = "messageId";
+
+    // 逐帧/逐 token 的高频事件，由 SamplingTurboFilter 限速
+    public static final Marker PER_TOKEN = MarkerFactory.getMarker("PER_TOKEN");
+
+    private LogFields() {
+    }
+
+    /**
+     * 在当前线程写入会话上下文，关闭时恢复为进入前的值；null 字段不写
+     */
+    public static Scope conversation(Long userId, Long convId, String messageId) {
+        return new Scope(userId, convId, messageId);
+    }
+
+    /**
+     * 带着会话上下文执行 action，结束后恢复为进入前的值
+     */
+    public static void run(Long userId, Long convId, String messageId, Runnable action) {
+        Scope scope = conversation(userId, convId, messageId);
+        try {
+            action.run();
+        } finally {
+            scope.close();
+        }
+    }
+
+    public static final class Scope implements AutoCloseable {
+
+        private final String previousUser;
+        private final String previousConv;
+        private final String previousMessage;
+
+        private Scope(Long userId, Long convId, String messageId) {
+            previousUser = MDC.get(USER_ID);
+            previousConv = MDC.get(CONV_ID);
+            previousMessage = MDC.get(MESSAGE_ID);
+            put(USER_ID, userId == null ? null : userId.toString());
+            put(CONV_ID, convId == null ? null : convId.toString());
+            put(MESSAGE_ID, messageId);
+        }
+
+        @Override
+        public void close() {
+            restore(USER_ID, previousUser);
+            restore(CONV_ID, previousConv);
+            restore(MESSAGE_ID, previousMessage);
+        }
+
+        private static void put(String key, String value) {
+            if (value != null) {
+                MDC.put(key, value);
+            }
+        }
+
+        private static void restore(String key, String value) {
+            if (value == null) {
+                MDC.remove(key);
+            } else {
+                MDC.put(key, value);
+            }
+        }
+    }
+}
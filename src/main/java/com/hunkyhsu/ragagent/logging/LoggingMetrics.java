@@ -0,0 +1,36 @@
+package com.hunkyhsu.ragagent.logging;
+
+import ch.qos.logback.classic.Level;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 日志管线指标：环形缓冲溢出丢弃数（按级别）、采样拒绝数和缓冲占用，计数器本身在 logback 侧累加
+ */
+@Component
+public class LoggingMetrics {
+
+    private static final List<Level> LEVELS = List.of(Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR);
+
+    public LoggingMetrics(MeterRegistry meterRegistry) {
+        for (Level level : LEVELS) {
+            FunctionCounter.builder("logging.events.dropped", level, RingBufferAppender::dropped)
+                    .description("Log events discarded because the ring buffer was above its threshold for the level")
+                    .tag("level", level.levelStr.toLowerCase())
+                    .register(meterRegistry);
+        }
+        FunctionCounter.builder("logging.events.sampled_out", LoggingMetrics.class, c -> SamplingTurboFilter.sampledOut())
+                .description("Per-token log events rejected by the rate-limited sampler")
+                .register(meterRegistry);
+        Gauge.builder("logging.ring.used", LoggingMetrics.class, c -> RingBufferAppender.bufferedEvents())
+                .description("Log events waiting in ring buffers")
+                .register(meterRegistry);
+        Gauge.builder("logging.ring.capacity", LoggingMetrics.class, c -> RingBufferAppender.bufferCapacity())
+                .description("Total ring buffer slots")
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,279 @@
+package com.hunkyhsu.ragagent.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无锁环形缓冲异步 appender：业务线程只做一次 CAS 占位，单个后台线程写给下游 appender。
+ * 水位超过 debugThreshold 先丢 TRACE/DEBUG，超过 infoThreshold 再丢 INFO，写满时全部丢弃并计数，永不阻塞。
+ */
+public class RingBufferAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+        implements AppenderAttachable<ILoggingEvent> {
+
+    // 丢弃计数按级别汇总，logback 先于 Spring 初始化，由 LoggingMetrics 读取
+    private static final LongAdder[] DROPPED = {new LongAdder(), new LongAdder(), new LongAdder(),
+            new LongAdder(), new LongAdder()};
+    private static final Set<RingBufferAppender> RUNNING = new CopyOnWriteArraySet<>();
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+
+    private int bufferSize = 8192;
+    private double debugThreshold = 0.5;
+    private double infoThreshold = 0.9;
+    private boolean includeCallerData = false;
+    private int shutdownTimeoutMillis = 1000;
+
+    private AtomicReferenceArray<ILoggingEvent> slots;
+    // 每个槽位的序号：等于 pos 表示可写，等于 pos + 1 表示已发布待消费
+    private AtomicLongArray sequences;
+    private int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private volatile boolean sleeping;
+    private volatile Thread worker;
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (!appenders.iteratorForAppenders().hasNext()) {
+            addError("No appender attached to [" + getName() + "]");
+            return;
+        }
+        int capacity = Integer.highestOneBit(Math.max(bufferSize, 2) - 1) << 1;
+        if (capacity != bufferSize) {
+            addInfo("bufferSize rounded up to " + capacity);
+        }
+        slots = new AtomicReferenceArray<>(capacity);
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        mask = capacity - 1;
+        tail.set(0);
+        head = 0;
+        super.start();
+        Thread thread = new Thread(this::drainLoop, "log-ring-" + getName());
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+        RUNNING.add(this);
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        RUNNING.remove(this);
+        Thread thread = worker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(shutdownTimeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (thread.isAlive()) {
+                addWarn("Ring buffer not drained within " + shutdownTimeoutMillis + " ms, "
+                        + size() + " events discarded");
+            }
+        }
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        Level level = event.getLevel();
+        double fill = (double) size() / (mask + 1);
+        if ((fill >= debugThreshold && level.toInt() <= Level.DEBUG_INT)
+                || (fill >= infoThreshold && level.toInt() <= Level.INFO_INT)) {
+            drop(level);
+            return;
+        }
+        // 入队前在调用线程上固化消息和 MDC，后台线程不再访问调用方上下文
+        event.prepareForDeferredProcessing();
+        if (includeCallerData) {
+            event.getCallerData();
+        }
+        if (!offer(event)) {
+            drop(level);
+        }
+    }
+
+    private boolean offer(ILoggingEvent event) {
+        long pos = tail.get();
+        int index;
+        while (true) {
+            index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // 消费者还没腾出这个槽位，缓冲已满
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+        slots.set(index, event);
+        sequences.set(index, pos + 1);
+        if (sleeping) {
+            LockSupport.unpark(worker);
+        }
+        return true;
+    }
+
+    private void drainLoop() {
+        long pos = head;
+        while (true) {
+            int index = (int) (pos & mask);
+            if (sequences.get(index) == pos + 1) {
+                ILoggingEvent event = slots.get(index);
+                slots.set(index, null);
+                sequences.set(index, pos + mask + 1);
+                head = ++pos;
+                try {
+                    appenders.appendLoopOnAppenders(event);
+                } catch (RuntimeException e) {
+                    addError("Downstream appender failed", e);
+                }
+                continue;
+            }
+            if (!isStarted() && tail.get() == pos) {
+                return;
+            }
+            if (!isStarted()) {
+                // 占位成功但尚未发布的槽位，稍等即可
+                Thread.onSpinWait();
+                continue;
+            }
+            // 先声明要睡，再复查一次，避免与生产者的 unpark 错过
+            sleeping = true;
+            if (sequences.get(index) != pos + 1 && isStarted()) {
+                LockSupport.parkNanos(this, MAX_PARK_NANOS);
+            }
+            sleeping = false;
+        }
+    }
+
+    private static void drop(Level level) {
+        DROPPED[levelIndex(level)].increment();
+    }
+
+    private static int levelIndex(Level level) {
+        return switch (level.toInt()) {
+            case Level.TRACE_INT -> 0;
+            case Level.DEBUG_INT -> 1;
+            case Level.INFO_INT -> 2;
+            case Level.WARN_INT -> 3;
+            default -> 4;
+        };
+    }
+
+    public long size() {
+        return Math.max(0, tail.get() - head);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * 进程内所有环形 appender 因溢出丢弃的该级别事件总数
+     */
+    public static long dropped(Level level) {
+        return DROPPED[levelIndex(level)].sum();
+    }
+
+    public static long bufferedEvents() {
+        long total = 0;
+        for (RingBufferAppender appender : RUNNING) {
+            total += appender.size();
+        }
+        return total;
+    }
+
+    public static long bufferCapacity() {
+        long total = 0;
+        for (RingBufferAppender appender : RUNNING) {
+            total += appender.capacity();
+        }
+        return total;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public void setDebugThreshold(double debugThreshold) {
+        this.debugThreshold = debugThreshold;
+    }
+
+    public void setInfoThreshold(double infoThreshold) {
+        this.infoThreshold = infoThreshold;
+    }
+
+    public void setIncludeCallerData(boolean includeCallerData) {
+        this.includeCallerData = includeCallerData;
+    }
+
+    public void setShutdownTimeoutMillis(int shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> newAppender) {
+        appenders.addAppender(newAppender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
@@ -0,0 +1,78 @@
+package com.hunkyhsu.ragagent.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对带 {@link LogFields#PER_TOKEN} 标记的高频事件按消息模板限速：每个模板每秒最多放行 permitsPerSecond 条，
+ * 其余在创建事件之前直接拒绝并计数。未带标记的事件只做一次引用比较。
+ */
+public class SamplingTurboFilter extends TurboFilter {
+
+    private static final LongAdder SAMPLED_OUT = new LongAdder();
+    // 模板数量上限，超出后共用一个窗口，防止异常模板撑大 map
+    private static final int MAX_TEMPLATES = 256;
+    private static final String OVERFLOW_KEY = "";
+
+    private int permitsPerSecond = 20;
+    private final ConcurrentHashMap<String, AtomicLong> windows = new ConcurrentHashMap<>();
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format,
+                              Object[] params, Throwable t) {
+        if (marker == null || !isStarted() || !marker.contains(LogFields.PER_TOKEN)) {
+            return FilterReply.NEUTRAL;
+        }
+        if (!logger.isEnabledFor(level)) {
+            // 级别未开启时不占用配额，交给后续判断
+            return FilterReply.NEUTRAL;
+        }
+        if (tryAcquire(window(format))) {
+            return FilterReply.NEUTRAL;
+        }
+        SAMPLED_OUT.increment();
+        return FilterReply.DENY;
+    }
+
+    private AtomicLong window(String format) {
+        String key = format == null ? OVERFLOW_KEY : format;
+        AtomicLong window = windows.get(key);
+        if (window != null) {
+            return window;
+        }
+        if (windows.size() >= MAX_TEMPLATES) {
+            key = OVERFLOW_KEY;
+        }
+        return windows.computeIfAbsent(key, k -> new AtomicLong());
+    }
+
+    // 高位存秒、低 20 位存本秒已放行条数，一次 CAS 完成换窗和计数
+    private boolean tryAcquire(AtomicLong window) {
+        long second = System.currentTimeMillis() / 1000;
+        while (true) {
+            long state = window.get();
+            long count = (state >>> 20) == second ? state & 0xFFFFF : 0;
+            if (count >= permitsPerSecond) {
+                return false;
+            }
+            if (window.compareAndSet(state, (second << 20) | (count + 1))) {
+                return true;
+            }
+        }
+    }
+
+    public void setPermitsPerSecond(int permitsPerSecond) {
+        this.permitsPerSecond = Math.min(permitsPerSecond, 0xFFFFF);
+    }
+
+    public static long sampledOut() {
+        return SAMPLED_OUT.sum();
+    }
+}
@@ -0,0 +1,133 @@
+package com.hunkyhsu.ragagent.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热路径计时指标。所有 Meter 在启动时注册好，调用方只传入 System.nanoTime() 差值，
+ * 记录过程不构建 tag、不创建 Timer.Sample，也不捕获 lambda，因此不产生分配。
+ * tag 只取有限枚举值，userId / conversationId 之类高基数字段一律不做 tag
+ */
+@Component
+public class ChatMetrics {
+
+    private static final String[] ERROR_CLASSES = {"AUTH", "VALIDATION", "RLIMIT", "UPSTREAM"};
+
+    private final Timer jwtValid;
+    private final Timer jwtInvalid;
+    private final Timer userLookup;
+    private final Timer passwordEncode;
+    private final Timer passwordMatch;
+    private final Timer dispatch;
+    private final Timer firstToken;
+    private final Timer interToken;
+    private final Timer relay;
+    private final DistributionSummary framesPerSecond;
+    private final Map<String, Counter> errors;
+
+    public ChatMetrics(MeterRegistry meterRegistry) {
+        this.jwtValid = jwtTimer(meterRegistry, "valid");
+        this.jwtInvalid = jwtTimer(meterRegistry, "invalid");
+        this.userLookup = timer(meterRegistry, "auth.user.lookup", "Loading the user behind a token", Duration.ofMillis(5));
+        this.passwordEncode = Timer.builder("auth.password")
+                .description("BCrypt work per password operation")
+                .tag("operation", "encode")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.passwordMatch = Timer.builder("auth.password")
+                .description("BCrypt work per password operation")
+                .tag("operation", "match")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.dispatch = timer(meterRegistry, "chat.dispatch",
+                "Server dispatch latency from chat.send receipt to the reply stream being ready", Duration.ofMillis(50));
+        this.firstToken = timer(meterRegistry, "chat.stream.first_token",
+                "Time from chat.send receipt to the first stream frame written", Duration.ofSeconds(1));
+        this.interToken = timer(meterRegistry, "chat.stream.inter_token",
+                "Gap between consecutive stream frames of one reply", Duration.ofMillis(100));
+        this.relay = timer(meterRegistry, "chat.stream.relay",
+                "Token relay latency: encoding and handing one frame to the socket", Duration.ofMillis(1));
+        this.framesPerSecond = DistributionSummary.builder("chat.stream.frames_per_second")
+                .description("Average stream frame rate of one completed reply")
+                .baseUnit("frames")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.errors = new HashMap<>();
+        for (String errorClass : ERROR_CLASSES) {
+            errors.put(errorClass, Counter.builder("chat.errors")
+                    .description("Errors reported to clients by error class")
+                    .tag("class", errorClass)
+                    .register(meterRegistry));
+        }
+    }
+
+    public void jwtVerified(long nanos, boolean valid) {
+        (valid ? jwtValid : jwtInvalid).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void userLookup(long nanos) {
+        userLookup.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void passwordEncode(long nanos) {
+        passwordEncode.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void passwordMatch(long nanos) {
+        passwordMatch.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void dispatch(long nanos) {
+        dispatch.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void firstToken(long nanos) {
+        firstToken.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void interToken(long nanos) {
+        interToken.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void relay(long nanos) {
+        relay.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void streamCompleted(long frames, long nanos) {
+        if (frames > 0 && nanos > 0) {
+            framesPerSecond.record(frames * 1e9 / nanos);
+        }
+    }
+
+    public void error(String errorClass) {
+        Counter counter = errors.get(errorClass);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private static Timer jwtTimer(MeterRegistry meterRegistry, String result) {
+        return Timer.builder("auth.jwt.verify")
+                .description("JWT parsing and signature verification")
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(Duration.ofMillis(1))
+                .register(meterRegistry);
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String name, String description, Duration slo) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(slo)
+                .register(meterRegistry);
+    }
+}
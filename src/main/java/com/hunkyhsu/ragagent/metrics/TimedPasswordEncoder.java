@@ -0,0 +1,43 @@
+package com.hunkyhsu.ragagent.metrics;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * 为 BCrypt 计时的 PasswordEncoder 包装。BCrypt 是登录和注册路径上最贵的一步，
+ * 代价随 strength 指数增长，需要单独观察
+ */
+public class TimedPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final ChatMetrics chatMetrics;
+
+    public TimedPasswordEncoder(PasswordEncoder delegate, ChatMetrics chatMetrics) {
+        this.delegate = delegate;
+        this.chatMetrics = chatMetrics;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        long start = System.nanoTime();
+        try {
+            return delegate.encode(rawPassword);
+        } finally {
+            chatMetrics.passwordEncode(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        long start = System.nanoTime();
+        try {
+            return delegate.matches(rawPassword, encodedPassword);
+        } finally {
+            chatMetrics.passwordMatch(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+}
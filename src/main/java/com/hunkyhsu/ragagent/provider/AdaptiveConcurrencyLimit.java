@@ -0,0 +1,48 @@
+package com.hunkyhsu.ragagent.provider;
+
+/**
+ * 上游并发上限的 AIMD 控制：首 token 延迟低于目标时每个成功样本加 1/limit（约每轮加 1），
+ * 超过目标或失败时乘以 backoffRatio，且每个目标周期最多收缩一次，避免同一波慢请求把上限压到底。
+ * 非线程安全，由 UpstreamScheduler 在锁内调用
+ */
+final class AdaptiveConcurrencyLimit {
+
+    private final double minLimit;
+    private final double maxLimit;
+    private final double backoffRatio;
+    private final long latencyTargetNanos;
+    private double limit;
+    private long lastDecreaseAt;
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long latencyTargetNanos) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.backoffRatio = backoffRatio;
+        this.latencyTargetNanos = latencyTargetNanos;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.lastDecreaseAt = System.nanoTime() - latencyTargetNanos;
+    }
+
+    int current() {
+        return (int) limit;
+    }
+
+    /**
+     * @param latencyNanos 首 token 延迟；失败样本传 -1
+     * @param inFlight     采样时占用的配额数，配额用不到一半时不再放大上限，避免空闲期上限虚涨
+     * @param now          System.nanoTime()
+     */
+    void onSample(long latencyNanos, int inFlight, long now) {
+        boolean overloaded = latencyNanos < 0 || latencyNanos > latencyTargetNanos;
+        if (!overloaded) {
+            if (inFlight * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            return;
+        }
+        if (now - lastDecreaseAt >= latencyTargetNanos) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+            lastDecreaseAt = now;
+        }
+    }
+}
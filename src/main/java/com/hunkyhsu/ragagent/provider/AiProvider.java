@@ -0,0 +1,13 @@
+package com.hunkyhsu.ragagent.provider;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * 可插拔的 LLM Provider，按增量片段流式返回回答
+ */
+public interface AiProvider {
+
+    Flux<String> streamReply(Prompt prompt);
+
+    String name();
+}
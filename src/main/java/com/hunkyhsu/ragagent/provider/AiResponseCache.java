@@ -0,0 +1,200 @@
+package com.hunkyhsu.ragagent.provider;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hunkyhsu.ragagent.config.AiProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * AiProvider 前置的回答缓存层：
+ * 1. 已完成的回答按 TTL + 容量（LRU）缓存，命中后直接返回完整回答；
+ * 2. 相同 key 的并发请求共享同一个上游流（single-flight），增量片段广播给所有订阅者。
+ *    计费标记和排队通知等副作用通过每个调用者自己的 Listener 回调，不经过共享的上游流。
+ * key 由 orgTags 租户范围、模型、系统提示、检索上下文、历史上下文和用户输入共同决定，不同租户之间不会共享回答。
+ */
+@Component
+public class AiResponseCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final boolean enabled;
+    private final Cache<String, String> answers;
+    private final ConcurrentMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final Counter hitCounter;
+    private final Counter coalescedCounter;
+    private final Counter missCounter;
+
+    public AiResponseCache(AiProperties aiProperties, MeterRegistry meterRegistry) {
+        AiProperties.Cache properties = aiProperties.getCache();
+        this.enabled = properties.isEnabled();
+        this.answers = Caffeine.newBuilder()
+                .expireAfterWrite(properties.getTtl())
+                .maximumWeight(properties.getMaxWeightChars())
+                .weigher((String key, String answer) -> key.length() + answer.length())
+                .build();
+        this.hitCounter = requestCounter(meterRegistry, "hit");
+        this.coalescedCounter = requestCounter(meterRegistry, "coalesced");
+        this.missCounter = requestCounter(meterRegistry, "miss");
+        Gauge.builder("ai.response.cache.in_flight", inFlight, ConcurrentMap::size)
+                .description("Upstream streams currently shared by single-flight")
+                .register(meterRegistry);
+        Gauge.builder("ai.response.cache.size", answers, Cache::estimatedSize)
+                .description("Completed answers held in the response cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param prompt   本次请求的完整提示
+     * @param orgTags  调用者的组织标签，作为缓存的租户隔离范围
+     * @param listener 本调用者自己的回调
+     * @param upstream 未命中时真正调用 AiProvider 的流，参数为共享上游需要排队时的回调
+     */
+    public Flux<String> stream(Prompt prompt, String orgTags, Listener listener,
+                               Function<IntConsumer, Flux<String>> upstream) {
+        if (!enabled) {
+            listener.onUpstream();
+            return upstream.apply(listener::onQueued);
+        }
+        String key = cacheKey(prompt, orgTags);
+        String cached = answers.getIfPresent(key);
+        if (cached != null) {
+            hitCounter.increment();
+            return Flux.just(cached);
+        }
+        boolean[] created = new boolean[1];
+        Flight flight = inFlight.computeIfAbsent(key, k -> {
+            created[0] = true;
+            return new Flight(k, upstream);
+        });
+        if (created[0]) {
+            missCounter.increment();
+            listener.onUpstream();
+        } else {
+            coalescedCounter.increment();
+        }
+        // 排队通知只作为本调用者的副作用合并进来，不产生片段
+        Flux<String> notices = flight.queued.asFlux()
+                .filter(position -> !flight.started)
+                .doOnNext(listener::onQueued)
+                .thenMany(Flux.empty());
+        return Flux.merge(notices, flight.deltas);
+    }
+
+    /**
+     * 每个调用者各自的副作用回调
+     */
+    public interface Listener {
+
+        // 本调用者发起了共享的上游调用（负责计费）时回调一次；缓存命中和跟随者不会回调
+        void onUpstream();
+
+        // 共享的上游调用需要排队时回调，参数为入队时的排队总数；已开始输出后加入的跟随者不会收到
+        void onQueued(int position);
+    }
+
+    private final class Flight {
+
+        private final Sinks.Many<Integer> queued = Sinks.many().replay().latest();
+        private final Flux<String> deltas;
+        private volatile boolean started;
+
+        private Flight(String key, Function<IntConsumer, Flux<String>> upstream) {
+            this.deltas = Flux.defer(() -> {
+                        StringBuilder answer = new StringBuilder();
+                        return upstream.apply(position -> queued.tryEmitNext(position))
+                                .doOnNext(delta -> {
+                                    started = true;
+                                    answer.append(delta);
+                                })
+                                // 只有完整结束的回答才进入缓存，出错的流不缓存
+                                .doOnComplete(() -> answers.put(key, answer.toString()));
+                    })
+                    .doFinally(signal -> {
+                        inFlight.remove(key, this);
+                        queued.tryEmitComplete();
+                    })
+                    // 后加入的订阅者会先收到已产生的片段，再继续接收后续片段。
+                    // 上游只连接一次：订阅者全部断开后仍跑完并写入缓存，结束后的订阅只会重放结果，不会再次调用上游
+                    .replay()
+                    .autoConnect();
+        }
+    }
+
+    static String cacheKey(Prompt prompt, String orgTags) {
+        MessageDigest digest = sha256();
+        update(digest, tenantScope(orgTags));
+        update(digest, prompt.model());
+        update(digest, prompt.systemPrompt());
+        update(digest, prompt.context());
+        // 历史不同的追问不能共享回答；新会话的首个问题历史为空，仍可命中
+        for (PromptMessage message : prompt.history()) {
+            update(digest, message.role().name());
+            update(digest, message.content());
+        }
+        update(digest, canonicalText(prompt.userText()));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // 规范化 orgTags（去空白、去重、排序），标签顺序不同的同一租户落在同一范围
+    static String tenantScope(String orgTags) {
+        if (orgTags == null || orgTags.isBlank()) {
+            return "";
+        }
+        return Arrays.stream(orgTags.split(","))
+                .map(String::trim)
+                .filter(tag -> !tag.isEmpty())
+                .distinct()
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    // 用户输入只做无语义影响的规范化：Unicode NFC、首尾去空白、连续空白折叠
+    static String canonicalText(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text.strip(), Normalizer.Form.NFC);
+        return WHITESPACE.matcher(normalized).replaceAll(" ");
+    }
+
+    private static void update(MessageDigest digest, String part) {
+        if (part != null) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+        }
+        // 字段分隔符，避免 ("ab","c") 与 ("a","bc") 产生相同摘要
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ai.response.cache.requests")
+                .description("Prompt requests by response cache outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,32 @@
+package com.hunkyhsu.ragagent.provider;
+
+import com.hunkyhsu.ragagent.config.AiProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+/**
+ * 本地 mock 实现：逐词回显用户输入，用于开发和压测，不访问外部 LLM
+ */
+@Component
+@ConditionalOnProperty(prefix = "ai", name = "provider", havingValue = "mock", matchIfMissing = true)
+public class MockAiProvider implements AiProvider {
+
+    private final AiProperties aiProperties;
+
+    public MockAiProvider(AiProperties aiProperties) {
+        this.aiProperties = aiProperties;
+    }
+
+    @Override
+    public Flux<String> streamReply(Prompt prompt) {
+        String reply = "Echo: " + prompt.userText();
+        return Flux.fromArray(reply.split("(?<= )"))
+                .delayElements(aiProperties.getMockTokenDelay());
+    }
+
+    @Override
+    public String name() {
+        return "mock";
+    }
+}
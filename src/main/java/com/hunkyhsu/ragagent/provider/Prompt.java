@@ -0,0 +1,13 @@
+package com.hunkyhsu.ragagent.provider;
+
+import java.util.List;
+
+public record Prompt(
+        String model,
+        String systemPrompt,
+        // 检索得到的上下文，没有检索时为空串
+        String context,
+        // 按 token 预算裁剪后的历史消息（含滚动摘要）
+        List<PromptMessage> history,
+        String userText
+) { }
@@ -0,0 +1,8 @@
+package com.hunkyhsu.ragagent.provider;
+
+import com.hunkyhsu.ragagent.entity.Message;
+
+public record PromptMessage(
+        Message.Role role,
+        String content
+) { }
@@ -0,0 +1,321 @@
+package com.hunkyhsu.ragagent.provider;
+
+import com.hunkyhsu.ragagent.config.AiProperties;
+import com.hunkyhsu.ragagent.entity.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * AiProvider 前的调度层：全局并发上限由 AdaptiveConcurrencyLimit 按上游首 token 延迟自适应调整，
+ * 超出上限的请求按「租户 -> 用户」两级加权公平排队。每一级用 stride 调度近似 WFQ：
+ * 每个流维护 pass 值，每被服务一次 pass += 1/weight，总是先服务 pass 最小的流；
+ * 空闲后重新活跃的流 pass 追到当前值，不能靠空闲期积攒额度插队。
+ * 只有真正调用上游的请求经过这里，缓存命中和 single-flight 跟随者不占配额
+ */
+@Component
+public class UpstreamScheduler {
+
+    private static final int QUEUED = 0;
+    private static final int GRANTED = 1;
+    private static final int STARTED = 2;
+    private static final int CANCELLED = 3;
+    private static final int RELEASED = 4;
+
+    private final AiProperties.Scheduler properties;
+    private final AdaptiveConcurrencyLimit limit;
+    private final ReentrantLock lock = new ReentrantLock();
+    // 以下状态均由 lock 保护
+    private final Map<String, TenantFlow> tenants = new HashMap<>();
+    private double tenantPass;
+    private int inFlight;
+    private int queued;
+
+    private final Timer queueWait;
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedUserQueueFull;
+    private final Counter rejectedTimeout;
+
+    public UpstreamScheduler(AiProperties aiProperties, MeterRegistry meterRegistry) {
+        this.properties = aiProperties.getScheduler();
+        this.limit = new AdaptiveConcurrencyLimit(properties.getInitialLimit(), properties.getMinLimit(),
+                properties.getMaxLimit(), properties.getBackoffRatio(), properties.getLatencyTarget().toNanos());
+        this.queueWait = Timer.builder("ai.scheduler.queue_wait")
+                .description("Time a generation waited for an upstream concurrency slot")
+                .publishPercentileHistogram()
+                .maximumExpectedValue(properties.getMaxQueueWait())
+                .register(meterRegistry);
+        this.rejectedQueueFull = rejectedCounter(meterRegistry, "queue_full");
+        this.rejectedUserQueueFull = rejectedCounter(meterRegistry, "user_queue_full");
+        this.rejectedTimeout = rejectedCounter(meterRegistry, "timeout");
+        Gauge.builder("ai.scheduler.limit", this, scheduler -> scheduler.locked(scheduler.limit::current))
+                .description("Current adaptive upstream concurrency limit")
+                .register(meterRegistry);
+        Gauge.builder("ai.scheduler.in_flight", this, scheduler -> scheduler.locked(() -> scheduler.inFlight))
+                .description("Upstream generations holding a concurrency slot")
+                .register(meterRegistry);
+        Gauge.builder("ai.scheduler.queued", this, scheduler -> scheduler.locked(() -> scheduler.queued))
+                .description("Generations waiting for an upstream concurrency slot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param user     发起请求的用户，决定所属租户和权重
+     * @param onQueued 需要排队时回调一次，参数为入队时的排队总数
+     * @param upstream 获得配额后真正调用上游的流
+     */
+    public Flux<String> schedule(User user, IntConsumer onQueued, Supplier<Flux<String>> upstream) {
+        if (!properties.isEnabled()) {
+            return upstream.get();
+        }
+        return Mono.<Ticket>create(sink -> acquire(new Ticket(user, sink), onQueued))
+                .timeout(properties.getMaxQueueWait(), Mono.defer(() -> {
+                    rejectedTimeout.increment();
+                    return Mono.error(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "upstream_queue_timeout"));
+                }))
+                .flatMapMany(ticket -> {
+                    if (!ticket.state.compareAndSet(GRANTED, STARTED)) {
+                        return Flux.empty();
+                    }
+                    long startedAt = System.nanoTime();
+                    boolean[] firstToken = new boolean[1];
+                    return upstream.get()
+                            .doOnNext(delta -> {
+                                if (!firstToken[0]) {
+                                    firstToken[0] = true;
+                                    sample(System.nanoTime() - startedAt);
+                                }
+                            })
+                            .doOnError(ex -> {
+                                if (!firstToken[0]) {
+                                    sample(-1);
+                                }
+                            })
+                            .doFinally(signal -> release(ticket));
+                });
+    }
+
+    private void acquire(Ticket ticket, IntConsumer onQueued) {
+        ticket.sink.onCancel(() -> cancel(ticket));
+        int position;
+        lock.lock();
+        try {
+            if (queued == 0 && inFlight < limit.current()) {
+                if (!ticket.state.compareAndSet(QUEUED, GRANTED)) {
+                    return;
+                }
+                inFlight++;
+                position = 0;
+            } else if (queued >= properties.getMaxQueued()) {
+                position = -1;
+            } else {
+                TenantFlow tenant = tenants.computeIfAbsent(ticket.tenant,
+                        key -> new TenantFlow(properties.weightOfTenant(key)));
+                UserFlow flow = tenant.users.computeIfAbsent(ticket.userId,
+                        key -> new UserFlow(properties.weightOf(ticket.role)));
+                if (flow.queue.size() >= properties.getMaxQueuedPerUser()) {
+                    position = -2;
+                } else {
+                    if (tenant.queued == 0) {
+                        tenant.pass = Math.max(tenant.pass, tenantPass);
+                    }
+                    if (flow.queue.isEmpty()) {
+                        flow.pass = Math.max(flow.pass, tenant.userPass);
+                    }
+                    flow.queue.add(ticket);
+                    tenant.queued++;
+                    position = ++queued;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (position == 0) {
+            queueWait.record(0, TimeUnit.NANOSECONDS);
+            ticket.sink.success(ticket);
+            return;
+        }
+        if (position == -1) {
+            rejectedQueueFull.increment();
+            ticket.sink.error(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "upstream_queue_full"));
+            return;
+        }
+        if (position == -2) {
+            rejectedUserQueueFull.increment();
+            ticket.sink.error(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "user_queue_full"));
+            return;
+        }
+        if (properties.isNotifyQueued()) {
+            onQueued.accept(position);
+        }
+    }
+
+    // 排队中被取消（超时或客户端放弃）时出队；已分配配额但尚未开始调用上游时归还配额
+    private void cancel(Ticket ticket) {
+        if (ticket.state.compareAndSet(QUEUED, CANCELLED)) {
+            lock.lock();
+            try {
+                TenantFlow tenant = tenants.get(ticket.tenant);
+                UserFlow flow = tenant == null ? null : tenant.users.get(ticket.userId);
+                if (flow != null && flow.queue.remove(ticket)) {
+                    tenant.queued--;
+                    queued--;
+                }
+            } finally {
+                lock.unlock();
+            }
+        } else if (ticket.state.compareAndSet(GRANTED, CANCELLED)) {
+            releaseSlot();
+        }
+    }
+
+    /**
+     * 首 token 延迟作为 AIMD 样本：上游排队和预填充的压力都先体现在这里，早于超时出现。
+     * 首 token 前出错记为失败样本（-1）
+     */
+    private void sample(long latencyNanos) {
+        lock.lock();
+        try {
+            limit.onSample(latencyNanos, inFlight, System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 配额覆盖整个生成过程（含逐 token 输出），流结束、出错或被取消时归还
+    private void release(Ticket ticket) {
+        if (ticket.state.compareAndSet(STARTED, RELEASED)) {
+            releaseSlot();
+        }
+    }
+
+    private void releaseSlot() {
+        List<Ticket> granted = new ArrayList<>();
+        lock.lock();
+        try {
+            inFlight--;
+            while (queued > 0 && inFlight < limit.current()) {
+                Ticket next = poll();
+                if (next.state.compareAndSet(QUEUED, GRANTED)) {
+                    inFlight++;
+                    granted.add(next);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Ticket ticket : granted) {
+            queueWait.record(System.nanoTime() - ticket.enqueuedAt, TimeUnit.NANOSECONDS);
+            ticket.sink.success(ticket);
+        }
+    }
+
+    // 先选 pass 最小的租户，再选该租户内 pass 最小的用户；顺带清理已空闲且没有欠账的流
+    private Ticket poll() {
+        TenantFlow tenant = null;
+        for (Iterator<TenantFlow> it = tenants.values().iterator(); it.hasNext(); ) {
+            TenantFlow candidate = it.next();
+            if (candidate.queued == 0) {
+                if (candidate.pass <= tenantPass) {
+                    it.remove();
+                }
+            } else if (tenant == null || candidate.pass < tenant.pass) {
+                tenant = candidate;
+            }
+        }
+        UserFlow flow = null;
+        for (Iterator<UserFlow> it = tenant.users.values().iterator(); it.hasNext(); ) {
+            UserFlow candidate = it.next();
+            if (candidate.queue.isEmpty()) {
+                if (candidate.pass <= tenant.userPass) {
+                    it.remove();
+                }
+            } else if (flow == null || candidate.pass < flow.pass) {
+                flow = candidate;
+            }
+        }
+        tenantPass = tenant.pass;
+        tenant.pass += 1.0 / tenant.weight;
+        tenant.userPass = flow.pass;
+        flow.pass += 1.0 / flow.weight;
+        tenant.queued--;
+        queued--;
+        return flow.queue.poll();
+    }
+
+    private double locked(Supplier<Integer> read) {
+        lock.lock();
+        try {
+            return read.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("ai.scheduler.rejected")
+                .description("Generations rejected before reaching the upstream")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static final class Ticket {
+        private final Long userId;
+        private final User.Role role;
+        private final String tenant;
+        private final MonoSink<Ticket> sink;
+        private final long enqueuedAt = System.nanoTime();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        private Ticket(User user, MonoSink<Ticket> sink) {
+            this.userId = user.getId();
+            this.role = user.getRole();
+            this.tenant = AiResponseCache.tenantScope(user.getOrgTags());
+            this.sink = sink;
+        }
+    }
+
+    private static final class TenantFlow {
+        private final int weight;
+        private final Map<Long, UserFlow> users = new LinkedHashMap<>();
+        private double pass;
+        // 租户内最近一次被服务的用户 pass，新活跃用户从这里起步
+        private double userPass;
+        private int queued;
+
+        private TenantFlow(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final class UserFlow {
+        private final int weight;
+        private final ArrayDeque<Ticket> queue = new ArrayDeque<>();
+        private double pass;
+
+        private UserFlow(int weight) {
+            this.weight = weight;
+        }
+    }
+}
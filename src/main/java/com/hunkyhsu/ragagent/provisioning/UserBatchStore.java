@@ -0,0 +1,130 @@
+package com.hunkyhsu.ragagent.provisioning;
+
+import com.hunkyhsu.ragagent.entity.User;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * 批量开户的集合式读写。users 表的 username、email 唯一键使用不区分大小写的排序规则，
+ * 这里返回的键统一转小写后再比较。
+ * insert 依赖 MySQL 驱动的 rewriteBatchedStatements=true（写在 JDBC URL 或连接池的 data-source-properties 中）
+ * 把一块合并为一条多值 INSERT；未开启时每行一次往返，一块 500 行要多出数百次网络往返，启动时检查并告警
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserBatchStore {
+
+    static final String REWRITE_BATCHED = "rewriteBatchedStatements";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void verifyBatchRewrite() {
+        DataSource dataSource = jdbcTemplate.getDataSource();
+        if (!(dataSource instanceof HikariDataSource hikari)
+                || hikari.getJdbcUrl() == null || !hikari.getJdbcUrl().startsWith("jdbc:mysql:")) {
+            return;
+        }
+        if (!rewritesBatches(hikari.getJdbcUrl(), hikari.getDataSourceProperties())) {
+            log.warn("{}=true is not set on the MySQL data source; bulk provisioning inserts will be sent row by row",
+                    REWRITE_BATCHED);
+        }
+    }
+
+    static boolean rewritesBatches(String url, Properties dataSourceProperties) {
+        if (Boolean.parseBoolean(dataSourceProperties.getProperty(REWRITE_BATCHED))) {
+            return true;
+        }
+        int query = url.indexOf('?');
+        if (query < 0) {
+            return false;
+        }
+        for (String parameter : url.substring(query + 1).split("&")) {
+            if (parameter.equalsIgnoreCase(REWRITE_BATCHED + "=true")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<String> existingUsernames(Collection<String> usernames) {
+        return existing("username", usernames);
+    }
+
+    public Set<String> existingEmails(Collection<String> emails) {
+        return existing("email", emails);
+    }
+
+    /**
+     * 多行写入；并发注册抢先占用的用户名或邮箱由 INSERT IGNORE 跳过，
+     * 驱动合并为多值 INSERT 后拿不到逐行影响行数，结果由 findCreated 回查
+     */
+    public void insert(List<NewUser> users) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.batchUpdate(
+                "INSERT IGNORE INTO users (username, password, email, role, org_tags, created_time) "
+                        + "VALUES (?, ?, ?, ?, ?, ?)",
+                users, users.size(), (ps, user) -> {
+                    ps.setString(1, user.username());
+                    ps.setString(2, user.passwordHash());
+                    ps.setString(3, user.email());
+                    ps.setString(4, User.Role.USER.name());
+                    ps.setString(5, user.orgTags());
+                    ps.setTimestamp(6, now);
+                });
+    }
+
+    /**
+     * 返回本批写入成功的用户 id，键为小写用户名。BCrypt 哈希带随机盐，哈希相同即可确认是本批写入的行
+     */
+    public Map<String, Long> findCreated(List<NewUser> users) {
+        Map<String, String> hashes = new HashMap<>();
+        for (NewUser user : users) {
+            hashes.put(user.username().toLowerCase(Locale.ROOT), user.passwordHash());
+        }
+        Map<String, Long> created = new HashMap<>();
+        namedParameterJdbcTemplate.query("SELECT id, username, password FROM users WHERE username IN (:usernames)",
+                new MapSqlParameterSource("usernames", users.stream().map(NewUser::username).toList()),
+                (RowCallbackHandler) rs -> {
+                    String key = rs.getString(2).toLowerCase(Locale.ROOT);
+                    if (rs.getString(3).equals(hashes.get(key))) {
+                        created.put(key, rs.getLong(1));
+                    }
+                });
+        return created;
+    }
+
+    private Set<String> existing(String column, Collection<String> values) {
+        Set<String> existing = new HashSet<>();
+        if (values.isEmpty()) {
+            return existing;
+        }
+        namedParameterJdbcTemplate.query("SELECT " + column + " FROM users WHERE " + column + " IN (:values)",
+                new MapSqlParameterSource("values", values),
+                (RowCallbackHandler) rs -> existing.add(rs.getString(1).toLowerCase(Locale.ROOT)));
+        return existing;
+    }
+
+    public record NewUser(String username, String passwordHash, String email, String orgTags) { }
+}
@@ -0,0 +1,9 @@
+package com.hunkyhsu.ragagent.repository;
+
+import com.hunkyhsu.ragagent.entity.ConversationSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ConversationSummaryRepository extends JpaRepository<ConversationSummary, Long> {
+}
@@ -0,0 +1,72 @@
+package com.hunkyhsu.ragagent.repository;
+
+import com.hunkyhsu.ragagent.entity.ExportJob;
+import com.hunkyhsu.ragagent.entity.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ExportJobRepository extends JpaRepository<ExportJob, Long> {
+    List<ExportJob> findByUserOrderByCreatedTimeDesc(User user);
+
+    Optional<ExportJob> findByIdAndUser(Long id, User user);
+
+    boolean existsByUserAndStatusIn(User user, Collection<ExportJob.Status> statuses);
+
+    // 待执行的任务，以及执行实例心跳已超时（崩溃或被强杀）的任务
+    @Query("SELECT j.id FROM ExportJob j WHERE j.status = 'PENDING' "
+            + "OR (j.status = 'RUNNING' AND j.heartbeatTime < :staleBefore) ORDER BY j.id")
+    List<Long> findClaimable(@Param("staleBefore") LocalDateTime staleBefore, Pageable pageable);
+
+    @Query("SELECT j FROM ExportJob j WHERE j.status IN ('COMPLETED', 'FAILED') AND j.expiresTime < :now")
+    List<ExportJob> findExpired(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // 条件更新实现抢占：多个实例同时抢同一任务时只有一个能更新成功
+    @Transactional
+    @Modifying
+    @Query("UPDATE ExportJob j SET j.status = 'RUNNING', j.owner = :owner, j.heartbeatTime = :now "
+            + "WHERE j.id = :id AND (j.status = 'PENDING' OR (j.status = 'RUNNING' AND j.heartbeatTime < :staleBefore))")
+    int claim(@Param("id") Long id, @Param("owner") String owner, @Param("now") LocalDateTime now,
+              @Param("staleBefore") LocalDateTime staleBefore);
+
+    // 返回 0 说明任务已被其他实例接手，当前执行者应当停止
+    @Transactional
+    @Modifying
+    @Query("UPDATE ExportJob j SET j.heartbeatTime = :now, j.cursorConversationId = :conversationId, "
+            + "j.cursorMessageId = :messageId, j.bytesWritten = :bytes, "
+            + "j.exportedConversations = :conversations, j.exportedMessages = :messages "
+            + "WHERE j.id = :id AND j.owner = :owner AND j.status = 'RUNNING'")
+    int checkpoint(@Param("id") Long id, @Param("owner") String owner, @Param("now") LocalDateTime now,
+                   @Param("conversationId") long conversationId, @Param("messageId") long messageId,
+                   @Param("bytes") long bytes, @Param("conversations") long conversations,
+                   @Param("messages") long messages);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ExportJob j SET j.status = :status, j.owner = NULL, j.errorMessage = :error, "
+            + "j.completedTime = :now, j.expiresTime = :expires WHERE j.id = :id AND j.owner = :owner")
+    int finish(@Param("id") Long id, @Param("owner") String owner, @Param("status") ExportJob.Status status,
+               @Param("error") String error, @Param("now") LocalDateTime now,
+               @Param("expires") LocalDateTime expires);
+
+    // 正常停机时把任务交还队列，重启或其他实例从检查点继续
+    @Transactional
+    @Modifying
+    @Query("UPDATE ExportJob j SET j.status = 'PENDING', j.owner = NULL WHERE j.id = :id AND j.owner = :owner")
+    int release(@Param("id") Long id, @Param("owner") String owner);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ExportJob j SET j.status = 'EXPIRED' WHERE j.id = :id")
+    int markExpired(@Param("id") Long id);
+}
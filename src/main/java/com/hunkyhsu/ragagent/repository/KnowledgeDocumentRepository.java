@@ -0,0 +1,83 @@
+package com.hunkyhsu.ragagent.repository;
+
+import com.hunkyhsu.ragagent.entity.KnowledgeDocument;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface KnowledgeDocumentRepository extends JpaRepository<KnowledgeDocument, Long> {
+    List<KnowledgeDocument> findByOrgTagInOrderByCreatedTimeDesc(Collection<String> orgTags);
+
+    // 进度由多个嵌入线程并发累加，用原子 UPDATE 代替读-改-写。
+    // 导入过程中的每次更新都刷新 updatedTime，作为执行实例仍然存活的心跳，见 findStalled
+    @Transactional
+    @Modifying
+    @Query("UPDATE KnowledgeDocument d SET d.embeddedChunks = d.embeddedChunks + :delta, "
+            + "d.updatedTime = CURRENT_TIMESTAMP WHERE d.id = :id")
+    int addEmbeddedChunks(@Param("id") Long id, @Param("delta") int delta);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE KnowledgeDocument d SET d.status = :status, d.errorMessage = :error, "
+            + "d.updatedTime = CURRENT_TIMESTAMP WHERE d.id = :id")
+    int updateStatus(@Param("id") Long id,
+                     @Param("status") KnowledgeDocument.Status status,
+                     @Param("error") String error);
+
+    // 只有仍处于 expected 状态的文档才会切换，用于导入完成时避免覆盖停滞清理写入的 FAILED
+    @Transactional
+    @Modifying
+    @Query("UPDATE KnowledgeDocument d SET d.status = :status, d.errorMessage = null, "
+            + "d.updatedTime = CURRENT_TIMESTAMP WHERE d.id = :id AND d.status = :expected")
+    int transitionStatus(@Param("id") Long id,
+                         @Param("expected") KnowledgeDocument.Status expected,
+                         @Param("status") KnowledgeDocument.Status status);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE KnowledgeDocument d SET d.status = :status, d.totalChunks = :total, "
+            + "d.updatedTime = CURRENT_TIMESTAMP WHERE d.id = :id")
+    int startProcessing(@Param("id") Long id,
+                        @Param("status") KnowledgeDocument.Status status,
+                        @Param("total") int total);
+
+    // 版本和状态同时匹配才能开始重新导入，并发请求中只有一个会更新成功
+    @Transactional
+    @Modifying
+    @Query("UPDATE KnowledgeDocument d SET d.status = :status, d.errorMessage = null, "
+            + "d.updatedTime = CURRENT_TIMESTAMP WHERE d.id = :id AND d.version = :version AND d.status IN :idle")
+    int claimReindex(@Param("id") Long id,
+                     @Param("version") int version,
+                     @Param("idle") Collection<KnowledgeDocument.Status> idle,
+                     @Param("status") KnowledgeDocument.Status status);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE KnowledgeDocument d SET d.totalChunks = :total, d.embeddedChunks = :embedded, "
+            + "d.updatedTime = CURRENT_TIMESTAMP WHERE d.id = :id")
+    int resetProgress(@Param("id") Long id,
+                      @Param("total") int total,
+                      @Param("embedded") int embedded);
+
+    // 导入中但超过 stalledSeconds 没有任何进度的文档，执行实例已经崩溃或被强杀。时间都取数据库时钟
+    @Query(value = "SELECT id FROM documents WHERE status IN ('PENDING', 'PROCESSING') "
+            + "AND COALESCE(updated_time, created_time) < NOW() - INTERVAL :stalledSeconds SECOND", nativeQuery = true)
+    List<Long> findStalled(@Param("stalledSeconds") long stalledSeconds);
+
+    // 与 findStalled 相同的条件再判断一次，期间恢复了进度的文档不会被误判
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE documents SET status = 'FAILED', error_message = :error, updated_time = CURRENT_TIMESTAMP "
+            + "WHERE id = :id AND status IN ('PENDING', 'PROCESSING') "
+            + "AND COALESCE(updated_time, created_time) < NOW() - INTERVAL :stalledSeconds SECOND", nativeQuery = true)
+    int failStalled(@Param("id") Long id,
+                    @Param("stalledSeconds") long stalledSeconds,
+                    @Param("error") String error);
+}
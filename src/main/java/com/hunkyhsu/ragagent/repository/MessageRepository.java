@@ -2,6 +2,7 @@ package com.hunkyhsu.ragagent.repository;
 
 import com.hunkyhsu.ragagent.entity.Conversation;
 import com.hunkyhsu.ragagent.entity.Message;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -12,4 +13,12 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     List<Message> findByConversationOrderByCreatedTimeAsc(Conversation conversation);
 
     long countByConversation(Conversation conversation);
+
+    // 上下文组装按主键增量读取，避免每轮加载整段历史
+    List<Message> findByConversationAndIdGreaterThanOrderByIdAsc(Conversation conversation, Long id);
+
+    List<Message> findByConversationAndIdGreaterThanOrderByIdDesc(Conversation conversation, Long id, Pageable pageable);
+
+    List<Message> findByConversationAndIdGreaterThanAndIdLessThanOrderByIdAsc(
+            Conversation conversation, Long afterId, Long beforeId, Pageable pageable);
 }
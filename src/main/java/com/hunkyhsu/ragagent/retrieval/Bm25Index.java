@@ -0,0 +1,163 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+import com.hunkyhsu.ragagent.config.RetrievalProperties;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 内存 BM25 倒排索引。每个词的倒排表是一个片段 id 位图加一张词频表，
+ * 查询时先把倒排位图与调用者的可见位图求交，只对交集中的片段打分。
+ * 删除的片段记入墓碑位图，立即从文档数和平均长度中扣除，查询时从倒排中排除；
+ * 墓碑数达到已索引片段的 1/8 时整体清扫一遍倒排表，回收墓碑占用的空间。
+ */
+@Component
+public class Bm25Index {
+
+    private final float k1;
+    private final float b;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Posting> postings = new HashMap<>();
+    private final IntFloatMap lengths = new IntFloatMap(1024);
+    private final RoaringBitmap tombstones = new RoaringBitmap();
+    private long totalLength;
+
+    public Bm25Index(RetrievalProperties properties) {
+        this.k1 = properties.getBm25K1();
+        this.b = properties.getBm25B();
+    }
+
+    public void add(int chunkId, String text) {
+        List<String> terms = TextAnalyzer.terms(text);
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : terms) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        lock.writeLock().lock();
+        try {
+            if (lengths.containsKey(chunkId) || tombstones.contains(chunkId)) {
+                return;
+            }
+            lengths.put(chunkId, terms.size());
+            totalLength += terms.size();
+            frequencies.forEach((term, frequency) ->
+                    postings.computeIfAbsent(term, key -> new Posting()).add(chunkId, frequency));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void delete(int[] chunkIds) {
+        lock.writeLock().lock();
+        try {
+            for (int chunkId : chunkIds) {
+                if (lengths.containsKey(chunkId)) {
+                    totalLength -= (long) lengths.remove(chunkId);
+                }
+                tombstones.add(chunkId);
+            }
+            if (tombstones.getCardinality() >= Math.max(1024, lengths.size() / 8)) {
+                purge();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return lengths.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param visible 调用者可见的片段集合
+     * @return 按分数降序的前 k 个片段
+     */
+    public List<ChunkScore> search(String query, RoaringBitmap visible, int k) {
+        Set<String> terms = new LinkedHashSet<>(TextAnalyzer.terms(query));
+        if (terms.isEmpty() || visible.isEmpty()) {
+            return List.of();
+        }
+        IntFloatMap scores = new IntFloatMap(256);
+        lock.readLock().lock();
+        try {
+            int documents = lengths.size();
+            if (documents == 0) {
+                return List.of();
+            }
+            float averageLength = (float) totalLength / documents;
+            for (String term : terms) {
+                Posting posting = postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+                // idf 按全量文档计算，保证同一片段对不同租户的分数一致
+                int df = posting.chunks.getCardinality() - RoaringBitmap.andCardinality(posting.chunks, tombstones);
+                float idf = (float) Math.log(1 + (documents - df + 0.5) / (df + 0.5));
+                RoaringBitmap matched = RoaringBitmap.and(posting.chunks, visible);
+                matched.andNot(tombstones);
+                IntIterator candidates = matched.getIntIterator();
+                while (candidates.hasNext()) {
+                    int chunkId = candidates.next();
+                    float tf = posting.frequencies.get(chunkId);
+                    float norm = k1 * (1 - b + b * lengths.get(chunkId) / averageLength);
+                    scores.add(chunkId, idf * tf * (k1 + 1) / (tf + norm));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        PriorityQueue<ChunkScore> top = new PriorityQueue<>(k + 1, Comparator.comparingDouble(ChunkScore::score));
+        scores.forEach((chunkId, score) -> {
+            if (top.size() < k) {
+                top.add(new ChunkScore(chunkId, score));
+            } else if (score > top.peek().score()) {
+                top.poll();
+                top.add(new ChunkScore(chunkId, score));
+            }
+        });
+        List<ChunkScore> result = new ArrayList<>(top);
+        result.sort(Comparator.comparingDouble(ChunkScore::score).reversed());
+        return result;
+    }
+
+    // 持有写锁时调用：从所有倒排表中移除墓碑片段，空倒排表连同词条一起删除
+    private void purge() {
+        postings.values().removeIf(posting -> {
+            if (RoaringBitmap.intersects(posting.chunks, tombstones)) {
+                IntIterator removed = RoaringBitmap.and(posting.chunks, tombstones).getIntIterator();
+                while (removed.hasNext()) {
+                    posting.frequencies.remove(removed.next());
+                }
+                posting.chunks.andNot(tombstones);
+            }
+            return posting.chunks.isEmpty();
+        });
+        tombstones.clear();
+    }
+
+    private static final class Posting {
+        private final RoaringBitmap chunks = new RoaringBitmap();
+        private final IntFloatMap frequencies = new IntFloatMap(4);
+
+        private void add(int chunkId, int frequency) {
+            chunks.add(chunkId);
+            frequencies.put(chunkId, frequency);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+/**
+ * 关键词索引与标签位图以 int 保存片段 id（Roaring 位图按 32 位无符号整数组织），
+ * 因此 document_chunks.id（BIGINT 自增）必须小于 2^31。
+ * 接近上限前需要把 OrgTagBitmaps 与 Bm25Index 换成 Roaring64NavigableMap 和 long 键，
+ * 或者通过迁移把片段重新编号；在此之前超限的片段拒绝入库，而不是被截断成错误的 id。
+ */
+public final class ChunkIds {
+
+    private ChunkIds() {
+    }
+
+    public static int toInt(long chunkId) {
+        if (chunkId < 0 || chunkId > Integer.MAX_VALUE) {
+            throw new IllegalStateException("chunk id " + chunkId
+                    + " exceeds the 32-bit range of the keyword index and tag bitmaps");
+        }
+        return (int) chunkId;
+    }
+}
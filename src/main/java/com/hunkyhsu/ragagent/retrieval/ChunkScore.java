@@ -0,0 +1,3 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+public record ChunkScore(int chunkId, float score) { }
@@ -0,0 +1,90 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+import com.hunkyhsu.ragagent.config.RetrievalProperties;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.ingestion.ChunkStore;
+import com.hunkyhsu.ragagent.ingestion.Embedder;
+import com.hunkyhsu.ragagent.ingestion.StoredChunk;
+import com.hunkyhsu.ragagent.vector.VectorHit;
+import com.hunkyhsu.ragagent.vector.VectorIndex;
+import lombok.RequiredArgsConstructor;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 混合检索：BM25 关键词检索与向量检索各取候选，按 Reciprocal Rank Fusion 融合排序。
+ * 两路检索都在调用者的可见片段集合内进行（位图求交 / 图遍历时过滤），而不是检索后再过滤，
+ * 因此权限过滤不会挤掉本应命中的结果。
+ * 排序结果和查询向量经 RetrievalCache 缓存，知识库未变化时相同问题不再重复检索。
+ */
+@Service
+@RequiredArgsConstructor
+public class HybridRetriever {
+
+    private final OrgTagRegistry orgTagRegistry;
+    private final OrgTagBitmaps orgTagBitmaps;
+    private final Bm25Index bm25Index;
+    private final VectorIndex vectorIndex;
+    private final Embedder embedder;
+    private final ChunkStore chunkStore;
+    private final RetrievalProperties properties;
+    private final RetrievalCache retrievalCache;
+
+    public List<RetrievedChunk> retrieve(User user, String query) {
+        if (!properties.isEnabled() || query == null || query.isBlank()) {
+            return List.of();
+        }
+        // 正常情况下标签 id 已在令牌校验时驻留，这里只兜底未经过过滤器的调用
+        int[] tagIds = user.getOrgTagIds() != null ? user.getOrgTagIds() : orgTagRegistry.intern(user.orgTagSet());
+        String normalized = RetrievalCache.normalize(query);
+        List<ChunkScore> ranked = retrievalCache.ranked(normalized, tagIds, () -> rank(normalized, tagIds));
+        if (ranked.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, StoredChunk> chunks = chunkStore.findChunks(ranked.stream().map(hit -> (long) hit.chunkId()).toList());
+        List<RetrievedChunk> results = new ArrayList<>(ranked.size());
+        for (ChunkScore hit : ranked) {
+            StoredChunk chunk = chunks.get((long) hit.chunkId());
+            if (chunk != null) {
+                results.add(new RetrievedChunk(chunk.id(), chunk.documentId(), chunk.heading(),
+                        chunk.content(), hit.score()));
+            }
+        }
+        return results;
+    }
+
+    // BM25 与向量检索各取候选，RRF 融合后截取 topK
+    private List<ChunkScore> rank(String query, int[] tagIds) {
+        RoaringBitmap visible = orgTagBitmaps.visible(tagIds);
+        if (visible.isEmpty()) {
+            return List.of();
+        }
+        int candidates = properties.getCandidates();
+        List<ChunkScore> lexical = bm25Index.search(query, visible, candidates);
+        float[] embedding = retrievalCache.embedding(query, () -> embedder.embed(List.of(query)).get(0));
+        List<VectorHit> semantic = vectorIndex.search(embedding, candidates,
+                id -> visible.contains((int) id), visible.getLongCardinality(),
+                () -> Arrays.stream(visible.toArray()).asLongStream());
+
+        Map<Integer, Float> fused = new HashMap<>();
+        int rrfK = properties.getRrfK();
+        for (int rank = 0; rank < lexical.size(); rank++) {
+            fused.merge(lexical.get(rank).chunkId(), 1f / (rrfK + rank + 1), Float::sum);
+        }
+        for (int rank = 0; rank < semantic.size(); rank++) {
+            fused.merge((int) semantic.get(rank).id(), 1f / (rrfK + rank + 1), Float::sum);
+        }
+        List<ChunkScore> ranked = new ArrayList<>(fused.size());
+        fused.forEach((chunkId, score) -> ranked.add(new ChunkScore(chunkId, score)));
+        ranked.sort(Comparator.comparingDouble(ChunkScore::score).reversed());
+        return List.copyOf(ranked.subList(0, Math.min(properties.getTopK(), ranked.size())));
+    }
+}
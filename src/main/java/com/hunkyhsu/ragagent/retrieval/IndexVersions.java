@@ -0,0 +1,37 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 每个组织标签一个索引版本号，该标签下的片段变为可检索或不可检索后递增。
+ * 检索结果缓存的 key 含调用者所有标签的版本，版本变化后旧条目不再命中，由缓存容量淘汰。
+ * 必须先修改索引再递增版本：查询先读版本再检索，检索到一半的结果最多被记在旧版本下
+ */
+@Component
+public class IndexVersions {
+
+    private final ConcurrentMap<Integer, AtomicLong> versions = new ConcurrentHashMap<>();
+    // 启动时的全量重建不按标签递增，统一递增全局纪元
+    private final AtomicLong epoch = new AtomicLong();
+
+    public long version(int tagId) {
+        AtomicLong version = versions.get(tagId);
+        return version == null ? 0L : version.get();
+    }
+
+    public void bump(int tagId) {
+        versions.computeIfAbsent(tagId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    public long epoch() {
+        return epoch.get();
+    }
+
+    public void bumpAll() {
+        epoch.incrementAndGet();
+    }
+}
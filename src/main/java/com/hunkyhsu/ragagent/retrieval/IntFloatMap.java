@@ -0,0 +1,123 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+import java.util.Arrays;
+
+/**
+ * int -> float 开放寻址哈希表，用于词频、文档长度和打分累加，避免装箱。非线程安全
+ */
+public final class IntFloatMap {
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private float[] values;
+    private int size;
+
+    public IntFloatMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        keys = new int[capacity];
+        values = new float[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(int key) {
+        return keys[slot(keys, key)] == key;
+    }
+
+    public float get(int key) {
+        int slot = slot(keys, key);
+        return keys[slot] == key ? values[slot] : 0f;
+    }
+
+    public void put(int key, float value) {
+        int slot = slot(keys, key);
+        if (keys[slot] != key) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                values[slot] = value;
+                grow();
+                return;
+            }
+        }
+        values[slot] = value;
+    }
+
+    public void add(int key, float delta) {
+        int slot = slot(keys, key);
+        if (keys[slot] == key) {
+            values[slot] += delta;
+        } else {
+            put(key, delta);
+        }
+    }
+
+    public float remove(int key) {
+        int slot = slot(keys, key);
+        if (keys[slot] != key) {
+            return 0f;
+        }
+        float removed = values[slot];
+        // 线性探测表删除后需要回填后续冲突链
+        int mask = keys.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        size--;
+        return removed;
+    }
+
+    public void forEach(Entry consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        float[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new float[keys.length];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int slot(int[] keys, int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @FunctionalInterface
+    public interface Entry {
+        void accept(int key, float value);
+    }
+}
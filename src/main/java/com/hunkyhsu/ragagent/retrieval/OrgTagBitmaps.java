@@ -0,0 +1,125 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 每个组织标签一个 Roaring 位图，记录该标签可见的片段 id。
+ * 检索前先把调用者所有标签的位图求并集，得到的可见集合再与倒排表求交或作为向量检索的过滤条件。
+ * 文档切换版本时在同一把写锁内加入新片段、移除旧片段，检索看到的要么全是旧版本，要么全是新版本。
+ * 下线的片段记入 retired，向量索引合并清除这些片段的向量后再从 retired 中移除。
+ */
+@Component
+public class OrgTagBitmaps {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<RoaringBitmap> bitmaps = new ArrayList<>();
+    // 已下线的片段，防止启动加载与版本切换并发时把旧片段重新加回来
+    private final RoaringBitmap retired = new RoaringBitmap();
+    // 启动加载结束前回收的片段，加载可能还持有它们的旧行，结束后再从 retired 中移除
+    private final RoaringBitmap reclaimedWhileLoading = new RoaringBitmap();
+    private boolean loaded;
+
+    public void add(int tagId, int chunkId) {
+        lock.writeLock().lock();
+        try {
+            if (!retired.contains(chunkId)) {
+                bitmap(tagId).add(chunkId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 原子地切换可见片段：加入 added，移除 removed
+     */
+    public void replace(int tagId, int[] added, int[] removed) {
+        lock.writeLock().lock();
+        try {
+            RoaringBitmap gone = RoaringBitmap.bitmapOf(removed);
+            RoaringBitmap bitmap = bitmap(tagId);
+            bitmap.add(added);
+            bitmap.andNot(gone);
+            retired.or(gone);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 向量索引合并清除了这些片段的向量，片段 id 不会再被使用，不必继续记为已下线
+     */
+    public void forget(Roaring64Bitmap reclaimed) {
+        RoaringBitmap ids = new RoaringBitmap();
+        reclaimed.forEach(id -> {
+            if (id >= 0 && id <= Integer.MAX_VALUE) {
+                ids.add((int) id);
+            }
+        });
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                retired.andNot(ids);
+            } else {
+                reclaimedWhileLoading.or(ids);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 启动加载结束（成功或失败）后调用，之后只有新入库的片段会调用 add
+     */
+    public void loaded() {
+        lock.writeLock().lock();
+        try {
+            loaded = true;
+            retired.andNot(reclaimedWhileLoading);
+            reclaimedWhileLoading.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int retiredCount() {
+        lock.readLock().lock();
+        try {
+            return retired.getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return 新建的位图，调用方可以在锁外随意读取
+     */
+    public RoaringBitmap visible(int[] tagIds) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap result = new RoaringBitmap();
+            for (int tagId : tagIds) {
+                if (tagId < bitmaps.size()) {
+                    result.or(bitmaps.get(tagId));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private RoaringBitmap bitmap(int tagId) {
+        while (bitmaps.size() <= tagId) {
+            bitmaps.add(new RoaringBitmap());
+        }
+        return bitmaps.get(tagId);
+    }
+}
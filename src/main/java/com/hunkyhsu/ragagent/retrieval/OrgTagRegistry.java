@@ -0,0 +1,35 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 组织标签字符串到连续整数 id 的驻留表，检索时按 id 直接定位标签位图，不再做字符串比较
+ */
+@Component
+public class OrgTagRegistry {
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    public int intern(String tag) {
+        return ids.computeIfAbsent(tag.trim(), key -> next.getAndIncrement());
+    }
+
+    public int[] intern(Collection<String> tags) {
+        int[] result = new int[tags.size()];
+        int i = 0;
+        for (String tag : tags) {
+            result[i++] = intern(tag);
+        }
+        return result;
+    }
+
+    public int size() {
+        return next.get();
+    }
+}
@@ -0,0 +1,126 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hunkyhsu.ragagent.config.RetrievalProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * 检索路径上的两级缓存，均为 Caffeine（W-TinyLFU 淘汰）：
+ * 1. 规范化查询文本 -> 查询向量，与组织无关，同一问题只嵌入一次；
+ * 2. 规范化查询 + 调用者标签集合 + 各标签索引版本 -> 融合排序后的片段 id。
+ * 第二级命中时跳过嵌入、BM25 和向量检索，只按 id 取回片段正文。
+ * 命中时按该级最近未命中耗时的滑动平均累计节省的时间
+ */
+@Component
+public class RetrievalCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final boolean enabled;
+    private final IndexVersions indexVersions;
+    private final Level<String, float[]> embeddings;
+    private final Level<String, List<ChunkScore>> results;
+
+    public RetrievalCache(RetrievalProperties properties, IndexVersions indexVersions, MeterRegistry meterRegistry) {
+        this.enabled = properties.isCacheEnabled();
+        this.indexVersions = indexVersions;
+        this.embeddings = new Level<>("embedding", Caffeine.newBuilder()
+                .maximumSize(properties.getEmbeddingCacheSize())
+                .build(), meterRegistry);
+        // 版本号只覆盖本实例的索引变化，TTL 兜底其他途径的变化（如直接改库）
+        this.results = new Level<>("results", Caffeine.newBuilder()
+                .maximumSize(properties.getResultCacheSize())
+                .expireAfterWrite(properties.getResultCacheTtl())
+                .build(), meterRegistry);
+    }
+
+    /**
+     * NFKC 规范化、合并空白并去掉首尾空白；不改大小写，嵌入模型可能区分大小写
+     */
+    public static String normalize(String query) {
+        return WHITESPACE.matcher(Normalizer.normalize(query, Normalizer.Form.NFKC)).replaceAll(" ").strip();
+    }
+
+    public float[] embedding(String normalizedQuery, Supplier<float[]> embed) {
+        return enabled ? embeddings.get(normalizedQuery, embed) : embed.get();
+    }
+
+    /**
+     * @param tagIds 调用者的标签 id，key 按排序后的 id 生成，与标签顺序无关
+     */
+    public List<ChunkScore> ranked(String normalizedQuery, int[] tagIds, Supplier<List<ChunkScore>> rank) {
+        if (!enabled) {
+            return rank.get();
+        }
+        // 先读版本再检索，见 IndexVersions
+        int[] sorted = tagIds.clone();
+        Arrays.sort(sorted);
+        StringBuilder key = new StringBuilder(normalizedQuery.length() + 16 * sorted.length + 24)
+                .append(indexVersions.epoch());
+        for (int tagId : sorted) {
+            key.append('|').append(tagId).append(':').append(indexVersions.version(tagId));
+        }
+        key.append('\u0000').append(normalizedQuery);
+        return results.get(key.toString(), rank);
+    }
+
+    private static final class Level<K, V> {
+        private final Cache<K, V> cache;
+        private final Counter hits;
+        private final Counter misses;
+        private final Counter savedMillis;
+        // 未命中耗时的指数滑动平均（纳秒），命中时记为节省的时间
+        private volatile double missNanos;
+
+        private Level(String name, Cache<K, V> cache, MeterRegistry meterRegistry) {
+            this.cache = cache;
+            this.hits = Counter.builder("retrieval.cache.requests")
+                    .description("Retrieval cache lookups")
+                    .tag("cache", name)
+                    .tag("result", "hit")
+                    .register(meterRegistry);
+            this.misses = Counter.builder("retrieval.cache.requests")
+                    .description("Retrieval cache lookups")
+                    .tag("cache", name)
+                    .tag("result", "miss")
+                    .register(meterRegistry);
+            this.savedMillis = Counter.builder("retrieval.cache.saved")
+                    .description("Estimated time saved by cache hits, using the recent average miss cost")
+                    .baseUnit("milliseconds")
+                    .tag("cache", name)
+                    .register(meterRegistry);
+            Gauge.builder("retrieval.cache.size", cache, Cache::estimatedSize)
+                    .description("Entries held by the retrieval cache")
+                    .tag("cache", name)
+                    .register(meterRegistry);
+        }
+
+        // 不用 cache.get(key, loader)：检索耗时较长，不在 Caffeine 的哈希桶锁内执行；并发的相同未命中各算一次
+        private V get(K key, Supplier<V> loader) {
+            V cached = cache.getIfPresent(key);
+            if (cached != null) {
+                hits.increment();
+                savedMillis.increment(missNanos / 1_000_000);
+                return cached;
+            }
+            misses.increment();
+            long started = System.nanoTime();
+            V value = loader.get();
+            long elapsed = System.nanoTime() - started;
+            double previous = missNanos;
+            missNanos = previous == 0 ? elapsed : previous * 0.9 + elapsed * 0.1;
+            cache.put(key, value);
+            return value;
+        }
+    }
+}
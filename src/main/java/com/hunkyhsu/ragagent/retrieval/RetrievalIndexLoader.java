@@ -0,0 +1,47 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+import com.hunkyhsu.ragagent.ingestion.ChunkStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 关键词索引和标签位图只在内存中，启动后在后台从已存储的片段重建，不阻塞启动
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RetrievalIndexLoader {
+
+    private final ChunkStore chunkStore;
+    private final OrgTagRegistry orgTagRegistry;
+    private final OrgTagBitmaps orgTagBitmaps;
+    private final Bm25Index bm25Index;
+    private final IndexVersions indexVersions;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        Thread thread = new Thread(() -> {
+            long started = System.nanoTime();
+            try {
+                chunkStore.forEachChunk(chunk -> {
+                    int chunkId = ChunkIds.toInt(chunk.id());
+                    orgTagBitmaps.add(orgTagRegistry.intern(chunk.orgTag()), chunkId);
+                    bm25Index.add(chunkId, chunk.indexText());
+                });
+                log.info("Keyword index loaded with {} chunks in {} ms",
+                        bm25Index.size(), (System.nanoTime() - started) / 1_000_000);
+            } catch (Exception e) {
+                log.error("Keyword index load failed after {} chunks", bm25Index.size(), e);
+            } finally {
+                orgTagBitmaps.loaded();
+                // 加载期间缓存的是不完整索引上的结果
+                indexVersions.bumpAll();
+            }
+        }, "retrieval-index-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,10 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+public record RetrievedChunk(
+        long chunkId,
+        long documentId,
+        String heading,
+        String content,
+        // RRF 融合分数
+        float score
+) { }
@@ -0,0 +1,61 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 检索用分词：NFKC 规范化并转小写；字母数字连续段作为一个词，中日韩文字没有空格分隔，按相邻两字（bigram）切分
+ */
+public final class TextAnalyzer {
+
+    private TextAnalyzer() {
+    }
+
+    public static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        int length = normalized.length();
+        int i = 0;
+        while (i < length) {
+            int cp = normalized.codePointAt(i);
+            if (isCjk(cp)) {
+                int start = i;
+                int previous = -1;
+                int runLength = 0;
+                while (i < length && isCjk(cp = normalized.codePointAt(i))) {
+                    if (previous >= 0) {
+                        terms.add(normalized.substring(previous, i + Character.charCount(cp)));
+                    }
+                    previous = i;
+                    runLength++;
+                    i += Character.charCount(cp);
+                }
+                if (runLength == 1) {
+                    terms.add(normalized.substring(start, i));
+                }
+            } else if (Character.isLetterOrDigit(cp)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(cp = normalized.codePointAt(i)) && !isCjk(cp)) {
+                    i += Character.charCount(cp);
+                }
+                terms.add(normalized.substring(start, i));
+            } else {
+                i += Character.charCount(cp);
+            }
+        }
+        return terms;
+    }
+
+    static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,51 @@
+package com.hunkyhsu.ragagent.search;
+
+import com.hunkyhsu.ragagent.config.SearchProperties;
+import com.hunkyhsu.ragagent.event.ChatEvent;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 搜索索引消费者：与缓存失效一样使用以节点标识命名的独立消费组（广播），每个实例维护自己的本地索引。
+ * 分配到分区时总是按时间戳回到启动补齐的起点，而不是已提交的位置：重启时内存段已丢失，
+ * 已提交的位置之前的事件可能还没落盘；事件持久化有滞后，数据库补齐读不到的消息也由这里重放覆盖
+ */
+@Component
+@RequiredArgsConstructor
+public class ConversationSearchListener implements ConsumerSeekAware {
+
+    private final SearchIndex searchIndex;
+    private final SearchProperties properties;
+
+    @KafkaListener(
+            topics = "#{@chatEventProperties.topic}",
+            groupId = "#{'chat-search-' + @clusterProperties.nodeId}",
+            containerFactory = "chatEventListenerFactory",
+            concurrency = "1"
+    )
+    public void onEvents(List<ChatEvent> events) {
+        for (ChatEvent event : events) {
+            if (event == null) {
+                continue;
+            }
+            if (event.isMessage() && event.content() != null && event.userId() != null) {
+                searchIndex.add(new IndexedMessage(event.conversationId(), event.userId(), event.eventId(),
+                        event.timestamp(), event.content()));
+            } else if (event.type() == ChatEvent.Type.CONVERSATION_DELETED) {
+                searchIndex.deleteConversation(event.conversationId());
+            }
+        }
+    }
+
+    // 起点早于 topic 保留期时落到最早的位置，其余部分由数据库补齐
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        callback.seekToTimestamp(assignments.keySet(), searchIndex.catchUpFrom(properties.getCatchUpOverlap()));
+    }
+}
@@ -0,0 +1,112 @@
+package com.hunkyhsu.ragagent.search;
+
+import com.hunkyhsu.ragagent.entity.Message;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 会话搜索的数据库读取：启动补齐时流式读取消息，查询时只为当前页的命中取回正文和会话标题
+ */
+@Component
+@RequiredArgsConstructor
+public class ConversationSearchStore {
+
+    // 事件消费者写入之前的历史消息没有 message_id，以主键代替
+    static final String LEGACY_ID_PREFIX = "db-";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    /**
+     * 流式遍历 created_at 不早于 since 的全部消息，按 idx_messages_created_at 的顺序读取，不需要排序
+     */
+    public void forEachMessageSince(long since, Consumer<IndexedMessage> consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "SELECT m.id, m.conv_id, c.user_id, m.message_id, m.created_at, m.content FROM messages m "
+                            + "JOIN conversations c ON c.id = m.conv_id WHERE m.created_at >= ? "
+                            + "ORDER BY m.created_at, m.id",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setTimestamp(1, new Timestamp(since));
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(new IndexedMessage(rs.getLong(2), rs.getLong(3),
+                messageId(rs.getLong(1), rs.getString(4)), rs.getTimestamp(5).getTime(), rs.getString(6))));
+    }
+
+    /**
+     * 按命中取回消息，只返回属于该用户的会话中仍然存在的消息；key 为 "convId:messageId"
+     */
+    public Map<String, StoredMessage> findMessages(long userId, Collection<SearchHit> hits) {
+        Map<String, StoredMessage> messages = new HashMap<>();
+        List<String> messageIds = new ArrayList<>();
+        List<Long> legacyIds = new ArrayList<>();
+        List<Long> conversationIds = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            conversationIds.add(hit.conversationId());
+            if (hit.messageId().startsWith(LEGACY_ID_PREFIX)) {
+                legacyIds.add(Long.parseLong(hit.messageId().substring(LEGACY_ID_PREFIX.length())));
+            } else {
+                messageIds.add(hit.messageId());
+            }
+        }
+        if (conversationIds.isEmpty()) {
+            return messages;
+        }
+        String select = "SELECT m.id, m.conv_id, m.message_id, m.role, m.content, m.created_at, c.title "
+                + "FROM messages m JOIN conversations c ON c.id = m.conv_id "
+                + "WHERE c.user_id = :userId AND m.conv_id IN (:conversationIds) AND ";
+        RowCallbackHandler handler = rs -> {
+            StoredMessage message = toStoredMessage(rs);
+            messages.put(message.conversationId() + ":" + message.messageId(), message);
+        };
+        if (!messageIds.isEmpty()) {
+            namedParameterJdbcTemplate.query(select + "m.message_id IN (:ids)", new MapSqlParameterSource()
+                    .addValue("userId", userId)
+                    .addValue("conversationIds", conversationIds)
+                    .addValue("ids", messageIds), handler);
+        }
+        if (!legacyIds.isEmpty()) {
+            namedParameterJdbcTemplate.query(select + "m.id IN (:ids)", new MapSqlParameterSource()
+                    .addValue("userId", userId)
+                    .addValue("conversationIds", conversationIds)
+                    .addValue("ids", legacyIds), handler);
+        }
+        return messages;
+    }
+
+    private static StoredMessage toStoredMessage(ResultSet rs) throws SQLException {
+        return new StoredMessage(rs.getLong(2), messageId(rs.getLong(1), rs.getString(3)),
+                Message.Role.valueOf(rs.getString(4)), rs.getString(5), rs.getTimestamp(6).toLocalDateTime(),
+                rs.getString(7));
+    }
+
+    private static String messageId(long id, String messageId) {
+        return messageId == null ? LEGACY_ID_PREFIX + id : messageId;
+    }
+
+    public record StoredMessage(
+            long conversationId,
+            String messageId,
+            Message.Role role,
+            String content,
+            LocalDateTime createdTime,
+            String conversationTitle
+    ) { }
+}
@@ -0,0 +1,8 @@
+package com.hunkyhsu.ragagent.search;
+
+/**
+ * 写入会话搜索索引的一条消息
+ *
+ * @param messageId 事件 id（messages.message_id）；早于事件化的旧消息没有事件 id，用 db-主键 代替
+ */
+public record IndexedMessage(long conversationId, long userId, String messageId, long timestamp, String content) { }
@@ -0,0 +1,232 @@
+package com.hunkyhsu.ragagent.search;
+
+import com.hunkyhsu.ragagent.retrieval.TextAnalyzer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 可写的内存段。写入时分词并追加倒排，读写之间用读写锁隔离；写满 capacity 条消息后由 SearchIndex 封存并落盘。
+ * 合并段时也用它做构建缓冲，直接追加已分好词的文档和倒排
+ */
+final class MemorySegment implements SegmentView {
+
+    // 事件 id 为 UUID，段文件中按定长存放
+    static final int MAX_MESSAGE_ID_BYTES = 36;
+    // 超长的字母数字串（base64、哈希等）不建索引
+    static final int MAX_TERM_LENGTH = 64;
+
+    private final int capacity;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Doc> docs = new ArrayList<>();
+    private final Map<TermKey, Postings> postings = new HashMap<>();
+    private final Map<Long, long[]> users = new HashMap<>();
+    private long maxTimestamp;
+    private boolean sealed;
+
+    MemorySegment(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return false 表示段已写满或已封存，调用方需要换到新的内存段
+     */
+    boolean add(IndexedMessage message) {
+        List<String> terms = TextAnalyzer.terms(message.content());
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : terms) {
+            if (term.length() <= MAX_TERM_LENGTH) {
+                frequencies.merge(term, 1, Integer::sum);
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            if (sealed || docs.size() >= capacity) {
+                return false;
+            }
+            int doc = appendDoc(message.conversationId(), message.userId(), message.messageId(),
+                    message.timestamp(), terms.size());
+            frequencies.forEach((term, frequency) ->
+                    appendPosting(TermKey.of(message.userId(), term), doc, frequency));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int appendDoc(long conversationId, long userId, String messageId, long timestamp, int length) {
+        if (messageId.getBytes(StandardCharsets.UTF_8).length > MAX_MESSAGE_ID_BYTES) {
+            throw new IllegalArgumentException("message id too long: " + messageId);
+        }
+        lock.writeLock().lock();
+        try {
+            docs.add(new Doc(conversationId, userId, messageId, timestamp, length));
+            long[] stats = users.computeIfAbsent(userId, id -> new long[2]);
+            stats[0]++;
+            stats[1] += length;
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            return docs.size() - 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void appendPosting(TermKey key, int doc, int frequency) {
+        lock.writeLock().lock();
+        try {
+            postings.computeIfAbsent(key, k -> new Postings()).add(doc, frequency);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void seal() {
+        lock.writeLock().lock();
+        try {
+            sealed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean isFull() {
+        lock.readLock().lock();
+        try {
+            return docs.size() >= capacity;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 以下供落盘使用，只在封存后调用
+
+    Doc doc(int doc) {
+        return docs.get(doc);
+    }
+
+    List<TermKey> sortedTerms() {
+        List<TermKey> keys = new ArrayList<>(postings.keySet());
+        keys.sort(null);
+        return keys;
+    }
+
+    int[] postingsOf(TermKey key) {
+        Postings list = postings.get(key);
+        return Arrays.copyOf(list.data, list.size * 2);
+    }
+
+    List<Long> sortedUsers() {
+        List<Long> ids = new ArrayList<>(users.keySet());
+        ids.sort(null);
+        return ids;
+    }
+
+    long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    @Override
+    public int docCount() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long conversationId(int doc) {
+        return readDoc(doc).conversationId;
+    }
+
+    @Override
+    public String messageId(int doc) {
+        return readDoc(doc).messageId;
+    }
+
+    @Override
+    public long timestamp(int doc) {
+        return readDoc(doc).timestamp;
+    }
+
+    @Override
+    public long userDocs(long userId) {
+        return userStat(userId, 0);
+    }
+
+    @Override
+    public long userLength(long userId) {
+        return userStat(userId, 1);
+    }
+
+    @Override
+    public int docFrequency(TermKey key) {
+        lock.readLock().lock();
+        try {
+            Postings list = postings.get(key);
+            return list == null ? 0 : list.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void postings(TermKey key, PostingVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            Postings list = postings.get(key);
+            if (list == null) {
+                return;
+            }
+            for (int i = 0; i < list.size; i++) {
+                int doc = list.data[2 * i];
+                visitor.accept(doc, list.data[2 * i + 1], docs.get(doc).length);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Doc readDoc(int doc) {
+        lock.readLock().lock();
+        try {
+            return docs.get(doc);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long userStat(long userId, int field) {
+        lock.readLock().lock();
+        try {
+            long[] stats = users.get(userId);
+            return stats == null ? 0 : stats[field];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    record Doc(long conversationId, long userId, String messageId, long timestamp, int length) { }
+
+    // (doc, frequency) 成对存放，doc 递增
+    private static final class Postings {
+        private int[] data = new int[4];
+        private int size;
+
+        private void add(int doc, int frequency) {
+            if (2 * size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[2 * size] = doc;
+            data[2 * size + 1] = frequency;
+            size++;
+        }
+    }
+}
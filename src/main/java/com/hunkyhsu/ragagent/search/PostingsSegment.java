@@ -0,0 +1,327 @@
+package com.hunkyhsu.ragagent.search;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 只读的倒排段文件，整体通过 mmap 映射，打开时不做反序列化。
+ * 文件布局（小端序）：
+ * <pre>
+ * header(64) | docs[n]（每条 72 字节：convId long, userId long, timestamp long, length int, idLen int, id byte[36]）
+ *            | users[u]（userId long, docs long, length long，按 userId 升序）
+ *            | termIndex int[t]（词条在 termBlob 中的偏移） | termBlob（userId long, df int, postings int, len short, UTF-8 字节）
+ *            | postings int[2 * Σdf]（doc, frequency 成对）
+ * </pre>
+ * 词典按 (userId, 词的无符号字节序) 排序，查询时二分查找。段由 [minGeneration, maxGeneration] 标识，
+ * 合并产生的段覆盖全部源段的代数范围。
+ */
+final class PostingsSegment implements SegmentView {
+
+    static final String SUFFIX = ".postings";
+
+    private static final int MAGIC = 0x54534F50;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int DOC_BYTES = 72;
+    private static final int USER_BYTES = 24;
+    private static final int TERM_HEADER_BYTES = 18;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int docCount;
+    private final int userCount;
+    private final int termCount;
+    private final long minGeneration;
+    private final long maxGeneration;
+    private final long maxTimestamp;
+    private final int usersOffset;
+    private final int termIndexOffset;
+    private final int termBlobOffset;
+    private final int postingsOffset;
+
+    private PostingsSegment(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("not a postings segment: " + path);
+        }
+        this.docCount = buffer.getInt(8);
+        this.userCount = buffer.getInt(12);
+        this.termCount = buffer.getInt(16);
+        this.minGeneration = buffer.getLong(24);
+        this.maxGeneration = buffer.getLong(32);
+        this.maxTimestamp = buffer.getLong(40);
+        this.termBlobOffset = buffer.getInt(48);
+        this.postingsOffset = buffer.getInt(52);
+        this.usersOffset = HEADER_BYTES + docCount * DOC_BYTES;
+        this.termIndexOffset = usersOffset + userCount * USER_BYTES;
+    }
+
+    static PostingsSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new PostingsSegment(path, map(channel, FileChannel.MapMode.READ_ONLY, channel.size()));
+        }
+    }
+
+    /**
+     * 把已封存的内存段写成段文件：先写临时文件并 fsync，再原子改名，崩溃时不会留下半个段
+     */
+    static PostingsSegment write(Path directory, MemorySegment source, long minGeneration, long maxGeneration)
+            throws IOException {
+        int docCount = source.docCount();
+        List<Long> users = source.sortedUsers();
+        List<TermKey> terms = source.sortedTerms();
+        long blobBytes = 0;
+        long postingInts = 0;
+        for (TermKey key : terms) {
+            blobBytes += TERM_HEADER_BYTES + key.term().length;
+            postingInts += 2L * source.docFrequency(key);
+        }
+        long usersOffset = HEADER_BYTES + (long) docCount * DOC_BYTES;
+        long termIndexOffset = usersOffset + (long) users.size() * USER_BYTES;
+        long termBlobOffset = termIndexOffset + (long) terms.size() * Integer.BYTES;
+        long postingsOffset = align(termBlobOffset + blobBytes, Integer.BYTES);
+        long size = postingsOffset + postingInts * Integer.BYTES;
+
+        Path target = directory.resolve(fileName(minGeneration, maxGeneration));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = map(channel, FileChannel.MapMode.READ_WRITE, size);
+            out.putInt(0, MAGIC);
+            out.putInt(4, VERSION);
+            out.putInt(8, docCount);
+            out.putInt(12, users.size());
+            out.putInt(16, terms.size());
+            out.putLong(24, minGeneration);
+            out.putLong(32, maxGeneration);
+            out.putLong(40, source.maxTimestamp());
+            out.putInt(48, (int) termBlobOffset);
+            out.putInt(52, (int) postingsOffset);
+
+            for (int doc = 0; doc < docCount; doc++) {
+                MemorySegment.Doc d = source.doc(doc);
+                int base = HEADER_BYTES + doc * DOC_BYTES;
+                byte[] id = d.messageId().getBytes(StandardCharsets.UTF_8);
+                out.putLong(base, d.conversationId());
+                out.putLong(base + 8, d.userId());
+                out.putLong(base + 16, d.timestamp());
+                out.putInt(base + 24, d.length());
+                out.putInt(base + 28, id.length);
+                out.put(base + 32, id);
+            }
+            for (int i = 0; i < users.size(); i++) {
+                long userId = users.get(i);
+                int base = (int) usersOffset + i * USER_BYTES;
+                out.putLong(base, userId);
+                out.putLong(base + 8, source.userDocs(userId));
+                out.putLong(base + 16, source.userLength(userId));
+            }
+            int blobCursor = 0;
+            int postingCursor = 0;
+            for (int i = 0; i < terms.size(); i++) {
+                TermKey key = terms.get(i);
+                int[] postings = source.postingsOf(key);
+                out.putInt((int) termIndexOffset + i * Integer.BYTES, blobCursor);
+                int base = (int) termBlobOffset + blobCursor;
+                out.putLong(base, key.userId());
+                out.putInt(base + 8, postings.length / 2);
+                out.putInt(base + 12, postingCursor);
+                out.putShort(base + 16, (short) key.term().length);
+                out.put(base + TERM_HEADER_BYTES, key.term());
+                blobCursor += TERM_HEADER_BYTES + key.term().length;
+                for (int value : postings) {
+                    out.putInt((int) postingsOffset + postingCursor * Integer.BYTES, value);
+                    postingCursor++;
+                }
+            }
+            out.force();
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        return open(target);
+    }
+
+    static String fileName(long minGeneration, long maxGeneration) {
+        return String.format("segment-%016d-%016d%s", minGeneration, maxGeneration, SUFFIX);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long minGeneration() {
+        return minGeneration;
+    }
+
+    long maxGeneration() {
+        return maxGeneration;
+    }
+
+    long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    boolean covers(PostingsSegment other) {
+        return other != this && minGeneration <= other.minGeneration && maxGeneration >= other.maxGeneration
+                && (minGeneration != other.minGeneration || maxGeneration != other.maxGeneration);
+    }
+
+    long userId(int doc) {
+        return buffer.getLong(HEADER_BYTES + doc * DOC_BYTES + 8);
+    }
+
+    int length(int doc) {
+        return buffer.getInt(HEADER_BYTES + doc * DOC_BYTES + 24);
+    }
+
+    /**
+     * 按词典顺序遍历全部倒排，合并段时使用
+     */
+    void forEachTerm(TermVisitor visitor) {
+        for (int i = 0; i < termCount; i++) {
+            int base = termBlobOffset + buffer.getInt(termIndexOffset + i * Integer.BYTES);
+            byte[] term = new byte[Short.toUnsignedInt(buffer.getShort(base + 16))];
+            buffer.get(base + TERM_HEADER_BYTES, term);
+            visitor.accept(new TermKey(buffer.getLong(base), term), base);
+        }
+    }
+
+    void postingsAt(int termBase, PostingVisitor visitor) {
+        int df = buffer.getInt(termBase + 8);
+        int at = postingsOffset + buffer.getInt(termBase + 12) * Integer.BYTES;
+        for (int i = 0; i < df; i++) {
+            int doc = buffer.getInt(at + 2 * i * Integer.BYTES);
+            visitor.accept(doc, buffer.getInt(at + (2 * i + 1) * Integer.BYTES), length(doc));
+        }
+    }
+
+    @Override
+    public int docCount() {
+        return docCount;
+    }
+
+    @Override
+    public long conversationId(int doc) {
+        return buffer.getLong(HEADER_BYTES + doc * DOC_BYTES);
+    }
+
+    @Override
+    public String messageId(int doc) {
+        int base = HEADER_BYTES + doc * DOC_BYTES;
+        byte[] id = new byte[buffer.getInt(base + 28)];
+        buffer.get(base + 32, id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public long timestamp(int doc) {
+        return buffer.getLong(HEADER_BYTES + doc * DOC_BYTES + 16);
+    }
+
+    @Override
+    public long userDocs(long userId) {
+        int user = findUser(userId);
+        return user < 0 ? 0 : buffer.getLong(usersOffset + user * USER_BYTES + 8);
+    }
+
+    @Override
+    public long userLength(long userId) {
+        int user = findUser(userId);
+        return user < 0 ? 0 : buffer.getLong(usersOffset + user * USER_BYTES + 16);
+    }
+
+    @Override
+    public int docFrequency(TermKey key) {
+        int base = findTerm(key);
+        return base < 0 ? 0 : buffer.getInt(base + 8);
+    }
+
+    @Override
+    public void postings(TermKey key, PostingVisitor visitor) {
+        int base = findTerm(key);
+        if (base >= 0) {
+            postingsAt(base, visitor);
+        }
+    }
+
+    private int findUser(long userId) {
+        int low = 0;
+        int high = userCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = buffer.getLong(usersOffset + mid * USER_BYTES);
+            if (value < userId) {
+                low = mid + 1;
+            } else if (value > userId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // 返回词条在文件中的绝对偏移，不存在时返回 -1
+    private int findTerm(TermKey key) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int base = termBlobOffset + buffer.getInt(termIndexOffset + mid * Integer.BYTES);
+            int cmp = compare(base, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return base;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int base, TermKey key) {
+        int byUser = Long.compare(buffer.getLong(base), key.userId());
+        if (byUser != 0) {
+            return byUser;
+        }
+        int length = Short.toUnsignedInt(buffer.getShort(base + 16));
+        byte[] term = key.term();
+        int common = Math.min(length, term.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Integer.compare(Byte.toUnsignedInt(buffer.get(base + TERM_HEADER_BYTES + i)),
+                    Byte.toUnsignedInt(term[i]));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, term.length);
+    }
+
+    private static long align(long value, int alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("postings segment exceeds 2GB, lower search.flush-threshold");
+        }
+        MappedByteBuffer buffer = channel.map(mode, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    @FunctionalInterface
+    interface TermVisitor {
+        // termBase 传给 postingsAt 读取该词条的倒排
+        void accept(TermKey key, int termBase);
+    }
+}
@@ -0,0 +1,6 @@
+package com.hunkyhsu.ragagent.search;
+
+/**
+ * @param score BM25 分数，只在同一用户的同一次查询内可比
+ */
+public record SearchHit(long conversationId, String messageId, float score, long timestamp) { }
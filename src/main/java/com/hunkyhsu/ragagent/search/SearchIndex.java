@@ -0,0 +1,411 @@
+package com.hunkyhsu.ragagent.search;
+
+import com.hunkyhsu.ragagent.config.SearchProperties;
+import com.hunkyhsu.ragagent.retrieval.IntFloatMap;
+import com.hunkyhsu.ragagent.retrieval.TextAnalyzer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 按用户划分的会话全文索引，结构与 VectorIndex 相同：
+ * 新消息写入内存段，写满后封存、在后台写成不可变的倒排段文件并通过 mmap 映射；
+ * 段数达到 mergeFactor 时，后台把相邻的若干段合并为一个，同时清除已删除会话的消息和重复写入。
+ * 删除会话只记录墓碑（追加到 tombstones 文件），查询时过滤，合并时物理清除。
+ * 同一消息可能经实时事件和启动补齐各写入一次，查询时按 (会话, 消息) 去重。
+ */
+@Slf4j
+public class SearchIndex implements Closeable {
+
+    private static final String TOMBSTONES = "tombstones";
+
+    private final Path directory;
+    private final SearchProperties properties;
+    private final AtomicLong nextGeneration;
+    private final Object stateLock = new Object();
+    private final Set<Long> deletedConversations = ConcurrentHashMap.newKeySet();
+    private final FileChannel tombstoneLog;
+    private final ExecutorService flushExecutor =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("search-flush-"));
+    private final ExecutorService mergeExecutor =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("search-merge-"));
+    private volatile State state;
+    private volatile boolean closed;
+
+    private SearchIndex(Path directory, SearchProperties properties, List<PostingsSegment> segments,
+                        long nextGeneration, FileChannel tombstoneLog) {
+        this.directory = directory;
+        this.properties = properties;
+        this.nextGeneration = new AtomicLong(nextGeneration);
+        this.tombstoneLog = tombstoneLog;
+        this.state = new State(new MemorySegment(properties.getFlushThreshold()), List.of(), List.copyOf(segments));
+    }
+
+    /**
+     * 打开（或新建）索引目录：清理未完成的临时文件，映射已有段，丢弃已被合并段覆盖的旧段，载入墓碑
+     */
+    public static SearchIndex open(Path directory, SearchProperties properties) throws IOException {
+        Files.createDirectories(directory);
+        List<PostingsSegment> opened = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file);
+                } else if (name.endsWith(PostingsSegment.SUFFIX)) {
+                    opened.add(PostingsSegment.open(file));
+                }
+            }
+        }
+        // 合并后、删除源段前崩溃时，源段会与合并段同时存在
+        List<PostingsSegment> live = new ArrayList<>();
+        for (PostingsSegment segment : opened) {
+            if (opened.stream().anyMatch(other -> other.covers(segment))) {
+                Files.deleteIfExists(segment.path());
+            } else {
+                live.add(segment);
+            }
+        }
+        live.sort(Comparator.comparingLong(PostingsSegment::minGeneration));
+        long nextGeneration = live.stream().mapToLong(PostingsSegment::maxGeneration).max().orElse(0L) + 1;
+        FileChannel tombstoneLog = FileChannel.open(directory.resolve(TOMBSTONES),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        SearchIndex index = new SearchIndex(directory, properties, live, nextGeneration, tombstoneLog);
+        index.loadTombstones();
+        log.info("Opened search index at {} with {} segments and {} deleted conversations",
+                directory, live.size(), index.deletedConversations.size());
+        index.scheduleMerge();
+        return index;
+    }
+
+    public void add(IndexedMessage message) {
+        if (deletedConversations.contains(message.conversationId())) {
+            return;
+        }
+        while (true) {
+            if (closed) {
+                throw new IllegalStateException("search index is closed");
+            }
+            MemorySegment active = state.active;
+            if (active.add(message)) {
+                if (active.isFull()) {
+                    rotate(active);
+                }
+                return;
+            }
+            rotate(active);
+        }
+    }
+
+    /**
+     * 记录会话已删除：立即从查询结果中消失，段内数据在下次合并时清除
+     */
+    public void deleteConversation(long conversationId) {
+        if (!deletedConversations.add(conversationId)) {
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(0, conversationId);
+        synchronized (tombstoneLog) {
+            try {
+                tombstoneLog.write(record, tombstoneLog.size());
+            } catch (IOException e) {
+                // 墓碑未落盘时重启后由补齐流程跳过已删除会话（数据库中已不存在），只影响尚未合并的旧段
+                log.warn("Failed to persist tombstone for conversation {}", conversationId, e);
+            }
+        }
+    }
+
+    /**
+     * BM25 打分，只查询该用户自己的倒排表；同一消息出现在多个段中时保留分数最高的一条
+     *
+     * @param limit 返回的命中数上限，total 仍统计全部命中
+     */
+    public SearchResult search(long userId, String query, int limit) {
+        Set<String> terms = new LinkedHashSet<>(TextAnalyzer.terms(query));
+        if (terms.isEmpty()) {
+            return SearchResult.EMPTY;
+        }
+        List<SegmentView> views = state.views();
+        long docs = 0;
+        long length = 0;
+        for (SegmentView view : views) {
+            docs += view.userDocs(userId);
+            length += view.userLength(userId);
+        }
+        if (docs == 0) {
+            return SearchResult.EMPTY;
+        }
+        List<TermKey> keys = new ArrayList<>();
+        List<Float> idfs = new ArrayList<>();
+        for (String term : terms) {
+            if (keys.size() == properties.getMaxQueryTerms()) {
+                break;
+            }
+            TermKey key = TermKey.of(userId, term);
+            long df = 0;
+            for (SegmentView view : views) {
+                df += view.docFrequency(key);
+            }
+            if (df > 0) {
+                keys.add(key);
+                idfs.add((float) Math.log(1 + (docs - df + 0.5) / (df + 0.5)));
+            }
+        }
+        if (keys.isEmpty()) {
+            return SearchResult.EMPTY;
+        }
+        float k1 = properties.getBm25K1();
+        float b = properties.getBm25B();
+        float averageLength = Math.max(1f, (float) length / docs);
+        Map<String, SearchHit> hits = new HashMap<>();
+        for (SegmentView view : views) {
+            IntFloatMap scores = new IntFloatMap(64);
+            for (int i = 0; i < keys.size(); i++) {
+                float idf = idfs.get(i);
+                view.postings(keys.get(i), (doc, tf, docLength) -> {
+                    float norm = k1 * (1 - b + b * docLength / averageLength);
+                    scores.add(doc, idf * tf * (k1 + 1) / (tf + norm));
+                });
+            }
+            scores.forEach((doc, score) -> {
+                long conversationId = view.conversationId(doc);
+                if (deletedConversations.contains(conversationId)) {
+                    return;
+                }
+                String messageId = view.messageId(doc);
+                hits.merge(conversationId + ":" + messageId,
+                        new SearchHit(conversationId, messageId, score, view.timestamp(doc)),
+                        (a, c) -> a.score() >= c.score() ? a : c);
+            });
+        }
+        List<SearchHit> ranked = new ArrayList<>(hits.values());
+        ranked.sort(Comparator.comparingDouble(SearchHit::score).reversed()
+                .thenComparing(Comparator.comparingLong(SearchHit::timestamp).reversed()));
+        return new SearchResult(ranked.size(), List.copyOf(ranked.subList(0, Math.min(limit, ranked.size()))));
+    }
+
+    /**
+     * 已落盘段中最新消息的时间戳，启动补齐从这里往前回看；没有段时返回 0
+     */
+    public long durableTimestamp() {
+        return state.segments.stream().mapToLong(PostingsSegment::maxTimestamp).max().orElse(0L);
+    }
+
+    /**
+     * 启动补齐的起点：已落盘的最新消息时间再往前回看 overlap；没有段时返回 0，即全量重建。
+     * 数据库补齐和事件重放都从这里开始，未落盘的内存段在重启时已丢失，两者的重叠部分在查询和合并时去重
+     */
+    public long catchUpFrom(Duration overlap) {
+        long durable = durableTimestamp();
+        return durable == 0 ? 0 : Math.max(0, durable - overlap.toMillis());
+    }
+
+    public long size() {
+        long size = 0;
+        for (SegmentView view : state.views()) {
+            size += view.docCount();
+        }
+        return size;
+    }
+
+    public int segmentCount() {
+        return state.segments.size();
+    }
+
+    /**
+     * 把当前内存段落盘，阻塞到段文件映射完成
+     */
+    public void flush() {
+        await(rotate(state.active));
+    }
+
+    // 正常关闭时落盘内存段，未完成的合并被放弃，源段保持不变
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        Future<?> last = rotate(state.active);
+        closed = true;
+        await(last);
+        mergeExecutor.shutdown();
+        flushExecutor.shutdown();
+        try {
+            mergeExecutor.awaitTermination(30, TimeUnit.SECONDS);
+            tombstoneLog.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("Failed to close tombstone log", e);
+        }
+    }
+
+    private void loadTombstones() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) tombstoneLog.size()).order(ByteOrder.LITTLE_ENDIAN);
+        tombstoneLog.read(buffer, 0);
+        buffer.flip();
+        while (buffer.remaining() >= Long.BYTES) {
+            deletedConversations.add(buffer.getLong());
+        }
+    }
+
+    private Future<?> rotate(MemorySegment full) {
+        synchronized (stateLock) {
+            if (state.active != full) {
+                return flushExecutor.submit(() -> { });
+            }
+            List<MemorySegment> flushing = new ArrayList<>(state.flushing);
+            flushing.add(full);
+            state = new State(new MemorySegment(properties.getFlushThreshold()), List.copyOf(flushing), state.segments);
+        }
+        return flushExecutor.submit(() -> flush(full));
+    }
+
+    private void flush(MemorySegment memory) {
+        memory.seal();
+        PostingsSegment segment = null;
+        if (memory.docCount() > 0) {
+            long generation = nextGeneration.getAndIncrement();
+            try {
+                segment = PostingsSegment.write(directory, memory, generation, generation);
+            } catch (IOException e) {
+                // 写盘失败时内存段留在 flushing 中，仍然可以检索
+                log.error("Failed to flush search segment {}", generation, e);
+                throw new UncheckedIOException(e);
+            }
+        }
+        synchronized (stateLock) {
+            List<MemorySegment> flushing = new ArrayList<>(state.flushing);
+            flushing.remove(memory);
+            List<PostingsSegment> segments = new ArrayList<>(state.segments);
+            if (segment != null) {
+                segments.add(segment);
+            }
+            state = new State(state.active, List.copyOf(flushing), List.copyOf(segments));
+        }
+        scheduleMerge();
+    }
+
+    private void scheduleMerge() {
+        if (!closed && state.segments.size() >= properties.getMergeFactor()) {
+            mergeExecutor.execute(this::mergeOnce);
+        }
+    }
+
+    // 选出消息数最少的 mergeFactor 个相邻段，在后台合并为一个段
+    private void mergeOnce() {
+        List<PostingsSegment> segments = state.segments;
+        int factor = Math.max(2, properties.getMergeFactor());
+        if (closed || segments.size() < factor) {
+            return;
+        }
+        int bestStart = 0;
+        long bestSize = Long.MAX_VALUE;
+        for (int start = 0; start + factor <= segments.size(); start++) {
+            long total = 0;
+            for (int i = start; i < start + factor; i++) {
+                total += segments.get(i).docCount();
+            }
+            if (total < bestSize) {
+                bestSize = total;
+                bestStart = start;
+            }
+        }
+        List<PostingsSegment> sources = List.copyOf(segments.subList(bestStart, bestStart + factor));
+        try {
+            PostingsSegment merged = merge(sources, (int) bestSize);
+            synchronized (stateLock) {
+                List<PostingsSegment> next = new ArrayList<>(state.segments);
+                int at = next.indexOf(sources.get(0));
+                next.removeAll(sources);
+                next.add(at, merged);
+                state = new State(state.active, state.flushing, List.copyOf(next));
+            }
+            for (PostingsSegment source : sources) {
+                Files.deleteIfExists(source.path());
+            }
+            log.info("Merged {} search segments into {} ({} messages)",
+                    sources.size(), merged.path().getFileName(), merged.docCount());
+        } catch (Exception e) {
+            log.error("Search segment merge failed", e);
+            return;
+        }
+        scheduleMerge();
+    }
+
+    // 逐段重新编号：跳过已删除会话和重复的消息，倒排直接按新编号搬运，不重新分词
+    private PostingsSegment merge(List<PostingsSegment> sources, int total) throws IOException {
+        MemorySegment builder = new MemorySegment(total);
+        Set<String> seen = new HashSet<>();
+        for (PostingsSegment source : sources) {
+            int[] remap = new int[source.docCount()];
+            for (int doc = 0; doc < remap.length; doc++) {
+                long conversationId = source.conversationId(doc);
+                String messageId = source.messageId(doc);
+                if (deletedConversations.contains(conversationId) || !seen.add(conversationId + ":" + messageId)) {
+                    remap[doc] = -1;
+                } else {
+                    remap[doc] = builder.appendDoc(conversationId, source.userId(doc), messageId,
+                            source.timestamp(doc), source.length(doc));
+                }
+            }
+            source.forEachTerm((key, termBase) -> source.postingsAt(termBase, (doc, frequency, length) -> {
+                if (remap[doc] >= 0) {
+                    builder.appendPosting(key, remap[doc], frequency);
+                }
+            }));
+        }
+        builder.seal();
+        return PostingsSegment.write(directory, builder,
+                sources.get(0).minGeneration(), sources.get(sources.size() - 1).maxGeneration());
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private record State(MemorySegment active, List<MemorySegment> flushing, List<PostingsSegment> segments) {
+        List<SegmentView> views() {
+            List<SegmentView> views = new ArrayList<>(1 + flushing.size() + segments.size());
+            views.add(active);
+            views.addAll(flushing);
+            views.addAll(segments);
+            return views;
+        }
+    }
+}
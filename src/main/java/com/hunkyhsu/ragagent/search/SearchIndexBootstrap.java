@@ -0,0 +1,44 @@
+package com.hunkyhsu.ragagent.search;
+
+import com.hunkyhsu.ragagent.config.SearchProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动后在后台补齐索引：从已落盘段中最新的消息时间往前回看 catchUpOverlap，重新读取之后写入数据库的消息。
+ * 尚未写入数据库的消息由 ConversationSearchListener 从同一时间点重放事件覆盖；
+ * 两者重叠的部分在查询和合并时按 (会话, 消息) 去重；索引目录为空时即全量重建
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SearchIndexBootstrap {
+
+    private final SearchIndex searchIndex;
+    private final ConversationSearchStore conversationSearchStore;
+    private final SearchProperties properties;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void catchUp() {
+        long since = searchIndex.catchUpFrom(properties.getCatchUpOverlap());
+        Thread thread = new Thread(() -> {
+            long started = System.nanoTime();
+            long[] count = new long[1];
+            try {
+                conversationSearchStore.forEachMessageSince(since, message -> {
+                    searchIndex.add(message);
+                    count[0]++;
+                });
+                log.info("Search index caught up with {} messages since {} in {} ms",
+                        count[0], since, (System.nanoTime() - started) / 1_000_000);
+            } catch (Exception e) {
+                log.error("Search index catch-up failed after {} messages", count[0], e);
+            }
+        }, "search-index-bootstrap");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
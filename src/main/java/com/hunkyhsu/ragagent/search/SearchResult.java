@@ -0,0 +1,11 @@
+package com.hunkyhsu.ragagent.search;
+
+import java.util.List;
+
+/**
+ * @param total 命中的消息总数（去重后），hits 只包含按分数排序的前若干条
+ */
+public record SearchResult(long total, List<SearchHit> hits) {
+
+    static final SearchResult EMPTY = new SearchResult(0, List.of());
+}
@@ -0,0 +1,30 @@
+package com.hunkyhsu.ragagent.search;
+
+/**
+ * 可检索的索引段：内存中的可写段与只读的映射段共用同一套打分逻辑。doc 为段内编号
+ */
+interface SegmentView {
+
+    int docCount();
+
+    long conversationId(int doc);
+
+    String messageId(int doc);
+
+    long timestamp(int doc);
+
+    // 该用户在本段中的消息数与词数之和，用于 BM25 的文档数和平均长度
+    long userDocs(long userId);
+
+    long userLength(long userId);
+
+    int docFrequency(TermKey key);
+
+    void postings(TermKey key, PostingVisitor visitor);
+
+    @FunctionalInterface
+    interface PostingVisitor {
+        // length 为该消息的词数
+        void accept(int doc, int frequency, int length);
+    }
+}
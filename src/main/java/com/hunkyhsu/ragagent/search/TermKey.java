@@ -0,0 +1,36 @@
+package com.hunkyhsu.ragagent.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 倒排表的键：用户 id + 词的 UTF-8 字节。按 (userId, 无符号字节序) 排序，与段文件中的词典顺序一致，
+ * 每个用户的倒排表互相独立，查询只触及本人的词条
+ */
+record TermKey(long userId, byte[] term) implements Comparable<TermKey> {
+
+    static TermKey of(long userId, String term) {
+        return new TermKey(userId, term.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public int compareTo(TermKey other) {
+        int byUser = Long.compare(userId, other.userId);
+        return byUser != 0 ? byUser : Arrays.compareUnsigned(term, other.term);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TermKey other && userId == other.userId && Arrays.equals(term, other.term);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(userId) + Arrays.hashCode(term);
+    }
+
+    @Override
+    public String toString() {
+        return userId + ":" + new String(term, StandardCharsets.UTF_8);
+    }
+}
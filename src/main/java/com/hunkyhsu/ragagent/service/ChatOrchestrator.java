@@ -0,0 +1,141 @@
+package com.hunkyhsu.ragagent.service;
+
+import com.hunkyhsu.ragagent.config.AiProperties;
+import com.hunkyhsu.ragagent.config.ToolProperties;
+import com.hunkyhsu.ragagent.entity.Conversation;
+import com.hunkyhsu.ragagent.entity.Message;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.event.ChatEvent;
+import com.hunkyhsu.ragagent.provider.AiProvider;
+import com.hunkyhsu.ragagent.provider.AiResponseCache;
+import com.hunkyhsu.ragagent.provider.Prompt;
+import com.hunkyhsu.ragagent.provider.PromptMessage;
+import com.hunkyhsu.ragagent.provider.UpstreamScheduler;
+import com.hunkyhsu.ragagent.repository.ConversationRepository;
+import com.hunkyhsu.ragagent.tokenizer.TokenCounter;
+import com.hunkyhsu.ragagent.tool.ToolCall;
+import com.hunkyhsu.ragagent.tool.ToolContext;
+import com.hunkyhsu.ragagent.tool.ToolExecutor;
+import com.hunkyhsu.ragagent.tool.ToolResult;
+import com.hunkyhsu.ragagent.usage.UsageQuotas;
+import com.hunkyhsu.ragagent.ws.WsEnvelope;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * chat.send -> chat.stream -> chat.done 主链路编排
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatOrchestrator {
+
+    private final ConversationRepository conversationRepository;
+    private final MessageService messageService;
+    private final AiProvider aiProvider;
+    private final AiResponseCache aiResponseCache;
+    private final UpstreamScheduler upstreamScheduler;
+    private final AiProperties aiProperties;
+    private final PromptContextAssembler promptContextAssembler;
+    private final ToolExecutor toolExecutor;
+    private final ToolProperties toolProperties;
+    private final TokenCounter tokenCounter;
+    private final UsageQuotas usageQuotas;
+
+    /**
+     * 校验并落库用户消息，返回 assistant 回答的流式封包，最后一个元素为 chat.done
+     */
+    public Flux<WsEnvelope> handleSend(User user, WsEnvelope send) {
+        if (send.conversationId() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "conversation_required");
+        }
+        if (send.content() == null || send.content().isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "content_required");
+        }
+        Conversation conversation = conversationRepository.findByIdAndUser(send.conversationId(), user)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "conversation_not_found"));
+        usageQuotas.check(user);
+        long startedAt = System.nanoTime();
+        // 先组装历史再落库本轮用户消息，本轮输入只出现在 userText 中
+        List<PromptMessage> history = promptContextAssembler.assemble(conversation, aiProperties.getModel());
+        messageService.append(conversation, Message.Role.USER, send.content());
+
+        String context = turnContext(user, conversation, send.content());
+        Prompt prompt = new Prompt(aiProperties.getModel(), aiProperties.getSystemPrompt(), context, history, send.content());
+        AtomicLong seq = new AtomicLong();
+        AtomicLong firstTokenAt = new AtomicLong();
+        StringBuilder answer = new StringBuilder();
+        // 只有本请求自己发起了上游调用才计费；缓存命中或与相同请求共用上游时不会回调 onUpstream
+        AtomicBoolean calledUpstream = new AtomicBoolean();
+        // 排队通知与回答片段合并输出；首个片段到达或流结束时关闭通知通道
+        Sinks.Many<WsEnvelope> notices = Sinks.many().unicast().onBackpressureBuffer();
+        AiResponseCache.Listener listener = new AiResponseCache.Listener() {
+            @Override
+            public void onUpstream() {
+                calledUpstream.set(true);
+            }
+
+            @Override
+            public void onQueued(int position) {
+                notices.tryEmitNext(WsEnvelope.queued(conversation.getId(), send.messageId(), position));
+            }
+        };
+        Flux<WsEnvelope> replies = aiResponseCache.stream(prompt, user.getOrgTags(), listener,
+                        onQueued -> upstreamScheduler.schedule(user, onQueued, () -> aiProvider.streamReply(prompt)))
+                .map(delta -> {
+                    if (answer.isEmpty()) {
+                        firstTokenAt.set(System.nanoTime());
+                        notices.tryEmitComplete();
+                    }
+                    answer.append(delta);
+                    return WsEnvelope.stream(conversation.getId(), send.messageId(), seq.incrementAndGet(), delta);
+                })
+                .concatWith(Mono.fromCallable(() -> {
+                    // 流式结束后再落库完整的 assistant 消息，并带上本轮用量
+                    Integer firstTokenMs = firstTokenAt.get() == 0 ? null
+                            : (int) ((firstTokenAt.get() - startedAt) / 1_000_000);
+                    boolean billable = calledUpstream.get();
+                    messageService.complete(conversation, answer.toString(), new ChatEvent.Usage(
+                            prompt.model(), billable ? countPromptTokens(prompt) : 0, firstTokenMs,
+                            List.copyOf(user.orgTagSet()), billable ? null : Boolean.TRUE));
+                    return WsEnvelope.done(conversation.getId(), send.messageId(), seq.incrementAndGet());
+                }).subscribeOn(Schedulers.boundedElastic()))
+                .doFinally(signal -> notices.tryEmitComplete());
+        return Flux.merge(notices.asFlux(), replies);
+    }
+
+    private int countPromptTokens(Prompt prompt) {
+        int tokens = tokenCounter.count(prompt.systemPrompt())
+                + tokenCounter.count(prompt.context())
+                + tokenCounter.count(prompt.userText());
+        for (PromptMessage message : prompt.history()) {
+            tokens += tokenCounter.count(message.content());
+        }
+        return tokens;
+    }
+
+    // 本轮的检索类工具并行执行，耗时取决于最慢的一个；超时或失败的工具只是不提供上下文
+    private String turnContext(User user, Conversation conversation, String query) {
+        List<ToolCall> calls = toolProperties.getTurnTools().stream()
+                .map(tool -> ToolCall.of(tool, "query", query))
+                .toList();
+        return toolExecutor.executeAll(calls, new ToolContext(user, conversation.getId()), toolProperties.getTurnBudget())
+                .stream()
+                .filter(ToolResult::ok)
+                .map(ToolResult::content)
+                .filter(content -> !content.isEmpty())
+                .collect(Collectors.joining("\n\n"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.hunkyhsu.ragagent.service;
+
+import com.hunkyhsu.ragagent.config.SearchProperties;
+import com.hunkyhsu.ragagent.dto.ConversationSearchHit;
+import com.hunkyhsu.ragagent.dto.ConversationSearchResponse;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.retrieval.TextAnalyzer;
+import com.hunkyhsu.ragagent.search.ConversationSearchStore;
+import com.hunkyhsu.ragagent.search.SearchHit;
+import com.hunkyhsu.ragagent.search.SearchIndex;
+import com.hunkyhsu.ragagent.search.SearchResult;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+@Service
+@RequiredArgsConstructor
+public class ConversationSearchService {
+
+    private final SearchIndex searchIndex;
+    private final ConversationSearchStore conversationSearchStore;
+    private final SearchProperties properties;
+
+    /**
+     * 在当前用户的全部会话中检索消息。索引只负责排序，正文和标题按页从数据库取回，
+     * 取回时再次校验会话归属；索引里还没清掉的已删除消息在这一步被丢弃
+     */
+    public ConversationSearchResponse search(User user, String query, int page, int size) {
+        if (query == null || query.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "query_required");
+        }
+        if (page < 0 || size < 1 || size > properties.getMaxPageSize()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid_page");
+        }
+        if ((long) (page + 1) * size > properties.getMaxResultWindow()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "result_window_exceeded");
+        }
+        SearchResult result = searchIndex.search(user.getId(), query, (page + 1) * size);
+        List<SearchHit> pageHits = result.hits().subList(Math.min(page * size, result.hits().size()),
+                result.hits().size());
+        Map<String, ConversationSearchStore.StoredMessage> messages =
+                conversationSearchStore.findMessages(user.getId(), pageHits);
+        List<String> terms = TextAnalyzer.terms(query);
+        List<ConversationSearchHit> hits = new ArrayList<>(pageHits.size());
+        for (SearchHit hit : pageHits) {
+            ConversationSearchStore.StoredMessage message = messages.get(hit.conversationId() + ":" + hit.messageId());
+            if (message == null) {
+                continue;
+            }
+            hits.add(new ConversationSearchHit(hit.conversationId(), message.conversationTitle(), hit.messageId(),
+                    message.role(), snippet(message.content(), terms), hit.score(), message.createdTime()));
+        }
+        return new ConversationSearchResponse(result.total(), page, size, hits);
+    }
+
+    // 以最早出现的查询词为中心截取一段正文
+    private String snippet(String content, List<String> terms) {
+        int length = properties.getSnippetLength();
+        if (content.length() <= length) {
+            return content;
+        }
+        String lower = content.toLowerCase(Locale.ROOT);
+        int first = -1;
+        if (lower.length() == content.length()) {
+            for (String term : terms) {
+                int at = lower.indexOf(term);
+                if (at >= 0 && (first < 0 || at < first)) {
+                    first = at;
+                }
+            }
+        }
+        int start = first < 0 ? 0 : Math.max(0, Math.min(first - length / 4, content.length() - length));
+        if (start > 0 && Character.isLowSurrogate(content.charAt(start))) {
+            start++;
+        }
+        int end = Math.min(content.length(), start + length);
+        if (end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) {
+            end--;
+        }
+        return (start > 0 ? "…" : "") + content.substring(start, end) + (end < content.length() ? "…" : "");
+    }
+}
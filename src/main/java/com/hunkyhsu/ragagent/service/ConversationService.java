@@ -5,6 +5,8 @@ import com.hunkyhsu.ragagent.dto.MessageResponse;
 import com.hunkyhsu.ragagent.entity.Conversation;
 import com.hunkyhsu.ragagent.entity.Message;
 import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.event.ChatEvent;
+import com.hunkyhsu.ragagent.event.ChatEventPublisher;
 import com.hunkyhsu.ragagent.repository.ConversationRepository;
 import com.hunkyhsu.ragagent.repository.MessageRepository;
 import lombok.RequiredArgsConstructor;
@@ -23,6 +25,8 @@ public class ConversationService {
 
     private final ConversationRepository conversationRepository;
     private final MessageRepository messageRepository;
+    private final PromptContextAssembler promptContextAssembler;
+    private final ChatEventPublisher chatEventPublisher;
 
     @Transactional
     public ConversationResponse createConversation(User user, String title) {
@@ -62,6 +66,7 @@ public class ConversationService {
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "conversation_not_found"));
         conversation.setTitle(title.trim());
         Conversation saved = conversationRepository.save(conversation);
+        chatEventPublisher.publish(ChatEvent.renamed(conversationId, user.getId(), saved.getTitle()));
         return toConversationResponse(saved);
     }
 
@@ -70,6 +75,9 @@ public class ConversationService {
         Conversation conversation = conversationRepository.findByIdAndUser(conversationId, user)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "conversation_not_found"));
         conversationRepository.delete(conversation);
+        promptContextAssembler.invalidate(conversationId);
+        // 其他实例通过 ChatEventCacheListener 失效各自的缓存
+        chatEventPublisher.publish(ChatEvent.deleted(conversationId, user.getId()));
     }
 
     private ConversationResponse toConversationResponse(Conversation conversation) {
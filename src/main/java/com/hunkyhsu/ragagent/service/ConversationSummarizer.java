@@ -0,0 +1,18 @@
+package com.hunkyhsu.ragagent.service;
+
+import com.hunkyhsu.ragagent.provider.PromptMessage;
+
+import java.util.List;
+
+/**
+ * 把滑出上下文窗口的消息增量合并进已有摘要
+ */
+public interface ConversationSummarizer {
+
+    /**
+     * @param previousSummary 已有摘要，可能为空串
+     * @param evicted         本次滑出窗口的消息，按时间升序
+     * @param budgetTokens    新摘要的 token 上限
+     */
+    String fold(String previousSummary, List<PromptMessage> evicted, int budgetTokens);
+}
@@ -0,0 +1,299 @@
+package com.hunkyhsu.ragagent.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hunkyhsu.ragagent.config.ExportProperties;
+import com.hunkyhsu.ragagent.dto.ExportResponse;
+import com.hunkyhsu.ragagent.entity.ExportJob;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.export.ChatArchiveStore;
+import com.hunkyhsu.ragagent.export.ChatArchiveWriter;
+import com.hunkyhsu.ragagent.repository.ExportJobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天记录导出：任务落库后由每个实例固定数量的工作线程从表中抢占执行，导出并发不随请求量增长。
+ * 执行时按页读取、按页写检查点；实例停机时任务交还队列，实例崩溃时心跳超时后由任意实例从检查点继续
+ */
+@Slf4j
+@Service
+public class ExportService {
+
+    private static final EnumSet<ExportJob.Status> ACTIVE = EnumSet.of(ExportJob.Status.PENDING, ExportJob.Status.RUNNING);
+
+    private final ExportJobRepository exportJobRepository;
+    private final ChatArchiveStore chatArchiveStore;
+    private final ObjectMapper objectMapper;
+    private final ExportProperties properties;
+    private final Path directory;
+    // 每个实例一个 owner 标识，检查点和结束更新都以它为条件
+    private final String owner = UUID.randomUUID().toString();
+    // 新任务登记后唤醒空闲的工作线程，不必等到下一次轮询
+    private final Semaphore wakeup = new Semaphore(0);
+    private final List<Thread> workers = new ArrayList<>();
+    private final Counter completed;
+    private final Counter failed;
+    private volatile boolean running;
+
+    public ExportService(ExportJobRepository exportJobRepository,
+                         ChatArchiveStore chatArchiveStore,
+                         ObjectMapper objectMapper,
+                         ExportProperties properties,
+                         MeterRegistry meterRegistry) {
+        this.exportJobRepository = exportJobRepository;
+        this.chatArchiveStore = chatArchiveStore;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.directory = Path.of(properties.getDirectory());
+        this.completed = Counter.builder("export.jobs").tag("outcome", "completed")
+                .description("Chat archive exports finished").register(meterRegistry);
+        this.failed = Counter.builder("export.jobs").tag("outcome", "failed")
+                .description("Chat archive exports finished").register(meterRegistry);
+    }
+
+    /**
+     * 登记导出任务，立即返回 PENDING 状态；同一用户同时只能有一个未完成的导出。
+     * 先查询只是快速路径，并发请求由 uk_export_jobs_active_user 唯一键拦下
+     */
+    public ExportResponse requestExport(User user, ExportJob.Format format) {
+        if (exportJobRepository.existsByUserAndStatusIn(user, ACTIVE)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "export_in_progress");
+        }
+        ExportJob job;
+        try {
+            job = exportJobRepository.save(ExportJob.builder()
+                    .user(user)
+                    .format(format)
+                    .status(ExportJob.Status.PENDING)
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "export_in_progress");
+        }
+        wakeup.release();
+        return toExportResponse(job);
+    }
+
+    @Transactional(readOnly = true)
+    public List<ExportResponse> listExports(User user) {
+        return exportJobRepository.findByUserOrderByCreatedTimeDesc(user)
+                .stream()
+                .map(this::toExportResponse)
+                .toList();
+    }
+
+    @Transactional(readOnly = true)
+    public ExportResponse getExport(User user, Long exportId) {
+        return toExportResponse(findOwned(user, exportId));
+    }
+
+    public FileSystemResource download(User user, Long exportId) {
+        ExportJob job = findOwned(user, exportId);
+        if (job.getStatus() != ExportJob.Status.COMPLETED) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "export_not_ready");
+        }
+        Path file = directory.resolve(ChatArchiveWriter.fileName(job.getId(), job.getFormat()));
+        if (!Files.isRegularFile(file)) {
+            throw new ResponseStatusException(HttpStatus.GONE, "export_expired");
+        }
+        return new FileSystemResource(file);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        running = true;
+        for (int i = 0; i < properties.getWorkers(); i++) {
+            Thread worker = new Thread(this::workLoop, "export-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        wakeup.release(workers.size());
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private void workLoop() {
+        while (running) {
+            try {
+                ExportJob job = claimNext();
+                if (job != null) {
+                    run(job);
+                    continue;
+                }
+                purgeExpired();
+                wakeup.tryAcquire(properties.getPollInterval().toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("Export worker iteration failed", e);
+                sleepQuietly(properties.getPollInterval().toMillis());
+            }
+        }
+    }
+
+    private ExportJob claimNext() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime staleBefore = now.minus(properties.getLease());
+        for (Long id : exportJobRepository.findClaimable(staleBefore, PageRequest.of(0, 8))) {
+            if (exportJobRepository.claim(id, owner, now, staleBefore) == 1) {
+                return exportJobRepository.findById(id).orElse(null);
+            }
+        }
+        return null;
+    }
+
+    private void run(ExportJob job) throws InterruptedException {
+        long userId = job.getUser().getId();
+        Path file = directory.resolve(ChatArchiveWriter.fileName(job.getId(), job.getFormat()));
+        Cursor cursor = new Cursor(job);
+        if (cursor.bytes > 0) {
+            log.info("Resuming export {} after conversation {} message {}",
+                    job.getId(), cursor.conversationId, cursor.messageId);
+        }
+        try (ChatArchiveWriter writer = ChatArchiveWriter.open(file, job.getFormat(), cursor.bytes, objectMapper)) {
+            int rows;
+            do {
+                if (!running) {
+                    exportJobRepository.release(job.getId(), owner);
+                    return;
+                }
+                rows = chatArchiveStore.readPage(userId, cursor.conversationId, cursor.messageId,
+                        properties.getPageSize(), row -> cursor.write(writer, row));
+                cursor.bytes = writer.endPage();
+                if (exportJobRepository.checkpoint(job.getId(), owner, LocalDateTime.now(), cursor.conversationId,
+                        cursor.messageId, cursor.bytes, cursor.conversations, cursor.messages) == 0) {
+                    log.warn("Export {} was taken over by another instance, stopping", job.getId());
+                    return;
+                }
+                if (rows == properties.getPageSize() && !properties.getPagePause().isZero()) {
+                    Thread.sleep(properties.getPagePause().toMillis());
+                }
+            } while (rows == properties.getPageSize());
+            LocalDateTime now = LocalDateTime.now();
+            exportJobRepository.finish(job.getId(), owner, ExportJob.Status.COMPLETED, null, now,
+                    now.plus(properties.getRetention()));
+            completed.increment();
+            log.info("Export {} completed: {} conversations, {} messages, {} bytes",
+                    job.getId(), cursor.conversations, cursor.messages, cursor.bytes);
+        } catch (InterruptedException e) {
+            exportJobRepository.release(job.getId(), owner);
+            throw e;
+        } catch (Exception e) {
+            log.warn("Export {} failed", job.getId(), e);
+            String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            LocalDateTime now = LocalDateTime.now();
+            exportJobRepository.finish(job.getId(), owner, ExportJob.Status.FAILED,
+                    message.length() > 512 ? message.substring(0, 512) : message, now, now.plus(properties.getRetention()));
+            failed.increment();
+        }
+    }
+
+    // 过期任务删除文件，记录保留供用户查看历史
+    private void purgeExpired() {
+        for (ExportJob job : exportJobRepository.findExpired(LocalDateTime.now(), PageRequest.of(0, 100))) {
+            try {
+                Files.deleteIfExists(directory.resolve(ChatArchiveWriter.fileName(job.getId(), job.getFormat())));
+                exportJobRepository.markExpired(job.getId());
+            } catch (IOException e) {
+                log.warn("Failed to delete expired export {}", job.getId(), e);
+            }
+        }
+    }
+
+    private ExportJob findOwned(User user, Long exportId) {
+        return exportJobRepository.findByIdAndUser(exportId, user)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "export_not_found"));
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ExportResponse toExportResponse(ExportJob job) {
+        return new ExportResponse(
+                job.getId(),
+                job.getFormat(),
+                job.getStatus(),
+                job.getExportedConversations(),
+                job.getExportedMessages(),
+                job.getBytesWritten(),
+                job.getStatus() == ExportJob.Status.COMPLETED ? "/api/exports/" + job.getId() + "/download" : null,
+                job.getErrorMessage(),
+                job.getCreatedTime(),
+                job.getCompletedTime(),
+                job.getExpiresTime()
+        );
+    }
+
+    // 写出位置与计数，随每页推进，写检查点时整体落库
+    private static final class Cursor {
+        private long conversationId;
+        private long messageId;
+        private long bytes;
+        private long conversations;
+        private long messages;
+
+        private Cursor(ExportJob job) {
+            this.conversationId = job.getCursorConversationId();
+            this.messageId = job.getCursorMessageId();
+            this.bytes = job.getBytesWritten();
+            this.conversations = job.getExportedConversations();
+            this.messages = job.getExportedMessages();
+        }
+
+        // 会话行在该会话的第一行之前写出；从检查点恢复时游标所在会话的会话行已经写过
+        private void write(ChatArchiveWriter writer, ChatArchiveStore.ArchiveRow row) {
+            try {
+                if (row.conversationId() != conversationId) {
+                    writer.writeConversation(row.conversationId(), row.conversationTitle(),
+                            row.conversationCreatedTime());
+                    conversationId = row.conversationId();
+                    messageId = 0;
+                    conversations++;
+                }
+                if (row.messageId() != null) {
+                    writer.writeMessage(row);
+                    messageId = row.messageId();
+                    messages++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.hunkyhsu.ragagent.service;
+
+import com.hunkyhsu.ragagent.provider.PromptMessage;
+import com.hunkyhsu.ragagent.tokenizer.TokenCounter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 抽取式摘要：每条消息保留首句，超出预算时优先丢弃最早的行。
+ * 不调用 LLM，成本固定；需要更好的摘要质量时可替换为基于 AiProvider 的实现。
+ */
+@Service
+@RequiredArgsConstructor
+public class ExtractiveConversationSummarizer implements ConversationSummarizer {
+
+    private static final int MAX_LINE_CHARS = 200;
+
+    private final TokenCounter tokenCounter;
+
+    @Override
+    public String fold(String previousSummary, List<PromptMessage> evicted, int budgetTokens) {
+        Deque<String> lines = new ArrayDeque<>();
+        if (previousSummary != null && !previousSummary.isEmpty()) {
+            lines.addAll(previousSummary.lines().toList());
+        }
+        for (PromptMessage message : evicted) {
+            lines.addLast(message.role().name() + ": " + firstSentence(message.content()));
+        }
+        int tokens = lines.stream().mapToInt(tokenCounter::count).sum();
+        while (tokens > budgetTokens && !lines.isEmpty()) {
+            tokens -= tokenCounter.count(lines.removeFirst());
+        }
+        return String.join("\n", lines);
+    }
+
+    private static String firstSentence(String content) {
+        String text = content.strip().replace('\n', ' ');
+        for (int i = 0; i < text.length() && i < MAX_LINE_CHARS; i++) {
+            char c = text.charAt(i);
+            if (c == '.' || c == '?' || c == '!' || c == '。' || c == '？' || c == '！') {
+                return text.substring(0, i + 1);
+            }
+        }
+        return text.length() > MAX_LINE_CHARS ? text.substring(0, MAX_LINE_CHARS) + "…" : text;
+    }
+}
@@ -0,0 +1,552 @@
+package com.hunkyhsu.ragagent.service;
+
+import com.hunkyhsu.ragagent.config.IngestionProperties;
+import com.hunkyhsu.ragagent.dto.DocumentResponse;
+import com.hunkyhsu.ragagent.entity.KnowledgeDocument;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.ingestion.ChunkStore;
+import com.hunkyhsu.ragagent.ingestion.Embedder;
+import com.hunkyhsu.ragagent.ingestion.StructureAwareChunker;
+import com.hunkyhsu.ragagent.ingestion.TextChunk;
+import com.hunkyhsu.ragagent.ingestion.TextExtractor;
+import com.hunkyhsu.ragagent.repository.KnowledgeDocumentRepository;
+import com.hunkyhsu.ragagent.retrieval.Bm25Index;
+import com.hunkyhsu.ragagent.retrieval.ChunkIds;
+import com.hunkyhsu.ragagent.retrieval.IndexVersions;
+import com.hunkyhsu.ragagent.retrieval.OrgTagBitmaps;
+import com.hunkyhsu.ragagent.retrieval.OrgTagRegistry;
+import com.hunkyhsu.ragagent.vector.VectorIndex;
+import jakarta.annotation.PreDestroy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 文档导入流水线：解析/分块 -> 片段批量落库 -> 按内容哈希去重后分批嵌入 -> 写入向量索引。
+ * 解析与嵌入各自使用有界线程池，队列满时由提交线程执行任务（CallerRunsPolicy），
+ * 上传高峰时压力会回传给调用方而不是无限堆积在内存里。
+ * 已有文档重新导入时按内容哈希与当前版本逐片段比对，只处理新增片段，旧版本在新版本全部就绪前保持可见。
+ */
+@Slf4j
+@Service
+public class IngestionService {
+
+    private static final List<KnowledgeDocument.Status> IDLE =
+            List.of(KnowledgeDocument.Status.READY, KnowledgeDocument.Status.FAILED);
+
+    private final KnowledgeDocumentRepository documentRepository;
+    private final ChunkStore chunkStore;
+    private final StructureAwareChunker chunker;
+    private final Embedder embedder;
+    private final VectorIndex vectorIndex;
+    private final Bm25Index bm25Index;
+    private final OrgTagRegistry orgTagRegistry;
+    private final OrgTagBitmaps orgTagBitmaps;
+    private final IndexVersions indexVersions;
+    private final IngestionProperties properties;
+    private final Map<KnowledgeDocument.MediaType, TextExtractor> extractors =
+            new EnumMap<>(KnowledgeDocument.MediaType.class);
+    private final ThreadPoolExecutor parseExecutor;
+    private final ThreadPoolExecutor embedExecutor;
+    private final ScheduledExecutorService sweeper =
+            Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("ingest-sweep-"));
+    private final Counter keptChunks;
+    private final Counter addedChunks;
+    private final Counter retiredChunks;
+
+    public IngestionService(KnowledgeDocumentRepository documentRepository,
+                            ChunkStore chunkStore,
+                            StructureAwareChunker chunker,
+                            Embedder embedder,
+                            List<TextExtractor> extractors,
+                            VectorIndex vectorIndex,
+                            Bm25Index bm25Index,
+                            OrgTagRegistry orgTagRegistry,
+                            OrgTagBitmaps orgTagBitmaps,
+                            IndexVersions indexVersions,
+                            IngestionProperties properties,
+                            MeterRegistry meterRegistry) {
+        this.documentRepository = documentRepository;
+        this.chunkStore = chunkStore;
+        this.chunker = chunker;
+        this.embedder = embedder;
+        this.vectorIndex = vectorIndex;
+        this.bm25Index = bm25Index;
+        this.orgTagRegistry = orgTagRegistry;
+        this.orgTagBitmaps = orgTagBitmaps;
+        this.indexVersions = indexVersions;
+        this.properties = properties;
+        extractors.forEach(extractor -> this.extractors.put(extractor.mediaType(), extractor));
+        this.parseExecutor = boundedExecutor("ingest-parse-", properties.getParseWorkers(), properties.getQueueCapacity());
+        this.embedExecutor = boundedExecutor("ingest-embed-", properties.getEmbedWorkers(), properties.getQueueCapacity());
+        // 只注册队列深度、活跃线程等 gauge，不包装任务
+        new ExecutorServiceMetrics(parseExecutor, "ingest.parse", List.of()).bindTo(meterRegistry);
+        new ExecutorServiceMetrics(embedExecutor, "ingest.embed", List.of()).bindTo(meterRegistry);
+        // 重新导入的工作量只与 added 有关，kept 占比越高增量导入省下的越多
+        this.keptChunks = reindexCounter(meterRegistry, "kept");
+        this.addedChunks = reindexCounter(meterRegistry, "added");
+        this.retiredChunks = reindexCounter(meterRegistry, "retired");
+    }
+
+    /**
+     * 登记文档并异步导入，立即返回 PENDING 状态，进度通过 getDocument 查询
+     */
+    public DocumentResponse register(User user, String title, KnowledgeDocument.MediaType mediaType,
+                                     String orgTag, String content) {
+        byte[] bytes = documentBytes(content);
+        KnowledgeDocument document = documentRepository.save(KnowledgeDocument.builder()
+                .uploadedBy(user)
+                .orgTag(resolveOrgTag(user, orgTag))
+                .title(title.trim())
+                .mediaType(mediaType)
+                .contentHash(sha256(bytes))
+                .status(KnowledgeDocument.Status.PENDING)
+                .build());
+        Long documentId = document.getId();
+        String documentOrgTag = document.getOrgTag();
+        parseExecutor.execute(() -> process(documentId, documentOrgTag, mediaType, content));
+        return toDocumentResponse(document);
+    }
+
+    /**
+     * 用新内容重新导入已有文档，立即返回；新版本就绪后原子切换，此前检索仍使用旧版本。
+     * 内容与当前版本相同时直接返回，不做任何处理
+     */
+    public DocumentResponse reindex(User user, Long documentId, String content) {
+        byte[] bytes = documentBytes(content);
+        KnowledgeDocument document = documentRepository.findById(documentId)
+                .filter(found -> user.orgTagSet().contains(found.getOrgTag()))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "document_not_found"));
+        String contentHash = sha256(bytes);
+        if (document.getStatus() == KnowledgeDocument.Status.READY && contentHash.equals(document.getContentHash())) {
+            return toDocumentResponse(document);
+        }
+        // 条件更新同时校验版本和状态，导入中的文档或并发的重新导入只有一个能成功
+        if (documentRepository.claimReindex(documentId, document.getVersion(), IDLE,
+                KnowledgeDocument.Status.PROCESSING) == 0) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "document_busy");
+        }
+        // 上一次导入失败时当前版本的片段可能缺少向量，没有已存嵌入的保留片段需要一并补齐
+        boolean repair = document.getStatus() == KnowledgeDocument.Status.FAILED;
+        int version = document.getVersion() + 1;
+        String orgTag = document.getOrgTag();
+        KnowledgeDocument.MediaType mediaType = document.getMediaType();
+        parseExecutor.execute(() -> reprocess(documentId, orgTag, version, contentHash, repair, mediaType, content));
+        document.setStatus(KnowledgeDocument.Status.PROCESSING);
+        document.setErrorMessage(null);
+        return toDocumentResponse(document);
+    }
+
+    @Transactional(readOnly = true)
+    public DocumentResponse getDocument(User user, Long documentId) {
+        return documentRepository.findById(documentId)
+                .filter(document -> user.orgTagSet().contains(document.getOrgTag()))
+                .map(this::toDocumentResponse)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "document_not_found"));
+    }
+
+    @Transactional(readOnly = true)
+    public List<DocumentResponse> listDocuments(User user) {
+        Set<String> tags = user.orgTagSet();
+        if (tags.isEmpty()) {
+            return List.of();
+        }
+        return documentRepository.findByOrgTagInOrderByCreatedTimeDesc(tags)
+                .stream()
+                .map(this::toDocumentResponse)
+                .toList();
+    }
+
+    /**
+     * 启动后周期性地清理停滞的导入：执行实例在导入途中退出时，文档会一直停在 PENDING/PROCESSING，
+     * 新版本的片段也留在表中。超过 stallTimeout 没有进度的文档删除未切换的片段并标记为 FAILED，之后可以重新导入
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startStallSweep() {
+        long period = Math.max(1, properties.getStallTimeout().toSeconds() / 2);
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                recoverStalled();
+            } catch (Exception e) {
+                log.warn("Stalled ingestion sweep failed", e);
+            }
+        }, 0, period, TimeUnit.SECONDS);
+    }
+
+    int recoverStalled() {
+        long stalledSeconds = properties.getStallTimeout().toSeconds();
+        int recovered = 0;
+        for (Long documentId : documentRepository.findStalled(stalledSeconds)) {
+            if (documentRepository.failStalled(documentId, stalledSeconds, "ingestion_interrupted") == 0) {
+                continue;
+            }
+            List<Long> staged = chunkStore.findStagedChunkIds(documentId);
+            chunkStore.deleteStagedChunks(documentId);
+            // 只清理本实例内存中的部分；其他实例的新片段从未进入标签位图，检索不到
+            bm25Index.delete(toInts(staged));
+            vectorIndex.delete(staged);
+            recovered++;
+            log.warn("Document {} stalled during ingestion, marked failed and dropped {} staged chunks",
+                    documentId, staged.size());
+        }
+        return recovered;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+        parseExecutor.shutdown();
+        embedExecutor.shutdown();
+    }
+
+    private void process(Long documentId, String orgTag, KnowledgeDocument.MediaType mediaType, String content) {
+        int tagId = orgTagRegistry.intern(orgTag);
+        List<Long> chunkIds = List.of();
+        try {
+            List<TextChunk> chunks = chunker.chunk(extractors.get(mediaType).extract(content));
+            chunkIds = chunkStore.insertChunks(documentId, 1, chunks);
+            documentRepository.startProcessing(documentId, KnowledgeDocument.Status.PROCESSING, chunks.size());
+
+            // 关键词检索不依赖嵌入，片段落库后立即可检索
+            for (int i = 0; i < chunks.size(); i++) {
+                int chunkId = ChunkIds.toInt(chunkIds.get(i));
+                orgTagBitmaps.add(tagId, chunkId);
+                bm25Index.add(chunkId, chunks.get(i).embeddingInput());
+            }
+            // 索引变化后再递增版本，该标签下缓存的检索结果随之失效
+            indexVersions.bump(tagId);
+
+            embed(documentId, tagId, chunks, chunkIds, null);
+        } catch (Exception e) {
+            failIngest(documentId, tagId, chunkIds, e);
+        }
+    }
+
+    private void reprocess(Long documentId, String orgTag, int version, String contentHash, boolean repair,
+                           KnowledgeDocument.MediaType mediaType, String content) {
+        List<Long> addedIds = List.of();
+        try {
+            List<TextChunk> chunks = chunker.chunk(extractors.get(mediaType).extract(content));
+            // 按内容哈希配对，同一哈希出现多次时按出现顺序一一对应；配不上的旧片段在切换时删除
+            Map<String, ArrayDeque<ChunkStore.ChunkHash>> current = new HashMap<>();
+            for (ChunkStore.ChunkHash chunk : chunkStore.findVisibleChunks(documentId)) {
+                current.computeIfAbsent(chunk.contentHash(), hash -> new ArrayDeque<>()).add(chunk);
+            }
+            List<TextChunk> added = new ArrayList<>();
+            List<TextChunk> kept = new ArrayList<>();
+            List<Long> keptIds = new ArrayList<>();
+            Map<Long, Integer> ordinals = new HashMap<>();
+            for (TextChunk chunk : chunks) {
+                ArrayDeque<ChunkStore.ChunkHash> same = current.get(chunk.contentHash());
+                ChunkStore.ChunkHash match = same == null ? null : same.poll();
+                if (match == null) {
+                    added.add(chunk);
+                } else {
+                    kept.add(chunk);
+                    keptIds.add(match.id());
+                    if (match.ordinal() != chunk.ordinal()) {
+                        ordinals.put(match.id(), chunk.ordinal());
+                    }
+                }
+            }
+            List<Long> retiredIds = new ArrayList<>();
+            current.values().forEach(rest -> rest.forEach(chunk -> retiredIds.add(chunk.id())));
+            keptChunks.increment(kept.size());
+            addedChunks.increment(added.size());
+            retiredChunks.increment(retiredIds.size());
+
+            List<TextChunk> toEmbed = new ArrayList<>(added);
+            List<Long> toEmbedIds = new ArrayList<>();
+            if (repair) {
+                Set<String> stored = chunkStore.findEmbeddings(embedder.model(),
+                        kept.stream().map(TextChunk::contentHash).toList()).keySet();
+                for (int i = 0; i < kept.size(); i++) {
+                    if (!stored.contains(kept.get(i).contentHash())) {
+                        toEmbed.add(kept.get(i));
+                        toEmbedIds.add(keptIds.get(i));
+                    }
+                }
+            }
+            documentRepository.resetProgress(documentId, chunks.size(), kept.size() - toEmbedIds.size());
+            addedIds = chunkStore.insertChunks(documentId, version, added);
+            toEmbedIds.addAll(0, addedIds);
+            // 新片段先进入关键词索引，切换时才加入标签位图，此前检索不到
+            int tagId = orgTagRegistry.intern(orgTag);
+            for (int i = 0; i < added.size(); i++) {
+                bm25Index.add(ChunkIds.toInt(addedIds.get(i)), added.get(i).embeddingInput());
+            }
+            Revision revision = new Revision(version, contentHash, chunks.size(), addedIds, retiredIds, ordinals);
+            embed(documentId, tagId, toEmbed, toEmbedIds, revision);
+        } catch (Exception e) {
+            failReindex(documentId, addedIds, e);
+        }
+    }
+
+    /**
+     * 同一文档内或其他文档中已嵌入过的相同内容直接复用向量，其余分批提交嵌入，全部写入向量索引后完成导入
+     *
+     * @param revision 重新导入的新版本，首次导入时为 null
+     */
+    private void embed(Long documentId, int tagId, List<TextChunk> chunks, List<Long> chunkIds, Revision revision) {
+        Map<String, List<Long>> idsByHash = new LinkedHashMap<>();
+        Map<String, String> inputs = new LinkedHashMap<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            TextChunk chunk = chunks.get(i);
+            idsByHash.computeIfAbsent(chunk.contentHash(), hash -> new ArrayList<>()).add(chunkIds.get(i));
+            inputs.putIfAbsent(chunk.contentHash(), chunk.embeddingInput());
+        }
+        Map<String, float[]> embedded = chunkStore.findEmbeddings(embedder.model(), idsByHash.keySet());
+        int reused = 0;
+        List<String> pending = new ArrayList<>();
+        for (Map.Entry<String, List<Long>> entry : idsByHash.entrySet()) {
+            float[] vector = embedded.get(entry.getKey());
+            if (vector != null) {
+                entry.getValue().forEach(chunkId -> vectorIndex.add(chunkId, vector));
+                reused += entry.getValue().size();
+            } else {
+                pending.add(entry.getKey());
+            }
+        }
+        if (reused > 0) {
+            // 新版本的片段切换前不可见，缓存在切换时统一失效
+            if (revision == null) {
+                indexVersions.bump(tagId);
+            }
+            documentRepository.addEmbeddedChunks(documentId, reused);
+        }
+        if (pending.isEmpty()) {
+            complete(documentId, tagId, chunkIds, revision);
+            return;
+        }
+
+        Progress progress = new Progress(documentId, tagId, revision, chunkIds, chunks.size() - reused);
+        int batchSize = properties.getEmbedBatchSize();
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            List<String> hashes = pending.subList(from, Math.min(pending.size(), from + batchSize));
+            List<String> texts = new ArrayList<>(hashes.size());
+            List<List<Long>> ids = new ArrayList<>(hashes.size());
+            for (String hash : hashes) {
+                texts.add(inputs.get(hash));
+                ids.add(idsByHash.get(hash));
+            }
+            embedExecutor.execute(() -> embedBatch(progress, List.copyOf(hashes), texts, ids));
+        }
+    }
+
+    private void embedBatch(Progress progress, List<String> hashes, List<String> texts, List<List<Long>> chunkIds) {
+        if (progress.failed.get()) {
+            return;
+        }
+        try {
+            List<float[]> vectors = embedder.embed(texts);
+            chunkStore.insertEmbeddings(embedder.model(), hashes, vectors);
+            int chunkCount = 0;
+            for (int i = 0; i < vectors.size(); i++) {
+                float[] vector = vectors.get(i);
+                chunkIds.get(i).forEach(chunkId -> vectorIndex.add(chunkId, vector));
+                chunkCount += chunkIds.get(i).size();
+            }
+            if (progress.revision == null) {
+                indexVersions.bump(progress.tagId);
+            }
+            documentRepository.addEmbeddedChunks(progress.documentId, chunkCount);
+            if (progress.remaining.addAndGet(-chunkCount) == 0) {
+                complete(progress.documentId, progress.tagId, progress.chunkIds, progress.revision);
+            }
+        } catch (Exception e) {
+            // 同一文档只记录第一次失败，其余批次直接跳过
+            if (progress.failed.compareAndSet(false, true)) {
+                if (progress.revision == null) {
+                    failIngest(progress.documentId, progress.tagId, progress.chunkIds, e);
+                } else {
+                    failReindex(progress.documentId, progress.revision.addedIds(), e);
+                }
+            }
+        }
+    }
+
+    private void complete(Long documentId, int tagId, List<Long> chunkIds, Revision revision) {
+        if (revision == null) {
+            // 条件更新：导入期间被停滞清理标记为 FAILED 的文档不会被改回 READY，本次导入作废
+            if (documentRepository.transitionStatus(documentId, KnowledgeDocument.Status.PROCESSING,
+                    KnowledgeDocument.Status.READY) == 0) {
+                log.warn("Document {} left PROCESSING before its ingestion finished, dropping {} chunks",
+                        documentId, chunkIds.size());
+                withdrawIngest(documentId, tagId, chunkIds);
+            }
+        } else {
+            publish(documentId, tagId, revision);
+        }
+    }
+
+    // 先在数据库中切换版本，再在内存中原子地替换可见片段，最后使该标签的检索缓存失效
+    private void publish(Long documentId, int tagId, Revision revision) {
+        if (!chunkStore.publishVersion(documentId, revision.version() - 1, revision.version(), revision.contentHash(),
+                revision.totalChunks(), revision.retiredIds(), revision.ordinals())) {
+            throw new IllegalStateException("document " + documentId + " left version " + (revision.version() - 1)
+                    + " during reindex");
+        }
+        int[] retired = toInts(revision.retiredIds());
+        orgTagBitmaps.replace(tagId, toInts(revision.addedIds()), retired);
+        bm25Index.delete(retired);
+        vectorIndex.delete(revision.retiredIds());
+        indexVersions.bump(tagId);
+        log.info("Document {} switched to version {}: {} chunks added, {} retired",
+                documentId, revision.version(), revision.addedIds().size(), revision.retiredIds().size());
+    }
+
+    // 重新导入失败时丢弃未切换的新片段，旧版本保持可见
+    private void failReindex(Long documentId, List<Long> addedIds, Exception e) {
+        try {
+            chunkStore.deleteStagedChunks(documentId);
+            bm25Index.delete(toInts(addedIds));
+            vectorIndex.delete(addedIds);
+        } catch (Exception cleanup) {
+            e.addSuppressed(cleanup);
+        }
+        fail(documentId, e);
+    }
+
+    // 首次导入失败时撤回已进入标签位图和内存索引的片段并删除已落库的片段，文档不会以半成品状态被检索到
+    private void failIngest(Long documentId, int tagId, List<Long> chunkIds, Exception e) {
+        try {
+            withdrawIngest(documentId, tagId, chunkIds);
+        } catch (Exception cleanup) {
+            e.addSuppressed(cleanup);
+        }
+        fail(documentId, e);
+    }
+
+    private void withdrawIngest(Long documentId, int tagId, List<Long> chunkIds) {
+        int[] ids = toInts(chunkIds);
+        orgTagBitmaps.replace(tagId, new int[0], ids);
+        bm25Index.delete(ids);
+        vectorIndex.delete(chunkIds);
+        indexVersions.bump(tagId);
+        chunkStore.deleteChunks(documentId, 1);
+    }
+
+    private void fail(Long documentId, Exception e) {
+        log.warn("Ingestion of document {} failed", documentId, e);
+        String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        documentRepository.updateStatus(documentId, KnowledgeDocument.Status.FAILED,
+                message.length() > 512 ? message.substring(0, 512) : message);
+    }
+
+    private byte[] documentBytes(String content) {
+        if (content == null || content.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "content_required");
+        }
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > properties.getMaxDocumentBytes()) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "document_too_large");
+        }
+        return bytes;
+    }
+
+    // 未指定标签时只有单一组织的用户可以省略；指定的标签必须属于上传者
+    private static String resolveOrgTag(User user, String orgTag) {
+        Set<String> tags = user.orgTagSet();
+        if (orgTag == null || orgTag.isBlank()) {
+            if (tags.size() != 1) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "org_tag_required");
+            }
+            return tags.iterator().next();
+        }
+        if (!tags.contains(orgTag.trim())) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "org_tag_forbidden");
+        }
+        return orgTag.trim();
+    }
+
+    private static ThreadPoolExecutor boundedExecutor(String prefix, int threads, int queueCapacity) {
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory(prefix),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static Counter reindexCounter(MeterRegistry meterRegistry, String change) {
+        return Counter.builder("ingest.reindex.chunks")
+                .description("Chunks compared by content hash during document reindexing")
+                .tag("change", change)
+                .register(meterRegistry);
+    }
+
+    private static int[] toInts(List<Long> ids) {
+        return ids.stream().mapToInt(ChunkIds::toInt).toArray();
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private DocumentResponse toDocumentResponse(KnowledgeDocument document) {
+        return new DocumentResponse(
+                document.getId(),
+                document.getTitle(),
+                document.getMediaType(),
+                document.getOrgTag(),
+                document.getStatus(),
+                document.getVersion(),
+                document.getTotalChunks(),
+                document.getEmbeddedChunks(),
+                document.getCreatedTime()
+        );
+    }
+
+    // 重新导入的新版本：切换时加入新增片段、删除被替换的片段、改写保留片段的序号
+    private record Revision(int version, String contentHash, int totalChunks, List<Long> addedIds,
+                            List<Long> retiredIds, Map<Long, Integer> ordinals) { }
+
+    private static final class Progress {
+        private final Long documentId;
+        private final int tagId;
+        private final Revision revision;
+        // 本次提交嵌入的片段，首次导入失败时据此撤回
+        private final List<Long> chunkIds;
+        // 尚未完成嵌入的片段数，归零时文档进入 READY
+        private final AtomicInteger remaining;
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        private Progress(Long documentId, int tagId, Revision revision, List<Long> chunkIds, int remaining) {
+            this.documentId = documentId;
+            this.tagId = tagId;
+            this.revision = revision;
+            this.chunkIds = chunkIds;
+            this.remaining = new AtomicInteger(remaining);
+        }
+    }
+}
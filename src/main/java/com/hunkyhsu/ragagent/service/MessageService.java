@@ -0,0 +1,42 @@
+package com.hunkyhsu.ragagent.service;
+
+import com.hunkyhsu.ragagent.entity.Conversation;
+import com.hunkyhsu.ragagent.entity.Message;
+import com.hunkyhsu.ragagent.event.ChatEvent;
+import com.hunkyhsu.ragagent.event.ChatEventPublisher;
+import com.hunkyhsu.ragagent.tokenizer.TokenCounter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+public class MessageService {
+
+    private final ChatEventPublisher chatEventPublisher;
+    private final TokenCounter tokenCounter;
+    private final PromptContextAssembler promptContextAssembler;
+
+    /**
+     * 写入时计算 token 数，之后的上下文预算和用量核算直接使用存量值，不再重复分词。
+     * 消息以事件形式发布，broker 确认后即返回，落库由 ChatEventPersister 批量完成；
+     * 同时追加到本实例缓存的上下文窗口，不必等落库即可进入下一轮的 prompt
+     */
+    public ChatEvent append(Conversation conversation, Message.Role role, String content) {
+        ChatEvent event = ChatEvent.message(conversation.getId(), conversation.getUser().getId(), role,
+                content, tokenCounter.count(content));
+        chatEventPublisher.publish(event);
+        promptContextAssembler.record(event);
+        return event;
+    }
+
+    /**
+     * 流式结束后写入 assistant 消息，同一事件携带本轮用量供 token_usage 与配额聚合使用
+     */
+    public ChatEvent complete(Conversation conversation, String content, ChatEvent.Usage usage) {
+        ChatEvent event = ChatEvent.completed(conversation.getId(), conversation.getUser().getId(),
+                content, tokenCounter.count(content), usage);
+        chatEventPublisher.publish(event);
+        promptContextAssembler.record(event);
+        return event;
+    }
+}
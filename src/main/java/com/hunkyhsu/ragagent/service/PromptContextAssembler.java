@@ -0,0 +1,303 @@
+package com.hunkyhsu.ragagent.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hunkyhsu.ragagent.config.AiProperties;
+import com.hunkyhsu.ragagent.entity.Conversation;
+import com.hunkyhsu.ragagent.entity.ConversationSummary;
+import com.hunkyhsu.ragagent.entity.Message;
+import com.hunkyhsu.ragagent.event.ChatEvent;
+import com.hunkyhsu.ragagent.provider.PromptMessage;
+import com.hunkyhsu.ragagent.repository.ConversationSummaryRepository;
+import com.hunkyhsu.ragagent.repository.MessageRepository;
+import com.hunkyhsu.ragagent.tokenizer.TokenCounter;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 按模型 token 预算组装历史上下文：滚动摘要 + 最近若干条消息。
+ * 组装结果按会话缓存，下一轮只增量读取新消息；窗口滑动时才把滑出的消息合并进摘要并持久化，
+ * 因此无论会话多长，每轮的读库量和 prompt 大小都是有界的。
+ * 消息由事件消费者异步落库，本实例发布的消息同时以“待落库”条目追加到缓存窗口，
+ * 消费有积压时下一轮仍能看到上一轮问答；对应的行落库后被增量读取替换，超过 pendingTtl 仍未落库的条目被丢弃。
+ */
+@Service
+public class PromptContextAssembler {
+
+    private static final int PAGE_SIZE = 50;
+    private static final String SUMMARY_PREFIX = "Summary of the earlier conversation:\n";
+    private static final long PENDING = -1L;
+
+    private final MessageRepository messageRepository;
+    private final ConversationSummaryRepository conversationSummaryRepository;
+    private final ConversationSummarizer conversationSummarizer;
+    private final TokenCounter tokenCounter;
+    private final AiProperties.Context properties;
+    private final Cache<Long, AssembledContext> assembled;
+    // 会话级的锁独立于缓存条目：条目在持锁期间被淘汰或失效时，同一会话的后续请求仍等待同一把锁，不会重复合并摘要
+    private final ConcurrentMap<Long, ConversationLock> locks = new ConcurrentHashMap<>();
+
+    public PromptContextAssembler(MessageRepository messageRepository,
+                                  ConversationSummaryRepository conversationSummaryRepository,
+                                  ConversationSummarizer conversationSummarizer,
+                                  TokenCounter tokenCounter,
+                                  AiProperties aiProperties) {
+        this.messageRepository = messageRepository;
+        this.conversationSummaryRepository = conversationSummaryRepository;
+        this.conversationSummarizer = conversationSummarizer;
+        this.tokenCounter = tokenCounter;
+        this.properties = aiProperties.getContext();
+        this.assembled = Caffeine.newBuilder()
+                .maximumSize(properties.getCacheSize())
+                .expireAfterAccess(properties.getCacheExpireAfterAccess())
+                .build();
+    }
+
+    /**
+     * 返回本轮可直接放入 prompt 的历史消息，摘要（如有）以 SYSTEM 消息放在最前
+     */
+    public List<PromptMessage> assemble(Conversation conversation, String model) {
+        int windowBudget = Math.max(0, properties.budgetFor(model) - properties.getSummaryBudgetTokens());
+        // 读库和摘要在会话自己的锁内完成：同一会话的并发请求串行推进窗口、不会重复合并摘要，
+        // 也不占用 Caffeine 的哈希桶锁阻塞其他会话
+        return locked(conversation.getId(), () -> {
+            AssembledContext previous = assembled.getIfPresent(conversation.getId());
+            AssembledContext context = previous == null || previous.windowBudget() != windowBudget
+                    ? load(conversation, windowBudget)
+                    : advance(conversation, previous);
+            store(conversation.getId(), previous, context);
+            return context.toHistory();
+        });
+    }
+
+    /**
+     * 把本实例刚发布的消息追加到已缓存的窗口；会话未缓存时无需处理，下次组装从数据库读取
+     */
+    public void record(ChatEvent event) {
+        if (assembled.getIfPresent(event.conversationId()) == null) {
+            return;
+        }
+        locked(event.conversationId(), () -> {
+            AssembledContext context = assembled.getIfPresent(event.conversationId());
+            if (context == null || context.contains(event.eventId())) {
+                return null;
+            }
+            int tokens = event.tokenCount() != null ? event.tokenCount() : tokenCounter.count(event.content());
+            List<WindowEntry> pending = new ArrayList<>(context.pending());
+            pending.add(new WindowEntry(PENDING, event.eventId(), event.role(), event.content(), tokens,
+                    System.nanoTime()));
+            store(event.conversationId(), context, context.withPending(List.copyOf(pending)));
+            return null;
+        });
+    }
+
+    public void invalidate(Long conversationId) {
+        assembled.invalidate(conversationId);
+    }
+
+    // 冷启动：从最新消息往回填满窗口，窗口之前且尚未被摘要覆盖的消息按批合并进摘要
+    private AssembledContext load(Conversation conversation, int windowBudget) {
+        ConversationSummary stored = conversationSummaryRepository.findById(conversation.getId()).orElse(null);
+        String summary = stored == null ? "" : stored.getSummary();
+        long coveredUntil = stored == null ? 0L : stored.getCoveredUntilMessageId();
+
+        Deque<WindowEntry> window = new ArrayDeque<>();
+        int windowTokens = 0;
+        long newestId = coveredUntil;
+        boolean full = false;
+        for (int page = 0; !full; page++) {
+            List<Message> batch = messageRepository.findByConversationAndIdGreaterThanOrderByIdDesc(
+                    conversation, coveredUntil, PageRequest.of(page, PAGE_SIZE));
+            for (Message message : batch) {
+                newestId = Math.max(newestId, message.getId());
+                WindowEntry entry = toEntry(message);
+                if (windowTokens + entry.tokens() > windowBudget) {
+                    full = true;
+                    break;
+                }
+                window.addFirst(entry);
+                windowTokens += entry.tokens();
+            }
+            if (batch.size() < PAGE_SIZE) {
+                break;
+            }
+        }
+
+        if (full) {
+            long windowStartId = window.isEmpty() ? newestId + 1 : window.peekFirst().id();
+            long foldedUntil = coveredUntil;
+            List<Message> batch;
+            do {
+                batch = messageRepository.findByConversationAndIdGreaterThanAndIdLessThanOrderByIdAsc(
+                        conversation, foldedUntil, windowStartId, PageRequest.of(0, PAGE_SIZE));
+                if (!batch.isEmpty()) {
+                    summary = conversationSummarizer.fold(summary,
+                            batch.stream().map(PromptContextAssembler::toPromptMessage).toList(),
+                            properties.getSummaryBudgetTokens());
+                    foldedUntil = batch.get(batch.size() - 1).getId();
+                }
+            } while (batch.size() == PAGE_SIZE);
+            if (foldedUntil != coveredUntil) {
+                coveredUntil = foldedUntil;
+                saveSummary(conversation.getId(), summary, coveredUntil);
+            }
+        }
+        return new AssembledContext(windowBudget, summary, coveredUntil, List.copyOf(window), windowTokens, newestId,
+                List.of());
+    }
+
+    // 热路径：只读取上次组装之后的新消息，超出预算时从窗口头部滑出并增量更新摘要
+    private AssembledContext advance(Conversation conversation, AssembledContext previous) {
+        List<Message> fresh = messageRepository.findByConversationAndIdGreaterThanOrderByIdAsc(
+                conversation, previous.lastMessageId());
+        Deque<WindowEntry> window = new ArrayDeque<>(previous.window());
+        int windowTokens = previous.windowTokens();
+        long lastMessageId = previous.lastMessageId();
+        Set<String> persisted = new HashSet<>();
+        for (Message message : fresh) {
+            WindowEntry entry = toEntry(message);
+            window.addLast(entry);
+            windowTokens += entry.tokens();
+            lastMessageId = message.getId();
+            persisted.add(message.getMessageId());
+        }
+        // 已落库的待落库条目由数据库中的行取代；迟迟没有落库的（事件被跳过或落库失败）过期丢弃
+        long expiredBefore = System.nanoTime() - properties.getPendingTtl().toNanos();
+        Deque<WindowEntry> pending = new ArrayDeque<>();
+        for (WindowEntry entry : previous.pending()) {
+            if (!persisted.contains(entry.messageId()) && entry.recordedAt() - expiredBefore > 0) {
+                pending.addLast(entry);
+            }
+        }
+        int pendingTokens = pending.stream().mapToInt(WindowEntry::tokens).sum();
+
+        // 只有已落库的消息才能滑出窗口并记入摘要的覆盖范围
+        List<PromptMessage> evicted = new ArrayList<>();
+        long coveredUntil = previous.coveredUntilId();
+        while (windowTokens + pendingTokens > previous.windowBudget() && !window.isEmpty()) {
+            WindowEntry entry = window.removeFirst();
+            windowTokens -= entry.tokens();
+            evicted.add(entry.toPromptMessage());
+            coveredUntil = entry.id();
+        }
+        // 窗口滑空后仍超出预算：待落库条目不能记入摘要，从最旧的开始移出 prompt，落库后再由增量读取带回
+        while (pendingTokens > previous.windowBudget()) {
+            pendingTokens -= pending.removeFirst().tokens();
+        }
+        if (fresh.isEmpty() && evicted.isEmpty() && pending.size() == previous.pending().size()) {
+            return previous;
+        }
+        String summary = previous.summary();
+        if (!evicted.isEmpty()) {
+            summary = conversationSummarizer.fold(summary, evicted, properties.getSummaryBudgetTokens());
+            saveSummary(conversation.getId(), summary, coveredUntil);
+        }
+        return new AssembledContext(previous.windowBudget(), summary, coveredUntil,
+                List.copyOf(window), windowTokens, lastMessageId, List.copyOf(pending));
+    }
+
+    // 只替换组装开始时读到的那份结果：持锁期间条目被失效（会话删除等）时不把旧结果放回缓存
+    private void store(Long conversationId, AssembledContext previous, AssembledContext context) {
+        if (previous == null) {
+            assembled.asMap().putIfAbsent(conversationId, context);
+        } else if (context != previous) {
+            assembled.asMap().replace(conversationId, previous, context);
+        }
+    }
+
+    private <T> T locked(Long conversationId, Supplier<T> work) {
+        ConversationLock lock = locks.compute(conversationId, (id, current) -> {
+            ConversationLock held = current == null ? new ConversationLock() : current;
+            held.holders++;
+            return held;
+        });
+        lock.lock.lock();
+        try {
+            return work.get();
+        } finally {
+            lock.lock.unlock();
+            // 最后一个持有者离开时移除，锁表只包含正在组装的会话
+            locks.computeIfPresent(conversationId, (id, current) -> --current.holders == 0 ? null : current);
+        }
+    }
+
+    private void saveSummary(Long conversationId, String summary, long coveredUntil) {
+        conversationSummaryRepository.save(ConversationSummary.builder()
+                .conversationId(conversationId)
+                .summary(summary)
+                .coveredUntilMessageId(coveredUntil)
+                .tokenCount(tokenCounter.count(summary))
+                .build());
+    }
+
+    private WindowEntry toEntry(Message message) {
+        int tokens = message.getTokenCount() != null
+                ? message.getTokenCount()
+                : tokenCounter.count(message.getContent());
+        return new WindowEntry(message.getId(), message.getMessageId(), message.getRole(), message.getContent(), tokens,
+                0L);
+    }
+
+    private static PromptMessage toPromptMessage(Message message) {
+        return new PromptMessage(message.getRole(), message.getContent());
+    }
+
+    // holders 只在 locks 的 compute 内修改
+    private static final class ConversationLock {
+        private final ReentrantLock lock = new ReentrantLock();
+        private int holders;
+    }
+
+    // 待落库的条目还没有数据库 id，以 PENDING 占位，recordedAt 为记录时的 System.nanoTime()
+    private record WindowEntry(long id, String messageId, Message.Role role, String content, int tokens,
+                               long recordedAt) {
+        PromptMessage toPromptMessage() {
+            return new PromptMessage(role, content);
+        }
+    }
+
+    private record AssembledContext(
+            int windowBudget,
+            String summary,
+            long coveredUntilId,
+            List<WindowEntry> window,
+            int windowTokens,
+            long lastMessageId,
+            List<WindowEntry> pending
+    ) {
+        List<PromptMessage> toHistory() {
+            List<PromptMessage> history = new ArrayList<>(window.size() + pending.size() + 1);
+            if (!summary.isEmpty()) {
+                history.add(new PromptMessage(Message.Role.SYSTEM, SUMMARY_PREFIX + summary));
+            }
+            for (WindowEntry entry : window) {
+                history.add(entry.toPromptMessage());
+            }
+            for (WindowEntry entry : pending) {
+                history.add(entry.toPromptMessage());
+            }
+            return history;
+        }
+
+        boolean contains(String messageId) {
+            return window.stream().anyMatch(entry -> messageId.equals(entry.messageId()))
+                    || pending.stream().anyMatch(entry -> messageId.equals(entry.messageId()));
+        }
+
+        AssembledContext withPending(List<WindowEntry> pending) {
+            return new AssembledContext(windowBudget, summary, coveredUntilId, window, windowTokens, lastMessageId,
+                    pending);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.hunkyhsu.ragagent.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hunkyhsu.ragagent.config.ProvisioningProperties;
+import com.hunkyhsu.ragagent.dto.BulkProvisionRequest;
+import com.hunkyhsu.ragagent.dto.ProvisionResult;
+import com.hunkyhsu.ragagent.dto.ProvisionUserRequest;
+import com.hunkyhsu.ragagent.provisioning.UserBatchStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 组织开户的批量建号：按块处理，每块内先用集合查询校验用户名和邮箱唯一性，再在有界线程池上并行计算 BCrypt，
+ * 最后一次批量写入，不签发任何令牌。每块处理完即把逐行结果以 NDJSON 写给调用方。
+ * 同一时刻每个实例只允许一个批量任务，哈希线程数默认只占四分之一的核，不挤占在线请求
+ */
+@Slf4j
+@Service
+public class UserProvisioningService {
+
+    private final UserBatchStore userBatchStore;
+    private final PasswordEncoder passwordEncoder;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ProvisioningProperties properties;
+    private final ExecutorService hashExecutor;
+    private final ExecutorService runner =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("provision-"));
+    private final Semaphore running = new Semaphore(1);
+
+    public UserProvisioningService(UserBatchStore userBatchStore,
+                                   PasswordEncoder passwordEncoder,
+                                   Validator validator,
+                                   ObjectMapper objectMapper,
+                                   ProvisioningProperties properties,
+                                   MeterRegistry meterRegistry) {
+        this.userBatchStore = userBatchStore;
+        this.passwordEncoder = passwordEncoder;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.hashExecutor = Executors.newFixedThreadPool(properties.getHashWorkers(),
+                new CustomizableThreadFactory("provision-hash-"));
+        new ExecutorServiceMetrics(hashExecutor, "provision.hash", List.of()).bindTo(meterRegistry);
+    }
+
+    /**
+     * 在后台执行批量建号，返回的 emitter 随每块完成输出该块的逐行结果，最后输出汇总行
+     */
+    public ResponseBodyEmitter provision(BulkProvisionRequest request) {
+        if (request.users().size() > properties.getMaxRows()) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "too_many_rows");
+        }
+        if (!running.tryAcquire()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "provisioning_in_progress");
+        }
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeoutFor(request.users()).toMillis());
+        try {
+            runner.execute(() -> {
+                try {
+                    run(request, emitter);
+                } finally {
+                    running.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            running.release();
+            throw e;
+        }
+        return emitter;
+    }
+
+    /**
+     * 结果流的超时：5 万行全部需要哈希时，四分之一的核上要跑几十分钟，固定超时会在中途断开调用方
+     */
+    Duration timeoutFor(List<ProvisionUserRequest> users) {
+        long hashed = users.stream().filter(user -> user != null && user.passwordHash() == null).count();
+        long rounds = (hashed + properties.getHashWorkers() - 1) / properties.getHashWorkers();
+        Duration estimate = properties.getHashCost().multipliedBy(rounds * 2);
+        return estimate.compareTo(properties.getTimeout()) > 0 ? estimate : properties.getTimeout();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+        hashExecutor.shutdownNow();
+    }
+
+    private void run(BulkProvisionRequest request, ResponseBodyEmitter emitter) {
+        long started = System.nanoTime();
+        List<ProvisionUserRequest> users = request.users();
+        int created = 0;
+        int failed = 0;
+        // 跨块的批内去重，键为小写
+        Set<String> seenUsernames = new HashSet<>();
+        Set<String> seenEmails = new HashSet<>();
+        try {
+            for (int from = 0; from < users.size(); from += properties.getChunkSize()) {
+                int to = Math.min(users.size(), from + properties.getChunkSize());
+                List<ProvisionResult> results = processChunk(request.orgTags(), users, from, to,
+                        seenUsernames, seenEmails);
+                for (ProvisionResult result : results) {
+                    if (result.status() == ProvisionResult.Status.CREATED) {
+                        created++;
+                    } else {
+                        failed++;
+                    }
+                }
+                emit(emitter, results);
+            }
+            long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+            emit(emitter, List.of(ProvisionResult.summary(created, failed, elapsedMs)));
+            log.info("Provisioned {} users ({} failed) in {} ms", created, failed, elapsedMs);
+            emitter.complete();
+        } catch (IOException e) {
+            // 调用方断开后停止处理，已写入的块保持不变
+            log.warn("Provisioning client disconnected after {} created, {} failed", created, failed);
+            emitter.completeWithError(e);
+        } catch (Exception e) {
+            log.error("Provisioning aborted after {} created, {} failed", created, failed, e);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private List<ProvisionResult> processChunk(String defaultOrgTags, List<ProvisionUserRequest> users,
+                                               int from, int to, Set<String> seenUsernames, Set<String> seenEmails)
+            throws InterruptedException, ExecutionException {
+        ProvisionResult[] results = new ProvisionResult[to - from];
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ProvisionUserRequest user = users.get(i);
+            String error = validate(user);
+            if (error == null && !seenUsernames.add(user.username().toLowerCase(Locale.ROOT))) {
+                error = "duplicate_username_in_batch";
+            }
+            if (error == null && !seenEmails.add(user.email().toLowerCase(Locale.ROOT))) {
+                error = "duplicate_email_in_batch";
+            }
+            if (error != null) {
+                results[i - from] = ProvisionResult.failed(i, user == null ? null : user.username(), error);
+            } else {
+                candidates.add(i);
+            }
+        }
+
+        Set<String> takenUsernames = userBatchStore.existingUsernames(
+                candidates.stream().map(i -> users.get(i).username()).toList());
+        Set<String> takenEmails = userBatchStore.existingEmails(
+                candidates.stream().map(i -> users.get(i).email()).toList());
+        List<Integer> accepted = new ArrayList<>(candidates.size());
+        for (int i : candidates) {
+            ProvisionUserRequest user = users.get(i);
+            if (takenUsernames.contains(user.username().toLowerCase(Locale.ROOT))) {
+                results[i - from] = ProvisionResult.failed(i, user.username(), "user_exists");
+            } else if (takenEmails.contains(user.email().toLowerCase(Locale.ROOT))) {
+                results[i - from] = ProvisionResult.failed(i, user.username(), "email_exists");
+            } else {
+                accepted.add(i);
+            }
+        }
+
+        List<Future<String>> hashes = new ArrayList<>(accepted.size());
+        for (int i : accepted) {
+            ProvisionUserRequest user = users.get(i);
+            hashes.add(user.passwordHash() != null
+                    ? CompletableFuture.completedFuture(user.passwordHash())
+                    : hashExecutor.submit(() -> passwordEncoder.encode(user.password())));
+        }
+        List<UserBatchStore.NewUser> rows = new ArrayList<>(accepted.size());
+        for (int k = 0; k < accepted.size(); k++) {
+            ProvisionUserRequest user = users.get(accepted.get(k));
+            String orgTags = user.orgTags() == null || user.orgTags().isBlank() ? defaultOrgTags : user.orgTags();
+            rows.add(new UserBatchStore.NewUser(user.username(), hashes.get(k).get(), user.email(), orgTags));
+        }
+        if (!rows.isEmpty()) {
+            userBatchStore.insert(rows);
+            Map<String, Long> ids = userBatchStore.findCreated(rows);
+            for (int k = 0; k < accepted.size(); k++) {
+                int i = accepted.get(k);
+                Long id = ids.get(rows.get(k).username().toLowerCase(Locale.ROOT));
+                // 校验之后被并发注册抢先占用
+                results[i - from] = id != null
+                        ? ProvisionResult.created(i, rows.get(k).username(), id)
+                        : ProvisionResult.failed(i, rows.get(k).username(), "conflict");
+            }
+        }
+        return List.of(results);
+    }
+
+    private String validate(ProvisionUserRequest user) {
+        if (user == null) {
+            return "invalid_row";
+        }
+        Set<ConstraintViolation<ProvisionUserRequest>> violations = validator.validate(user);
+        if (!violations.isEmpty()) {
+            return "invalid_" + violations.iterator().next().getPropertyPath();
+        }
+        if ((user.password() == null) == (user.passwordHash() == null)) {
+            return "password_required";
+        }
+        return null;
+    }
+
+    // 一块的结果合成一次写出
+    private void emit(ResponseBodyEmitter emitter, List<ProvisionResult> results) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(results.size() * 96);
+        for (ProvisionResult result : results) {
+            out.write(objectMapper.writeValueAsBytes(result));
+            out.write('\n');
+        }
+        emitter.send(out.toByteArray(), MediaType.APPLICATION_OCTET_STREAM);
+    }
+}
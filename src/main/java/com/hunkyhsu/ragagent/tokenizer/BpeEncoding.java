@@ -0,0 +1,27 @@
+package com.hunkyhsu.ragagent.tokenizer;
+
+import java.util.regex.Pattern;
+
+/**
+ * 与 tiktoken 编码对应的预分词正则；词表 rank 文件需单独提供
+ */
+public enum BpeEncoding {
+
+    CL100K_BASE("(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}"
+            + "| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+"),
+
+    O200K_BASE("[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+            + "|[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+            + "|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+");
+
+    private final Pattern pattern;
+
+    BpeEncoding(String regex) {
+        // tiktoken 的 \s 按 Unicode 语义匹配
+        this.pattern = Pattern.compile(regex, Pattern.UNICODE_CHARACTER_CLASS);
+    }
+
+    public Pattern pattern() {
+        return pattern;
+    }
+}
@@ -0,0 +1,285 @@
+package com.hunkyhsu.ragagent.tokenizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * 进程内 byte-level BPE 分词器，兼容 tiktoken 的 rank 文件格式（每行 "base64(token) rank"）。
+ * 合并算法与 tiktoken 一致：在预分词片段内反复合并 rank 最小的相邻字节对。
+ * 编码过程只使用线程内复用的原始数组，rank 查询走预先构建的开放寻址表，不为每个字节对分配对象。
+ */
+public final class BpeTokenizer implements TokenCounter {
+
+    static final int NO_RANK = Integer.MAX_VALUE;
+
+    private final BpeEncoding encoding;
+    private final RankTable ranks;
+    private final ThreadLocal<Scratch> scratch;
+
+    private BpeTokenizer(BpeEncoding encoding, RankTable ranks) {
+        this.encoding = encoding;
+        this.ranks = ranks;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(encoding.pattern().matcher("")));
+    }
+
+    public static BpeTokenizer load(InputStream vocabulary, BpeEncoding encoding) throws IOException {
+        List<byte[]> tokens = new ArrayList<>(200_000);
+        List<Integer> tokenRanks = new ArrayList<>(200_000);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(vocabulary, StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    throw new IOException("invalid vocabulary line: " + line);
+                }
+                tokens.add(Base64.getDecoder().decode(line.substring(0, space)));
+                tokenRanks.add(Integer.parseInt(line.substring(space + 1).trim()));
+            }
+        }
+        return new BpeTokenizer(encoding, RankTable.build(tokens, tokenRanks));
+    }
+
+    public BpeEncoding encoding() {
+        return encoding;
+    }
+
+    public int vocabularySize() {
+        return ranks.size();
+    }
+
+    @Override
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return encodeInto(text, scratch.get(), false);
+    }
+
+    public int[] encode(String text) {
+        if (text == null || text.isEmpty()) {
+            return new int[0];
+        }
+        Scratch s = scratch.get();
+        int n = encodeInto(text, s, true);
+        return Arrays.copyOf(s.output, n);
+    }
+
+    private int encodeInto(String text, Scratch s, boolean emit) {
+        Matcher matcher = s.matcher.reset(text);
+        int produced = 0;
+        while (matcher.find()) {
+            int length = s.utf8(text, matcher.start(), matcher.end());
+            int whole = ranks.get(s.bytes, 0, length);
+            if (whole != NO_RANK) {
+                // 大部分常见单词本身就是一个 token，无需进入合并循环
+                if (emit) {
+                    s.emit(produced, whole);
+                }
+                produced++;
+            } else {
+                produced = mergePiece(s, length, produced, emit);
+            }
+        }
+        s.matcher.reset("");
+        return produced;
+    }
+
+    private int mergePiece(Scratch s, int length, int produced, boolean emit) {
+        byte[] piece = s.bytes;
+        s.ensureParts(length + 1);
+        int[] starts = s.starts;
+        int[] pairRanks = s.pairRanks;
+        int parts = length + 1;
+        for (int i = 0; i < parts; i++) {
+            starts[i] = i;
+            pairRanks[i] = i + 2 <= length ? ranks.get(piece, i, i + 2) : NO_RANK;
+        }
+        while (true) {
+            int minRank = NO_RANK;
+            int minIndex = -1;
+            for (int i = 0; i < parts - 1; i++) {
+                if (pairRanks[i] < minRank) {
+                    minRank = pairRanks[i];
+                    minIndex = i;
+                }
+            }
+            if (minIndex < 0) {
+                break;
+            }
+            // 合并 minIndex 与 minIndex+1，更新受影响的两个相邻对
+            if (minIndex > 0) {
+                pairRanks[minIndex - 1] = rankOf(piece, starts, parts, minIndex - 1);
+            }
+            pairRanks[minIndex] = rankOf(piece, starts, parts, minIndex);
+            System.arraycopy(starts, minIndex + 2, starts, minIndex + 1, parts - minIndex - 2);
+            System.arraycopy(pairRanks, minIndex + 2, pairRanks, minIndex + 1, parts - minIndex - 2);
+            parts--;
+        }
+        for (int i = 0; i < parts - 1; i++) {
+            if (emit) {
+                int rank = ranks.get(piece, starts[i], starts[i + 1]);
+                if (rank == NO_RANK) {
+                    throw new IllegalStateException("vocabulary is missing byte sequence of length "
+                            + (starts[i + 1] - starts[i]));
+                }
+                s.emit(produced, rank);
+            }
+            produced++;
+        }
+        return produced;
+    }
+
+    // 合并 i 与 i+1 之后，新片段 [starts[i], starts[i+3]) 作为下一个候选对
+    private int rankOf(byte[] piece, int[] starts, int parts, int i) {
+        return i + 3 < parts ? ranks.get(piece, starts[i], starts[i + 3]) : NO_RANK;
+    }
+
+    /**
+     * 线程内复用的编码缓冲区
+     */
+    private static final class Scratch {
+        private final Matcher matcher;
+        private byte[] bytes = new byte[256];
+        private int[] starts = new int[257];
+        private int[] pairRanks = new int[257];
+        private int[] output = new int[1024];
+
+        private Scratch(Matcher matcher) {
+            this.matcher = matcher;
+        }
+
+        // 手工 UTF-8 编码，避免 substring + getBytes 的两次分配
+        private int utf8(String text, int from, int to) {
+            if (bytes.length < (to - from) * 3) {
+                bytes = new byte[Math.max(bytes.length * 2, (to - from) * 3)];
+            }
+            int n = 0;
+            for (int i = from; i < to; i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    bytes[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[n++] = (byte) (0xC0 | (c >> 6));
+                    bytes[n++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, text.charAt(++i));
+                    bytes[n++] = (byte) (0xF0 | (cp >> 18));
+                    bytes[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    bytes[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    bytes[n++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // 与 String.getBytes(UTF_8) 一致，孤立代理项替换为 '?'
+                    bytes[n++] = (byte) '?';
+                } else {
+                    bytes[n++] = (byte) (0xE0 | (c >> 12));
+                    bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    bytes[n++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return n;
+        }
+
+        private void ensureParts(int size) {
+            if (starts.length < size) {
+                starts = new int[size * 2];
+                pairRanks = new int[size * 2];
+            }
+        }
+
+        private void emit(int index, int token) {
+            if (index == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            output[index] = token;
+        }
+    }
+
+    /**
+     * 字节序列 -> rank 的开放寻址哈希表，所有 token 字节平铺在一个数组中
+     */
+    static final class RankTable {
+        private final byte[] data;
+        private final int[] offsets;
+        private final int[] lengths;
+        private final int[] tokenRanks;
+        private final int[] slots;
+        private final int mask;
+
+        private RankTable(byte[] data, int[] offsets, int[] lengths, int[] tokenRanks, int[] slots) {
+            this.data = data;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.tokenRanks = tokenRanks;
+            this.slots = slots;
+            this.mask = slots.length - 1;
+        }
+
+        static RankTable build(List<byte[]> tokens, List<Integer> ranks) {
+            int count = tokens.size();
+            int total = 0;
+            for (byte[] token : tokens) {
+                total += token.length;
+            }
+            byte[] data = new byte[total];
+            int[] offsets = new int[count];
+            int[] lengths = new int[count];
+            int[] tokenRanks = new int[count];
+            int[] slots = new int[Integer.highestOneBit(Math.max(2, count * 2) - 1) << 1];
+            int mask = slots.length - 1;
+            int offset = 0;
+            for (int i = 0; i < count; i++) {
+                byte[] token = tokens.get(i);
+                System.arraycopy(token, 0, data, offset, token.length);
+                offsets[i] = offset;
+                lengths[i] = token.length;
+                tokenRanks[i] = ranks.get(i);
+                int slot = hash(data, offset, offset + token.length) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                // 0 表示空槽，因此存 index + 1
+                slots[slot] = i + 1;
+                offset += token.length;
+            }
+            return new RankTable(data, offsets, lengths, tokenRanks, slots);
+        }
+
+        int size() {
+            return offsets.length;
+        }
+
+        int get(byte[] bytes, int from, int to) {
+            int length = to - from;
+            int slot = hash(bytes, from, to) & mask;
+            int entry;
+            while ((entry = slots[slot]) != 0) {
+                entry--;
+                if (lengths[entry] == length
+                        && Arrays.equals(data, offsets[entry], offsets[entry] + length, bytes, from, to)) {
+                    return tokenRanks[entry];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return NO_RANK;
+        }
+
+        private static int hash(byte[] bytes, int from, int to) {
+            int h = 0x811C9DC5;
+            for (int i = from; i < to; i++) {
+                h = (h ^ (bytes[i] & 0xFF)) * 0x01000193;
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.hunkyhsu.ragagent.tokenizer;
+
+/**
+ * 近似估算：CJK 字符按 1 token 计，其余字符按 4 个字符 1 token 计。
+ * 仅在未配置 BPE 词表时作为兜底使用
+ */
+public class HeuristicTokenCounter implements TokenCounter {
+
+    @Override
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,9 @@
+package com.hunkyhsu.ragagent.tokenizer;
+
+/**
+ * 统计文本的 token 数，用于上下文预算和用量核算
+ */
+public interface TokenCounter {
+
+    int count(String text);
+}
@@ -0,0 +1,136 @@
+package com.hunkyhsu.ragagent.tool;
+
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+/**
+ * 四则运算求值，支持括号、一元负号、% 取余和 ^ 乘方（右结合）。按双精度计算，结果去掉多余的尾零
+ */
+@Component
+public class CalculatorTool implements Tool {
+
+    private static final ToolSpec SPEC = new ToolSpec("calculator",
+            "Evaluate an arithmetic expression with + - * / % ^ and parentheses. Arguments: expression",
+            Duration.ofMillis(200), false, true);
+    private static final int MAX_LENGTH = 256;
+
+    @Override
+    public ToolSpec spec() {
+        return SPEC;
+    }
+
+    @Override
+    public String execute(ToolCall call, ToolContext context) {
+        String expression = call.argument("expression");
+        if (expression.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("expression too long");
+        }
+        double value = new Parser(expression).parse();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("result is not a finite number");
+        }
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    // 递归下降：expression = term (('+'|'-') term)*，term = power (('*'|'/'|'%') power)*，power = unary ('^' power)?
+    private static final class Parser {
+        private final String input;
+        private int pos;
+
+        private Parser(String input) {
+            this.input = input;
+        }
+
+        private double parse() {
+            double value = expression();
+            skipSpaces();
+            if (pos < input.length()) {
+                throw error();
+            }
+            return value;
+        }
+
+        private double expression() {
+            double value = term();
+            while (true) {
+                if (eat('+')) {
+                    value += term();
+                } else if (eat('-')) {
+                    value -= term();
+                } else {
+                    return value;
+                }
+            }
+        }
+
+        private double term() {
+            double value = power();
+            while (true) {
+                if (eat('*')) {
+                    value *= power();
+                } else if (eat('/')) {
+                    value /= power();
+                } else if (eat('%')) {
+                    value %= power();
+                } else {
+                    return value;
+                }
+            }
+        }
+
+        private double power() {
+            double base = unary();
+            return eat('^') ? Math.pow(base, power()) : base;
+        }
+
+        private double unary() {
+            if (eat('-')) {
+                return -unary();
+            }
+            if (eat('+')) {
+                return unary();
+            }
+            if (eat('(')) {
+                double value = expression();
+                if (!eat(')')) {
+                    throw error();
+                }
+                return value;
+            }
+            skipSpaces();
+            int start = pos;
+            while (pos < input.length() && (Character.isDigit(input.charAt(pos)) || input.charAt(pos) == '.')) {
+                pos++;
+            }
+            if (start == pos) {
+                throw error();
+            }
+            try {
+                return Double.parseDouble(input.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw error();
+            }
+        }
+
+        private boolean eat(char expected) {
+            skipSpaces();
+            if (pos < input.length() && input.charAt(pos) == expected) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpaces() {
+            while (pos < input.length() && Character.isWhitespace(input.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error() {
+            return new IllegalArgumentException("invalid expression at position " + pos);
+        }
+    }
+}
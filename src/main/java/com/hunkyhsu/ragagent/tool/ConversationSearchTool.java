@@ -0,0 +1,41 @@
+package com.hunkyhsu.ragagent.tool;
+
+import com.hunkyhsu.ragagent.dto.ConversationSearchHit;
+import com.hunkyhsu.ragagent.service.ConversationSearchService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 在用户自己的历史会话中检索相关消息，不包含当前会话（当前会话已在历史上下文中）
+ */
+@Component
+@RequiredArgsConstructor
+public class ConversationSearchTool implements Tool {
+
+    private static final ToolSpec SPEC = new ToolSpec("conversation_search",
+            "Search the user's earlier conversations. Arguments: query",
+            Duration.ofSeconds(1), false, false);
+    private static final int HITS = 5;
+
+    private final ConversationSearchService conversationSearchService;
+
+    @Override
+    public ToolSpec spec() {
+        return SPEC;
+    }
+
+    @Override
+    public String execute(ToolCall call, ToolContext context) {
+        StringBuilder result = new StringBuilder();
+        for (ConversationSearchHit hit : conversationSearchService.search(context.user(), call.argument("query"), 0, HITS).hits()) {
+            if (hit.conversationId().equals(context.conversationId())) {
+                continue;
+            }
+            result.append('[').append(hit.conversationTitle()).append("] ")
+                    .append(hit.role()).append(": ").append(hit.snippet()).append('\n');
+        }
+        return result.toString().strip();
+    }
+}
@@ -0,0 +1,47 @@
+package com.hunkyhsu.ragagent.tool;
+
+import com.hunkyhsu.ragagent.retrieval.HybridRetriever;
+import com.hunkyhsu.ragagent.retrieval.RetrievedChunk;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 知识库混合检索，只返回用户所属组织可见的片段
+ */
+@Component
+@RequiredArgsConstructor
+public class KnowledgeSearchTool implements Tool {
+
+    private static final ToolSpec SPEC = new ToolSpec("knowledge_search",
+            "Search the knowledge base documents visible to the user. Arguments: query",
+            Duration.ofSeconds(2), false, false);
+
+    private final HybridRetriever hybridRetriever;
+
+    @Override
+    public ToolSpec spec() {
+        return SPEC;
+    }
+
+    @Override
+    public String execute(ToolCall call, ToolContext context) {
+        return format(hybridRetriever.retrieve(context.user(), call.argument("query")));
+    }
+
+    // 检索片段按排名编号，便于模型在回答中引用
+    private static String format(List<RetrievedChunk> chunks) {
+        StringBuilder context = new StringBuilder();
+        for (int i = 0; i < chunks.size(); i++) {
+            RetrievedChunk chunk = chunks.get(i);
+            context.append('[').append(i + 1).append("] ");
+            if (chunk.heading() != null && !chunk.heading().isEmpty()) {
+                context.append(chunk.heading()).append('\n');
+            }
+            context.append(chunk.content()).append("\n\n");
+        }
+        return context.toString().strip();
+    }
+}
@@ -0,0 +1,16 @@
+package com.hunkyhsu.ragagent.tool;
+
+/**
+ * 工具 SPI。实现类注册为 Spring bean 即可被 ToolExecutor 发现，名称在 spec 中声明且必须唯一。
+ * execute 在 tool- 线程池中执行，超时后会被中断（有副作用的工具除外），实现中的阻塞调用应当响应中断
+ */
+public interface Tool {
+
+    ToolSpec spec();
+
+    /**
+     * @return 放入 prompt 的文本结果
+     * @throws IllegalArgumentException 参数缺失或不合法
+     */
+    String execute(ToolCall call, ToolContext context) throws Exception;
+}
@@ -0,0 +1,27 @@
+package com.hunkyhsu.ragagent.tool;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+public record ToolCall(
+        String tool,
+        Map<String, String> arguments
+) {
+
+    public ToolCall {
+        // 按键排序，参数顺序不同的相同调用命中同一个缓存项
+        arguments = arguments == null ? Map.of() : new TreeMap<>(arguments);
+    }
+
+    public static ToolCall of(String tool, String key, String value) {
+        return new ToolCall(tool, Map.of(key, value));
+    }
+
+    public String argument(String name) {
+        String value = arguments.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("missing argument: " + name);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,11 @@
+package com.hunkyhsu.ragagent.tool;
+
+import com.hunkyhsu.ragagent.entity.User;
+
+/**
+ * 一轮对话中所有工具调用共享的上下文，工具按 user 做权限过滤
+ */
+public record ToolContext(
+        User user,
+        Long conversationId
+) { }
@@ -0,0 +1,192 @@
+package com.hunkyhsu.ragagent.tool;
+
+import com.hunkyhsu.ragagent.config.ToolProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 一轮对话内的工具调用调度：互不依赖的调用同时提交（fork），再按各自截止时间依次收集结果（join），
+ * 截止时间取工具声明的超时与本轮共享预算中较早的一个。到期未完成的调用被取消并以 TIMEOUT 返回，
+ * 因此本轮耗时约等于最慢的那个工具，且不会超过预算。单个工具失败不影响其他工具的结果
+ */
+@Slf4j
+@Component
+public class ToolExecutor {
+
+    private final Map<String, Tool> tools = new HashMap<>();
+    private final ToolResultCache cache;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Meters> meters = new HashMap<>();
+
+    public ToolExecutor(List<Tool> tools, ToolResultCache cache, ToolProperties properties,
+                        MeterRegistry meterRegistry) {
+        for (Tool tool : tools) {
+            String name = tool.spec().name();
+            if (this.tools.putIfAbsent(name, tool) != null) {
+                throw new IllegalStateException("duplicate tool name: " + name);
+            }
+            if (tool.spec().cacheable() && tool.spec().sideEffects()) {
+                throw new IllegalStateException("tool with side effects cannot be cacheable: " + name);
+            }
+            meters.put(name, new Meters(name, meterRegistry));
+        }
+        this.cache = cache;
+        // 队列满时直接拒绝：在调用线程上执行会让本轮越过截止时间
+        this.executor = new ThreadPoolExecutor(properties.getWorkers(), properties.getWorkers(), 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                new CustomizableThreadFactory("tool-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        new ExecutorServiceMetrics(executor, "tool", List.of()).bindTo(meterRegistry);
+    }
+
+    /**
+     * 并行执行一组调用，返回结果与 calls 一一对应，最迟在 budget 之后返回
+     */
+    public List<ToolResult> executeAll(List<ToolCall> calls, ToolContext context, Duration budget) {
+        long turnDeadline = System.nanoTime() + budget.toNanos();
+        ToolResult[] results = new ToolResult[calls.size()];
+        List<Running> running = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            ToolCall call = calls.get(i);
+            Tool tool = tools.get(call.tool());
+            if (tool == null) {
+                results[i] = new ToolResult(call, ToolResult.Outcome.UNKNOWN_TOOL, "unknown tool: " + call.tool(), 0, false);
+                continue;
+            }
+            ToolSpec spec = tool.spec();
+            if (spec.cacheable()) {
+                String cached = cache.get(context.conversationId(), call);
+                if (cached != null) {
+                    meters.get(spec.name()).cacheHits.increment();
+                    results[i] = new ToolResult(call, ToolResult.Outcome.OK, cached, 0, true);
+                    continue;
+                }
+            }
+            long submitted = System.nanoTime();
+            long deadline = Math.min(turnDeadline, submitted + spec.timeout().toNanos());
+            try {
+                // 耗时在工作线程里结束时计算，包含排队时间，不受收集顺序影响
+                Future<Completed> future = executor.submit(() -> {
+                    try {
+                        return new Completed(tool.execute(call, context), null, System.nanoTime() - submitted);
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        return new Completed(null, e, System.nanoTime() - submitted);
+                    }
+                });
+                running.add(new Running(i, spec, future, submitted, deadline));
+            } catch (RejectedExecutionException e) {
+                results[i] = record(spec, new ToolResult(call, ToolResult.Outcome.REJECTED, "tool executor saturated", 0, false));
+            }
+        }
+        boolean interrupted = false;
+        for (Running task : running) {
+            ToolCall call = calls.get(task.index);
+            ToolResult.Outcome outcome = ToolResult.Outcome.TIMEOUT;
+            String content = null;
+            long elapsedNanos = 0;
+            try {
+                if (!interrupted) {
+                    // 超时为 0 时 get 只检查是否已完成
+                    Completed completed = task.future.get(Math.max(0, task.deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    elapsedNanos = completed.elapsedNanos;
+                    if (completed.error == null) {
+                        outcome = ToolResult.Outcome.OK;
+                        content = completed.content;
+                    } else {
+                        outcome = failed(task.spec, context, completed.error);
+                        content = message(completed.error);
+                    }
+                }
+            } catch (TimeoutException e) {
+                outcome = ToolResult.Outcome.TIMEOUT;
+            } catch (ExecutionException e) {
+                outcome = failed(task.spec, context, e.getCause());
+                content = message(e.getCause());
+            } catch (InterruptedException e) {
+                // 调用方被中断时不再等待，剩余调用全部取消
+                Thread.currentThread().interrupt();
+                interrupted = true;
+            }
+            if (elapsedNanos == 0) {
+                elapsedNanos = System.nanoTime() - task.submitted;
+            }
+            if (outcome == ToolResult.Outcome.TIMEOUT) {
+                // 有副作用的工具不打断，让它自己执行完，避免留下半完成的写入
+                task.future.cancel(!task.spec.sideEffects());
+                content = "timed out";
+            } else if (outcome == ToolResult.Outcome.OK && task.spec.cacheable()) {
+                cache.put(context.conversationId(), call, content);
+            }
+            results[task.index] = record(task.spec, new ToolResult(call, outcome, content,
+                    elapsedNanos / 1_000_000, false));
+        }
+        return Arrays.asList(results);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static ToolResult.Outcome failed(ToolSpec spec, ToolContext context, Throwable error) {
+        log.warn("Tool {} failed for conversation {}", spec.name(), context.conversationId(), error);
+        return ToolResult.Outcome.FAILED;
+    }
+
+    private static String message(Throwable error) {
+        return error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage();
+    }
+
+    private ToolResult record(ToolSpec spec, ToolResult result) {
+        meters.get(spec.name()).calls.get(result.outcome()).record(result.elapsedMs(), TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    private record Running(int index, ToolSpec spec, Future<Completed> future, long submitted, long deadline) { }
+
+    private record Completed(String content, Exception error, long elapsedNanos) { }
+
+    // 每个工具按结果分别计时，缓存命中单独计数，不计入耗时分布
+    private static final class Meters {
+        private final Map<ToolResult.Outcome, Timer> calls = new EnumMap<>(ToolResult.Outcome.class);
+        private final Counter cacheHits;
+
+        private Meters(String tool, MeterRegistry registry) {
+            for (ToolResult.Outcome outcome : ToolResult.Outcome.values()) {
+                calls.put(outcome, Timer.builder("tool.calls")
+                        .description("Tool invocations by outcome, from submission to completion or cancellation")
+                        .tag("tool", tool)
+                        .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                        .register(registry));
+            }
+            this.cacheHits = Counter.builder("tool.cache.hits")
+                    .description("Tool calls answered from the per-conversation result cache")
+                    .tag("tool", tool)
+                    .register(registry);
+        }
+    }
+}
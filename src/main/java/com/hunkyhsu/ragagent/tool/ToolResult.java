@@ -0,0 +1,25 @@
+package com.hunkyhsu.ragagent.tool;
+
+public record ToolResult(
+        ToolCall call,
+        Outcome outcome,
+        // 只有 OK 时有内容，其余情况为失败原因
+        String content,
+        long elapsedMs,
+        boolean cached
+) {
+
+    public boolean ok() {
+        return outcome == Outcome.OK;
+    }
+
+    public enum Outcome {
+        OK,
+        // 超过工具自身超时或本轮预算，已取消
+        TIMEOUT,
+        FAILED,
+        // 线程池已满，没有执行
+        REJECTED,
+        UNKNOWN_TOOL
+    }
+}
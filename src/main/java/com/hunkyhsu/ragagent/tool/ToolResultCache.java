@@ -0,0 +1,65 @@
+package com.hunkyhsu.ragagent.tool;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hunkyhsu.ragagent.config.ToolProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按会话缓存声明为 cacheable 的工具结果：同一会话里重复的计算直接复用，会话删除时整体失效。
+ * 知识库和会话检索的结果随索引变化，不经过这里：前者由 RetrievalCache 按索引版本缓存，后者每次直接查询本地索引。
+ * 外层按会话淘汰，内层条目各自按写入时间过期，活跃会话也不会一直拿到旧结果
+ */
+@Component
+public class ToolResultCache {
+
+    private final Cache<Long, ConcurrentMap<ToolCall, Entry>> conversations;
+    private final int entriesPerConversation;
+    private final long ttlNanos;
+
+    public ToolResultCache(ToolProperties properties) {
+        this.conversations = Caffeine.newBuilder()
+                .maximumSize(properties.getCacheConversations())
+                .expireAfterAccess(properties.getCacheTtl())
+                .build();
+        this.entriesPerConversation = properties.getCacheEntriesPerConversation();
+        this.ttlNanos = properties.getCacheTtl().toNanos();
+    }
+
+    public String get(Long conversationId, ToolCall call) {
+        if (conversationId == null) {
+            return null;
+        }
+        ConcurrentMap<ToolCall, Entry> entries = conversations.getIfPresent(conversationId);
+        Entry entry = entries == null ? null : entries.get(call);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.storedAt > ttlNanos) {
+            entries.remove(call, entry);
+            return null;
+        }
+        return entry.content;
+    }
+
+    public void put(Long conversationId, ToolCall call, String content) {
+        if (conversationId == null) {
+            return;
+        }
+        ConcurrentMap<ToolCall, Entry> entries = conversations.get(conversationId, id -> new ConcurrentHashMap<>());
+        // 单个会话的条目数有上限，满了只跳过缓存，不做逐条淘汰
+        if (entries.size() < entriesPerConversation || entries.containsKey(call)) {
+            entries.put(call, new Entry(content, System.nanoTime()));
+        }
+    }
+
+    public void invalidate(Long conversationId) {
+        conversations.invalidate(conversationId);
+    }
+
+
+    private record Entry(String content, long storedAt) { }
+}
@@ -0,0 +1,19 @@
+package com.hunkyhsu.ragagent.tool;
+
+import java.time.Duration;
+
+/**
+ * 工具声明
+ *
+ * @param timeout      单次调用的超时，实际截止时间还受本轮整体预算约束
+ * @param sideEffects  有副作用的工具结果不缓存，超时后也不中断执行线程，避免留下半完成的写入
+ * @param cacheable    结果可在 ToolResultCache 中按会话缓存。结果依赖随时变化的共享数据（知识库、会话索引）的工具
+ *                     不能缓存，否则文档更新或删除后同一会话在缓存过期前仍拿到旧结果；这类工具自己负责按版本缓存
+ */
+public record ToolSpec(
+        String name,
+        String description,
+        Duration timeout,
+        boolean sideEffects,
+        boolean cacheable
+) { }
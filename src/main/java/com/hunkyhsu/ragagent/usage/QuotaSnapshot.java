@@ -0,0 +1,42 @@
+package com.hunkyhsu.ragagent.usage;
+
+import org.apache.kafka.streams.kstream.Window;
+
+/**
+ * 某个配额 key 在当前窗口内的用量快照，写入 compact topic 并在各实例内存中保留最新一份。
+ * key 形如 "user:42" 或 "org:finance"
+ */
+public record QuotaSnapshot(
+        String key,
+        long windowStart,
+        long windowEnd,
+        long promptTokens,
+        long completionTokens,
+        long requests
+) {
+
+    private static final String USER_PREFIX = "user:";
+    private static final String ORG_PREFIX = "org:";
+
+    public static QuotaSnapshot of(String key, Window window, UsageTotals totals) {
+        return new QuotaSnapshot(key, window.start(), window.end(),
+                totals.promptTokens(), totals.completionTokens(), totals.requests());
+    }
+
+    public static String userKey(long userId) {
+        return USER_PREFIX + userId;
+    }
+
+    public static String orgKey(String orgTag) {
+        return ORG_PREFIX + orgTag;
+    }
+
+    public long totalTokens() {
+        return promptTokens + completionTokens;
+    }
+
+    // 窗口已经结束的快照不再计入配额
+    public boolean isCurrent(long now) {
+        return now >= windowStart && now < windowEnd;
+    }
+}
@@ -0,0 +1,102 @@
+package com.hunkyhsu.ragagent.usage;
+
+import com.hunkyhsu.ragagent.config.UsageProperties;
+import com.hunkyhsu.ragagent.dto.UsageResponse;
+import com.hunkyhsu.ragagent.entity.User;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 配额快照的进程内视图。每个实例以节点标识命名的独立消费组（广播）订阅快照 topic，
+ * 分配到分区时总是回到开头，重启后重新读取全部 key 的最新快照，与已提交的位置无关。
+ * 聊天链路上的配额校验只是几次哈希查找，不访问数据库也不访问 Streams 状态存储
+ */
+@Component
+@RequiredArgsConstructor
+public class UsageQuotas implements ConsumerSeekAware {
+
+    private final UsageProperties properties;
+    private final Map<String, QuotaSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    @KafkaListener(
+            topics = "#{@usageProperties.snapshotTopic}",
+            groupId = "#{'usage-quota-' + @clusterProperties.nodeId}",
+            containerFactory = "quotaSnapshotListenerFactory",
+            concurrency = "1"
+    )
+    public void onSnapshots(List<QuotaSnapshot> batch) {
+        for (QuotaSnapshot snapshot : batch) {
+            if (snapshot != null) {
+                update(snapshot);
+            }
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        callback.seekToBeginning(assignments.keySet());
+    }
+
+    // 宽限期内迟到的事件会更新旧窗口，不能覆盖已经进入新窗口的快照
+    void update(QuotaSnapshot snapshot) {
+        snapshots.merge(snapshot.key(), snapshot,
+                (current, incoming) -> incoming.windowStart() >= current.windowStart() ? incoming : current);
+    }
+
+    /**
+     * 用户本人或其任一组织在当前窗口内用量达到上限时拒绝本轮请求
+     */
+    public void check(User user) {
+        long now = System.currentTimeMillis();
+        if (exceeded(QuotaSnapshot.userKey(user.getId()), properties.getUserTokenLimit(), now)) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "user_token_quota_exceeded");
+        }
+        for (String orgTag : user.orgTagSet()) {
+            if (exceeded(QuotaSnapshot.orgKey(orgTag), properties.getOrgTokenLimit(), now)) {
+                throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "org_token_quota_exceeded");
+            }
+        }
+    }
+
+    /**
+     * 当前窗口内用户本人及其组织的用量，窗口内尚无用量的 key 不返回
+     */
+    public List<UsageResponse> current(User user) {
+        long now = System.currentTimeMillis();
+        List<UsageResponse> usage = new ArrayList<>();
+        addCurrent(usage, QuotaSnapshot.userKey(user.getId()), properties.getUserTokenLimit(), now);
+        for (String orgTag : user.orgTagSet()) {
+            addCurrent(usage, QuotaSnapshot.orgKey(orgTag), properties.getOrgTokenLimit(), now);
+        }
+        return usage;
+    }
+
+    private boolean exceeded(String key, long limit, long now) {
+        if (limit <= 0) {
+            return false;
+        }
+        QuotaSnapshot snapshot = snapshots.get(key);
+        return snapshot != null && snapshot.isCurrent(now) && snapshot.totalTokens() >= limit;
+    }
+
+    private void addCurrent(List<UsageResponse> usage, String key, long limit, long now) {
+        QuotaSnapshot snapshot = snapshots.get(key);
+        if (snapshot != null && snapshot.isCurrent(now)) {
+            usage.add(new UsageResponse(snapshot.key(),
+                    Instant.ofEpochMilli(snapshot.windowStart()), Instant.ofEpochMilli(snapshot.windowEnd()),
+                    snapshot.promptTokens(), snapshot.completionTokens(), snapshot.totalTokens(),
+                    snapshot.requests(), limit));
+        }
+    }
+}
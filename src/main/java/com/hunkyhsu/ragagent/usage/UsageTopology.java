@@ -0,0 +1,62 @@
+package com.hunkyhsu.ragagent.usage;
+
+import com.hunkyhsu.ragagent.config.UsageProperties;
+import com.hunkyhsu.ragagent.event.ChatEvent;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.Grouped;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.kstream.TimeWindows;
+import org.apache.kafka.streams.state.WindowStore;
+import org.springframework.kafka.support.serializer.JsonSerde;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 用量聚合拓扑：chat-events 中带用量的 ASSISTANT_COMPLETED 事件按用户和组织重新分区，
+ * 在 RocksDB 窗口存储中累加，每次更新都把该 key 当前窗口的快照写到 compact topic
+ */
+public final class UsageTopology {
+
+    public static final String STORE = "token-usage";
+    static final String REPARTITION = "usage-by-quota-key";
+
+    private UsageTopology() {
+    }
+
+    public static void build(StreamsBuilder builder, String eventsTopic, UsageProperties properties) {
+        JsonSerde<ChatEvent> events = new JsonSerde<>(ChatEvent.class).noTypeInfo().ignoreTypeHeaders();
+        JsonSerde<UsageTotals> totals = new JsonSerde<>(UsageTotals.class).noTypeInfo().ignoreTypeHeaders();
+        JsonSerde<QuotaSnapshot> snapshots = new JsonSerde<>(QuotaSnapshot.class).noTypeInfo().ignoreTypeHeaders();
+
+        builder.stream(eventsTopic, Consumed.with(Serdes.String(), events))
+                .filter((conversationId, event) -> event != null && event.usage() != null)
+                .flatMap((conversationId, event) -> {
+                    // 一轮用量同时计入用户本人和其所属的每个组织
+                    UsageTotals delta = UsageTotals.of(event);
+                    List<KeyValue<String, UsageTotals>> keyed = new ArrayList<>();
+                    keyed.add(KeyValue.pair(QuotaSnapshot.userKey(event.userId()), delta));
+                    if (event.usage().orgTags() != null) {
+                        for (String orgTag : event.usage().orgTags()) {
+                            keyed.add(KeyValue.pair(QuotaSnapshot.orgKey(orgTag), delta));
+                        }
+                    }
+                    return keyed;
+                })
+                .groupByKey(Grouped.with(REPARTITION, Serdes.String(), totals))
+                .windowedBy(TimeWindows.ofSizeAndGrace(properties.getWindow(), properties.getGrace()))
+                .reduce(UsageTotals::plus, Materialized.<String, UsageTotals, WindowStore<Bytes, byte[]>>as(STORE)
+                        .withKeySerde(Serdes.String())
+                        .withValueSerde(totals)
+                        .withRetention(properties.getRetention()))
+                .toStream()
+                .map((windowed, total) -> KeyValue.pair(windowed.key(),
+                        QuotaSnapshot.of(windowed.key(), windowed.window(), total)))
+                .to(properties.getSnapshotTopic(), Produced.with(Serdes.String(), snapshots));
+    }
+}
@@ -0,0 +1,19 @@
+package com.hunkyhsu.ragagent.usage;
+
+import com.hunkyhsu.ragagent.event.ChatEvent;
+
+/**
+ * 窗口内的累计用量，也是单条事件的增量（requests = 1）
+ */
+public record UsageTotals(long promptTokens, long completionTokens, long requests) {
+
+    public static UsageTotals of(ChatEvent event) {
+        return new UsageTotals(event.usage().promptTokens(), event.completionTokens(), 1);
+    }
+
+    public UsageTotals plus(UsageTotals other) {
+        return new UsageTotals(promptTokens + other.promptTokens,
+                completionTokens + other.completionTokens,
+                requests + other.requests);
+    }
+}
@@ -0,0 +1,47 @@
+package com.hunkyhsu.ragagent.vector;
+
+/**
+ * 可检索的 HNSW 图：内存中的可写图与只读的映射段共用同一套检索算法
+ */
+interface GraphView {
+
+    // 入口点与最高层打包为一个 long（高 32 位为层数），图为空时返回 -1
+    long entry();
+
+    // 节点编号上界，用于分配访问标记
+    int capacity();
+
+    // 当前已分配的节点数
+    int size();
+
+    int maxConnections();
+
+    long id(int node);
+
+    float score(float[] query, int node);
+
+    // 把 node 在 level 层的邻居复制到 buffer，返回邻居数
+    int neighbours(int node, int level, int[] buffer);
+
+    // 是否支持按 id 查找节点；不支持时精确检索只能顺序扫描
+    default boolean indexedById() {
+        return false;
+    }
+
+    // 按 id 查找节点编号，不存在时返回 -1
+    default int node(long id) {
+        throw new UnsupportedOperationException();
+    }
+
+    static long packEntry(int node, int level) {
+        return ((long) level << 32) | (node & 0xFFFFFFFFL);
+    }
+
+    static int entryNode(long entry) {
+        return (int) entry;
+    }
+
+    static int entryLevel(long entry) {
+        return (int) (entry >>> 32);
+    }
+}
@@ -0,0 +1,167 @@
+package com.hunkyhsu.ragagent.vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * HNSW 检索算法（Malkov & Yashunin），相似度越大越近
+ */
+final class HnswSearch {
+
+    private static final ThreadLocal<Visited> VISITED = ThreadLocal.withInitial(Visited::new);
+
+    private HnswSearch() {
+    }
+
+    static List<VectorHit> search(GraphView graph, float[] query, int k, int ef, LongPredicate filter) {
+        long entry = graph.entry();
+        if (entry < 0) {
+            return List.of();
+        }
+        int[] buffer = new int[graph.maxConnections()];
+        int ep = GraphView.entryNode(entry);
+        for (int level = GraphView.entryLevel(entry); level > 0; level--) {
+            ep = greedy(graph, query, ep, level, buffer);
+        }
+        NodeQueue results = searchLayer(graph, query, ep, Math.max(ef, k), 0, filter);
+        while (results.size() > k) {
+            results.pop();
+        }
+        int count = results.size();
+        VectorHit[] hits = new VectorHit[count];
+        for (int i = count - 1; i >= 0; i--) {
+            hits[i] = new VectorHit(graph.id(results.topNode()), results.topScore());
+            results.pop();
+        }
+        return new ArrayList<>(Arrays.asList(hits));
+    }
+
+    /**
+     * 精确检索：只对满足过滤条件的节点计算相似度，召回完整。
+     * 给出满足条件的 id 且图支持按 id 查找时逐个二分查找节点，开销与 id 数成正比而与图大小无关；
+     * 否则（内存段、旧版本段）顺序扫描所有节点
+     */
+    static List<VectorHit> exact(GraphView graph, float[] query, int k, LongPredicate filter, long[] allowed) {
+        NodeQueue results = new NodeQueue(k + 1, false);
+        if (allowed != null && graph.indexedById()) {
+            for (long id : allowed) {
+                int node = graph.node(id);
+                if (node >= 0 && (filter == null || filter.test(id))) {
+                    offer(results, k, node, graph.score(query, node));
+                }
+            }
+        } else {
+            for (int node = 0, size = graph.size(); node < size; node++) {
+                if (filter == null || filter.test(graph.id(node))) {
+                    offer(results, k, node, graph.score(query, node));
+                }
+            }
+        }
+        VectorHit[] hits = new VectorHit[results.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            hits[i] = new VectorHit(graph.id(results.topNode()), results.topScore());
+            results.pop();
+        }
+        return new ArrayList<>(Arrays.asList(hits));
+    }
+
+    private static void offer(NodeQueue results, int k, int node, float score) {
+        if (results.size() < k || score > results.topScore()) {
+            results.push(node, score);
+            if (results.size() > k) {
+                results.pop();
+            }
+        }
+    }
+
+    // 上层只做贪心下降，找到该层离查询最近的节点作为下一层入口
+    static int greedy(GraphView graph, float[] query, int ep, int level, int[] buffer) {
+        float best = graph.score(query, ep);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int count = graph.neighbours(ep, level, buffer);
+            for (int i = 0; i < count; i++) {
+                float score = graph.score(query, buffer[i]);
+                if (score > best) {
+                    best = score;
+                    ep = buffer[i];
+                    changed = true;
+                }
+            }
+        }
+        return ep;
+    }
+
+    /**
+     * 单层 beam search，返回最多 ef 个结果的最小堆（堆顶为结果中最差的一个）。
+     * filter 只决定节点能否进入结果，不影响图的遍历，被过滤的节点仍然作为通路
+     */
+    static NodeQueue searchLayer(GraphView graph, float[] query, int ep, int ef, int level, LongPredicate filter) {
+        Visited visited = VISITED.get().reset(graph.capacity());
+        int[] buffer = new int[graph.maxConnections()];
+        NodeQueue candidates = new NodeQueue(ef * 2, true);
+        NodeQueue results = new NodeQueue(ef + 1, false);
+        float epScore = graph.score(query, ep);
+        visited.add(ep);
+        candidates.push(ep, epScore);
+        if (filter == null || filter.test(graph.id(ep))) {
+            results.push(ep, epScore);
+        }
+        while (candidates.size() > 0) {
+            int current = candidates.topNode();
+            if (results.size() >= ef && candidates.topScore() < results.topScore()) {
+                break;
+            }
+            candidates.pop();
+            int count = graph.neighbours(current, level, buffer);
+            for (int i = 0; i < count; i++) {
+                int neighbour = buffer[i];
+                if (!visited.add(neighbour)) {
+                    continue;
+                }
+                float score = graph.score(query, neighbour);
+                if (results.size() < ef || score > results.topScore()) {
+                    candidates.push(neighbour, score);
+                    if (filter == null || filter.test(graph.id(neighbour))) {
+                        results.push(neighbour, score);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 线程内复用的访问标记，用递增的 epoch 代替每次检索清空数组
+     */
+    private static final class Visited {
+        private int[] marks = new int[1024];
+        private int epoch;
+
+        Visited reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length * 2)];
+                epoch = 0;
+            }
+            if (++epoch == 0) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+            return this;
+        }
+
+        boolean add(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+    }
+}
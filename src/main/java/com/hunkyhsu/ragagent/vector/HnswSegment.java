@@ -0,0 +1,396 @@
+package com.hunkyhsu.ragagent.vector;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 只读的 HNSW 段文件，整体通过 mmap 映射，打开时不做任何反序列化或重建。
+ * 文件布局（小端序）：
+ * <pre>
+ * header(64) | ids long[n] | levels byte[n] | upperOffsets int[n] | level0 int[n * (1 + 2M)]
+ *            | upper int[...] | scales float[n]（仅 INT8） | byId int[n] | 按 64 字节对齐的 vectors
+ * </pre>
+ * byId 是按 id 升序排列的节点编号，精确检索据此按 id 二分查找节点（版本 1 的段没有该区域，退回顺序扫描）。
+ * 段由 [minGeneration, maxGeneration] 标识，合并产生的段覆盖全部源段的代数范围。
+ * 段带引用计数：索引持有一份，检索期间再各自持有一份，计数归零时解除映射。
+ */
+final class HnswSegment implements GraphView {
+
+    static final String SUFFIX = ".hnsw";
+
+    private static final int MAGIC = 0x57534E48;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 64;
+
+    private final Path path;
+    private final int dimensions;
+    private final VectorEncoding encoding;
+    private final int count;
+    private final int m;
+    private final int maxM0;
+    private final long entry;
+    private final long minGeneration;
+    private final long maxGeneration;
+    private final MappedByteBuffer graph;
+    private final MappedByteBuffer vectors;
+    private final FloatBuffer floats;
+    private final int levelsOffset;
+    private final int upperOffsetsOffset;
+    private final int level0Offset;
+    private final int upperOffset;
+    private final int scalesOffset;
+    private final int byIdOffset;
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    private HnswSegment(Path path, MappedByteBuffer graph, MappedByteBuffer vectors) {
+        this.path = path;
+        this.graph = graph;
+        this.vectors = vectors;
+        int version = graph.getInt(4);
+        if (graph.getInt(0) != MAGIC || version < 1 || version > VERSION) {
+            throw new IllegalStateException("not an HNSW segment: " + path);
+        }
+        this.dimensions = graph.getInt(8);
+        this.encoding = VectorEncoding.values()[graph.getInt(12)];
+        this.count = graph.getInt(16);
+        this.m = graph.getInt(20);
+        this.maxM0 = 2 * m;
+        this.entry = GraphView.packEntry(graph.getInt(24), graph.getInt(28));
+        this.minGeneration = graph.getLong(32);
+        this.maxGeneration = graph.getLong(40);
+        int upperInts = graph.getInt(48);
+        Layout layout = new Layout(count, m, upperInts, dimensions, encoding, version);
+        this.levelsOffset = layout.levels;
+        this.upperOffsetsOffset = layout.upperOffsets;
+        this.level0Offset = layout.level0;
+        this.upperOffset = layout.upper;
+        this.scalesOffset = layout.scales;
+        this.byIdOffset = layout.byId;
+        this.floats = encoding == VectorEncoding.FLOAT32 ? vectors.asFloatBuffer() : null;
+    }
+
+    static HnswSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            long vectorsOffset = header.getLong(56);
+            MappedBuffers.unmap(header);
+            MappedByteBuffer graph = map(channel, FileChannel.MapMode.READ_ONLY, 0, vectorsOffset);
+            MappedByteBuffer vectors = map(channel, FileChannel.MapMode.READ_ONLY,
+                    vectorsOffset, channel.size() - vectorsOffset);
+            return new HnswSegment(path, graph, vectors);
+        }
+    }
+
+    /**
+     * 把已封存的内存图写成段文件：先写临时文件并 fsync，再原子改名，崩溃时不会留下半个段
+     */
+    static HnswSegment write(Path directory, MutableHnswGraph source, VectorEncoding encoding,
+                             long minGeneration, long maxGeneration) throws IOException {
+        int count = source.size();
+        int dimensions = source.dimensions();
+        int m = source.m();
+        int maxM0 = 2 * m;
+        int[] levels = new int[count];
+        int upperInts = 0;
+        for (int node = 0; node < count; node++) {
+            levels[node] = Math.max(0, source.level(node));
+            upperInts += levels[node] * (1 + m);
+        }
+        Layout layout = new Layout(count, m, upperInts, dimensions, encoding, VERSION);
+        Path target = directory.resolve(fileName(minGeneration, maxGeneration));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer graph = map(channel, FileChannel.MapMode.READ_WRITE, 0, layout.vectors);
+            MappedByteBuffer vectors = map(channel, FileChannel.MapMode.READ_WRITE,
+                    layout.vectors, (long) count * dimensions * encoding.bytesPerComponent());
+            long entry = source.entry();
+            graph.putInt(0, MAGIC);
+            graph.putInt(4, VERSION);
+            graph.putInt(8, dimensions);
+            graph.putInt(12, encoding.ordinal());
+            graph.putInt(16, count);
+            graph.putInt(20, m);
+            graph.putInt(24, GraphView.entryNode(entry));
+            graph.putInt(28, GraphView.entryLevel(entry));
+            graph.putLong(32, minGeneration);
+            graph.putLong(40, maxGeneration);
+            graph.putInt(48, upperInts);
+            graph.putLong(56, layout.vectors);
+
+            int[] buffer = new int[maxM0];
+            float[] vector = new float[dimensions];
+            int upperCursor = 0;
+            for (int node = 0; node < count; node++) {
+                graph.putLong(HEADER_BYTES + node * Long.BYTES, source.id(node));
+                graph.put(layout.levels + node, (byte) levels[node]);
+                graph.putInt(layout.upperOffsets + node * Integer.BYTES, levels[node] > 0 ? upperCursor : -1);
+                writeList(graph, layout.level0 + node * (1 + maxM0) * Integer.BYTES,
+                        buffer, source.neighbours(node, 0, buffer));
+                for (int level = 1; level <= levels[node]; level++) {
+                    writeList(graph, layout.upper + upperCursor * Integer.BYTES,
+                            buffer, source.neighbours(node, level, buffer));
+                    upperCursor += 1 + m;
+                }
+
+                source.vector(node, vector);
+                int base = node * dimensions * encoding.bytesPerComponent();
+                if (encoding == VectorEncoding.FLOAT32) {
+                    for (int i = 0; i < dimensions; i++) {
+                        vectors.putFloat(base + i * Float.BYTES, vector[i]);
+                    }
+                } else {
+                    float scale = quantizationScale(vector);
+                    graph.putFloat(layout.scales + node * Float.BYTES, scale);
+                    for (int i = 0; i < dimensions; i++) {
+                        vectors.put(base + i, scale == 0f ? 0 : (byte) Math.round(vector[i] / scale));
+                    }
+                }
+            }
+            Integer[] byId = new Integer[count];
+            for (int node = 0; node < count; node++) {
+                byId[node] = node;
+            }
+            Arrays.sort(byId, Comparator.comparingLong(source::id));
+            for (int i = 0; i < count; i++) {
+                graph.putInt(layout.byId + i * Integer.BYTES, byId[i]);
+            }
+            graph.force();
+            vectors.force();
+            MappedBuffers.unmap(graph);
+            MappedBuffers.unmap(vectors);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        return open(target);
+    }
+
+    static String fileName(long minGeneration, long maxGeneration) {
+        return String.format("segment-%016d-%016d%s", minGeneration, maxGeneration, SUFFIX);
+    }
+
+    /**
+     * 单个映射区域不能超过 2GB，据此限制单段向量数
+     */
+    static int maxVectors(int dimensions, int m, VectorEncoding encoding) {
+        long perVectorBytes = (long) dimensions * encoding.bytesPerComponent();
+        // 上层邻居按期望值 1/(M-1) 层估算，留一倍余量
+        long perNodeGraphBytes = Long.BYTES + 1 + Integer.BYTES + (1 + 2L * m) * Integer.BYTES
+                + 2L * (1 + m) * Integer.BYTES / Math.max(1, m - 1) + Float.BYTES + Integer.BYTES;
+        long limit = Math.min((Integer.MAX_VALUE - HEADER_BYTES) / perVectorBytes,
+                (Integer.MAX_VALUE - HEADER_BYTES) / perNodeGraphBytes);
+        return (int) limit;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * 计数已归零（段已被替换并解除映射）时返回 false
+     */
+    boolean retain() {
+        while (true) {
+            int current = refs.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (refs.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (refs.decrementAndGet() == 0) {
+            MappedBuffers.unmap(graph);
+            MappedBuffers.unmap(vectors);
+        }
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    long minGeneration() {
+        return minGeneration;
+    }
+
+    long maxGeneration() {
+        return maxGeneration;
+    }
+
+    boolean covers(HnswSegment other) {
+        return this != other && minGeneration <= other.minGeneration && maxGeneration >= other.maxGeneration;
+    }
+
+    // 合并时读取原始向量，INT8 段返回反量化后的近似值
+    void vector(int node, float[] out) {
+        if (floats != null) {
+            floats.get(node * dimensions, out, 0, dimensions);
+            return;
+        }
+        float scale = graph.getFloat(scalesOffset + node * Float.BYTES);
+        int base = node * dimensions;
+        for (int i = 0; i < dimensions; i++) {
+            out[i] = vectors.get(base + i) * scale;
+        }
+    }
+
+    @Override
+    public long entry() {
+        return count == 0 ? -1 : entry;
+    }
+
+    @Override
+    public boolean indexedById() {
+        return byIdOffset >= 0;
+    }
+
+    @Override
+    public int node(long id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int node = graph.getInt(byIdOffset + mid * Integer.BYTES);
+            long current = id(node);
+            if (current < id) {
+                low = mid + 1;
+            } else if (current > id) {
+                high = mid - 1;
+            } else {
+                return node;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int capacity() {
+        return count;
+    }
+
+    @Override
+    public int maxConnections() {
+        return maxM0;
+    }
+
+    @Override
+    public long id(int node) {
+        return graph.getLong(HEADER_BYTES + node * Long.BYTES);
+    }
+
+    @Override
+    public float score(float[] query, int node) {
+        int base = node * dimensions;
+        float sum = 0f;
+        if (floats != null) {
+            for (int i = 0; i < dimensions; i++) {
+                sum += query[i] * floats.get(base + i);
+            }
+            return sum;
+        }
+        for (int i = 0; i < dimensions; i++) {
+            sum += query[i] * vectors.get(base + i);
+        }
+        return sum * graph.getFloat(scalesOffset + node * Float.BYTES);
+    }
+
+    @Override
+    public int neighbours(int node, int level, int[] buffer) {
+        int base;
+        if (level == 0) {
+            base = level0Offset + node * (1 + maxM0) * Integer.BYTES;
+        } else {
+            if (level > graph.get(levelsOffset + node)) {
+                return 0;
+            }
+            int offset = graph.getInt(upperOffsetsOffset + node * Integer.BYTES);
+            base = upperOffset + (offset + (level - 1) * (1 + m)) * Integer.BYTES;
+        }
+        int size = graph.getInt(base);
+        for (int i = 0; i < size; i++) {
+            buffer[i] = graph.getInt(base + (i + 1) * Integer.BYTES);
+        }
+        return size;
+    }
+
+    private static void writeList(MappedByteBuffer graph, int base, int[] buffer, int size) {
+        graph.putInt(base, size);
+        for (int i = 0; i < size; i++) {
+            graph.putInt(base + (i + 1) * Integer.BYTES, buffer[i]);
+        }
+    }
+
+    private static float quantizationScale(float[] vector) {
+        float maxAbs = 0f;
+        for (float v : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        return maxAbs / 127f;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long offset, long size)
+            throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("segment region exceeds 2GB, lower vector.flush-threshold");
+        }
+        MappedByteBuffer buffer = channel.map(mode, offset, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * 各区域在文件中的字节偏移
+     */
+    private static final class Layout {
+        private final int levels;
+        private final int upperOffsets;
+        private final int level0;
+        private final int upper;
+        private final int scales;
+        private final int byId;
+        private final long vectors;
+
+        private Layout(int count, int m, int upperInts, int dimensions, VectorEncoding encoding, int version) {
+            long cursor = HEADER_BYTES + (long) count * Long.BYTES;
+            levels = Math.toIntExact(cursor);
+            cursor = align(cursor + count, Integer.BYTES);
+            upperOffsets = Math.toIntExact(cursor);
+            cursor += (long) count * Integer.BYTES;
+            level0 = Math.toIntExact(cursor);
+            cursor += (long) count * (1 + 2L * m) * Integer.BYTES;
+            upper = Math.toIntExact(cursor);
+            cursor += (long) upperInts * Integer.BYTES;
+            scales = Math.toIntExact(cursor);
+            if (encoding == VectorEncoding.INT8) {
+                cursor += (long) count * Float.BYTES;
+            }
+            byId = version >= 2 ? Math.toIntExact(cursor) : -1;
+            if (version >= 2) {
+                cursor += (long) count * Integer.BYTES;
+            }
+            vectors = align(cursor, 64);
+        }
+
+        private static long align(long value, int alignment) {
+            return (value + alignment - 1) / alignment * alignment;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.hunkyhsu.ragagent.vector;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+/**
+ * 立即释放 mmap 映射。MappedByteBuffer 默认要等 GC 回收才解除映射，
+ * 合并后被替换的段文件虽已删除，其磁盘空间和地址空间会一直占用到下次 GC。
+ * 通过 sun.misc.Unsafe#invokeCleaner 主动解除；当前 JVM 不支持时退回由 GC 回收。
+ */
+@Slf4j
+final class MappedBuffers {
+
+    private static final MethodHandle INVOKE_CLEANER = lookupCleaner();
+
+    private MappedBuffers() {
+    }
+
+    /**
+     * 调用方必须保证之后不再访问该缓冲区，否则会读到已解除映射的内存导致 JVM 崩溃
+     */
+    static void unmap(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null || buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact(buffer);
+        } catch (Throwable e) {
+            log.warn("Failed to unmap buffer, leaving it to GC", e);
+        }
+    }
+
+    private static MethodHandle lookupCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.info("Explicit unmapping unavailable, mapped segments are released by GC: {}", e.toString());
+            return null;
+        }
+    }
+}
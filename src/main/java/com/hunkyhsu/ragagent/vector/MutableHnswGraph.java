@@ -0,0 +1,348 @@
+package com.hunkyhsu.ragagent.vector;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 可并发写入的 HNSW 图（内存段）。
+ * 向量按页存放在堆外 direct buffer 中；邻居表按节点分条加锁，写入线程之间只在同一条带上竞争，
+ * 检索读取邻居表时也持有对应条带锁，保证看到完整写入的列表。容量固定，写满后由 VectorIndex 封存并落盘。
+ */
+final class MutableHnswGraph implements GraphView {
+
+    private static final int SEALED = 1 << 30;
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    private static final int MAX_LEVEL = 15;
+    private static final int STRIPES = 1024;
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final int capacity;
+    private final double levelMultiplier;
+    private final AtomicReferenceArray<FloatBuffer> pages;
+    private final long[] ids;
+    private final int[][][] links;
+    private final Object[] locks = new Object[STRIPES];
+    private final Object entryLock = new Object();
+    // 已分配的节点数，SEALED 位表示不再接受写入
+    private final AtomicInteger slots = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final ThreadLocal<Scratch> scratch;
+    private volatile long entry = -1;
+
+    MutableHnswGraph(int dimensions, int m, int efConstruction, int capacity) {
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.capacity = capacity;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.pages = new AtomicReferenceArray<>((capacity >>> PAGE_SHIFT) + 1);
+        this.ids = new long[capacity];
+        this.links = new int[capacity][][];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(dimensions, maxM0 + 1));
+    }
+
+    /**
+     * @return false 表示图已写满或已封存，调用方需要换到新的内存段
+     */
+    boolean add(long id, float[] vector) {
+        int node = reserve();
+        if (node < 0) {
+            return false;
+        }
+        try {
+            insert(node, id, vector);
+        } finally {
+            completed.incrementAndGet();
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return Math.min(slots.get() & ~SEALED, capacity);
+    }
+
+    boolean isFull() {
+        return size() >= capacity;
+    }
+
+    // 封存后等待已分配节点全部写完，之后图只读
+    void seal() {
+        int current;
+        do {
+            current = slots.get();
+        } while ((current & SEALED) == 0 && !slots.compareAndSet(current, current | SEALED));
+        int allocated = size();
+        while (completed.get() < allocated) {
+            Thread.onSpinWait();
+        }
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    int m() {
+        return m;
+    }
+
+    int level(int node) {
+        synchronized (lock(node)) {
+            return links[node] == null ? -1 : links[node].length - 1;
+        }
+    }
+
+    void vector(int node, float[] out) {
+        pages.get(node >>> PAGE_SHIFT).get((node & PAGE_MASK) * dimensions, out, 0, dimensions);
+    }
+
+    @Override
+    public long entry() {
+        return entry;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public int maxConnections() {
+        return maxM0;
+    }
+
+    @Override
+    public long id(int node) {
+        return ids[node];
+    }
+
+    @Override
+    public float score(float[] query, int node) {
+        FloatBuffer page = pages.get(node >>> PAGE_SHIFT);
+        int base = (node & PAGE_MASK) * dimensions;
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            sum += query[i] * page.get(base + i);
+        }
+        return sum;
+    }
+
+    @Override
+    public int neighbours(int node, int level, int[] buffer) {
+        synchronized (lock(node)) {
+            int[][] nodeLinks = links[node];
+            if (nodeLinks == null || level >= nodeLinks.length) {
+                return 0;
+            }
+            int[] list = nodeLinks[level];
+            System.arraycopy(list, 1, buffer, 0, list[0]);
+            return list[0];
+        }
+    }
+
+    private int reserve() {
+        while (true) {
+            int current = slots.get();
+            if ((current & SEALED) != 0 || current >= capacity) {
+                return -1;
+            }
+            if (slots.compareAndSet(current, current + 1)) {
+                return current;
+            }
+        }
+    }
+
+    private void insert(int node, long id, float[] vector) {
+        page(node >>> PAGE_SHIFT).put((node & PAGE_MASK) * dimensions, vector, 0, dimensions);
+        ids[node] = id;
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[1 + maxConnections(l)];
+        }
+        synchronized (lock(node)) {
+            links[node] = nodeLinks;
+        }
+
+        long current = entry;
+        if (current < 0) {
+            synchronized (entryLock) {
+                if (entry < 0) {
+                    entry = GraphView.packEntry(node, level);
+                    return;
+                }
+                current = entry;
+            }
+        }
+        int ep = GraphView.entryNode(current);
+        int top = GraphView.entryLevel(current);
+        int[] buffer = new int[maxM0];
+        for (int l = top; l > level; l--) {
+            ep = HnswSearch.greedy(this, vector, ep, l, buffer);
+        }
+        Scratch s = scratch.get();
+        for (int l = Math.min(level, top); l >= 0; l--) {
+            NodeQueue found = HnswSearch.searchLayer(this, vector, ep, efConstruction, l, null);
+            int count = found.drain(s.candidateNodes(found.size()), s.candidateScores);
+            // drain 得到升序结果，最后一个是最近邻，作为下一层的入口
+            ep = s.candidateNodes[count - 1];
+            int selected = selectNeighbours(s.candidateNodes, s.candidateScores, count, maxConnections(l), node, s);
+            int[] chosen = new int[selected];
+            System.arraycopy(s.selected, 0, chosen, 0, selected);
+            synchronized (lock(node)) {
+                int[] list = links[node][l];
+                System.arraycopy(chosen, 0, list, 1, selected);
+                list[0] = selected;
+            }
+            for (int neighbour : chosen) {
+                linkBack(neighbour, node, l, s);
+            }
+        }
+        if (level > top) {
+            synchronized (entryLock) {
+                if (level > GraphView.entryLevel(entry)) {
+                    entry = GraphView.packEntry(node, level);
+                }
+            }
+        }
+    }
+
+    // 把 node 加入 neighbour 的邻居表，表满时用启发式重新挑选
+    private void linkBack(int neighbour, int node, int level, Scratch s) {
+        synchronized (lock(neighbour)) {
+            int[] list = links[neighbour][level];
+            int count = list[0];
+            for (int i = 1; i <= count; i++) {
+                if (list[i] == node) {
+                    return;
+                }
+            }
+            int max = maxConnections(level);
+            if (count < max) {
+                list[count + 1] = node;
+                list[0] = count + 1;
+                return;
+            }
+            float[] base = s.base;
+            vector(neighbour, base);
+            int[] nodes = s.candidateNodes(count + 1);
+            float[] scores = s.candidateScores;
+            for (int i = 0; i < count; i++) {
+                nodes[i] = list[i + 1];
+                scores[i] = score(base, list[i + 1]);
+            }
+            nodes[count] = node;
+            scores[count] = score(base, node);
+            sortAscending(nodes, scores, count + 1);
+            int selected = selectNeighbours(nodes, scores, count + 1, max, neighbour, s);
+            System.arraycopy(s.selected, 0, list, 1, selected);
+            list[0] = selected;
+        }
+    }
+
+    /**
+     * 论文中的启发式选择：候选按相似度从高到低考察，只有当它离基准点比离所有已选邻居都更近时才保留，
+     * 使邻居分布在不同方向上，图在聚簇数据上仍保持连通。candidates 需按分数升序排列
+     */
+    private int selectNeighbours(int[] nodes, float[] scores, int count, int max, int self, Scratch s) {
+        int selected = 0;
+        float[] other = s.other;
+        for (int i = count - 1; i >= 0 && selected < max; i--) {
+            int candidate = nodes[i];
+            if (candidate == self) {
+                continue;
+            }
+            vector(candidate, other);
+            boolean keep = true;
+            for (int j = 0; j < selected; j++) {
+                if (score(other, s.selected[j]) > scores[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                s.selected[selected++] = candidate;
+            }
+        }
+        return selected;
+    }
+
+    private static void sortAscending(int[] nodes, float[] scores, int count) {
+        for (int i = 1; i < count; i++) {
+            int node = nodes[i];
+            float score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] > score) {
+                nodes[j + 1] = nodes[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            nodes[j + 1] = node;
+            scores[j + 1] = score;
+        }
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int randomLevel() {
+        double r = ThreadLocalRandom.current().nextDouble();
+        return Math.min(MAX_LEVEL, (int) (-Math.log(1 - r) * levelMultiplier));
+    }
+
+    private Object lock(int node) {
+        return locks[node & (STRIPES - 1)];
+    }
+
+    // 按需分配堆外页，空的内存段几乎不占内存
+    private FloatBuffer page(int index) {
+        FloatBuffer page = pages.get(index);
+        if (page == null) {
+            FloatBuffer created = ByteBuffer.allocateDirect((1 << PAGE_SHIFT) * dimensions * Float.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+            page = pages.compareAndSet(index, null, created) ? created : pages.get(index);
+        }
+        return page;
+    }
+
+    /**
+     * 插入过程中复用的临时数组
+     */
+    private static final class Scratch {
+        private final float[] base;
+        private final float[] other;
+        private final int[] selected;
+        private int[] candidateNodes;
+        private float[] candidateScores;
+
+        private Scratch(int dimensions, int maxCandidates) {
+            this.base = new float[dimensions];
+            this.other = new float[dimensions];
+            this.selected = new int[maxCandidates];
+            this.candidateNodes = new int[maxCandidates];
+            this.candidateScores = new float[maxCandidates];
+        }
+
+        private int[] candidateNodes(int size) {
+            if (candidateNodes.length < size) {
+                candidateNodes = new int[size];
+                candidateScores = new float[size];
+            }
+            return candidateNodes;
+        }
+    }
+}
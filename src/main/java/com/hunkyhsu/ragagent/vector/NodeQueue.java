@@ -0,0 +1,97 @@
+package com.hunkyhsu.ragagent.vector;
+
+import java.util.Arrays;
+
+/**
+ * (节点, 分数) 二叉堆，基于原始数组，检索热路径上不产生装箱对象
+ */
+final class NodeQueue {
+
+    private final boolean maxHeap;
+    private int[] nodes;
+    private float[] scores;
+    private int size;
+
+    NodeQueue(int capacity, boolean maxHeap) {
+        this.maxHeap = maxHeap;
+        this.nodes = new int[Math.max(4, capacity)];
+        this.scores = new float[nodes.length];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int topNode() {
+        return nodes[0];
+    }
+
+    float topScore() {
+        return scores[0];
+    }
+
+    int node(int index) {
+        return nodes[index];
+    }
+
+    float score(int index) {
+        return scores[index];
+    }
+
+    void push(int node, float score) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(score, scores[parent])) {
+                break;
+            }
+            nodes[i] = nodes[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        nodes[i] = node;
+        scores[i] = score;
+    }
+
+    void pop() {
+        int lastNode = nodes[--size];
+        float lastScore = scores[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && before(scores[child + 1], scores[child])) {
+                child++;
+            }
+            if (!before(scores[child], lastScore)) {
+                break;
+            }
+            nodes[i] = nodes[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        nodes[i] = lastNode;
+        scores[i] = lastScore;
+    }
+
+    /**
+     * 依次弹出全部元素写入输出数组（最小堆为升序，最大堆为降序），返回元素个数
+     */
+    int drain(int[] nodesOut, float[] scoresOut) {
+        int count = size;
+        for (int i = 0; i < count; i++) {
+            nodesOut[i] = nodes[0];
+            scoresOut[i] = scores[0];
+            pop();
+        }
+        return count;
+    }
+
+    private boolean before(float a, float b) {
+        return maxHeap ? a > b : a < b;
+    }
+}
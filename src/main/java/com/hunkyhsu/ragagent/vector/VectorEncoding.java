@@ -0,0 +1,20 @@
+package com.hunkyhsu.ragagent.vector;
+
+/**
+ * 段文件中向量的存储格式。INT8 按向量做对称量化（每个向量一个缩放系数），体积约为 FLOAT32 的 1/4
+ */
+public enum VectorEncoding {
+
+    FLOAT32(Float.BYTES),
+    INT8(Byte.BYTES);
+
+    private final int bytesPerComponent;
+
+    VectorEncoding(int bytesPerComponent) {
+        this.bytesPerComponent = bytesPerComponent;
+    }
+
+    public int bytesPerComponent() {
+        return bytesPerComponent;
+    }
+}
@@ -0,0 +1,7 @@
+package com.hunkyhsu.ragagent.vector;
+
+/**
+ * @param id    写入索引时的外部 id（片段主键）
+ * @param score 内积相似度，向量已归一化时即余弦相似度
+ */
+public record VectorHit(long id, float score) { }
@@ -0,0 +1,619 @@
+package com.hunkyhsu.ragagent.vector;
+
+import com.hunkyhsu.ragagent.config.VectorIndexProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * 进程内的近似最近邻索引，结构类似 LSM：
+ * 新向量写入可并发插入的内存段，写满后封存、在后台线程写成不可变的段文件并通过 mmap 映射；
+ * 段数达到 mergeFactor 时，后台把相邻的若干段合并重建为一个更大的段。
+ * 检索同时查询内存段与所有映射段并按分数合并。启动时只映射已有段文件，不重建图。
+ * 删除只记录墓碑（tombstones 文件），查询时过滤，合并时跳过；墓碑对应的向量全部被合并清除后墓碑本身也被回收。
+ * 每个内存段写入的向量同时追加到预写日志，落盘后删除；崩溃后打开时回放残留日志，未落盘的向量不会丢失。
+ * 合并替换下来的段在最后一个进行中的检索结束后立即解除映射。
+ * 相似度为内积，写入的向量应已 L2 归一化。
+ */
+@Slf4j
+public class VectorIndex implements Closeable {
+
+    private static final String TOMBSTONES = "tombstones";
+    private static final int REPLAY_BATCH = 4096;
+
+    private final Path directory;
+    private final int dimensions;
+    private final VectorIndexProperties properties;
+    private final int maxSegmentVectors;
+    private final AtomicLong nextGeneration;
+    private final Object stateLock = new Object();
+    // 墓碑的不可变快照：修改在 tombstoneLock 内复制后整体替换，检索过滤时直接按 long 判断，不逐个装箱
+    private volatile Roaring64Bitmap deleted = new Roaring64Bitmap();
+    // 写墓碑与回收墓碑互斥，回收时整体重写文件
+    private final Object tombstoneLock = new Object();
+    private FileChannel tombstoneLog;
+    // 墓碑回收后的通知，参数为向量已被合并清除、墓碑也已删去的 id
+    private volatile Consumer<Roaring64Bitmap> reclaimListener = reclaimed -> { };
+    private final AtomicLong nextWal;
+    private final Map<MutableHnswGraph, VectorWal> wals = new ConcurrentHashMap<>();
+    // 待落盘的内存段，只由落盘线程访问；写盘失败的留在队首，下次落盘时先重试
+    private final ArrayDeque<MutableHnswGraph> unflushed = new ArrayDeque<>();
+    private final ExecutorService flushExecutor =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("vector-flush-"));
+    private final ExecutorService mergeExecutor =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("vector-merge-"));
+    private final ForkJoinPool buildPool;
+    private volatile State state;
+    private volatile boolean closed;
+
+    private VectorIndex(Path directory, int dimensions, VectorIndexProperties properties,
+                        List<HnswSegment> segments, long nextGeneration, long nextWal, FileChannel tombstoneLog) {
+        this.directory = directory;
+        this.dimensions = dimensions;
+        this.properties = properties;
+        this.maxSegmentVectors = HnswSegment.maxVectors(dimensions, properties.getM(), properties.getEncoding());
+        this.nextGeneration = new AtomicLong(nextGeneration);
+        this.nextWal = new AtomicLong(nextWal);
+        this.tombstoneLog = tombstoneLog;
+        this.buildPool = new ForkJoinPool(properties.getMergeThreads());
+        this.state = new State(newMemtable(), List.of(), List.copyOf(segments));
+    }
+
+    /**
+     * 打开（或新建）索引目录：清理未完成的临时文件，映射已有段，丢弃已被合并段覆盖的旧段，载入墓碑，
+     * 再回放上次未正常关闭时残留的预写日志
+     */
+    public static VectorIndex open(Path directory, int dimensions, VectorIndexProperties properties) throws IOException {
+        Files.createDirectories(directory);
+        List<HnswSegment> opened = new ArrayList<>();
+        List<Path> wals = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file);
+                } else if (VectorWal.matches(name)) {
+                    wals.add(file);
+                } else if (name.endsWith(HnswSegment.SUFFIX)) {
+                    HnswSegment segment = HnswSegment.open(file);
+                    if (segment.dimensions() != dimensions) {
+                        throw new IllegalStateException("vector index at " + directory + " has dimension "
+                                + segment.dimensions() + " but the embedder produces " + dimensions);
+                    }
+                    opened.add(segment);
+                }
+            }
+        }
+        // 合并后、删除源段前崩溃时，源段会与合并段同时存在
+        List<HnswSegment> live = new ArrayList<>();
+        for (HnswSegment segment : opened) {
+            if (opened.stream().anyMatch(other -> other.covers(segment))) {
+                Files.deleteIfExists(segment.path());
+            } else {
+                live.add(segment);
+            }
+        }
+        live.sort(Comparator.comparingLong(HnswSegment::minGeneration));
+        long nextGeneration = live.stream().mapToLong(HnswSegment::maxGeneration).max().orElse(0L) + 1;
+        wals.sort(Comparator.comparingLong(VectorWal::sequence));
+        long nextWal = wals.isEmpty() ? 0L : VectorWal.sequence(wals.get(wals.size() - 1)) + 1;
+        VectorIndex index = new VectorIndex(directory, dimensions, properties, live, nextGeneration, nextWal,
+                openTombstoneLog(directory));
+        index.loadTombstones();
+        log.info("Opened vector index at {} with {} segments and {} tombstones",
+                directory, live.size(), index.tombstoneCount());
+        // 回放的向量写入新的内存段并记入新日志，旧日志回放完才删除，回放中途再次崩溃也不丢数据
+        for (Path wal : wals) {
+            index.replay(wal);
+            Files.delete(wal);
+        }
+        index.scheduleMerge();
+        return index;
+    }
+
+    public void add(long id, float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("expected " + dimensions + " dimensions but got " + vector.length);
+        }
+        if (deleted.contains(id)) {
+            return;
+        }
+        while (true) {
+            if (closed) {
+                throw new IllegalStateException("vector index is closed");
+            }
+            MutableHnswGraph active = state.active;
+            if (active.add(id, vector)) {
+                // 内存段落盘后日志已关闭，追加变为空操作，此时向量已在段文件中
+                VectorWal wal = wals.get(active);
+                if (wal != null) {
+                    wal.append(id, vector);
+                }
+                if (active.isFull()) {
+                    rotate(active);
+                }
+                return;
+            }
+            rotate(active);
+        }
+    }
+
+    /**
+     * 记录向量已删除：立即从检索结果中消失，段内数据在下次合并时清除
+     */
+    public void delete(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        ByteBuffer records = ByteBuffer.allocate(ids.size() * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        synchronized (tombstoneLock) {
+            Roaring64Bitmap next = deleted.clone();
+            for (long id : ids) {
+                if (!next.contains(id)) {
+                    next.addLong(id);
+                    records.putLong(id);
+                }
+            }
+            deleted = next;
+            records.flip();
+            try {
+                tombstoneLog.write(records, tombstoneLog.size());
+            } catch (IOException e) {
+                // 墓碑未落盘时重启后这些向量会重新出现，检索方仍按标签位图过滤，只影响未过滤的检索
+                log.warn("Failed to persist {} vector tombstones", ids.size(), e);
+            }
+        }
+    }
+
+    /**
+     * 注册墓碑回收通知，在合并线程上、墓碑锁外调用；这些 id 不会再出现在任何段中
+     */
+    public void onTombstonesReclaimed(Consumer<Roaring64Bitmap> listener) {
+        this.reclaimListener = listener;
+    }
+
+    public int tombstoneCount() {
+        return (int) deleted.getLongCardinality();
+    }
+
+    public List<VectorHit> search(float[] query, int k) {
+        return search(query, k, null);
+    }
+
+    public List<VectorHit> search(float[] query, int k, LongPredicate filter) {
+        return search(query, k, filter, -1, null);
+    }
+
+    /**
+     * @param filter            只返回 id 满足条件的结果，为 null 时不过滤
+     * @param filterCardinality 满足过滤条件的 id 数量（未知时传 -1）
+     * @param filterIds         满足过滤条件的全部 id，只在走精确检索时才取。
+     *                          图检索要绕过被过滤的节点，开销约为 ef * size / 数量；精确检索在段内按 id 查找，
+     *                          开销约为数量 * log(size) 加上内存段大小。数量小于 sqrt(efSearch * size) 时改走精确检索
+     */
+    public List<VectorHit> search(float[] query, int k, LongPredicate filter, long filterCardinality,
+                                  Supplier<LongStream> filterIds) {
+        State current = retain();
+        try {
+            return search(current, query, k, filter, filterCardinality, filterIds);
+        } finally {
+            release(current);
+        }
+    }
+
+    private List<VectorHit> search(State current, float[] query, int k, LongPredicate filter,
+                                   long filterCardinality, Supplier<LongStream> filterIds) {
+        Roaring64Bitmap tombstones = deleted;
+        if (!tombstones.isEmpty()) {
+            LongPredicate live = id -> !tombstones.contains(id);
+            filter = filter == null ? live : live.and(filter);
+        }
+        int ef = Math.max(properties.getEfSearch(), k);
+        boolean exact = filter != null && filterIds != null && filterCardinality >= 0
+                && (double) filterCardinality * filterCardinality < (double) ef * size(current);
+        long[] allowed = exact ? filterIds.get().toArray() : null;
+        List<VectorHit> hits = new ArrayList<>();
+        for (GraphView graph : current.graphs()) {
+            hits.addAll(exact
+                    ? HnswSearch.exact(graph, query, k, filter, allowed)
+                    : HnswSearch.search(graph, query, k, ef, filter));
+        }
+        hits.sort(Comparator.comparingDouble(VectorHit::score).reversed());
+        // 重建与增量写入并发时同一 id 可能出现在多个段中，只保留分数最高的一条
+        List<VectorHit> top = new ArrayList<>(Math.min(k, hits.size()));
+        Set<Long> seen = new HashSet<>();
+        for (VectorHit hit : hits) {
+            if (top.size() == k) {
+                break;
+            }
+            if (seen.add(hit.id())) {
+                top.add(hit);
+            }
+        }
+        return top;
+    }
+
+    public long size() {
+        return size(state);
+    }
+
+    public int segmentCount() {
+        return state.segments.size();
+    }
+
+    /**
+     * 把当前内存段落盘，阻塞到段文件映射完成
+     */
+    public void flush() {
+        await(rotate(state.active));
+    }
+
+    // 正常关闭时落盘内存段，未完成的合并被放弃，源段保持不变
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        Future<?> last = rotate(state.active);
+        closed = true;
+        await(last);
+        mergeExecutor.shutdown();
+        flushExecutor.shutdown();
+        try {
+            mergeExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        buildPool.shutdownNow();
+        synchronized (tombstoneLock) {
+            try {
+                tombstoneLog.close();
+            } catch (IOException e) {
+                log.warn("Failed to close vector tombstone log", e);
+            }
+        }
+        // 关闭时新建的内存段通常为空，其日志直接删除；落盘失败的内存段保留日志，下次打开时回放
+        if (state.active.size() == 0) {
+            VectorWal empty = wals.remove(state.active);
+            if (empty != null) {
+                empty.delete();
+            }
+        }
+        wals.values().forEach(VectorWal::close);
+        state.segments.forEach(HnswSegment::release);
+    }
+
+    // 持有快照中全部段的引用；某个段已被合并替换并释放时，改用新的快照重试
+    private State retain() {
+        while (true) {
+            State current = state;
+            List<HnswSegment> retained = new ArrayList<>(current.segments.size());
+            for (HnswSegment segment : current.segments) {
+                if (!segment.retain()) {
+                    break;
+                }
+                retained.add(segment);
+            }
+            if (retained.size() == current.segments.size()) {
+                return current;
+            }
+            retained.forEach(HnswSegment::release);
+            if (closed && current == state) {
+                throw new IllegalStateException("vector index is closed");
+            }
+        }
+    }
+
+    private static void release(State state) {
+        state.segments.forEach(HnswSegment::release);
+    }
+
+    // 分批并行插入：不把整个日志读进内存，也不让单线程重建内存段拖慢启动
+    private void replay(Path file) throws IOException {
+        long[] ids = new long[REPLAY_BATCH];
+        float[][] vectors = new float[REPLAY_BATCH][];
+        int[] pending = new int[1];
+        int replayed = VectorWal.replay(file, dimensions, (id, vector) -> {
+            ids[pending[0]] = id;
+            vectors[pending[0]++] = vector;
+            if (pending[0] == REPLAY_BATCH) {
+                replayBatch(ids, vectors, pending[0]);
+                pending[0] = 0;
+            }
+        });
+        replayBatch(ids, vectors, pending[0]);
+        log.info("Replayed {} vectors from write-ahead log {}", replayed, file.getFileName());
+    }
+
+    private void replayBatch(long[] ids, float[][] vectors, int count) {
+        await(buildPool.submit(() -> IntStream.range(0, count).parallel().forEach(i -> add(ids[i], vectors[i]))));
+    }
+
+    private Future<?> rotate(MutableHnswGraph full) {
+        synchronized (stateLock) {
+            if (state.active != full) {
+                return flushExecutor.submit(() -> { });
+            }
+            List<MutableHnswGraph> flushing = new ArrayList<>(state.flushing);
+            flushing.add(full);
+            state = new State(newMemtable(), List.copyOf(flushing), state.segments);
+        }
+        return flushExecutor.submit(() -> flush(full));
+    }
+
+    private void flush(MutableHnswGraph graph) {
+        graph.seal();
+        unflushed.add(graph);
+        // 按封存顺序落盘，段的代号保持递增；某个内存段写盘失败时其后的也不越过它
+        while (!unflushed.isEmpty()) {
+            writeSegment(unflushed.peek());
+            unflushed.poll();
+        }
+    }
+
+    private void writeSegment(MutableHnswGraph graph) {
+        HnswSegment segment = null;
+        if (graph.size() > 0) {
+            long generation = nextGeneration.getAndIncrement();
+            try {
+                segment = HnswSegment.write(directory, graph, properties.getEncoding(), generation, generation);
+            } catch (IOException e) {
+                // 写盘失败时内存段仍在 flushing 中可以检索，预写日志也保留；下次落盘时换新代号重试
+                log.error("Failed to flush vector segment {}", generation, e);
+                throw new UncheckedIOException(e);
+            }
+        }
+        synchronized (stateLock) {
+            List<MutableHnswGraph> flushing = new ArrayList<>(state.flushing);
+            flushing.remove(graph);
+            List<HnswSegment> segments = new ArrayList<>(state.segments);
+            if (segment != null) {
+                segments.add(segment);
+            }
+            state = new State(state.active, List.copyOf(flushing), List.copyOf(segments));
+        }
+        VectorWal wal = wals.remove(graph);
+        if (wal != null) {
+            wal.delete();
+        }
+        scheduleMerge();
+    }
+
+    private void scheduleMerge() {
+        if (!closed && state.segments.size() >= properties.getMergeFactor()) {
+            mergeExecutor.execute(this::mergeOnce);
+        }
+    }
+
+    // 选出总向量数最小的 mergeFactor 个相邻段，在后台重建为一个段
+    private void mergeOnce() {
+        List<HnswSegment> segments = state.segments;
+        int factor = Math.max(2, properties.getMergeFactor());
+        if (closed || segments.size() < factor) {
+            return;
+        }
+        int bestStart = -1;
+        long bestSize = Long.MAX_VALUE;
+        for (int start = 0; start + factor <= segments.size(); start++) {
+            long total = 0;
+            for (int i = start; i < start + factor; i++) {
+                total += segments.get(i).size();
+            }
+            if (total <= maxSegmentVectors && total < bestSize) {
+                bestSize = total;
+                bestStart = start;
+            }
+        }
+        if (bestStart < 0) {
+            return;
+        }
+        List<HnswSegment> sources = List.copyOf(segments.subList(bestStart, bestStart + factor));
+        try {
+            HnswSegment merged = merge(sources, (int) bestSize);
+            synchronized (stateLock) {
+                List<HnswSegment> next = new ArrayList<>(state.segments);
+                int at = next.indexOf(sources.get(0));
+                next.removeAll(sources);
+                next.add(at, merged);
+                state = new State(state.active, state.flushing, List.copyOf(next));
+            }
+            for (HnswSegment source : sources) {
+                Files.deleteIfExists(source.path());
+                source.release();
+            }
+            log.info("Merged {} vector segments into {} ({} vectors)",
+                    sources.size(), merged.path().getFileName(), merged.size());
+            reclaimTombstones();
+        } catch (CancellationException e) {
+            return;
+        } catch (Exception e) {
+            log.error("Vector segment merge failed", e);
+            return;
+        }
+        scheduleMerge();
+    }
+
+    private HnswSegment merge(List<HnswSegment> sources, int total) throws IOException {
+        Roaring64Bitmap tombstones = deleted;
+        MutableHnswGraph graph = new MutableHnswGraph(dimensions, properties.getM(), properties.getEfConstruction(), total);
+        for (HnswSegment source : sources) {
+            await(buildPool.submit(() -> IntStream.range(0, source.size()).parallel().forEach(node -> {
+                if (closed) {
+                    throw new CancellationException("vector index closed during merge");
+                }
+                long id = source.id(node);
+                if (tombstones.contains(id)) {
+                    return;
+                }
+                float[] vector = new float[dimensions];
+                source.vector(node, vector);
+                graph.add(id, vector);
+            })));
+        }
+        graph.seal();
+        return HnswSegment.write(directory, graph, properties.getEncoding(),
+                sources.get(0).minGeneration(), sources.get(sources.size() - 1).maxGeneration());
+    }
+
+    // 只保留仍出现在某个内存段或映射段中的墓碑，重写墓碑文件：先写临时文件再原子改名
+    private void reclaimTombstones() {
+        Roaring64Bitmap reclaimed;
+        synchronized (tombstoneLock) {
+            try {
+                reclaimed = rewriteTombstones();
+            } catch (IOException e) {
+                // 旧墓碑文件保持不变，下次合并后重试
+                log.warn("Failed to reclaim vector tombstones", e);
+                return;
+            }
+        }
+        if (reclaimed != null) {
+            try {
+                reclaimListener.accept(reclaimed);
+            } catch (RuntimeException e) {
+                log.warn("Vector tombstone reclaim listener failed", e);
+            }
+        }
+    }
+
+    // @return 本次回收的墓碑，没有可回收的返回 null
+    private Roaring64Bitmap rewriteTombstones() throws IOException {
+        Roaring64Bitmap tombstones = deleted;
+        if (tombstones.isEmpty()) {
+            return null;
+        }
+        Roaring64Bitmap present = new Roaring64Bitmap();
+        State current = retain();
+        try {
+            for (GraphView graph : current.graphs()) {
+                for (int node = 0, size = graph.size(); node < size; node++) {
+                    long id = graph.id(node);
+                    if (tombstones.contains(id)) {
+                        present.addLong(id);
+                    }
+                }
+            }
+        } finally {
+            release(current);
+        }
+        long remaining = present.getLongCardinality();
+        if (remaining == tombstones.getLongCardinality()) {
+            return null;
+        }
+        Path target = directory.resolve(TOMBSTONES);
+        Path temp = directory.resolve(TOMBSTONES + ".tmp");
+        ByteBuffer records = ByteBuffer.allocate((int) remaining * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        present.forEach(records::putLong);
+        records.flip();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            channel.force(true);
+        }
+        // 改名后旧通道指向已被替换的文件，换成新文件的通道
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel previous = tombstoneLog;
+        tombstoneLog = openTombstoneLog(directory);
+        previous.close();
+        deleted = present;
+        log.info("Reclaimed {} vector tombstones, {} remain", tombstones.getLongCardinality() - remaining, remaining);
+        Roaring64Bitmap reclaimed = tombstones.clone();
+        reclaimed.andNot(present);
+        return reclaimed;
+    }
+
+    private void loadTombstones() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) tombstoneLog.size()).order(ByteOrder.LITTLE_ENDIAN);
+        tombstoneLog.read(buffer, 0);
+        buffer.flip();
+        Roaring64Bitmap loaded = new Roaring64Bitmap();
+        while (buffer.remaining() >= Long.BYTES) {
+            loaded.addLong(buffer.getLong());
+        }
+        deleted = loaded;
+    }
+
+    private static FileChannel openTombstoneLog(Path directory) throws IOException {
+        return FileChannel.open(directory.resolve(TOMBSTONES),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private MutableHnswGraph newMemtable() {
+        int capacity = Math.min(properties.getFlushThreshold(), maxSegmentVectors);
+        MutableHnswGraph graph = new MutableHnswGraph(dimensions, properties.getM(), properties.getEfConstruction(), capacity);
+        try {
+            wals.put(graph, VectorWal.create(directory, nextWal.getAndIncrement(), dimensions));
+        } catch (IOException e) {
+            // 没有日志时内存段照常工作，只是崩溃后要靠重新入库补回
+            log.error("Failed to create vector write-ahead log, unflushed vectors will not survive a crash", e);
+        }
+        return graph;
+    }
+
+    private static long size(State state) {
+        long size = 0;
+        for (GraphView graph : state.graphs()) {
+            size += graph.size();
+        }
+        return size;
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private record State(MutableHnswGraph active, List<MutableHnswGraph> flushing, List<HnswSegment> segments) {
+        List<GraphView> graphs() {
+            List<GraphView> graphs = new ArrayList<>(1 + flushing.size() + segments.size());
+            graphs.add(active);
+            graphs.addAll(flushing);
+            graphs.addAll(segments);
+            return graphs;
+        }
+    }
+}
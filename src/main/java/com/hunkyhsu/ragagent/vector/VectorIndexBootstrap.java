@@ -0,0 +1,90 @@
+package com.hunkyhsu.ragagent.vector;
+
+import com.hunkyhsu.ragagent.config.VectorIndexProperties;
+import com.hunkyhsu.ragagent.ingestion.ChunkStore;
+import com.hunkyhsu.ragagent.ingestion.Embedder;
+import com.hunkyhsu.ragagent.retrieval.IndexVersions;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 索引目录为空（首次部署或目录被清理）时，在后台从已存储的嵌入重建索引，不阻塞启动。
+ * 重建按片段 id 升序进行，并在索引目录中记录断点：写入的向量已由预写日志保证不丢，
+ * 重建中途进程退出后下次启动从断点继续，而不是因为索引已非空就跳过剩余部分。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class VectorIndexBootstrap {
+
+    private static final String CHECKPOINT = "rebuild.checkpoint";
+    private static final int CHECKPOINT_INTERVAL = 1_000;
+
+    private final VectorIndex vectorIndex;
+    private final VectorIndexProperties properties;
+    private final ChunkStore chunkStore;
+    private final Embedder embedder;
+    private final IndexVersions indexVersions;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        Path checkpoint = Path.of(properties.getDirectory()).resolve(CHECKPOINT);
+        long resumeAfter = readCheckpoint(checkpoint);
+        if (resumeAfter < 0 && vectorIndex.size() > 0) {
+            return;
+        }
+        long after = Math.max(0L, resumeAfter);
+        Thread thread = new Thread(() -> {
+            long started = System.nanoTime();
+            long[] count = new long[1];
+            try {
+                writeCheckpoint(checkpoint, after);
+                chunkStore.forEachEmbeddedChunk(embedder.model(), after, (chunkId, vector) -> {
+                    vectorIndex.add(chunkId, vector);
+                    if (++count[0] % CHECKPOINT_INTERVAL == 0) {
+                        writeCheckpoint(checkpoint, chunkId);
+                    }
+                });
+                Files.deleteIfExists(checkpoint);
+                log.info("Vector index rebuilt from {} stored embeddings after chunk {} in {} ms",
+                        count[0], after, (System.nanoTime() - started) / 1_000_000);
+            } catch (Exception e) {
+                log.error("Vector index rebuild failed after {} embeddings", count[0], e);
+            } finally {
+                // 重建期间缓存的是不完整索引上的结果
+                indexVersions.bumpAll();
+            }
+        }, "vector-index-bootstrap");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // 没有断点文件时返回 -1，表示没有未完成的重建
+    private static long readCheckpoint(Path checkpoint) {
+        try {
+            return Long.parseLong(Files.readString(checkpoint, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            return Files.exists(checkpoint) ? 0L : -1L;
+        }
+    }
+
+    // 先写临时文件再原子改名，索引打开时会清理残留的 .tmp
+    private static void writeCheckpoint(Path checkpoint, long chunkId) {
+        Path temp = checkpoint.resolveSibling(CHECKPOINT + ".tmp");
+        try {
+            Files.writeString(temp, Long.toString(chunkId), StandardCharsets.UTF_8);
+            Files.move(temp, checkpoint, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to record vector index rebuild checkpoint {}", chunkId, e);
+        }
+    }
+}
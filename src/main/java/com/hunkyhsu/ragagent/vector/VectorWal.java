@@ -0,0 +1,139 @@
+package com.hunkyhsu.ragagent.vector;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 内存段的预写日志：每个内存段对应一个 wal-{序号}.log，记录为 id(long) + 向量(float[dimensions])，小端序。
+ * 内存段落盘成段文件后删除对应日志；进程崩溃后重新打开索引时回放残留日志，找回尚未落盘的向量。
+ * 写入不逐条 fsync，进程崩溃不丢数据，掉电时可能丢失尾部尚在页缓存中的记录。
+ */
+@Slf4j
+final class VectorWal implements Closeable {
+
+    static final String PREFIX = "wal-";
+    static final String SUFFIX = ".log";
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer record;
+    private boolean closed;
+    private boolean failed;
+
+    private VectorWal(Path path, FileChannel channel, int dimensions) {
+        this.path = path;
+        this.channel = channel;
+        this.record = ByteBuffer.allocate(recordBytes(dimensions)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static VectorWal create(Path directory, long sequence, int dimensions) throws IOException {
+        Path path = directory.resolve(fileName(sequence));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return new VectorWal(path, channel, dimensions);
+    }
+
+    static String fileName(long sequence) {
+        return String.format("%s%016d%s", PREFIX, sequence, SUFFIX);
+    }
+
+    static boolean matches(String fileName) {
+        return fileName.startsWith(PREFIX) && fileName.endsWith(SUFFIX);
+    }
+
+    static long sequence(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * 逐条回放日志；崩溃时写了一半的尾部记录被忽略
+     */
+    static int replay(Path file, int dimensions, Consumer consumer) throws IOException {
+        int recordBytes = recordBytes(dimensions);
+        ByteBuffer buffer = ByteBuffer.allocate(recordBytes * 256).order(ByteOrder.LITTLE_ENDIAN);
+        int replayed = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.remaining() >= recordBytes) {
+                    long id = buffer.getLong();
+                    float[] vector = new float[dimensions];
+                    buffer.asFloatBuffer().get(vector);
+                    buffer.position(buffer.position() + dimensions * Float.BYTES);
+                    consumer.accept(id, vector);
+                    replayed++;
+                }
+                buffer.compact();
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * 写日志失败只告警：索引照常可用，只是崩溃后这部分向量要靠重新入库补回
+     */
+    synchronized void append(long id, float[] vector) {
+        if (closed || failed) {
+            return;
+        }
+        record.clear();
+        record.putLong(id);
+        for (float component : vector) {
+            record.putFloat(component);
+        }
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            failed = true;
+            log.warn("Failed to append to vector write-ahead log {}, later vectors are not logged", path, e);
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close vector write-ahead log {}", path, e);
+        }
+    }
+
+    void delete() {
+        close();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // 残留的日志在下次打开时会被回放，向量已在段中，回放只会产生重复 id，检索时去重
+            log.warn("Failed to delete vector write-ahead log {}", path, e);
+        }
+    }
+
+    private static int recordBytes(int dimensions) {
+        return Long.BYTES + dimensions * Float.BYTES;
+    }
+
+    @FunctionalInterface
+    interface Consumer {
+        void accept(long id, float[] vector);
+    }
+}
@@ -0,0 +1,387 @@
+package com.hunkyhsu.ragagent.ws;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hunkyhsu.ragagent.cluster.StreamRelay;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.logging.LogFields;
+import com.hunkyhsu.ragagent.metrics.ChatMetrics;
+import com.hunkyhsu.ragagent.service.ChatOrchestrator;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
+@Component
+public class ChatWebSocketHandler extends TextWebSocketHandler {
+
+    private static final int SEND_TIME_LIMIT_MS = 10_000;
+    private static final int SEND_BUFFER_SIZE_LIMIT = 512 * 1024;
+
+    private final ChatOrchestrator chatOrchestrator;
+    private final ObjectMapper objectMapper;
+    private final ChatMetrics chatMetrics;
+    private final StreamRelay streamRelay;
+    private final PerMessageDeflatePolicy deflatePolicy;
+    // 流式片段来自 Reactor 线程，发送必须经过线程安全的 decorator
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    // 每个连接当前订阅着的回复流；断开只取消订阅，生成由 StreamRelay 继续
+    private final Map<String, Set<Attachment>> activeStreams = new ConcurrentHashMap<>();
+    private volatile boolean refusingStreams;
+
+    public ChatWebSocketHandler(ChatOrchestrator chatOrchestrator, ObjectMapper objectMapper,
+                                ChatMetrics chatMetrics, StreamRelay streamRelay,
+                                PerMessageDeflatePolicy deflatePolicy, MeterRegistry meterRegistry) {
+        this.chatOrchestrator = chatOrchestrator;
+        this.objectMapper = objectMapper;
+        this.chatMetrics = chatMetrics;
+        this.streamRelay = streamRelay;
+        this.deflatePolicy = deflatePolicy;
+        Gauge.builder("chat.ws.connections", sessions, Map::size)
+                .description("Open WebSocket sessions")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.active_streams", activeStreams, ChatWebSocketHandler::countStreams)
+                .description("Reply streams currently relaying to clients")
+                .register(meterRegistry);
+        // 各连接 decorator 中尚未写出的字节数，只在抓取时汇总
+        Gauge.builder("chat.ws.send_buffer", sessions, ChatWebSocketHandler::bufferedBytes)
+                .description("Bytes queued in per-session send buffers")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterConnectionEstablished(@NonNull WebSocketSession session) {
+        WebSocketSession decorated = new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_SIZE_LIMIT);
+        sessions.put(session.getId(), decorated);
+        deflatePolicy.opened(decorated);
+        activeStreams.put(session.getId(), ConcurrentHashMap.newKeySet());
+        streamRelay.connected(session.getId(), user(session));
+    }
+
+    @Override
+    protected void handleTextMessage(@NonNull WebSocketSession session, @NonNull TextMessage message) {
+        deflatePolicy.inbound(session.getId());
+        WsEnvelope envelope;
+        try {
+            envelope = objectMapper.readValue(message.getPayload(), WsEnvelope.class);
+        } catch (JsonProcessingException e) {
+            sendError(session, WsEnvelope.error(null, null, "VALIDATION", "invalid_payload"));
+            return;
+        }
+        if (envelope.type() == null) {
+            sendError(session, WsEnvelope.error(envelope.conversationId(), envelope.messageId(), "VALIDATION", "type_required"));
+            return;
+        }
+        // 分发期间的日志带上用户和会话字段
+        LogFields.run(user(session).getId(), envelope.conversationId(), envelope.messageId(),
+                () -> dispatch(session, envelope));
+    }
+
+    private void dispatch(WebSocketSession session, WsEnvelope envelope) {
+        switch (envelope.type()) {
+            case WsEnvelope.HEARTBEAT -> send(session, WsEnvelope.heartbeat());
+            case WsEnvelope.CHAT_SEND -> handleSend(session, envelope);
+            case WsEnvelope.CHAT_RESUME -> handleResume(session, envelope);
+            default -> sendError(session, WsEnvelope.error(envelope.conversationId(), envelope.messageId(),
+                    "VALIDATION", "unsupported_type"));
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull CloseStatus status) {
+        sessions.remove(session.getId());
+        deflatePolicy.closed(session.getId());
+        streamRelay.disconnected(session.getId());
+        Set<Attachment> streams = activeStreams.remove(session.getId());
+        if (streams != null) {
+            // 只取消本连接的订阅，上游生成继续，客户端可重连后续接
+            streams.forEach(Attachment::dispose);
+        }
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * 排空开始后拒绝新的 chat.send，已有的 chat.resume 不受影响
+     */
+    public void refuseNewStreams() {
+        refusingStreams = true;
+    }
+
+    /**
+     * 对每个连接上仍在接收的回复流下发 reconnect（带 messageId 和已发送的 seq），随后以 1012 关闭连接
+     */
+    public void reconnectAll() {
+        for (WebSocketSession session : sessions.values()) {
+            Set<Attachment> streams = activeStreams.getOrDefault(session.getId(), Set.of());
+            if (streams.isEmpty()) {
+                send(session, WsEnvelope.reconnect(null, null, null));
+            }
+            for (Attachment stream : streams) {
+                send(session, WsEnvelope.reconnect(stream.conversationId, stream.messageId, stream.lastSeq));
+            }
+            try {
+                session.close(CloseStatus.SERVICE_RESTARTED);
+            } catch (IOException e) {
+                log.debug("ws_close_failed sessionId={}: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private void handleSend(WebSocketSession session, WsEnvelope envelope) {
+        StreamClock clock = new StreamClock(System.nanoTime());
+        User user = user(session);
+        // 同一 messageId 重发（如重连后客户端重试）时续接已有的流，不重新生成
+        Flux<WsEnvelope> existing = envelope.messageId() == null ? null
+                : streamRelay.resume(user, envelope.messageId(), 0);
+        if (existing != null) {
+            attach(session, envelope, existing, null);
+            return;
+        }
+        if (refusingStreams) {
+            sendError(session, WsEnvelope.error(envelope.conversationId(), envelope.messageId(),
+                    "UPSTREAM", "node_draining"));
+            return;
+        }
+        // 先登记 messageId 再落库和调用上游：并发重发的同一 messageId 接到已登记的流上，不会重复执行
+        StreamRelay.Claim claim = streamRelay.claim(user, envelope);
+        if (claim == null) {
+            Flux<WsEnvelope> running = streamRelay.resume(user, envelope.messageId(), 0);
+            if (running != null) {
+                attach(session, envelope, running, null);
+            } else {
+                // 登记期间原请求校验失败并撤销了登记
+                sendError(session, WsEnvelope.error(envelope.conversationId(), envelope.messageId(),
+                        "UPSTREAM", "stream_lost"));
+            }
+            return;
+        }
+        Flux<WsEnvelope> replies;
+        try {
+            replies = chatOrchestrator.handleSend(user, envelope);
+        } catch (ResponseStatusException ex) {
+            WsEnvelope error = WsEnvelope.error(envelope.conversationId(), envelope.messageId(),
+                    errorCode(ex), ex.getReason());
+            claim.abandon(error);
+            sendError(session, error);
+            return;
+        } catch (RuntimeException ex) {
+            claim.abandon(WsEnvelope.error(envelope.conversationId(), envelope.messageId(), "UPSTREAM", "upstream_error"));
+            throw ex;
+        }
+        chatMetrics.dispatch(System.nanoTime() - clock.receivedAt);
+        Flux<WsEnvelope> frames = claim.start(replies
+                .onErrorResume(ex -> {
+                    // 调度层的排队拒绝等带状态码的异常原样告知客户端
+                    if (ex instanceof ResponseStatusException statusException) {
+                        return Mono.just(WsEnvelope.error(envelope.conversationId(), envelope.messageId(),
+                                errorCode(statusException), statusException.getReason()));
+                    }
+                    // 回调跑在 Reactor 线程上，分发时的 MDC 不在这里，需要重新写入
+                    LogFields.run(user.getId(), envelope.conversationId(), envelope.messageId(),
+                            () -> log.warn("chat_stream_failed convId={} messageId={}",
+                                    envelope.conversationId(), envelope.messageId(), ex));
+                    return Mono.just(WsEnvelope.error(envelope.conversationId(), envelope.messageId(),
+                            "UPSTREAM", "upstream_error"));
+                }));
+        attach(session, envelope, frames, clock);
+    }
+
+    private void handleResume(WebSocketSession session, WsEnvelope envelope) {
+        if (envelope.messageId() == null) {
+            sendError(session, WsEnvelope.error(envelope.conversationId(), null, "VALIDATION", "message_id_required"));
+            return;
+        }
+        Flux<WsEnvelope> frames = streamRelay.resume(user(session), envelope.messageId(),
+                envelope.seq() == null ? 0 : envelope.seq());
+        if (frames == null) {
+            sendError(session, WsEnvelope.error(envelope.conversationId(), envelope.messageId(),
+                    "VALIDATION", "stream_not_found"));
+            return;
+        }
+        attach(session, envelope, frames, null);
+    }
+
+    // 把回复流接到连接上；clock 为 null 表示续接，不计入首帧和帧间隔指标
+    private void attach(WebSocketSession session, WsEnvelope envelope, Flux<WsEnvelope> frames, StreamClock clock) {
+        Set<Attachment> streams = activeStreams.get(session.getId());
+        if (streams == null) {
+            return;
+        }
+        Attachment attachment = new Attachment(envelope.conversationId(), envelope.messageId(), envelope.seq());
+        streams.add(attachment);
+        attachment.subscription = frames
+                .doFinally(signal -> {
+                    streams.remove(attachment);
+                    if (clock != null) {
+                        chatMetrics.streamCompleted(clock.frames, clock.lastFrameAt - clock.firstFrameAt);
+                    }
+                })
+                .subscribe(reply -> relay(session, reply, clock, attachment));
+        if (!streams.contains(attachment)) {
+            // 流在订阅时已同步结束
+            attachment.dispose();
+        }
+    }
+
+    // 回复流的每一帧都经过这里：记录中继耗时、首帧时延和帧间隔，只做 long 运算
+    private void relay(WebSocketSession session, WsEnvelope reply, StreamClock clock, Attachment attachment) {
+        long start = System.nanoTime();
+        if (WsEnvelope.ERROR.equals(reply.type())) {
+            sendError(session, reply);
+            return;
+        }
+        // chat.stream 帧走预编码路径，其余帧和不符合约定的帧交给 Jackson
+        String encoded = WsEnvelope.CHAT_STREAM.equals(reply.type()) ? attachment.encode(reply) : null;
+        if (encoded != null) {
+            send(session, encoded);
+        } else {
+            send(session, reply);
+        }
+        if (reply.seq() != null) {
+            attachment.lastSeq = reply.seq();
+        }
+        long sent = System.nanoTime();
+        chatMetrics.relay(sent - start);
+        if (clock == null || !WsEnvelope.CHAT_STREAM.equals(reply.type())) {
+            return;
+        }
+        if (clock.frames == 0) {
+            chatMetrics.firstToken(sent - clock.receivedAt);
+            clock.firstFrameAt = sent;
+        } else {
+            chatMetrics.interToken(sent - clock.lastFrameAt);
+        }
+        clock.lastFrameAt = sent;
+        clock.frames++;
+    }
+
+    private void sendError(WebSocketSession session, WsEnvelope error) {
+        chatMetrics.error(error.error().code());
+        send(session, error);
+    }
+
+    private void send(WebSocketSession session, WsEnvelope envelope) {
+        try {
+            // 按 UTF-8 字节序列化，与 StreamFrameEncoder 的输出保持一致（代理对同样转义）
+            send(session, new String(objectMapper.writeValueAsBytes(envelope), StandardCharsets.UTF_8));
+        } catch (JsonProcessingException e) {
+            log.warn("ws_encode_failed type={}", envelope.type(), e);
+        }
+    }
+
+    private void send(WebSocketSession session, String payload) {
+        WebSocketSession target = sessions.get(session.getId());
+        if (target == null || !target.isOpen()) {
+            return;
+        }
+        deflatePolicy.outbound(session.getId(), payload);
+        try {
+            target.sendMessage(new TextMessage(payload));
+        } catch (IOException e) {
+            log.debug(LogFields.PER_TOKEN, "ws_send_failed sessionId={}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    private static User user(WebSocketSession session) {
+        return (User) session.getAttributes().get(WsAuthHandshakeInterceptor.USER_ATTRIBUTE);
+    }
+
+    private static double countStreams(Map<String, Set<Attachment>> activeStreams) {
+        long count = 0;
+        for (Set<Attachment> streams : activeStreams.values()) {
+            count += streams.size();
+        }
+        return count;
+    }
+
+    private static double bufferedBytes(Map<String, WebSocketSession> sessions) {
+        long bytes = 0;
+        for (WebSocketSession session : sessions.values()) {
+            if (session instanceof ConcurrentWebSocketSessionDecorator decorator) {
+                bytes += decorator.getBufferSize();
+            }
+        }
+        return bytes;
+    }
+
+    // 与 GlobalExceptionHandler 的错误码保持一致：AUTH / VALIDATION / RLIMIT / UPSTREAM
+    private static String errorCode(ResponseStatusException ex) {
+        HttpStatus status = HttpStatus.valueOf(ex.getStatusCode().value());
+        if (status == HttpStatus.TOO_MANY_REQUESTS) {
+            return "RLIMIT";
+        }
+        if (status == HttpStatus.UNAUTHORIZED || status == HttpStatus.FORBIDDEN) {
+            return "AUTH";
+        }
+        return status.is4xxClientError() ? "VALIDATION" : "UPSTREAM";
+    }
+
+    /**
+     * 连接上的一路回复流订阅，lastSeq 用于排空时告诉客户端从哪里续接
+     */
+    private static final class Attachment {
+        private final Long conversationId;
+        private final String messageId;
+        private volatile Long lastSeq;
+        private volatile Disposable subscription;
+        // 首个 chat.stream 帧时创建，之后每帧复用预编码的前缀
+        private StreamFrameEncoder encoder;
+
+        private Attachment(Long conversationId, String messageId, Long lastSeq) {
+            this.conversationId = conversationId;
+            this.messageId = messageId;
+            this.lastSeq = lastSeq;
+        }
+
+        // 帧按序在同一订阅中到达，encoder 无需同步
+        private String encode(WsEnvelope frame) {
+            if (encoder == null || !encoder.supports(frame)) {
+                encoder = StreamFrameEncoder.forStream(frame.conversationId(), frame.messageId());
+            }
+            return encoder.supports(frame) ? encoder.encode(frame) : null;
+        }
+
+        private void dispose() {
+            Disposable current = subscription;
+            if (current != null) {
+                current.dispose();
+            }
+        }
+    }
+
+    /**
+     * 单次回复流的计时状态。帧按序在同一订阅中到达，无需同步
+     */
+    private static final class StreamClock {
+        private final long receivedAt;
+        private long firstFrameAt;
+        private long lastFrameAt;
+        private long frames;
+
+        private StreamClock(long receivedAt) {
+            this.receivedAt = receivedAt;
+        }
+    }
+}
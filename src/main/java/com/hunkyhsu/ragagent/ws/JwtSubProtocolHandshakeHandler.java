@@ -0,0 +1,21 @@
+package com.hunkyhsu.ragagent.ws;
+
+import org.springframework.lang.NonNull;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.List;
+
+/**
+ * 服务端必须回写协商后的 Sec-WebSocket-Protocol，否则浏览器会直接断开连接
+ */
+public class JwtSubProtocolHandshakeHandler extends DefaultHandshakeHandler {
+
+    @Override
+    protected String selectProtocol(@NonNull List<String> requestedProtocols, @NonNull WebSocketHandler webSocketHandler) {
+        return requestedProtocols.stream()
+                .filter(protocol -> protocol.startsWith(WsAuthHandshakeInterceptor.JWT_PROTOCOL_PREFIX))
+                .findFirst()
+                .orElse(null);
+    }
+}
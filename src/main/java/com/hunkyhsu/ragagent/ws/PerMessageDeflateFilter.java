@@ -0,0 +1,72 @@
+package com.hunkyhsu.ragagent.ws;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.lang.NonNull;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * 在 Tomcat 读取 Sec-WebSocket-Extensions 之前按 PerMessageDeflatePolicy 改写握手请求，
+ * 由 WebSocketConfig 只注册到 WS 端点
+ */
+@RequiredArgsConstructor
+public class PerMessageDeflateFilter extends OncePerRequestFilter {
+
+    static final String EXTENSIONS_HEADER = "Sec-WebSocket-Extensions";
+
+    private final PerMessageDeflatePolicy policy;
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        List<String> offered = Collections.list(request.getHeaders(EXTENSIONS_HEADER));
+        if (!"websocket".equalsIgnoreCase(request.getHeader("Upgrade")) || offered.isEmpty()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        filterChain.doFilter(new ExtensionsRewrite(request, policy.negotiate(offered)), response);
+    }
+
+    private static final class ExtensionsRewrite extends HttpServletRequestWrapper {
+
+        private final String extensions;
+
+        private ExtensionsRewrite(HttpServletRequest request, String extensions) {
+            super(request);
+            this.extensions = extensions;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return EXTENSIONS_HEADER.equalsIgnoreCase(name) ? extensions : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (!EXTENSIONS_HEADER.equalsIgnoreCase(name)) {
+                return super.getHeaders(name);
+            }
+            return extensions == null ? Collections.emptyEnumeration() : Collections.enumeration(List.of(extensions));
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            if (extensions != null) {
+                return super.getHeaderNames();
+            }
+            List<String> names = Collections.list(super.getHeaderNames());
+            names.removeIf(EXTENSIONS_HEADER::equalsIgnoreCase);
+            return Collections.enumeration(names);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.hunkyhsu.ragagent.ws;
+
+import com.hunkyhsu.ragagent.config.WsCompressionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * permessage-deflate 的协商策略与观测。压缩本身由 Tomcat 内置的 PerMessageDeflate 完成，它只接受 15 位窗口、
+ * 协商成功后对每条消息都压缩，且 Deflater 随连接常驻。因此这里能控制的是：
+ * 1. 握手时改写客户端的提议（context takeover 参数、压缩连接数上限），见 PerMessageDeflateFilter；
+ * 2. 空闲的压缩连接通知重连并关闭，释放常驻的压缩上下文；
+ * 3. 按抽样帧估算压缩率和 CPU 开销，并按 zlib 的内存公式估算压缩连接占用的本机内存。
+ */
+@Slf4j
+@Component
+public class PerMessageDeflatePolicy {
+
+    static final String EXTENSION = "permessage-deflate";
+    // zlib 在 windowBits=15、memLevel=8 时：deflate (1<<17)+(1<<17)，inflate (1<<15)+约 7KB，另加 Tomcat 两个 8KB 缓冲
+    static final long BYTES_PER_CONNECTION = (1L << 17) + (1L << 17) + (1L << 15) + 7 * 1024 + 2 * 8192;
+    private static final String RECONNECT_FRAME = "{\"type\":\"" + WsEnvelope.RECONNECT + "\"}";
+    private static final ThreadLocal<Deflater> SAMPLER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<byte[]> SAMPLE_BUFFER = ThreadLocal.withInitial(() -> new byte[8192]);
+
+    private final WsCompressionProperties properties;
+    private final Map<String, Tracked> compressed = new ConcurrentHashMap<>();
+    private final int sampleMask;
+    private final DistributionSummary ratio;
+    private final Timer cpu;
+    private final Counter idleReleased;
+    private Disposable idleSweep;
+
+    public PerMessageDeflatePolicy(WsCompressionProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.sampleMask = Integer.highestOneBit(Math.max(1, properties.getSampleEvery())) - 1;
+        Gauge.builder("chat.ws.deflate.connections", compressed, Map::size)
+                .description("WebSocket sessions that negotiated permessage-deflate")
+                .register(meterRegistry);
+        Gauge.builder("chat.ws.deflate.memory", compressed, sessions -> (double) sessions.size() * BYTES_PER_CONNECTION)
+                .description("Estimated native memory held by per-connection deflate/inflate contexts")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.ratio = DistributionSummary.builder("chat.ws.deflate.ratio")
+                .description("Sampled compressed/raw size of outbound frames on compressed sessions")
+                .publishPercentiles(0.5, 0.9)
+                .register(meterRegistry);
+        this.cpu = Timer.builder("chat.ws.deflate.cpu")
+                .description("Sampled time spent deflating one outbound frame")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.idleReleased = Counter.builder("chat.ws.deflate.idle_released")
+                .description("Idle compressed sessions closed to release their deflate context")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void startIdleSweep() {
+        Duration idle = properties.getIdleRelease();
+        if (idle.isZero() || idle.isNegative()) {
+            return;
+        }
+        Duration period = idle.dividedBy(4).compareTo(Duration.ofSeconds(10)) < 0 ? Duration.ofSeconds(10) : idle.dividedBy(4);
+        idleSweep = Flux.interval(period, period)
+                .onBackpressureDrop()
+                .subscribe(tick -> releaseIdle(idle.toNanos()));
+    }
+
+    @PreDestroy
+    void stopIdleSweep() {
+        if (idleSweep != null) {
+            idleSweep.dispose();
+        }
+    }
+
+    /**
+     * 改写握手请求中的 Sec-WebSocket-Extensions：按配置补上 no_context_takeover 参数，
+     * 压缩关闭或压缩连接数已满时去掉 permessage-deflate 提议，其他扩展原样保留
+     *
+     * @return 改写后的头，没有任何提议时返回 null
+     */
+    String negotiate(List<String> headerValues) {
+        boolean allowDeflate = properties.isEnabled() && compressed.size() < properties.getMaxConnections();
+        List<String> offers = new ArrayList<>();
+        for (String headerValue : headerValues) {
+            for (String offer : headerValue.split(",")) {
+                String trimmed = offer.trim();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                String name = trimmed.split(";", 2)[0].trim();
+                if (!EXTENSION.equalsIgnoreCase(name)) {
+                    offers.add(trimmed);
+                } else if (allowDeflate) {
+                    offers.add(withParameters(trimmed));
+                }
+            }
+        }
+        return offers.isEmpty() ? null : String.join(", ", offers);
+    }
+
+    private String withParameters(String offer) {
+        StringBuilder rewritten = new StringBuilder(offer);
+        String lower = offer.toLowerCase();
+        if (!properties.isServerContextTakeover() && !lower.contains("server_no_context_takeover")) {
+            rewritten.append("; server_no_context_takeover");
+        }
+        if (!properties.isClientContextTakeover() && !lower.contains("client_no_context_takeover")) {
+            rewritten.append("; client_no_context_takeover");
+        }
+        return rewritten.toString();
+    }
+
+    /**
+     * @param session 连接的线程安全 decorator，空闲释放时经由它发送 reconnect
+     */
+    void opened(WebSocketSession session) {
+        boolean negotiated = session.getExtensions().stream()
+                .anyMatch(extension -> EXTENSION.equalsIgnoreCase(extension.getName()));
+        if (negotiated) {
+            compressed.put(session.getId(), new Tracked(session));
+        }
+    }
+
+    void closed(String sessionId) {
+        compressed.remove(sessionId);
+    }
+
+    void inbound(String sessionId) {
+        Tracked tracked = compressed.get(sessionId);
+        if (tracked != null) {
+            tracked.lastActiveAt = System.nanoTime();
+        }
+    }
+
+    void outbound(String sessionId, String payload) {
+        Tracked tracked = compressed.get(sessionId);
+        if (tracked == null) {
+            return;
+        }
+        tracked.lastActiveAt = System.nanoTime();
+        // 计数不要求精确，并发下偶尔多采或少采一次不影响估算
+        if ((tracked.frames++ & sampleMask) == 0) {
+            sample(payload);
+        }
+    }
+
+    // 与 server_no_context_takeover 下的 Tomcat 行为一致：每条消息从空字典开始压缩
+    private void sample(String payload) {
+        byte[] raw = payload.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = SAMPLER.get();
+        byte[] buffer = SAMPLE_BUFFER.get();
+        long start = System.nanoTime();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        long compressedBytes = 0;
+        while (!deflater.finished()) {
+            compressedBytes += deflater.deflate(buffer);
+        }
+        cpu.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (raw.length > 0) {
+            ratio.record((double) compressedBytes / raw.length);
+        }
+    }
+
+    private void releaseIdle(long idleNanos) {
+        long now = System.nanoTime();
+        for (Tracked tracked : compressed.values()) {
+            if (now - tracked.lastActiveAt < idleNanos) {
+                continue;
+            }
+            WebSocketSession session = tracked.session;
+            try {
+                if (session.isOpen()) {
+                    session.sendMessage(new TextMessage(RECONNECT_FRAME));
+                    session.close(CloseStatus.GOING_AWAY);
+                    idleReleased.increment();
+                }
+            } catch (IOException e) {
+                log.debug("ws_idle_release_failed sessionId={}: {}", session.getId(), e.getMessage());
+            }
+            compressed.remove(session.getId());
+        }
+    }
+
+    private static final class Tracked {
+        private final WebSocketSession session;
+        private volatile long lastActiveAt = System.nanoTime();
+        private int frames;
+
+        private Tracked(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+}
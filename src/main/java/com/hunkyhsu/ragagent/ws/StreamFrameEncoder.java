@@ -0,0 +1,103 @@
+package com.hunkyhsu.ragagent.ws;
+
+import com.hunkyhsu.ragagent.entity.Message;
+
+import java.util.Objects;
+
+/**
+ * chat.stream 帧的专用编码器。同一条回复流的 type / conversationId / messageId / role / delta 都不变，
+ * 创建时一次性编码成前缀；每帧只写 seq、content（按 JSON 规则转义）和 ts。
+ * 输出与 ObjectMapper.writeValueAsBytes 序列化 WsEnvelope 的结果逐字节一致（字段顺序同 record 声明，省略 null），
+ * 客户端无需区分两条编码路径。
+ */
+public final class StreamFrameEncoder {
+
+    // 每个线程复用一个 StringBuilder，过大的缓冲在下次使用前丢弃，避免长回答把内存钉住
+    private static final int MAX_RETAINED_CAPACITY = 16 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final Long conversationId;
+    private final String messageId;
+    private final String prefix;
+
+    private StreamFrameEncoder(Long conversationId, String messageId, String prefix) {
+        this.conversationId = conversationId;
+        this.messageId = messageId;
+        this.prefix = prefix;
+    }
+
+    public static StreamFrameEncoder forStream(Long conversationId, String messageId) {
+        StringBuilder prefix = new StringBuilder(128).append("{\"type\":\"").append(WsEnvelope.CHAT_STREAM).append('"');
+        if (conversationId != null) {
+            prefix.append(",\"conversationId\":").append(conversationId.longValue());
+        }
+        if (messageId != null) {
+            prefix.append(",\"messageId\":\"");
+            escape(messageId, prefix);
+            prefix.append('"');
+        }
+        return new StreamFrameEncoder(conversationId, messageId, prefix.append(",\"seq\":").toString());
+    }
+
+    /**
+     * 是否可以用本编码器输出：只处理 chat.stream 帧，且会话和 messageId 与创建时一致
+     */
+    public boolean supports(WsEnvelope frame) {
+        return WsEnvelope.CHAT_STREAM.equals(frame.type()) && frame.seq() != null
+                && frame.role() == Message.Role.ASSISTANT && Boolean.TRUE.equals(frame.delta())
+                && frame.error() == null
+                && Objects.equals(conversationId, frame.conversationId()) && Objects.equals(messageId, frame.messageId());
+    }
+
+    public String encode(WsEnvelope frame) {
+        return encode(frame.seq(), frame.content(), frame.ts());
+    }
+
+    public String encode(long seq, String content, Long ts) {
+        StringBuilder out = BUFFER.get();
+        if (out.capacity() > MAX_RETAINED_CAPACITY) {
+            out = new StringBuilder(256);
+            BUFFER.set(out);
+        }
+        out.setLength(0);
+        out.append(prefix).append(seq).append(",\"role\":\"ASSISTANT\"");
+        if (content != null) {
+            out.append(",\"content\":\"");
+            escape(content, out);
+            out.append('"');
+        }
+        out.append(",\"delta\":true");
+        if (ts != null) {
+            out.append(",\"ts\":").append(ts.longValue());
+        }
+        return out.append('}').toString();
+    }
+
+    // 与 Jackson 按 UTF-8 输出时的默认转义一致：转义引号、反斜杠和控制字符，
+    // 代理对的两半各自按 Unicode 转义输出，其余非 ASCII 原样输出
+    static void escape(String value, StringBuilder out) {
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && !Character.isSurrogate(c)) {
+                continue;
+            }
+            out.append(value, start, i).append('\\');
+            switch (c) {
+                case '"' -> out.append('"');
+                case '\\' -> out.append('\\');
+                case '\n' -> out.append('n');
+                case '\r' -> out.append('r');
+                case '\t' -> out.append('t');
+                case '\b' -> out.append('b');
+                case '\f' -> out.append('f');
+                default -> out.append('u').append(HEX[c >> 12]).append(HEX[(c >> 8) & 0xF])
+                        .append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+            }
+            start = i + 1;
+        }
+        out.append(value, start, length);
+    }
+}
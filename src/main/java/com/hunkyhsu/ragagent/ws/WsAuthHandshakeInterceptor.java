@@ -0,0 +1,86 @@
+package com.hunkyhsu.ragagent.ws;
+
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.metrics.ChatMetrics;
+import com.hunkyhsu.ragagent.retrieval.OrgTagRegistry;
+import com.hunkyhsu.ragagent.service.JwtService;
+import com.hunkyhsu.ragagent.service.UserDetailsService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * WS 握手鉴权：浏览器通过 Sec-WebSocket-Protocol 传递 jwt.<accessToken>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WsAuthHandshakeInterceptor implements HandshakeInterceptor {
+
+    static final String USER_ATTRIBUTE = "user";
+    static final String JWT_PROTOCOL_PREFIX = "jwt.";
+
+    private final JwtService jwtService;
+    private final UserDetailsService userDetailsService;
+    private final OrgTagRegistry orgTagRegistry;
+    private final ChatMetrics chatMetrics;
+
+    @Override
+    public boolean beforeHandshake(@NonNull ServerHttpRequest request,
+                                   @NonNull ServerHttpResponse response,
+                                   @NonNull WebSocketHandler wsHandler,
+                                   @NonNull Map<String, Object> attributes) {
+        String token = request.getHeaders().getOrEmpty("Sec-WebSocket-Protocol").stream()
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(String::trim)
+                .filter(protocol -> protocol.startsWith(JWT_PROTOCOL_PREFIX))
+                .map(protocol -> protocol.substring(JWT_PROTOCOL_PREFIX.length()))
+                .findFirst()
+                .orElse(null);
+        if (token == null) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            String username = jwtService.extractUsername(token);
+            long parsed = System.nanoTime();
+            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            long loaded = System.nanoTime();
+            chatMetrics.userLookup(loaded - parsed);
+            boolean valid = jwtService.isValidToken(token, userDetails);
+            chatMetrics.jwtVerified((parsed - start) + (System.nanoTime() - loaded), valid);
+            if (!valid) {
+                response.setStatusCode(HttpStatus.UNAUTHORIZED);
+                return false;
+            }
+            if (userDetails instanceof User user) {
+                user.setOrgTagIds(orgTagRegistry.intern(user.orgTagSet()));
+            }
+            attributes.put(USER_ATTRIBUTE, userDetails);
+            return true;
+        } catch (Exception ex) {
+            chatMetrics.jwtVerified(System.nanoTime() - start, false);
+            log.debug("ws_handshake_rejected: {}", ex.getMessage());
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+    }
+
+    @Override
+    public void afterHandshake(@NonNull ServerHttpRequest request,
+                               @NonNull ServerHttpResponse response,
+                               @NonNull WebSocketHandler wsHandler,
+                               Exception exception) {
+    }
+}
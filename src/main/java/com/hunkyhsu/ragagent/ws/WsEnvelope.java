@@ -0,0 +1,65 @@
+package com.hunkyhsu.ragagent.ws;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.hunkyhsu.ragagent.entity.Message;
+
+/**
+ * WebSocket 统一消息封包，字段与 spec 中的 envelope 保持一致
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record WsEnvelope(
+        // chat.send | chat.resume | chat.queued | chat.stream | chat.done | reconnect | error | heartbeat
+        String type,
+        Long conversationId,
+        String messageId,
+        Long seq,
+        Message.Role role,
+        String content,
+        Boolean delta,
+        Long ts,
+        WsError error
+) {
+    public static final String CHAT_SEND = "chat.send";
+    // 断线或节点排空后续接回复流：messageId + 已收到的最大 seq
+    public static final String CHAT_RESUME = "chat.resume";
+    // 上游并发已满、请求正在排队，content 为入队时的排队人数
+    public static final String CHAT_QUEUED = "chat.queued";
+    public static final String CHAT_STREAM = "chat.stream";
+    public static final String CHAT_DONE = "chat.done";
+    // 节点即将下线，客户端应重连到其他节点，并用 messageId/seq 发送 chat.resume
+    public static final String RECONNECT = "reconnect";
+    public static final String ERROR = "error";
+    public static final String HEARTBEAT = "heartbeat";
+
+    public record WsError(String code, String msg) { }
+
+    public static WsEnvelope queued(Long conversationId, String messageId, int position) {
+        return new WsEnvelope(CHAT_QUEUED, conversationId, messageId, null, null,
+                Integer.toString(position), null, System.currentTimeMillis(), null);
+    }
+
+    public static WsEnvelope stream(Long conversationId, String messageId, long seq, String delta) {
+        return new WsEnvelope(CHAT_STREAM, conversationId, messageId, seq, Message.Role.ASSISTANT,
+                delta, true, System.currentTimeMillis(), null);
+    }
+
+    public static WsEnvelope done(Long conversationId, String messageId, long seq) {
+        return new WsEnvelope(CHAT_DONE, conversationId, messageId, seq, Message.Role.ASSISTANT,
+                null, null, System.currentTimeMillis(), null);
+    }
+
+    public static WsEnvelope error(Long conversationId, String messageId, String code, String msg) {
+        return new WsEnvelope(ERROR, conversationId, messageId, null, null,
+                null, null, System.currentTimeMillis(), new WsError(code, msg));
+    }
+
+    public static WsEnvelope reconnect(Long conversationId, String messageId, Long seq) {
+        return new WsEnvelope(RECONNECT, conversationId, messageId, seq, null,
+                null, null, System.currentTimeMillis(), null);
+    }
+
+    public static WsEnvelope heartbeat() {
+        return new WsEnvelope(HEARTBEAT, null, null, null, null,
+                null, null, System.currentTimeMillis(), null);
+    }
+}
@@ -0,0 +1,22 @@
+-- 异步导出任务。cursor_* 与 bytes_written 是最近一次检查点：文件截断到 bytes_written 后从游标之后继续写
+CREATE TABLE export_jobs (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  user_id BIGINT NOT NULL,
+  format VARCHAR(16) NOT NULL,
+  status VARCHAR(16) NOT NULL,
+  owner VARCHAR(36) NULL,
+  heartbeat_time TIMESTAMP NULL,
+  cursor_conversation_id BIGINT NOT NULL DEFAULT 0,
+  cursor_message_id BIGINT NOT NULL DEFAULT 0,
+  bytes_written BIGINT NOT NULL DEFAULT 0,
+  exported_conversations BIGINT NOT NULL DEFAULT 0,
+  exported_messages BIGINT NOT NULL DEFAULT 0,
+  error_message VARCHAR(512) NULL,
+  created_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  completed_time TIMESTAMP NULL,
+  expires_time TIMESTAMP NULL,
+  INDEX idx_export_jobs_user (user_id, created_time),
+  INDEX idx_export_jobs_status (status, heartbeat_time),
+  CONSTRAINT fk_export_jobs_user
+    FOREIGN KEY (user_id) REFERENCES users(id)
+);
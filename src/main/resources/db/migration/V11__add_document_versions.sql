@@ -0,0 +1,10 @@
+-- 文档版本：documents.version 为当前可见版本，first_version 大于它的片段属于正在构建、尚未切换的新版本。
+-- 切换时在同一事务中递增 version 并删除被替换的旧片段
+ALTER TABLE documents
+  ADD COLUMN version INT NOT NULL DEFAULT 1;
+
+-- 新旧版本的片段会同时存在，(document_id, ordinal) 不再唯一
+ALTER TABLE document_chunks
+  ADD COLUMN first_version INT NOT NULL DEFAULT 1,
+  DROP INDEX uk_document_chunks_doc_ordinal,
+  ADD INDEX idx_document_chunks_doc_version (document_id, first_version, ordinal);
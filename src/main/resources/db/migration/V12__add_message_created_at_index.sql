@@ -0,0 +1,3 @@
+-- 会话搜索的启动补齐按 created_at 范围读取最近的消息，没有索引时每次启动都要全表扫描
+ALTER TABLE messages
+  ADD INDEX idx_messages_created_at (created_at);
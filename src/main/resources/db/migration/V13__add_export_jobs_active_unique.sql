@@ -0,0 +1,15 @@
+-- 同一用户同时只能有一个未完成的导出：先查后插在并发请求下会同时通过，改由唯一键保证。
+-- active_user_id 只在 PENDING/RUNNING 时等于 user_id，其余状态为 NULL，不参与唯一性约束
+
+-- 此前并发登记可能留下多个未完成任务，只保留最早的一个
+UPDATE export_jobs j
+  JOIN (SELECT user_id, MIN(id) AS keep_id FROM export_jobs
+        WHERE status IN ('PENDING', 'RUNNING') GROUP BY user_id) k ON k.user_id = j.user_id
+SET j.status = 'FAILED', j.owner = NULL, j.error_message = 'superseded_duplicate',
+    j.completed_time = CURRENT_TIMESTAMP, j.expires_time = CURRENT_TIMESTAMP
+WHERE j.status IN ('PENDING', 'RUNNING') AND j.id <> k.keep_id;
+
+ALTER TABLE export_jobs
+  ADD COLUMN active_user_id BIGINT
+    AS (CASE WHEN status IN ('PENDING', 'RUNNING') THEN user_id END) STORED,
+  ADD UNIQUE KEY uk_export_jobs_active_user (active_user_id);
@@ -0,0 +1,9 @@
+CREATE TABLE conversation_summaries (
+  conversation_id BIGINT PRIMARY KEY,
+  summary MEDIUMTEXT NOT NULL,
+  covered_until_message_id BIGINT NOT NULL,
+  token_count INT NOT NULL,
+  updated_time TIMESTAMP NULL,
+  CONSTRAINT fk_conversation_summaries_conversation
+    FOREIGN KEY (conversation_id) REFERENCES conversations(id) ON DELETE CASCADE
+);
@@ -0,0 +1,2 @@
+ALTER TABLE messages
+  ADD COLUMN token_count INT NULL;
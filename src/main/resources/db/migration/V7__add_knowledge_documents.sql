@@ -0,0 +1,42 @@
+CREATE TABLE documents (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  uploaded_by BIGINT NOT NULL,
+  org_tag VARCHAR(64) NOT NULL,
+  title VARCHAR(255) NOT NULL,
+  media_type VARCHAR(16) NOT NULL,
+  content_hash CHAR(64) NOT NULL,
+  status VARCHAR(16) NOT NULL,
+  total_chunks INT NOT NULL DEFAULT 0,
+  embedded_chunks INT NOT NULL DEFAULT 0,
+  error_message VARCHAR(512) NULL,
+  created_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  updated_time TIMESTAMP NULL,
+  INDEX idx_documents_org_tag (org_tag),
+  INDEX idx_documents_content_hash (content_hash),
+  CONSTRAINT fk_documents_user
+    FOREIGN KEY (uploaded_by) REFERENCES users(id)
+);
+
+CREATE TABLE document_chunks (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  document_id BIGINT NOT NULL,
+  ordinal INT NOT NULL,
+  heading VARCHAR(512) NULL,
+  content MEDIUMTEXT NOT NULL,
+  content_hash CHAR(64) NOT NULL,
+  token_count INT NOT NULL,
+  UNIQUE KEY uk_document_chunks_doc_ordinal (document_id, ordinal),
+  INDEX idx_document_chunks_content_hash (content_hash),
+  CONSTRAINT fk_document_chunks_document
+    FOREIGN KEY (document_id) REFERENCES documents(id) ON DELETE CASCADE
+);
+
+-- 按内容哈希去重的向量，同一段文本在所有文档、所有组织之间只嵌入一次
+CREATE TABLE chunk_embeddings (
+  content_hash CHAR(64) NOT NULL,
+  model VARCHAR(64) NOT NULL,
+  dimensions INT NOT NULL,
+  vector MEDIUMBLOB NOT NULL,
+  created_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (content_hash, model)
+);
@@ -0,0 +1,4 @@
+-- 消息由事件消费者异步写入，message_id 为事件 id，重复投递时依靠唯一键去重
+ALTER TABLE messages
+  ADD COLUMN message_id VARCHAR(36) NULL,
+  ADD UNIQUE KEY uk_messages_conv_message (conv_id, message_id);
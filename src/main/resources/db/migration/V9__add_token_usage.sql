@@ -0,0 +1,16 @@
+-- 每轮问答的用量流水，仅用于核算；实时配额由 Kafka Streams 聚合，不查询此表。
+-- 不引用 conversations：会话删除后用量记录仍需保留
+CREATE TABLE token_usage (
+  id BIGINT PRIMARY KEY AUTO_INCREMENT,
+  message_id VARCHAR(36) NOT NULL,
+  conv_id BIGINT NOT NULL,
+  user_id BIGINT NOT NULL,
+  model VARCHAR(64) NOT NULL,
+  prompt_tokens INT NOT NULL,
+  completion_tokens INT NOT NULL,
+  total_tokens INT NOT NULL,
+  first_token_ms INT NULL,
+  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  UNIQUE KEY uk_token_usage_message (message_id),
+  INDEX idx_token_usage_user_created (user_id, created_at)
+);
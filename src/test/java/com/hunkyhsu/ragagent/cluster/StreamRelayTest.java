@@ -0,0 +1,129 @@
+package com.hunkyhsu.ragagent.cluster;
+
+import com.hunkyhsu.ragagent.config.ClusterProperties;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.ws.WsEnvelope;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 单节点模式（无 StreamBus）下验证回复流的启动、续接、用户隔离和排空
+ */
+class StreamRelayTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final StreamRelay relay = new StreamRelay(new ClusterProperties(), Optional.empty(), new SimpleMeterRegistry());
+    private final User alice = User.builder().id(1L).build();
+    private final User bob = User.builder().id(2L).build();
+
+    @Test
+    void resumeReplaysOnlyFramesAfterTheGivenSeq() {
+        Sinks.Many<WsEnvelope> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        relay.start(alice, send("m-1"), upstream.asFlux());
+        upstream.tryEmitNext(frame("m-1", 1, "a"));
+        upstream.tryEmitNext(frame("m-1", 2, "b"));
+
+        Flux<WsEnvelope> resumed = relay.resume(alice, "m-1", 1);
+        upstream.tryEmitNext(frame("m-1", 3, "c"));
+        upstream.tryEmitNext(WsEnvelope.done(10L, "m-1", 4));
+        upstream.tryEmitComplete();
+
+        assertThat(resumed.collectList().block(TIMEOUT)).extracting(WsEnvelope::seq).containsExactly(2L, 3L, 4L);
+    }
+
+    @Test
+    void anotherUserCannotResumeOrOverwriteAStreamWithTheSameMessageId() {
+        Sinks.Many<WsEnvelope> aliceUpstream = Sinks.many().unicast().onBackpressureBuffer();
+        relay.start(alice, send("shared"), aliceUpstream.asFlux());
+        aliceUpstream.tryEmitNext(frame("shared", 1, "alice"));
+
+        assertThat(relay.resume(bob, "shared", 0)).isNull();
+        // bob 用同一 messageId 开始自己的生成，不影响 alice 的流
+        relay.start(bob, send("shared"), Flux.just(frame("shared", 1, "bob"), WsEnvelope.done(10L, "shared", 2)));
+        aliceUpstream.tryEmitNext(WsEnvelope.done(10L, "shared", 2));
+        aliceUpstream.tryEmitComplete();
+
+        assertThat(relay.resume(alice, "shared", 0).collectList().block(TIMEOUT))
+                .extracting(WsEnvelope::content).containsExactly("alice", null);
+        assertThat(relay.resume(bob, "shared", 0).collectList().block(TIMEOUT))
+                .extracting(WsEnvelope::content).containsExactly("bob", null);
+    }
+
+    @Test
+    void duplicateStartAttachesToTheRunningGeneration() {
+        Sinks.Many<WsEnvelope> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicInteger secondSubscriptions = new AtomicInteger();
+        relay.start(alice, send("m-2"), upstream.asFlux());
+        Flux<WsEnvelope> duplicate = relay.start(alice, send("m-2"),
+                Flux.<WsEnvelope>empty().doOnSubscribe(subscription -> secondSubscriptions.incrementAndGet()));
+
+        upstream.tryEmitNext(frame("m-2", 1, "only"));
+        upstream.tryEmitComplete();
+
+        assertThat(duplicate.collectList().block(TIMEOUT)).extracting(WsEnvelope::content).containsExactly("only");
+        assertThat(secondSubscriptions).hasValue(0);
+    }
+
+    @Test
+    void messageIdIsClaimedBeforeTheGenerationStarts() {
+        StreamRelay.Claim claim = relay.claim(alice, send("m-4"));
+
+        // 原请求还在落库、调用编排逻辑时，重发的同一 messageId 登记失败，只能续接
+        assertThat(relay.claim(alice, send("m-4"))).isNull();
+        Flux<WsEnvelope> duplicate = relay.resume(alice, "m-4", 0);
+        claim.start(Flux.just(frame("m-4", 1, "once"), WsEnvelope.done(10L, "m-4", 2)));
+
+        assertThat(duplicate.collectList().block(TIMEOUT)).extracting(WsEnvelope::seq).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void abandonedClaimFailsAttachedDuplicatesAndAllowsARetry() {
+        StreamRelay.Claim claim = relay.claim(alice, send("m-5"));
+        Flux<WsEnvelope> duplicate = relay.resume(alice, "m-5", 0);
+
+        claim.abandon(WsEnvelope.error(10L, "m-5", "VALIDATION", "content_required"));
+
+        assertThat(duplicate.collectList().block(TIMEOUT)).extracting(WsEnvelope::type).containsExactly(WsEnvelope.ERROR);
+        assertThat(relay.inFlight()).isZero();
+        assertThat(relay.claim(alice, send("m-5"))).isNotNull();
+    }
+
+    @Test
+    void generationOutlivesTheConnectionAndDrains() throws InterruptedException {
+        Sinks.Many<WsEnvelope> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        Disposable connection = relay.start(alice, send("m-3"), upstream.asFlux()).subscribe();
+        upstream.tryEmitNext(frame("m-3", 1, "a"));
+        // 连接断开不会取消生成
+        connection.dispose();
+        upstream.tryEmitNext(frame("m-3", 2, "b"));
+        assertThat(relay.inFlight()).isEqualTo(1);
+        assertThat(relay.awaitIdle(Duration.ofMillis(200))).isFalse();
+
+        upstream.tryEmitNext(WsEnvelope.done(10L, "m-3", 3));
+        upstream.tryEmitComplete();
+
+        assertThat(relay.awaitIdle(TIMEOUT)).isTrue();
+        assertThat(relay.inFlight()).isZero();
+        List<WsEnvelope> replayed = relay.resume(alice, "m-3", 0).collectList().block(TIMEOUT);
+        assertThat(replayed).extracting(WsEnvelope::seq).containsExactly(1L, 2L, 3L);
+    }
+
+    private static WsEnvelope send(String messageId) {
+        return new WsEnvelope(WsEnvelope.CHAT_SEND, 10L, messageId, null, null, "hello", null, null, null);
+    }
+
+    private static WsEnvelope frame(String messageId, long seq, String delta) {
+        return WsEnvelope.stream(10L, messageId, seq, delta);
+    }
+}
@@ -0,0 +1,65 @@
+package com.hunkyhsu.ragagent.config;
+
+import com.hunkyhsu.ragagent.tokenizer.BpeTokenizer;
+import com.hunkyhsu.ragagent.tokenizer.HeuristicTokenCounter;
+import com.hunkyhsu.ragagent.tokenizer.TokenCounter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 未配置词表时退化为近似估算，配置了词表时加载 BPE 分词器，配置的词表不存在时启动失败
+ */
+class TokenizerConfigTest {
+
+    private final AiProperties aiProperties = new AiProperties();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void blankVocabularyPathFallsBackToTheHeuristicCounter() throws IOException {
+        aiProperties.getTokenizer().setVocabPath(" ");
+
+        TokenCounter counter = tokenCounter();
+
+        assertThat(counter).isInstanceOf(HeuristicTokenCounter.class);
+        // CJK 字符各算 1 个，其余 4 个字符算 1 个
+        assertThat(counter.count("中文abcd")).isEqualTo(3);
+    }
+
+    @Test
+    void configuredVocabularyLoadsTheBpeTokenizer() throws IOException {
+        StringBuilder vocabulary = new StringBuilder();
+        for (int b = 0; b < 256; b++) {
+            vocabulary.append(Base64.getEncoder().encodeToString(new byte[] {(byte) b})).append(' ').append(b).append('\n');
+        }
+        Path file = Files.writeString(directory.resolve("fixture.tiktoken"), vocabulary);
+        aiProperties.getTokenizer().setVocabPath(file.toUri().toString());
+
+        TokenCounter counter = tokenCounter();
+
+        assertThat(counter).isInstanceOf(BpeTokenizer.class);
+        assertThat(counter.count("abc")).isEqualTo(3);
+    }
+
+    @Test
+    void missingVocabularyFileFailsStartup() {
+        aiProperties.getTokenizer().setVocabPath(directory.resolve("missing.tiktoken").toUri().toString());
+
+        assertThatThrownBy(this::tokenCounter).isInstanceOf(FileNotFoundException.class);
+    }
+
+    private TokenCounter tokenCounter() throws IOException {
+        return new TokenizerConfig().tokenCounter(aiProperties, new DefaultResourceLoader());
+    }
+}
@@ -0,0 +1,212 @@
+package com.hunkyhsu.ragagent.event;
+
+import com.hunkyhsu.ragagent.config.ChatEventProperties;
+import com.hunkyhsu.ragagent.config.ClusterProperties;
+import com.hunkyhsu.ragagent.config.KafkaConfig;
+import com.hunkyhsu.ragagent.config.StartupProperties;
+import com.hunkyhsu.ragagent.entity.Message;
+import com.hunkyhsu.ragagent.service.PromptContextAssembler;
+import com.hunkyhsu.ragagent.tool.ToolResultCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 只装配事件相关的 bean，针对内嵌 broker 验证发布、分区有序、批量持久化和缓存失效
+ */
+@SpringJUnitConfig(ChatEventPipelineTest.TestConfig.class)
+@EmbeddedKafka(partitions = 3, topics = ChatEventPipelineTest.TOPIC)
+@TestPropertySource(properties = {
+        "chat.events.topic=" + ChatEventPipelineTest.TOPIC,
+        "chat.events.partitions=3",
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"
+})
+class ChatEventPipelineTest {
+
+    static final String TOPIC = "chat-events-test";
+
+    @Autowired
+    private ChatEventPublisher publisher;
+
+    @Autowired
+    private RecordingStore store;
+
+    @Autowired
+    private PromptContextAssembler promptContextAssembler;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @BeforeEach
+    void waitForAssignment() {
+        // 缓存监听器从最新位点开始消费，必须等分区分配完成后再发布
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            ContainerTestUtils.waitForAssignment(container, 3);
+        }
+    }
+
+    @AfterEach
+    void resetStore() {
+        store.reset();
+        reset(promptContextAssembler);
+    }
+
+    @Test
+    void messagesArePersistedInPublishOrderPerConversation() {
+        Map<Long, List<String>> expected = Map.of(1L, new ArrayList<>(), 2L, new ArrayList<>(), 3L, new ArrayList<>());
+        for (int i = 0; i < 60; i++) {
+            long conversationId = i % 3 + 1;
+            String content = "message-" + i;
+            publisher.publish(ChatEvent.message(conversationId, 7L, Message.Role.USER, content, 1));
+            expected.get(conversationId).add(content);
+        }
+
+        await().atMost(Duration.ofSeconds(20)).until(() -> store.persisted.size() >= 60);
+        Map<Long, List<String>> actual = store.persisted.stream().collect(Collectors.groupingBy(
+                ChatEvent::conversationId, Collectors.mapping(ChatEvent::content, Collectors.toList())));
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    void slowDatabaseDoesNotBlockPublishing() {
+        store.gate = new CountDownLatch(1);
+        long started = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            publisher.publish(ChatEvent.message(4L, 7L, Message.Role.ASSISTANT, "answer-" + i, 1));
+        }
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(5));
+        assertThat(store.persisted).isEmpty();
+
+        store.gate.countDown();
+        await().atMost(Duration.ofSeconds(20)).until(() -> store.persisted.size() >= 20);
+    }
+
+    @Test
+    void failedBatchIsRetriedWithoutLosingEvents() {
+        store.failures.set(2);
+        for (int i = 0; i < 10; i++) {
+            publisher.publish(ChatEvent.message(5L, 7L, Message.Role.USER, "retry-" + i, 1));
+        }
+
+        await().atMost(Duration.ofSeconds(30)).until(() -> store.persisted.stream()
+                .map(ChatEvent::content).distinct().count() == 10);
+    }
+
+    @Test
+    void conversationDeletionEvictsContextCache() {
+        publisher.publish(ChatEvent.deleted(42L, 7L));
+
+        verify(promptContextAssembler, timeout(20_000)).invalidate(42L);
+    }
+
+    /**
+     * 记录写入的事件，可以模拟数据库阻塞和失败
+     */
+    static class RecordingStore extends ChatEventStore {
+        final List<ChatEvent> persisted = new CopyOnWriteArrayList<>();
+        final AtomicInteger failures = new AtomicInteger();
+        volatile CountDownLatch gate;
+
+        RecordingStore() {
+            super(null);
+        }
+
+        @Override
+        public void insertMessages(List<ChatEvent> messages) {
+            CountDownLatch current = gate;
+            if (current != null) {
+                try {
+                    current.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (!messages.isEmpty() && failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                throw new IllegalStateException("database unavailable");
+            }
+            persisted.addAll(messages);
+        }
+
+        void reset() {
+            persisted.clear();
+            failures.set(0);
+            gate = null;
+        }
+    }
+
+    @Configuration
+    @EnableKafka
+    @EnableConfigurationProperties(KafkaProperties.class)
+    @Import({KafkaConfig.class, ChatEventPublisher.class,
+            ChatEventPersister.class, ChatEventCacheListener.class})
+    static class TestConfig {
+
+        // 监听器注解里的 SpEL 按组件扫描时的 bean 名引用属性
+        @Bean
+        ChatEventProperties chatEventProperties() {
+            return new ChatEventProperties();
+        }
+
+        @Bean
+        ClusterProperties clusterProperties() {
+            return new ClusterProperties();
+        }
+
+        @Bean
+        StartupProperties startupProperties() {
+            return new StartupProperties();
+        }
+
+        @Bean
+        RecordingStore chatEventStore() {
+            return new RecordingStore();
+        }
+
+        @Bean
+        PromptContextAssembler promptContextAssembler() {
+            return mock(PromptContextAssembler.class);
+        }
+
+        @Bean
+        ToolResultCache toolResultCache() {
+            return mock(ToolResultCache.class);
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.hunkyhsu.ragagent.export;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * JdbcTemplate 换成按同样条件过滤内存表的替身：验证任意页大小下逐页按游标读取的结果拼起来
+ * 与完整的 (会话, 消息) 顺序一致，页边界落在会话中间或空会话上时既不重复也不遗漏，且只读到本人的会话
+ */
+class ChatArchiveStoreTest {
+
+    private static final long ALICE = 1L;
+    private static final long BOB = 2L;
+    private static final LocalDateTime CREATED = LocalDateTime.of(2026, 1, 1, 9, 0);
+
+    private final List<Conversation> conversations = List.of(
+            new Conversation(10, ALICE, "kafka"),
+            new Conversation(11, ALICE, "empty"),
+            new Conversation(12, ALICE, "redis"),
+            new Conversation(13, BOB, "bob only"),
+            new Conversation(15, ALICE, "flyway"));
+    private final List<Message> messages = List.of(
+            new Message(100, 10), new Message(101, 10), new Message(102, 10),
+            new Message(103, 12), new Message(104, 12),
+            new Message(106, 13),
+            new Message(105, 15));
+    private final ChatArchiveStore store = new ChatArchiveStore(new InMemoryJdbcTemplate());
+
+    @Test
+    void pagesFollowTheCursorWithoutGapsOrDuplicates() {
+        List<String> expected = List.of("10:100", "10:101", "10:102", "11:-", "12:103", "12:104", "15:105");
+
+        for (int limit : new int[] {1, 2, 3, 4, 7, 100}) {
+            assertThat(readAll(ALICE, limit)).as("limit " + limit).containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    void otherUsersConversationsAreNeverRead() {
+        assertThat(readAll(BOB, 2)).containsExactly("13:106");
+
+        // 游标指向别人的会话时不会读取其中的消息
+        List<String> rows = new ArrayList<>();
+        store.readPage(ALICE, 13, 0, 10, row -> rows.add(key(row)));
+        assertThat(rows).containsExactly("15:105");
+    }
+
+    @Test
+    void emptyConversationRowCarriesItsMetadata() {
+        List<ChatArchiveStore.ArchiveRow> rows = new ArrayList<>();
+        store.readPage(ALICE, 10, 102, 1, rows::add);
+
+        assertThat(rows).singleElement().satisfies(row -> {
+            assertThat(row.conversationId()).isEqualTo(11);
+            assertThat(row.conversationTitle()).isEqualTo("empty");
+            assertThat(row.conversationCreatedTime()).isEqualTo(CREATED);
+            assertThat(row.messageId()).isNull();
+        });
+    }
+
+    // 按 ExportService 的方式推进游标，直到某页不满
+    private List<String> readAll(long userId, int limit) {
+        List<String> all = new ArrayList<>();
+        long[] cursor = {0, 0};
+        int rows;
+        do {
+            List<String> page = new ArrayList<>();
+            rows = store.readPage(userId, cursor[0], cursor[1], limit, row -> {
+                page.add(key(row));
+                if (row.conversationId() != cursor[0]) {
+                    cursor[0] = row.conversationId();
+                    cursor[1] = 0;
+                }
+                if (row.messageId() != null) {
+                    cursor[1] = row.messageId();
+                }
+            });
+            assertThat(page).hasSize(rows).hasSizeLessThanOrEqualTo(limit);
+            all.addAll(page);
+        } while (rows == limit);
+        return all;
+    }
+
+    private static String key(ChatArchiveStore.ArchiveRow row) {
+        return row.conversationId() + ":" + (row.messageId() == null ? "-" : row.messageId());
+    }
+
+    private record Conversation(long id, long userId, String title) { }
+
+    private record Message(long id, long conversationId) { }
+
+    private final class InMemoryJdbcTemplate extends JdbcTemplate {
+
+        @Override
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            Stream<Conversation> matched = sql.contains("WHERE id = ?")
+                    ? conversations.stream().filter(c -> c.id() == (Long) args[0] && c.userId() == (Long) args[1])
+                    : conversations.stream().filter(c -> c.userId() == (Long) args[0] && c.id() > (Long) args[1])
+                            .limit((Integer) args[2]);
+            List<T> result = new ArrayList<>();
+            for (Conversation conversation : matched.toList()) {
+                try {
+                    ResultSet rs = mock(ResultSet.class);
+                    when(rs.getLong(1)).thenReturn(conversation.id());
+                    when(rs.getString(2)).thenReturn(conversation.title());
+                    when(rs.getTimestamp(3)).thenReturn(Timestamp.valueOf(CREATED));
+                    result.add(rowMapper.mapRow(rs, result.size()));
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void query(PreparedStatementCreator creator, RowCallbackHandler handler) {
+            try {
+                Map<Integer, Long> parameters = new HashMap<>();
+                PreparedStatement ps = mock(PreparedStatement.class);
+                doAnswer(invocation -> parameters.put(invocation.getArgument(0), invocation.getArgument(1)))
+                        .when(ps).setLong(anyInt(), anyLong());
+                doAnswer(invocation -> parameters.put(invocation.getArgument(0), (long) (int) invocation.getArgument(1)))
+                        .when(ps).setInt(anyInt(), anyInt());
+                Connection connection = mock(Connection.class);
+                when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(ps);
+                creator.createPreparedStatement(connection);
+
+                List<Message> matched = messages.stream()
+                        .filter(m -> m.conversationId() == parameters.get(1) && m.id() > parameters.get(2))
+                        .limit(parameters.get(3))
+                        .toList();
+                for (Message message : matched) {
+                    ResultSet rs = mock(ResultSet.class);
+                    when(rs.getLong(1)).thenReturn(message.id());
+                    when(rs.getString(2)).thenReturn("event-" + message.id());
+                    when(rs.getString(3)).thenReturn("USER");
+                    when(rs.getString(4)).thenReturn("content " + message.id());
+                    when(rs.getInt(5)).thenReturn(3);
+                    when(rs.getTimestamp(6)).thenReturn(Timestamp.valueOf(CREATED));
+                    handler.processRow(rs);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
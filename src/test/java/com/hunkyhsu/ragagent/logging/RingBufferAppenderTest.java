@@ -0,0 +1,169 @@
+package com.hunkyhsu.ragagent.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 下游 appender 可被阻塞，用来把环形缓冲填到指定水位：验证按级别分档丢弃、写满后丢弃并计数、
+ * MDC 在调用线程上固化，以及停止时把已入队的事件写完
+ */
+class RingBufferAppenderTest {
+
+    private final LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+    private final Logger logger = context.getLogger(RingBufferAppenderTest.class);
+    private final RingBufferAppender appender = new RingBufferAppender();
+
+    @AfterEach
+    void tearDown() {
+        appender.stop();
+        MDC.clear();
+    }
+
+    @Test
+    void eventsReachTheDownstreamAppenderInOrder() {
+        ListAppender<ILoggingEvent> downstream = new ListAppender<>();
+        start(downstream, 128);
+
+        for (int i = 0; i < 100; i++) {
+            appender.doAppend(event(Level.WARN, "event-" + i));
+        }
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> downstream.list.size() == 100);
+        assertThat(downstream.list).extracting(ILoggingEvent::getMessage)
+                .containsExactlyElementsOf(IntStream.range(0, 100).mapToObj(i -> "event-" + i).toList());
+        assertThat(appender.size()).isZero();
+    }
+
+    @Test
+    void bufferSizeIsRoundedUpToAPowerOfTwo() {
+        start(new ListAppender<>(), 5);
+
+        assertThat(appender.capacity()).isEqualTo(8);
+    }
+
+    @Test
+    void lowerLevelsAreDroppedFirstAsTheBufferFills() throws InterruptedException {
+        BlockingAppender downstream = new BlockingAppender();
+        appender.setDebugThreshold(0.5);
+        appender.setInfoThreshold(0.75);
+        start(downstream, 4);
+        long debugDropped = RingBufferAppender.dropped(Level.DEBUG);
+        long infoDropped = RingBufferAppender.dropped(Level.INFO);
+        long warnDropped = RingBufferAppender.dropped(Level.WARN);
+
+        // 后台线程取走第一条后卡在下游，之后的事件都留在缓冲里
+        appender.doAppend(event(Level.WARN, "w0"));
+        assertThat(downstream.entered.await(5, TimeUnit.SECONDS)).isTrue();
+        appender.doAppend(event(Level.DEBUG, "d1"));
+        appender.doAppend(event(Level.DEBUG, "d2"));
+        // 水位 2/4，DEBUG 丢弃
+        appender.doAppend(event(Level.DEBUG, "d3"));
+        appender.doAppend(event(Level.INFO, "i4"));
+        // 水位 3/4，INFO 丢弃
+        appender.doAppend(event(Level.INFO, "i5"));
+        appender.doAppend(event(Level.WARN, "w6"));
+        // 写满，WARN 也丢弃
+        appender.doAppend(event(Level.WARN, "w7"));
+
+        assertThat(appender.size()).isEqualTo(4);
+        assertThat(RingBufferAppender.dropped(Level.DEBUG) - debugDropped).isEqualTo(1);
+        assertThat(RingBufferAppender.dropped(Level.INFO) - infoDropped).isEqualTo(1);
+        assertThat(RingBufferAppender.dropped(Level.WARN) - warnDropped).isEqualTo(1);
+
+        downstream.release.countDown();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> downstream.messages.size() == 5);
+        assertThat(downstream.messages).containsExactly("w0", "d1", "d2", "i4", "w6");
+    }
+
+    @Test
+    void mdcIsCapturedOnTheCallingThread() {
+        ListAppender<ILoggingEvent> downstream = new ListAppender<>();
+        start(downstream, 8);
+
+        LogFields.run(1L, 2L, "msg-1", () -> appender.doAppend(event(Level.INFO, "with context")));
+        appender.doAppend(event(Level.INFO, "without context"));
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> downstream.list.size() == 2);
+        assertThat(downstream.list.get(0).getMDCPropertyMap())
+                .containsEntry(LogFields.USER_ID, "1")
+                .containsEntry(LogFields.CONV_ID, "2")
+                .containsEntry(LogFields.MESSAGE_ID, "msg-1");
+        assertThat(downstream.list.get(1).getMDCPropertyMap()).doesNotContainKey(LogFields.USER_ID);
+    }
+
+    @Test
+    void stopDrainsEventsAlreadyInTheBuffer() {
+        BlockingAppender downstream = new BlockingAppender();
+        start(downstream, 16);
+        for (int i = 0; i < 10; i++) {
+            appender.doAppend(event(Level.INFO, "event-" + i));
+        }
+        downstream.release.countDown();
+
+        appender.stop();
+
+        assertThat(downstream.messages).hasSize(10);
+        assertThat(appender.isStarted()).isFalse();
+    }
+
+    @Test
+    void doesNotStartWithoutADownstreamAppender() {
+        appender.setContext(context);
+        appender.setName("ring-test");
+
+        appender.start();
+
+        assertThat(appender.isStarted()).isFalse();
+    }
+
+    private void start(AppenderBase<ILoggingEvent> downstream, int bufferSize) {
+        downstream.setContext(context);
+        downstream.start();
+        appender.setContext(context);
+        appender.setName("ring-test");
+        appender.setBufferSize(bufferSize);
+        appender.addAppender(downstream);
+        appender.start();
+        assertThat(appender.isStarted()).isTrue();
+    }
+
+    private LoggingEvent event(Level level, String message) {
+        return new LoggingEvent(RingBufferAppenderTest.class.getName(), logger, level, message, null, null);
+    }
+
+    private static final class BlockingAppender extends AppenderBase<ILoggingEvent> {
+
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            messages.add(event.getMessage());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.hunkyhsu.ragagent.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 每个模板每秒 3 条配额：验证未带标记的事件不受影响、超出配额的被拒绝并计数、模板之间互不占用、
+ * 级别未开启时不消耗配额，以及模板数超过上限后共用一个窗口
+ */
+class SamplingTurboFilterTest {
+
+    private static final String TEMPLATE = "ws_send_failed sessionId={}: {}";
+
+    private final LoggerContext context = new LoggerContext();
+    private final Logger logger = context.getLogger("sampling-test");
+    private final SamplingTurboFilter filter = new SamplingTurboFilter();
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        filter.setPermitsPerSecond(3);
+        filter.setContext(context);
+        filter.start();
+        logger.setLevel(Level.DEBUG);
+        // 配额按秒换窗，离换窗太近时等到下一秒开始，避免断言跨过窗口
+        long millis = System.currentTimeMillis() % 1000;
+        if (millis > 500) {
+            Thread.sleep(1000 - millis);
+        }
+    }
+
+    @Test
+    void eventsWithoutTheMarkerAreNeverSampled() {
+        for (int i = 0; i < 10; i++) {
+            assertThat(decide(null, Level.DEBUG, TEMPLATE)).isEqualTo(FilterReply.NEUTRAL);
+            assertThat(decide(MarkerFactory.getMarker("OTHER"), Level.DEBUG, TEMPLATE)).isEqualTo(FilterReply.NEUTRAL);
+        }
+    }
+
+    @Test
+    void eventsBeyondThePerSecondQuotaAreDeniedAndCounted() {
+        long sampledOut = SamplingTurboFilter.sampledOut();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(decide(LogFields.PER_TOKEN, Level.DEBUG, TEMPLATE)).isEqualTo(FilterReply.NEUTRAL);
+        }
+        assertThat(decide(LogFields.PER_TOKEN, Level.DEBUG, TEMPLATE)).isEqualTo(FilterReply.DENY);
+        assertThat(decide(LogFields.PER_TOKEN, Level.DEBUG, TEMPLATE)).isEqualTo(FilterReply.DENY);
+
+        assertThat(SamplingTurboFilter.sampledOut() - sampledOut).isEqualTo(2);
+    }
+
+    @Test
+    void quotaIsRefilledInTheNextSecond() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            decide(LogFields.PER_TOKEN, Level.DEBUG, TEMPLATE);
+        }
+        assertThat(decide(LogFields.PER_TOKEN, Level.DEBUG, TEMPLATE)).isEqualTo(FilterReply.DENY);
+
+        Thread.sleep(1000 - System.currentTimeMillis() % 1000 + 10);
+
+        assertThat(decide(LogFields.PER_TOKEN, Level.DEBUG, TEMPLATE)).isEqualTo(FilterReply.NEUTRAL);
+    }
+
+    @Test
+    void eachTemplateHasItsOwnQuota() {
+        for (int i = 0; i < 3; i++) {
+            decide(LogFields.PER_TOKEN, Level.DEBUG, TEMPLATE);
+        }
+
+        assertThat(decide(LogFields.PER_TOKEN, Level.DEBUG, TEMPLATE)).isEqualTo(FilterReply.DENY);
+        assertThat(decide(LogFields.PER_TOKEN, Level.DEBUG, "chat_frame seq={}")).isEqualTo(FilterReply.NEUTRAL);
+    }
+
+    @Test
+    void disabledLevelDoesNotUseTheQuota() {
+        logger.setLevel(Level.INFO);
+        for (int i = 0; i < 10; i++) {
+            assertThat(decide(LogFields.PER_TOKEN, Level.DEBUG, TEMPLATE)).isEqualTo(FilterReply.NEUTRAL);
+        }
+
+        logger.setLevel(Level.DEBUG);
+        for (int i = 0; i < 3; i++) {
+            assertThat(decide(LogFields.PER_TOKEN, Level.DEBUG, TEMPLATE)).isEqualTo(FilterReply.NEUTRAL);
+        }
+    }
+
+    @Test
+    void templatesBeyondTheLimitShareOneWindow() {
+        for (int i = 0; i < 256; i++) {
+            assertThat(decide(LogFields.PER_TOKEN, Level.DEBUG, "template-" + i)).isEqualTo(FilterReply.NEUTRAL);
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(decide(LogFields.PER_TOKEN, Level.DEBUG, "overflow-" + i)).isEqualTo(FilterReply.NEUTRAL);
+        }
+        assertThat(decide(LogFields.PER_TOKEN, Level.DEBUG, "overflow-3")).isEqualTo(FilterReply.DENY);
+        // 已登记的模板仍然用自己的窗口
+        assertThat(decide(LogFields.PER_TOKEN, Level.DEBUG, "template-0")).isEqualTo(FilterReply.NEUTRAL);
+    }
+
+    @Test
+    void stoppedFilterLetsEverythingThrough() {
+        filter.stop();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(decide(LogFields.PER_TOKEN, Level.DEBUG, TEMPLATE)).isEqualTo(FilterReply.NEUTRAL);
+        }
+    }
+
+    private FilterReply decide(Marker marker, Level level, String format) {
+        return filter.decide(marker, logger, level, format, null, null);
+    }
+}
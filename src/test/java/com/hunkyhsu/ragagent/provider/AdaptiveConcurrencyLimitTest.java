@@ -0,0 +1,70 @@
+package com.hunkyhsu.ragagent.provider;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 用显式的时间戳驱动 AIMD，验证加性增长、乘性收缩、每周期最多收缩一次以及上下界
+ */
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long TARGET = 1_000;
+
+    @Test
+    void fastSamplesGrowTheLimitByAboutOnePerRound() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 10, 0.5, TARGET);
+        long now = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            limit.onSample(TARGET / 2, 4, now);
+        }
+        assertThat(limit.current()).isEqualTo(4);
+        limit.onSample(TARGET / 2, 4, now);
+        assertThat(limit.current()).isEqualTo(5);
+    }
+
+    @Test
+    void limitDoesNotGrowWhileLessThanHalfIsUsed() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 10, 0.5, TARGET);
+        long now = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(TARGET / 2, 1, now);
+        }
+        assertThat(limit.current()).isEqualTo(4);
+    }
+
+    @Test
+    void limitNeverExceedsTheMaximum() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 6, 0.5, TARGET);
+        long now = System.nanoTime();
+        for (int i = 0; i < 1_000; i++) {
+            limit.onSample(TARGET / 2, 6, now);
+        }
+        assertThat(limit.current()).isEqualTo(6);
+    }
+
+    @Test
+    void slowSamplesShrinkTheLimitAtMostOncePerTargetPeriod() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 1, 10, 0.5, TARGET);
+        long now = System.nanoTime();
+        limit.onSample(TARGET * 2, 8, now);
+        assertThat(limit.current()).isEqualTo(4);
+
+        // 同一波慢请求在周期内不会继续收缩
+        limit.onSample(TARGET * 2, 8, now + TARGET / 2);
+        assertThat(limit.current()).isEqualTo(4);
+
+        limit.onSample(TARGET * 2, 8, now + TARGET);
+        assertThat(limit.current()).isEqualTo(2);
+    }
+
+    @Test
+    void failuresCountAsOverloadAndTheLimitStopsAtTheMinimum() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 2, 10, 0.5, TARGET);
+        long now = System.nanoTime();
+        for (int period = 0; period < 5; period++) {
+            limit.onSample(-1, 4, now + period * TARGET);
+        }
+        assertThat(limit.current()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,201 @@
+package com.hunkyhsu.ragagent.provider;
+
+import com.hunkyhsu.ragagent.config.AiProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 上游用可控的 Sinks 代替，验证 single-flight 的共享、跟随者的重放、结束后的订阅不会重连上游，
+ * 以及计费标记和排队通知只落在各自调用者的回调上
+ */
+class AiResponseCacheTest {
+
+    private static final Prompt PROMPT = new Prompt("model", "system", "", List.of(), "what is kafka");
+
+    private final AiResponseCache cache = new AiResponseCache(new AiProperties(), new SimpleMeterRegistry());
+    private final Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private IntConsumer onQueued;
+
+    @Test
+    void concurrentFollowersShareOneUpstreamCallAndOnlyTheLeaderIsBilled() {
+        Recorder leader = new Recorder();
+        Recorder follower = new Recorder();
+        List<String> leaderDeltas = subscribe(cache.stream(PROMPT, "acme", leader, this::upstream));
+        List<String> followerDeltas = subscribe(cache.stream(PROMPT, "acme", follower, this::upstream));
+
+        onQueued.accept(3);
+        upstream.tryEmitNext("kafka ");
+        upstream.tryEmitNext("is a log");
+        upstream.tryEmitComplete();
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(leaderDeltas).containsExactly("kafka ", "is a log");
+        assertThat(followerDeltas).containsExactly("kafka ", "is a log");
+        assertThat(leader.upstream).hasValue(1);
+        assertThat(follower.upstream).hasValue(0);
+        // 排队通知分发给每个调用者自己的回调
+        assertThat(leader.queued).containsExactly(3);
+        assertThat(follower.queued).containsExactly(3);
+    }
+
+    @Test
+    void manyThreadsAskingAtOnceCallUpstreamExactlyOnce() throws InterruptedException {
+        int callers = 16;
+        List<Recorder> recorders = new ArrayList<>();
+        List<List<String>> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            for (int i = 0; i < callers; i++) {
+                Recorder recorder = new Recorder();
+                recorders.add(recorder);
+                pool.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    received.add(subscribe(cache.stream(PROMPT, "acme", recorder, this::upstream)));
+                });
+            }
+            start.countDown();
+            pool.shutdown();
+            assertThat(pool.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            pool.shutdownNow();
+        }
+        upstream.tryEmitNext("shared");
+        upstream.tryEmitComplete();
+
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(recorders).extracting(recorder -> recorder.upstream.get()).containsOnly(0, 1)
+                .filteredOn(calls -> calls == 1).hasSize(1);
+        assertThat(received).hasSize(callers).allSatisfy(deltas -> assertThat(deltas).containsExactly("shared"));
+    }
+
+    @Test
+    void followerJoiningMidStreamReplaysEarlierDeltasWithoutAStaleQueueNotice() {
+        Recorder follower = new Recorder();
+        subscribe(cache.stream(PROMPT, "acme", new Recorder(), this::upstream));
+        onQueued.accept(2);
+        upstream.tryEmitNext("first ");
+
+        List<String> followerDeltas = subscribe(cache.stream(PROMPT, "acme", follower, this::upstream));
+        upstream.tryEmitNext("second");
+        upstream.tryEmitComplete();
+
+        assertThat(followerDeltas).containsExactly("first ", "second");
+        assertThat(follower.queued).isEmpty();
+        assertThat(upstreamCalls).hasValue(1);
+    }
+
+    @Test
+    void subscriptionAfterCompletionReplaysInsteadOfReconnecting() {
+        Flux<String> leader = cache.stream(PROMPT, "acme", new Recorder(), this::upstream);
+        // 跟随者拿到共享流，但直到上游结束后才订阅
+        Flux<String> late = cache.stream(PROMPT, "acme", new Recorder(), this::upstream);
+        subscribe(leader);
+        upstream.tryEmitNext("done");
+        upstream.tryEmitComplete();
+
+        assertThat(late.collectList().block()).containsExactly("done");
+        assertThat(upstreamCalls).hasValue(1);
+        Recorder next = new Recorder();
+        assertThat(cache.stream(PROMPT, "acme", next, this::upstream).collectList().block()).containsExactly("done");
+        assertThat(next.upstream).hasValue(0);
+        assertThat(upstreamCalls).hasValue(1);
+    }
+
+    @Test
+    void upstreamKeepsRunningWhenEverySubscriberCancels() {
+        Flux<String> leader = cache.stream(PROMPT, "acme", new Recorder(), this::upstream);
+        Flux<String> follower = cache.stream(PROMPT, "acme", new Recorder(), this::upstream);
+        Disposable subscription = leader.subscribe();
+        upstream.tryEmitNext("partial ");
+        subscription.dispose();
+
+        List<String> followerDeltas = subscribe(follower);
+        upstream.tryEmitNext("answer");
+        upstream.tryEmitComplete();
+
+        assertThat(followerDeltas).containsExactly("partial ", "answer");
+        assertThat(upstreamCalls).hasValue(1);
+        assertThat(cache.stream(PROMPT, "acme", new Recorder(), this::upstream).collectList().block())
+                .containsExactly("partial answer");
+    }
+
+    @Test
+    void failedStreamIsNotCachedAndTheNextRequestCallsUpstreamAgain() {
+        Flux<String> failed = cache.stream(PROMPT, "acme", new Recorder(), this::upstream);
+        subscribe(failed);
+        upstream.tryEmitError(new IllegalStateException("upstream reset"));
+        assertThatThrownBy(() -> failed.collectList().block()).hasMessageContaining("upstream reset");
+
+        Recorder retry = new Recorder();
+        Flux<String> again = cache.stream(PROMPT, "acme", retry,
+                queued -> {
+                    upstreamCalls.incrementAndGet();
+                    return Flux.just("recovered");
+                });
+
+        assertThat(again.collectList().block()).containsExactly("recovered");
+        assertThat(retry.upstream).hasValue(1);
+        assertThat(upstreamCalls).hasValue(2);
+    }
+
+    @Test
+    void tenantsWithDifferentTagsDoNotShareAnUpstreamCall() {
+        Recorder other = new Recorder();
+        subscribe(cache.stream(PROMPT, "acme", new Recorder(), this::upstream));
+        cache.stream(PROMPT, "globex", other, queued -> Flux.just("separate")).collectList().block();
+
+        assertThat(other.upstream).hasValue(1);
+        assertThat(AiResponseCache.cacheKey(PROMPT, "b, a,a")).isEqualTo(AiResponseCache.cacheKey(PROMPT, "a,b"));
+    }
+
+    private Flux<String> upstream(IntConsumer queued) {
+        upstreamCalls.incrementAndGet();
+        onQueued = queued;
+        return upstream.asFlux();
+    }
+
+    private static List<String> subscribe(Flux<String> deltas) {
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        deltas.subscribe(received::add, error -> { });
+        return received;
+    }
+
+    private static final class Recorder implements AiResponseCache.Listener {
+
+        private final AtomicInteger upstream = new AtomicInteger();
+        private final List<Integer> queued = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onUpstream() {
+            upstream.incrementAndGet();
+        }
+
+        @Override
+        public void onQueued(int position) {
+            queued.add(position);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.hunkyhsu.ragagent.provider;
+
+import com.hunkyhsu.ragagent.config.AiProperties;
+import com.hunkyhsu.ragagent.entity.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 上限固定为 1：先用一个不结束的请求占住配额，其余请求全部排队，
+ * 再释放占用者，按上游被调用的顺序验证调度结果。释放和授予在同一线程同步完成，顺序是确定的
+ */
+class UpstreamSchedulerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void queuedRequestsAreServedInProportionToRoleWeight() {
+        UpstreamScheduler scheduler = scheduler(properties -> { });
+        Sinks.Many<String> blocker = hold(scheduler);
+        User admin = user(1L, User.Role.ADMIN, "acme");
+        User member = user(2L, User.Role.USER, "acme");
+        for (int i = 0; i < 6; i++) {
+            enqueue(scheduler, admin, "admin");
+            enqueue(scheduler, member, "member");
+        }
+
+        blocker.tryEmitComplete();
+
+        // 权重 2:1，前 9 次授予中管理员占 6 次
+        assertThat(calls).hasSize(12);
+        assertThat(calls.subList(0, 9)).filteredOn("admin"::equals).hasSize(6);
+        assertThat(calls.subList(0, 9)).filteredOn("member"::equals).hasSize(3);
+    }
+
+    @Test
+    void tenantsShareTheSlotEquallyRegardlessOfHowManyUsersTheyHave() {
+        UpstreamScheduler scheduler = scheduler(properties -> { });
+        Sinks.Many<String> blocker = hold(scheduler);
+        for (long id = 10; id < 13; id++) {
+            User crowded = user(id, User.Role.USER, "crowded");
+            for (int i = 0; i < 3; i++) {
+                enqueue(scheduler, crowded, "crowded");
+            }
+        }
+        User alone = user(20L, User.Role.USER, "alone");
+        for (int i = 0; i < 3; i++) {
+            enqueue(scheduler, alone, "alone");
+        }
+
+        blocker.tryEmitComplete();
+
+        assertThat(calls.subList(0, 6)).filteredOn("alone"::equals).hasSize(3);
+    }
+
+    @Test
+    void requestCancelledWhileQueuedNeverReachesTheUpstream() {
+        UpstreamScheduler scheduler = scheduler(properties -> { });
+        Sinks.Many<String> blocker = hold(scheduler);
+        User user = user(1L, User.Role.USER, "acme");
+        Disposable abandoned = enqueue(scheduler, user, "abandoned");
+        enqueue(scheduler, user, "kept");
+        assertThat(gauge("ai.scheduler.queued")).isEqualTo(2);
+
+        abandoned.dispose();
+        assertThat(gauge("ai.scheduler.queued")).isEqualTo(1);
+
+        blocker.tryEmitComplete();
+        assertThat(calls).containsExactly("kept");
+        assertThat(gauge("ai.scheduler.in_flight")).isZero();
+    }
+
+    @Test
+    void requestsBeyondThePerUserQueueAreRejected() {
+        UpstreamScheduler scheduler = scheduler(properties -> properties.setMaxQueuedPerUser(1));
+        hold(scheduler);
+        User user = user(1L, User.Role.USER, "acme");
+        enqueue(scheduler, user, "first");
+        AtomicReference<Throwable> rejected = new AtomicReference<>();
+        scheduler.schedule(user, position -> { }, () -> Flux.just("second")).subscribe(null, rejected::set);
+
+        assertThat(rejected.get()).isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("user_queue_full");
+        assertThat(meterRegistry.get("ai.scheduler.rejected").tag("reason", "user_queue_full").counter().count())
+                .isEqualTo(1);
+    }
+
+    private UpstreamScheduler scheduler(Consumer<AiProperties.Scheduler> customizer) {
+        AiProperties aiProperties = new AiProperties();
+        AiProperties.Scheduler properties = aiProperties.getScheduler();
+        properties.setInitialLimit(1);
+        properties.setMaxLimit(1);
+        properties.setMaxQueuedPerUser(10);
+        properties.setLatencyTarget(Duration.ofMinutes(1));
+        properties.setMaxQueueWait(Duration.ofMinutes(1));
+        properties.setRoleWeights(Map.of(User.Role.USER, 1, User.Role.ADMIN, 2));
+        customizer.accept(properties);
+        return new UpstreamScheduler(aiProperties, meterRegistry);
+    }
+
+    // 占住唯一的配额，直到返回的 sink 结束
+    private Sinks.Many<String> hold(UpstreamScheduler scheduler) {
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        scheduler.schedule(user(99L, User.Role.USER, "blocker"), position -> { }, upstream::asFlux).subscribe();
+        assertThat(gauge("ai.scheduler.in_flight")).isEqualTo(1);
+        return upstream;
+    }
+
+    private Disposable enqueue(UpstreamScheduler scheduler, User user, String label) {
+        return scheduler.schedule(user, position -> { }, () -> {
+            calls.add(label);
+            return Flux.just("token");
+        }).subscribe();
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).gauge().value();
+    }
+
+    private static User user(Long id, User.Role role, String orgTags) {
+        return User.builder().id(id).role(role).orgTags(orgTags).build();
+    }
+}
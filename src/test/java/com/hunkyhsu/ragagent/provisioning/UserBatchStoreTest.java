@@ -0,0 +1,25 @@
+package com.hunkyhsu.ragagent.provisioning;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 批量写入改写开关既可以写在 JDBC URL 中，也可以写在连接池的数据源属性中
+ */
+class UserBatchStoreTest {
+
+    @Test
+    void batchRewriteIsDetectedInTheUrlOrDataSourceProperties() {
+        Properties none = new Properties();
+        Properties enabled = new Properties();
+        enabled.setProperty(UserBatchStore.REWRITE_BATCHED, "true");
+
+        assertThat(UserBatchStore.rewritesBatches("jdbc:mysql://db/app?useSSL=false&rewriteBatchedStatements=true", none))
+                .isTrue();
+        assertThat(UserBatchStore.rewritesBatches("jdbc:mysql://db/app?useSSL=false", none)).isFalse();
+        assertThat(UserBatchStore.rewritesBatches("jdbc:mysql://db/app", enabled)).isTrue();
+    }
+}
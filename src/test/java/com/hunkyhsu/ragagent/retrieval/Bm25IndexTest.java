@@ -0,0 +1,51 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+import com.hunkyhsu.ragagent.config.RetrievalProperties;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 删除的片段立即从检索结果和统计中消失，墓碑累积到阈值后清扫倒排表，清扫前后检索结果一致
+ */
+class Bm25IndexTest {
+
+    private final Bm25Index index = new Bm25Index(new RetrievalProperties());
+
+    @Test
+    void deletedChunksDisappearBeforeAndAfterTombstonesAreReclaimed() {
+        for (int id = 0; id < 4_000; id++) {
+            index.add(id, "shared handbook section" + id + (id % 2 == 0 ? " even" : " odd"));
+        }
+        RoaringBitmap all = RoaringBitmap.bitmapOf(IntStream.range(0, 4_000).toArray());
+
+        // 不足清扫阈值，只记墓碑
+        index.delete(IntStream.range(0, 1_000).toArray());
+        assertThat(index.size()).isEqualTo(3_000);
+        assertThat(index.search("section10", all, 5)).isEmpty();
+        assertThat(index.search("section1000", all, 5)).extracting(ChunkScore::chunkId).containsExactly(1_000);
+
+        // 累计墓碑达到阈值，清扫倒排表
+        index.delete(IntStream.range(1_000, 1_100).toArray());
+        assertThat(index.size()).isEqualTo(2_900);
+        assertThat(index.search("section1050", all, 5)).isEmpty();
+        assertThat(index.search("even", all, 4_000)).hasSize(1_450)
+                .allSatisfy(hit -> assertThat(hit.chunkId()).isGreaterThanOrEqualTo(1_100));
+        assertThat(index.search("section3999", all, 5)).extracting(ChunkScore::chunkId).containsExactly(3_999);
+    }
+
+    @Test
+    void deletedChunkIsNotResurrectedByALateAdd() {
+        index.add(1, "quarterly budget");
+        index.delete(new int[] {1});
+
+        // 片段下线后迟到的写入（例如启动加载与版本切换并发）被忽略
+        index.add(1, "quarterly budget");
+
+        assertThat(index.size()).isZero();
+        assertThat(index.search("budget", RoaringBitmap.bitmapOf(1), 5)).isEmpty();
+    }
+}
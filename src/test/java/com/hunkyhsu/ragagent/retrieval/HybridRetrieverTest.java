@@ -0,0 +1,149 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+import com.hunkyhsu.ragagent.config.RetrievalProperties;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.ingestion.ChunkStore;
+import com.hunkyhsu.ragagent.ingestion.Embedder;
+import com.hunkyhsu.ragagent.ingestion.StoredChunk;
+import com.hunkyhsu.ragagent.vector.VectorHit;
+import com.hunkyhsu.ragagent.vector.VectorIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongPredicate;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 标签位图、BM25 和检索缓存用真实实现，向量索引按过滤条件返回固定的近邻顺序：
+ * 验证两路检索都限制在可见片段内、RRF 融合、重复查询命中缓存，以及版本切换后缓存失效、旧片段不再返回
+ */
+class HybridRetrieverTest {
+
+    // 向量检索对任何查询都按这个顺序返回（过滤后）
+    private static final long[] NEAREST = {4, 2, 3, 1};
+
+    private final OrgTagRegistry orgTagRegistry = new OrgTagRegistry();
+    private final OrgTagBitmaps orgTagBitmaps = new OrgTagBitmaps();
+    private final RetrievalProperties properties = new RetrievalProperties();
+    private final Bm25Index bm25Index = new Bm25Index(properties);
+    private final IndexVersions indexVersions = new IndexVersions();
+    private final VectorIndex vectorIndex = mock(VectorIndex.class);
+    private final Embedder embedder = mock(Embedder.class);
+    private final ChunkStore chunkStore = mock(ChunkStore.class);
+    private final Map<Long, StoredChunk> stored = new HashMap<>();
+    private final HybridRetriever retriever = new HybridRetriever(orgTagRegistry, orgTagBitmaps, bm25Index,
+            vectorIndex, embedder, chunkStore, properties,
+            new RetrievalCache(properties, indexVersions, new SimpleMeterRegistry()));
+    private int acme;
+    private int globex;
+
+    @BeforeEach
+    void setUp() {
+        acme = orgTagRegistry.intern("acme");
+        globex = orgTagRegistry.intern("globex");
+        index(acme, 1, "kafka partitions and consumer groups");
+        index(acme, 2, "kafka retention settings");
+        index(acme, 3, "expense report template");
+        index(globex, 4, "kafka internals for globex only");
+        when(embedder.embed(anyList())).thenReturn(List.of(new float[] {1f}));
+        when(vectorIndex.search(any(), anyInt(), any(), anyLong(), any())).thenAnswer(invocation -> {
+            LongPredicate filter = invocation.getArgument(2);
+            return LongStream.of(NEAREST).filter(filter).mapToObj(id -> new VectorHit(id, 0.9f)).toList();
+        });
+        when(chunkStore.findChunks(any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            Map<Long, StoredChunk> found = new HashMap<>();
+            ids.stream().filter(stored::containsKey).forEach(id -> found.put(id, stored.get(id)));
+            return found;
+        });
+    }
+
+    @Test
+    void bothSearchesStayInsideTheCallersVisibleChunks() {
+        List<RetrievedChunk> results = retriever.retrieve(user("acme"), "kafka");
+
+        // 2 在关键词和向量两路都靠前，融合后排第一；globex 的 4 不可见
+        assertThat(results).extracting(RetrievedChunk::chunkId).startsWith(2L).contains(1L, 3L).doesNotContain(4L);
+        assertThat(retriever.retrieve(user("globex"), "kafka")).extracting(RetrievedChunk::chunkId)
+                .containsExactly(4L);
+    }
+
+    @Test
+    void repeatedQueryIsServedFromTheCache() {
+        List<RetrievedChunk> first = retriever.retrieve(user("acme"), "kafka");
+        List<RetrievedChunk> second = retriever.retrieve(user("acme"), "  kafka ");
+
+        assertThat(second).isEqualTo(first);
+        verify(embedder, times(1)).embed(anyList());
+        verify(vectorIndex, times(1)).search(any(), anyInt(), any(), anyLong(), any());
+        verify(chunkStore, times(2)).findChunks(any());
+    }
+
+    @Test
+    void versionSwapInvalidatesTheCachedRankingAndHidesRetiredChunks() {
+        retriever.retrieve(user("acme"), "kafka");
+
+        // 文档 2 切换版本：新片段 5 取代 2，按 IngestionService 的顺序先改索引再递增版本
+        index(acme, 5, "kafka retention settings revised");
+        orgTagBitmaps.replace(acme, new int[] {5}, new int[] {2});
+        bm25Index.delete(new int[] {2});
+        indexVersions.bump(acme);
+
+        assertThat(retriever.retrieve(user("acme"), "kafka")).extracting(RetrievedChunk::chunkId)
+                .contains(5L).doesNotContain(2L);
+        verify(vectorIndex, times(2)).search(any(), anyInt(), any(), anyLong(), any());
+    }
+
+    @Test
+    void anotherTenantsChangeKeepsTheCachedRanking() {
+        retriever.retrieve(user("acme"), "kafka");
+        indexVersions.bump(globex);
+
+        retriever.retrieve(user("acme"), "kafka");
+
+        verify(vectorIndex, times(1)).search(any(), anyInt(), any(), anyLong(), any());
+    }
+
+    @Test
+    void callerWithoutVisibleChunksSkipsBothSearches() {
+        assertThat(retriever.retrieve(user("initech"), "kafka")).isEmpty();
+        assertThat(retriever.retrieve(user("acme"), " ")).isEmpty();
+
+        verify(embedder, never()).embed(anyList());
+        verify(chunkStore, never()).findChunks(any());
+    }
+
+    @Test
+    void chunksDeletedAfterRankingAreSkipped() {
+        stored.remove(1L);
+
+        assertThat(retriever.retrieve(user("acme"), "kafka")).extracting(RetrievedChunk::chunkId)
+                .doesNotContain(1L).contains(2L);
+    }
+
+    private void index(int tagId, long chunkId, String content) {
+        orgTagBitmaps.add(tagId, (int) chunkId);
+        bm25Index.add((int) chunkId, content);
+        stored.put(chunkId, new StoredChunk(chunkId, chunkId * 10, "tag", null, content));
+    }
+
+    private static User user(String orgTags) {
+        return User.builder().id(1L).username("alice").orgTags(orgTags).build();
+    }
+}
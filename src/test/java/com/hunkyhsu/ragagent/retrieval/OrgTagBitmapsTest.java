@@ -0,0 +1,67 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 可见集合按标签求并、版本切换的原子替换、下线片段拒绝迟到的写入，
+ * 以及向量合并回收后 retired 随之收缩（启动加载结束前推迟）
+ */
+class OrgTagBitmapsTest {
+
+    private final OrgTagBitmaps bitmaps = new OrgTagBitmaps();
+
+    @Test
+    void visibleIsTheUnionOfTheCallersTags() {
+        bitmaps.add(0, 1);
+        bitmaps.add(1, 2);
+        bitmaps.add(2, 3);
+
+        RoaringBitmap visible = bitmaps.visible(new int[] {0, 2, 9});
+        assertThat(visible.toArray()).containsExactly(1, 3);
+
+        // 返回的是副本，修改不影响内部位图
+        visible.add(2);
+        assertThat(bitmaps.visible(new int[] {0}).toArray()).containsExactly(1);
+    }
+
+    @Test
+    void replaceSwapsVersionsAndRetiredChunksAreNotAddedBack() {
+        bitmaps.add(0, 1);
+        bitmaps.add(0, 2);
+
+        bitmaps.replace(0, new int[] {3, 4}, new int[] {1, 2});
+        // 启动加载读到旧行后迟到的写入
+        bitmaps.add(0, 1);
+
+        assertThat(bitmaps.visible(new int[] {0}).toArray()).containsExactly(3, 4);
+        assertThat(bitmaps.retiredCount()).isEqualTo(2);
+    }
+
+    @Test
+    void reclaimedChunksLeaveTheRetiredSet() {
+        bitmaps.loaded();
+        bitmaps.replace(0, new int[0], new int[] {1, 2, 3});
+
+        bitmaps.forget(Roaring64Bitmap.bitmapOf(1L, 2L));
+
+        assertThat(bitmaps.retiredCount()).isEqualTo(1);
+    }
+
+    @Test
+    void reclaimDuringStartupLoadIsDeferredUntilTheLoadEnds() {
+        bitmaps.replace(0, new int[0], new int[] {5});
+
+        bitmaps.forget(Roaring64Bitmap.bitmapOf(5L));
+        bitmaps.add(0, 5);
+
+        assertThat(bitmaps.retiredCount()).isEqualTo(1);
+        assertThat(bitmaps.visible(new int[] {0}).isEmpty()).isTrue();
+
+        bitmaps.loaded();
+        assertThat(bitmaps.retiredCount()).isZero();
+    }
+}
@@ -0,0 +1,102 @@
+package com.hunkyhsu.ragagent.retrieval;
+
+import com.hunkyhsu.ragagent.config.RetrievalProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 结果缓存的 key 由规范化查询、排序后的标签和各标签索引版本组成：
+ * 验证标签顺序无关、调用者任一标签版本变化或全局纪元变化后失效、其他标签的变化不影响命中
+ */
+class RetrievalCacheTest {
+
+    private static final List<ChunkScore> RANKED = List.of(new ChunkScore(1, 0.5f));
+
+    private final RetrievalProperties properties = new RetrievalProperties();
+    private final IndexVersions indexVersions = new IndexVersions();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger ranks = new AtomicInteger();
+    private RetrievalCache cache = new RetrievalCache(properties, indexVersions, meterRegistry);
+
+    @Test
+    void tagOrderDoesNotChangeTheKey() {
+        rank("what is kafka", 3, 1, 2);
+        rank("what is kafka", 2, 3, 1);
+
+        assertThat(ranks).hasValue(1);
+        assertThat(meterRegistry.get("retrieval.cache.requests").tag("cache", "results").tag("result", "hit")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void bumpingOneOfTheCallersTagsInvalidatesTheEntry() {
+        rank("what is kafka", 1, 2);
+        indexVersions.bump(2);
+
+        rank("what is kafka", 1, 2);
+        assertThat(ranks).hasValue(2);
+        rank("what is kafka", 1, 2);
+        assertThat(ranks).hasValue(2);
+    }
+
+    @Test
+    void bumpingAnotherTagKeepsTheEntry() {
+        rank("what is kafka", 1, 2);
+        indexVersions.bump(3);
+
+        rank("what is kafka", 1, 2);
+        assertThat(ranks).hasValue(1);
+        // 持有标签 3 的调用者不会读到旧版本的结果
+        rank("what is kafka", 1, 3);
+        assertThat(ranks).hasValue(2);
+    }
+
+    @Test
+    void epochBumpInvalidatesEveryEntry() {
+        rank("what is kafka", 1);
+        rank("what is kafka", 2);
+        indexVersions.bumpAll();
+
+        rank("what is kafka", 1);
+        rank("what is kafka", 2);
+        assertThat(ranks).hasValue(4);
+    }
+
+    @Test
+    void embeddingsAreSharedAcrossTenantsByNormalizedQuery() {
+        AtomicInteger embeds = new AtomicInteger();
+        String normalized = RetrievalCache.normalize("  what　is\n\tkafka ");
+
+        cache.embedding(normalized, () -> new float[] {embeds.incrementAndGet()});
+        float[] cached = cache.embedding(RetrievalCache.normalize("what is kafka"), () -> new float[] {embeds.incrementAndGet()});
+
+        assertThat(normalized).isEqualTo("what is kafka");
+        assertThat(cached).containsExactly(1f);
+        assertThat(embeds).hasValue(1);
+        // 规范化不改大小写
+        assertThat(RetrievalCache.normalize("What is Kafka")).isEqualTo("What is Kafka");
+    }
+
+    @Test
+    void disabledCacheAlwaysRanks() {
+        properties.setCacheEnabled(false);
+        cache = new RetrievalCache(properties, indexVersions, new SimpleMeterRegistry());
+
+        rank("what is kafka", 1);
+        rank("what is kafka", 1);
+
+        assertThat(ranks).hasValue(2);
+    }
+
+    private List<ChunkScore> rank(String query, int... tagIds) {
+        return cache.ranked(RetrievalCache.normalize(query), tagIds, () -> {
+            ranks.incrementAndGet();
+            return RANKED;
+        });
+    }
+}
@@ -0,0 +1,119 @@
+package com.hunkyhsu.ragagent.search;
+
+import com.hunkyhsu.ragagent.config.SearchProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 在临时目录上验证会话索引的落盘、重新打开、按用户隔离、重复写入去重、墓碑过滤以及合并时的物理清除
+ */
+class SearchIndexTest {
+
+    private static final long ALICE = 1L;
+    private static final long BOB = 2L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsMessagesAcrossMemoryAndFlushedSegmentsAndSurvivesReopen() throws IOException {
+        try (SearchIndex index = SearchIndex.open(directory, properties(2, 100))) {
+            index.add(message(10L, ALICE, "m-1", 1_000L, "kafka consumer lag"));
+            index.add(message(10L, ALICE, "m-2", 2_000L, "redis cluster failover"));
+            index.add(message(11L, ALICE, "m-3", 3_000L, "kafka rebalance storm"));
+            await().atMost(Duration.ofSeconds(10)).until(() -> index.segmentCount() == 1);
+
+            SearchResult result = index.search(ALICE, "kafka", 10);
+            assertThat(result.total()).isEqualTo(2);
+            assertThat(result.hits()).extracting(SearchHit::messageId).containsExactlyInAnyOrder("m-1", "m-3");
+            assertThat(index.durableTimestamp()).isEqualTo(2_000L);
+        }
+        try (SearchIndex reopened = SearchIndex.open(directory, properties(2, 100))) {
+            assertThat(reopened.size()).isEqualTo(3);
+            assertThat(reopened.search(ALICE, "failover", 10).hits())
+                    .extracting(SearchHit::messageId).containsExactly("m-2");
+            assertThat(reopened.durableTimestamp()).isEqualTo(3_000L);
+            assertThat(reopened.catchUpFrom(Duration.ofMillis(500))).isEqualTo(2_500L);
+        }
+    }
+
+    @Test
+    void usersOnlySeeTheirOwnMessages() throws IOException {
+        try (SearchIndex index = SearchIndex.open(directory, properties(100, 100))) {
+            index.add(message(10L, ALICE, "m-1", 1_000L, "quarterly budget"));
+            index.add(message(20L, BOB, "m-2", 1_000L, "budget review"));
+
+            assertThat(index.search(ALICE, "budget", 10).hits())
+                    .extracting(SearchHit::conversationId).containsExactly(10L);
+            assertThat(index.search(BOB, "quarterly", 10).total()).isZero();
+        }
+    }
+
+    @Test
+    void duplicateWritesAreCollapsedInResultsAndDroppedByMerge() throws IOException {
+        SearchProperties properties = properties(1, 100);
+        try (SearchIndex index = SearchIndex.open(directory, properties)) {
+            // 实时事件和启动补齐各写入一次同一条消息，落在不同的段中
+            index.add(message(10L, ALICE, "m-1", 1_000L, "vector index merge"));
+            index.add(message(10L, ALICE, "m-1", 1_000L, "vector index merge"));
+            index.add(message(10L, ALICE, "m-2", 2_000L, "unrelated text"));
+            await().atMost(Duration.ofSeconds(10)).until(() -> index.segmentCount() == 3);
+            assertThat(index.search(ALICE, "merge", 10).total()).isEqualTo(1);
+
+            properties.setMergeFactor(3);
+            index.add(message(10L, ALICE, "m-3", 3_000L, "trigger another flush"));
+            await().atMost(Duration.ofSeconds(10)).until(() -> index.segmentCount() == 2);
+            assertThat(index.size()).isEqualTo(3);
+            assertThat(index.search(ALICE, "merge", 10).hits())
+                    .extracting(SearchHit::messageId).containsExactly("m-1");
+        }
+    }
+
+    @Test
+    void deletedConversationsAreHiddenImmediatelyAndPurgedByMerge() throws IOException {
+        SearchProperties properties = properties(2, 100);
+        try (SearchIndex index = SearchIndex.open(directory, properties)) {
+            index.add(message(10L, ALICE, "m-1", 1_000L, "release checklist"));
+            index.add(message(11L, ALICE, "m-2", 2_000L, "release notes"));
+            index.add(message(10L, ALICE, "m-3", 3_000L, "release rollback"));
+            index.add(message(11L, ALICE, "m-4", 4_000L, "release party"));
+            await().atMost(Duration.ofSeconds(10)).until(() -> index.segmentCount() == 2);
+
+            index.deleteConversation(10L);
+            assertThat(index.search(ALICE, "release", 10).hits())
+                    .extracting(SearchHit::conversationId).containsOnly(11L);
+            // 已删除会话的迟到事件不再写入
+            index.add(message(10L, ALICE, "m-5", 5_000L, "release again"));
+            assertThat(index.search(ALICE, "again", 10).total()).isZero();
+
+            properties.setMergeFactor(2);
+            index.flush();
+            await().atMost(Duration.ofSeconds(10)).until(() -> index.segmentCount() == 1 && index.size() == 2);
+        }
+        // 墓碑持久化，重新打开后仍然生效
+        try (SearchIndex reopened = SearchIndex.open(directory, properties(2, 100))) {
+            reopened.add(message(10L, ALICE, "m-1", 1_000L, "release checklist"));
+            assertThat(reopened.search(ALICE, "release", 10).hits())
+                    .extracting(SearchHit::messageId).containsExactlyInAnyOrder("m-2", "m-4");
+        }
+    }
+
+    private static SearchProperties properties(int flushThreshold, int mergeFactor) {
+        SearchProperties properties = new SearchProperties();
+        properties.setFlushThreshold(flushThreshold);
+        properties.setMergeFactor(mergeFactor);
+        return properties;
+    }
+
+    private static IndexedMessage message(long conversationId, long userId, String messageId, long timestamp,
+                                          String content) {
+        return new IndexedMessage(conversationId, userId, messageId, timestamp, content);
+    }
+}
@@ -0,0 +1,274 @@
+package com.hunkyhsu.ragagent.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hunkyhsu.ragagent.config.ExportProperties;
+import com.hunkyhsu.ragagent.dto.ExportResponse;
+import com.hunkyhsu.ragagent.entity.ExportJob;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.export.ChatArchiveStore;
+import com.hunkyhsu.ragagent.export.ChatArchiveWriter;
+import com.hunkyhsu.ragagent.repository.ExportJobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 任务表为 mock，聊天记录由按键集游标过滤的内存行代替：验证同一用户只能有一个未完成的导出、
+ * GZIP 导出按页写成可整体解压的多 member 文件，以及被接手后从检查点截断续写得到与一次写完相同的内容
+ */
+class ExportServiceTest {
+
+    private static final long JOB_ID = 7L;
+
+    private final ExportJobRepository exportJobRepository = mock(ExportJobRepository.class);
+    private final ChatArchiveStore chatArchiveStore = mock(ChatArchiveStore.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final ExportProperties properties = new ExportProperties();
+    private final User user = User.builder().id(5L).username("alice").build();
+    private final List<ChatArchiveStore.ArchiveRow> rows = new ArrayList<>();
+    private final List<long[]> checkpoints = new CopyOnWriteArrayList<>();
+    private ExportService exportService;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() {
+        properties.setDirectory(directory.toString());
+        properties.setWorkers(1);
+        properties.setPageSize(2);
+        properties.setPagePause(Duration.ZERO);
+        properties.setPollInterval(Duration.ofMillis(50));
+        // 会话 1 有三条消息，会话 2 为空，会话 3 两条，会话 4 一条
+        conversation(1, 11, 12, 13);
+        conversation(2);
+        conversation(3, 31, 32);
+        conversation(4, 41);
+        when(chatArchiveStore.readPage(eq(5L), anyLong(), anyLong(), anyInt(), any())).thenAnswer(invocation -> {
+            long afterConversation = invocation.getArgument(1);
+            long afterMessage = invocation.getArgument(2);
+            int limit = invocation.getArgument(3);
+            Consumer<ChatArchiveStore.ArchiveRow> consumer = invocation.getArgument(4);
+            List<ChatArchiveStore.ArchiveRow> page = rows.stream()
+                    .filter(row -> row.conversationId() > afterConversation
+                            || (row.conversationId() == afterConversation && row.messageId() != null
+                            && row.messageId() > afterMessage))
+                    .limit(limit)
+                    .toList();
+            page.forEach(consumer);
+            return page.size();
+        });
+        when(exportJobRepository.findExpired(any(), any())).thenReturn(List.of());
+        when(exportJobRepository.claim(eq(JOB_ID), anyString(), any(), any())).thenReturn(1);
+        exportService = new ExportService(exportJobRepository, chatArchiveStore, objectMapper, properties,
+                new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        exportService.shutdown();
+    }
+
+    @Test
+    void secondExportIsRejectedWhileOneIsActive() {
+        when(exportJobRepository.existsByUserAndStatusIn(eq(user), any())).thenReturn(true);
+
+        assertThatThrownBy(() -> exportService.requestExport(user, ExportJob.Format.GZIP))
+                .isInstanceOfSatisfying(ResponseStatusException.class, e -> {
+                    assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+                    assertThat(e.getReason()).isEqualTo("export_in_progress");
+                });
+        verify(exportJobRepository, never()).save(any());
+    }
+
+    @Test
+    void concurrentRequestLosingTheUniqueKeyIsRejected() {
+        // 两个请求都通过了快速检查，后写入的被 uk_export_jobs_active_user 拦下
+        when(exportJobRepository.existsByUserAndStatusIn(eq(user), any())).thenReturn(false);
+        when(exportJobRepository.save(any())).thenThrow(new DataIntegrityViolationException("uk_export_jobs_active_user"));
+
+        assertThatThrownBy(() -> exportService.requestExport(user, ExportJob.Format.NDJSON))
+                .isInstanceOfSatisfying(ResponseStatusException.class, e -> {
+                    assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+                    assertThat(e.getReason()).isEqualTo("export_in_progress");
+                });
+    }
+
+    @Test
+    void requestedExportStartsPending() {
+        when(exportJobRepository.existsByUserAndStatusIn(eq(user), any())).thenReturn(false);
+        when(exportJobRepository.save(any())).thenAnswer(invocation -> {
+            ExportJob job = invocation.getArgument(0);
+            job.setId(JOB_ID);
+            return job;
+        });
+
+        ExportResponse response = exportService.requestExport(user, ExportJob.Format.GZIP);
+
+        assertThat(response.status()).isEqualTo(ExportJob.Status.PENDING);
+        assertThat(response.downloadUrl()).isNull();
+    }
+
+    @Test
+    void gzipExportWritesOneMemberPerPageAndDecodesToTheFullArchive() throws Exception {
+        ExportJob job = job(0, 0, 0, 0, 0);
+        acceptCheckpoints(Integer.MAX_VALUE);
+
+        runToCompletion(job);
+
+        byte[] file = Files.readAllBytes(file());
+        // 7 行、每页 2 行，共 4 页，每页结束时的检查点都是下一个 gzip member 的起点
+        assertThat(checkpoints).hasSize(4);
+        assertThat(checkpoints.get(3)[2]).isEqualTo(file.length);
+        assertThat(gzipMagicAt(file, 0)).isTrue();
+        for (int i = 0; i < 3; i++) {
+            assertThat(gzipMagicAt(file, (int) checkpoints.get(i)[2])).as("member " + (i + 1)).isTrue();
+        }
+        List<JsonNode> lines = decode(file);
+        assertThat(lines).extracting(line -> line.get("type").asText() + ":"
+                        + (line.has("conversationId") ? line.get("id").asLong() : "c" + line.get("id").asLong()))
+                .containsExactly("conversation:c1", "message:11", "message:12", "message:13", "conversation:c2",
+                        "conversation:c3", "message:31", "message:32", "conversation:c4", "message:41");
+        verify(exportJobRepository).finish(eq(JOB_ID), anyString(), eq(ExportJob.Status.COMPLETED), isNull(), any(), any());
+        assertThat(checkpoints.get(3)).containsExactly(4, 41, file.length, 4, 6);
+    }
+
+    @Test
+    void takenOverExportResumesFromItsCheckpointWithoutDuplicates() throws Exception {
+        acceptCheckpoints(Integer.MAX_VALUE);
+        runToCompletion(job(0, 0, 0, 0, 0));
+        List<JsonNode> expected = decode(Files.readAllBytes(file()));
+        exportService.shutdown();
+        Files.delete(file());
+        checkpoints.clear();
+
+        // 第二页的检查点被拒绝：文件已写到第二页末尾，但检查点仍停在第一页
+        acceptCheckpoints(1);
+        exportService = newService();
+        when(exportJobRepository.findClaimable(any(), any())).thenReturn(List.of(JOB_ID), List.of());
+        when(exportJobRepository.findById(JOB_ID)).thenReturn(Optional.of(job(0, 0, 0, 0, 0)));
+        exportService.start();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> checkpoints.size() == 2);
+        exportService.shutdown();
+        long[] first = checkpoints.get(0);
+        assertThat(Files.size(file())).isGreaterThan(first[2]);
+        assertThat(first).containsExactly(1, 12, first[2], 1, 2);
+
+        checkpoints.clear();
+        acceptCheckpoints(Integer.MAX_VALUE);
+        exportService = newService();
+        runToCompletion(job(first[0], first[1], first[2], first[3], first[4]));
+
+        assertThat(decode(Files.readAllBytes(file()))).isEqualTo(expected);
+        assertThat(checkpoints.get(checkpoints.size() - 1)).containsExactly(4, 41, Files.size(file()), 4, 6);
+    }
+
+    private void runToCompletion(ExportJob job) throws IOException {
+        List<String> finished = new CopyOnWriteArrayList<>();
+        when(exportJobRepository.finish(eq(JOB_ID), anyString(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            finished.add(String.valueOf(invocation.<Object>getArgument(2)));
+            return 1;
+        });
+        when(exportJobRepository.findClaimable(any(), any())).thenReturn(List.of(JOB_ID), List.of());
+        when(exportJobRepository.findById(JOB_ID)).thenReturn(Optional.of(job));
+        exportService.start();
+        await().atMost(5, TimeUnit.SECONDS).until(() -> !finished.isEmpty());
+        assertThat(finished).containsExactly("COMPLETED");
+    }
+
+    // 前 accepted 次检查点成功，之后返回 0 表示任务已被其他实例接手
+    private void acceptCheckpoints(int accepted) {
+        when(exportJobRepository.checkpoint(eq(JOB_ID), anyString(), any(), anyLong(), anyLong(), anyLong(),
+                anyLong(), anyLong())).thenAnswer(invocation -> {
+                    checkpoints.add(new long[] {invocation.getArgument(3), invocation.getArgument(4),
+                            invocation.getArgument(5), invocation.getArgument(6), invocation.getArgument(7)});
+                    return checkpoints.size() <= accepted ? 1 : 0;
+                });
+    }
+
+    private ExportService newService() {
+        return new ExportService(exportJobRepository, chatArchiveStore, objectMapper, properties,
+                new SimpleMeterRegistry());
+    }
+
+    private ExportJob job(long conversationId, long messageId, long bytes, long conversations, long messages) {
+        return ExportJob.builder()
+                .id(JOB_ID)
+                .user(user)
+                .format(ExportJob.Format.GZIP)
+                .status(ExportJob.Status.RUNNING)
+                .cursorConversationId(conversationId)
+                .cursorMessageId(messageId)
+                .bytesWritten(bytes)
+                .exportedConversations(conversations)
+                .exportedMessages(messages)
+                .build();
+    }
+
+    private Path file() {
+        return directory.resolve(ChatArchiveWriter.fileName(JOB_ID, ExportJob.Format.GZIP));
+    }
+
+    private void conversation(long id, long... messageIds) {
+        LocalDateTime created = LocalDateTime.of(2026, 1, 1, 9, 0);
+        if (messageIds.length == 0) {
+            rows.add(new ChatArchiveStore.ArchiveRow(id, "conversation " + id, created,
+                    null, null, null, null, null, null));
+        }
+        for (long messageId : messageIds) {
+            rows.add(new ChatArchiveStore.ArchiveRow(id, "conversation " + id, created,
+                    messageId, "event-" + messageId, "USER", "message \"" + messageId + "\"\n", 3, created));
+        }
+    }
+
+    private static boolean gzipMagicAt(byte[] file, int offset) {
+        return (file[offset] & 0xFF) == 0x1F && (file[offset + 1] & 0xFF) == 0x8B;
+    }
+
+    // GZIPInputStream 会依次解压拼接在一起的多个 member
+    private List<JsonNode> decode(byte[] file) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(file))) {
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            List<JsonNode> lines = new ArrayList<>();
+            for (String line : text.split("\n")) {
+                lines.add(objectMapper.readTree(line));
+            }
+            return lines;
+        }
+    }
+}
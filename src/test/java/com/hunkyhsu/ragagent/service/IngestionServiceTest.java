@@ -0,0 +1,254 @@
+package com.hunkyhsu.ragagent.service;
+
+import com.hunkyhsu.ragagent.config.IngestionProperties;
+import com.hunkyhsu.ragagent.config.RetrievalProperties;
+import com.hunkyhsu.ragagent.entity.KnowledgeDocument;
+import com.hunkyhsu.ragagent.entity.User;
+import com.hunkyhsu.ragagent.ingestion.ChunkStore;
+import com.hunkyhsu.ragagent.ingestion.LocalHashEmbedder;
+import com.hunkyhsu.ragagent.ingestion.PlainTextExtractor;
+import com.hunkyhsu.ragagent.ingestion.StructureAwareChunker;
+import com.hunkyhsu.ragagent.ingestion.TextChunk;
+import com.hunkyhsu.ragagent.repository.KnowledgeDocumentRepository;
+import com.hunkyhsu.ragagent.retrieval.Bm25Index;
+import com.hunkyhsu.ragagent.retrieval.ChunkScore;
+import com.hunkyhsu.ragagent.retrieval.IndexVersions;
+import com.hunkyhsu.ragagent.retrieval.OrgTagBitmaps;
+import com.hunkyhsu.ragagent.retrieval.OrgTagRegistry;
+import com.hunkyhsu.ragagent.vector.VectorIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 重新导入的片段比对、版本切换、首次导入的条件完成、导入和切换失败时的清理，以及停滞导入的回收。
+ * 数据库访问用桩代替，内存中的关键词索引和标签位图使用真实实现，以便检查切换前后的可见性
+ */
+class IngestionServiceTest {
+
+    private static final long DOCUMENT_ID = 7L;
+    private static final long NEW_DOCUMENT_ID = 9L;
+    private static final String TAG = "acme";
+
+    private final KnowledgeDocumentRepository documentRepository = mock(KnowledgeDocumentRepository.class);
+    private final ChunkStore chunkStore = mock(ChunkStore.class);
+    private final StructureAwareChunker chunker = mock(StructureAwareChunker.class);
+    private final VectorIndex vectorIndex = mock(VectorIndex.class);
+    private final Bm25Index bm25Index = new Bm25Index(new RetrievalProperties());
+    private final OrgTagRegistry orgTagRegistry = new OrgTagRegistry();
+    private final OrgTagBitmaps orgTagBitmaps = new OrgTagBitmaps();
+    private final IndexVersions indexVersions = new IndexVersions();
+    private final User user = User.builder().id(1L).orgTags(TAG).build();
+    private IngestionService service;
+    private int tagId;
+
+    @BeforeEach
+    void setUp() {
+        IngestionProperties properties = new IngestionProperties();
+        properties.setParseWorkers(1);
+        properties.setEmbedWorkers(1);
+        properties.setLocalDimensions(16);
+        service = new IngestionService(documentRepository, chunkStore, chunker, new LocalHashEmbedder(properties),
+                List.of(new PlainTextExtractor()), vectorIndex, bm25Index, orgTagRegistry, orgTagBitmaps,
+                indexVersions, properties, new SimpleMeterRegistry());
+        tagId = orgTagRegistry.intern(TAG);
+        // 当前版本：alpha(1) beta(2) gamma(3)
+        index(1, "alpha");
+        index(2, "beta");
+        index(3, "gamma");
+        when(documentRepository.findById(DOCUMENT_ID)).thenReturn(Optional.of(KnowledgeDocument.builder()
+                .id(DOCUMENT_ID)
+                .orgTag(TAG)
+                .title("handbook")
+                .mediaType(KnowledgeDocument.MediaType.TEXT)
+                .contentHash("old")
+                .version(1)
+                .status(KnowledgeDocument.Status.READY)
+                .build()));
+        when(documentRepository.claimReindex(eq(DOCUMENT_ID), eq(1), anyCollection(), any())).thenReturn(1);
+        when(chunkStore.findVisibleChunks(DOCUMENT_ID)).thenReturn(List.of(
+                new ChunkStore.ChunkHash(1L, 0, "h-alpha"),
+                new ChunkStore.ChunkHash(2L, 1, "h-beta"),
+                new ChunkStore.ChunkHash(3L, 2, "h-gamma")));
+        when(chunkStore.findEmbeddings(anyString(), anyCollection())).thenReturn(Map.of());
+        // 新版本：gamma 移到最前，beta 被 delta 替换
+        when(chunker.chunk(anyList())).thenReturn(List.of(chunk(0, "gamma"), chunk(1, "alpha"), chunk(2, "delta")));
+        when(chunkStore.insertChunks(eq(DOCUMENT_ID), eq(2), anyList())).thenReturn(List.of(10L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void reindexEmbedsOnlyChangedChunksAndSwitchesVisibilityAtPublish() {
+        when(chunkStore.publishVersion(anyLong(), anyInt(), anyInt(), anyString(), anyInt(), anyCollection(), anyMap()))
+                .thenReturn(true);
+
+        service.reindex(user, DOCUMENT_ID, "new content");
+
+        verify(chunkStore, timeout(5_000)).publishVersion(eq(DOCUMENT_ID), eq(1), eq(2), anyString(), eq(3),
+                eq(List.of(2L)), eq(Map.of(3L, 0, 1L, 1)));
+        verify(chunkStore).insertChunks(DOCUMENT_ID, 2, List.of(chunk(2, "delta")));
+        verify(vectorIndex).add(eq(10L), any());
+        await().atMost(Duration.ofSeconds(5)).until(() -> visible().contains(10));
+        assertThat(visible().toArray()).containsExactly(1, 3, 10);
+        assertThat(search("beta")).isEmpty();
+        assertThat(search("delta")).containsExactly(10);
+        verify(vectorIndex, timeout(5_000)).delete(List.of(2L));
+    }
+
+    @Test
+    void refusedPublishDropsStagedChunksAndKeepsTheOldVersion() {
+        // 文档在导入途中被判定停滞并标记为失败，切换的条件更新不再命中
+        when(chunkStore.publishVersion(anyLong(), anyInt(), anyInt(), anyString(), anyInt(), anyCollection(), anyMap()))
+                .thenReturn(false);
+
+        service.reindex(user, DOCUMENT_ID, "new content");
+
+        verify(documentRepository, timeout(5_000)).updateStatus(eq(DOCUMENT_ID), eq(KnowledgeDocument.Status.FAILED),
+                contains("during reindex"));
+        verify(chunkStore).deleteStagedChunks(DOCUMENT_ID);
+        verify(vectorIndex).delete(List.of(10L));
+        assertThat(visible().toArray()).containsExactly(1, 2, 3);
+        assertThat(search("delta")).isEmpty();
+        assertThat(search("beta")).containsExactly(2);
+    }
+
+    @Test
+    void unchangedContentIsNotReprocessed() throws NoSuchAlgorithmException {
+        documentRepository.findById(DOCUMENT_ID).orElseThrow().setContentHash(sha256("same content"));
+
+        service.reindex(user, DOCUMENT_ID, "same content");
+
+        verify(documentRepository, never()).claimReindex(anyLong(), anyInt(), anyCollection(), any());
+    }
+
+    @Test
+    void firstIngestBecomesReadyOnlyWhileStillProcessing() {
+        when(documentRepository.transitionStatus(NEW_DOCUMENT_ID, KnowledgeDocument.Status.PROCESSING,
+                KnowledgeDocument.Status.READY)).thenReturn(1);
+
+        register();
+
+        verify(documentRepository, timeout(5_000)).transitionStatus(NEW_DOCUMENT_ID,
+                KnowledgeDocument.Status.PROCESSING, KnowledgeDocument.Status.READY);
+        verify(vectorIndex).add(eq(22L), any());
+        verify(chunkStore, never()).deleteChunks(anyLong(), anyInt());
+        assertThat(visible().toArray()).containsExactly(1, 2, 3, 20, 21, 22);
+    }
+
+    @Test
+    void firstIngestFinishingAfterTheSweepFailedItIsDropped() {
+        // 停滞清理已把文档标记为 FAILED，条件更新不再命中
+        when(documentRepository.transitionStatus(NEW_DOCUMENT_ID, KnowledgeDocument.Status.PROCESSING,
+                KnowledgeDocument.Status.READY)).thenReturn(0);
+
+        register();
+
+        verify(chunkStore, timeout(5_000)).deleteChunks(NEW_DOCUMENT_ID, 1);
+        verify(vectorIndex).delete(List.of(20L, 21L, 22L));
+        verify(documentRepository, never()).updateStatus(eq(NEW_DOCUMENT_ID), eq(KnowledgeDocument.Status.READY), any());
+        assertThat(visible().toArray()).containsExactly(1, 2, 3);
+        assertThat(bm25Index.search("delta", RoaringBitmap.bitmapOf(20, 21, 22), 5)).isEmpty();
+    }
+
+    @Test
+    void failedFirstIngestWithdrawsItsChunksFromEveryIndex() {
+        doThrow(new IllegalStateException("embedding store unavailable"))
+                .when(chunkStore).insertEmbeddings(anyString(), anyList(), anyList());
+
+        register();
+
+        verify(documentRepository, timeout(5_000)).updateStatus(eq(NEW_DOCUMENT_ID),
+                eq(KnowledgeDocument.Status.FAILED), contains("embedding store unavailable"));
+        verify(chunkStore).deleteChunks(NEW_DOCUMENT_ID, 1);
+        verify(vectorIndex).delete(List.of(20L, 21L, 22L));
+        assertThat(visible().toArray()).containsExactly(1, 2, 3);
+        RoaringBitmap all = RoaringBitmap.bitmapOf(20, 21, 22);
+        assertThat(bm25Index.search("delta", all, 5)).isEmpty();
+        assertThat(bm25Index.search("alpha", all, 5)).isEmpty();
+    }
+
+    @Test
+    void stalledDocumentsAreFailedAndTheirStagedChunksDropped() {
+        bm25Index.add(10, "delta");
+        when(documentRepository.findStalled(anyLong())).thenReturn(List.of(DOCUMENT_ID, 8L));
+        when(documentRepository.failStalled(eq(DOCUMENT_ID), anyLong(), anyString())).thenReturn(1);
+        // 8 在查询和标记之间恢复了进度
+        when(documentRepository.failStalled(eq(8L), anyLong(), anyString())).thenReturn(0);
+        when(chunkStore.findStagedChunkIds(DOCUMENT_ID)).thenReturn(List.of(10L));
+
+        assertThat(service.recoverStalled()).isEqualTo(1);
+
+        verify(chunkStore).deleteStagedChunks(DOCUMENT_ID);
+        verify(chunkStore, never()).deleteStagedChunks(8L);
+        verify(vectorIndex).delete(List.of(10L));
+        assertThat(bm25Index.search("delta", RoaringBitmap.bitmapOf(10), 5)).isEmpty();
+    }
+
+    // 首次导入一篇新文档，片段为 gamma(20) alpha(21) delta(22)
+    private void register() {
+        when(documentRepository.save(any())).thenAnswer(invocation -> {
+            KnowledgeDocument document = invocation.getArgument(0);
+            document.setId(NEW_DOCUMENT_ID);
+            return document;
+        });
+        when(chunkStore.insertChunks(eq(NEW_DOCUMENT_ID), eq(1), anyList())).thenReturn(List.of(20L, 21L, 22L));
+        service.register(user, "notes", KnowledgeDocument.MediaType.TEXT, TAG, "new content");
+    }
+
+    private void index(int chunkId, String text) {
+        orgTagBitmaps.add(tagId, chunkId);
+        bm25Index.add(chunkId, text);
+    }
+
+    private RoaringBitmap visible() {
+        return orgTagBitmaps.visible(new int[] {tagId});
+    }
+
+    private List<Integer> search(String query) {
+        RoaringBitmap all = visible();
+        all.add(10);
+        return bm25Index.search(query, all, 5).stream().map(ChunkScore::chunkId).toList();
+    }
+
+    private static TextChunk chunk(int ordinal, String text) {
+        return new TextChunk(ordinal, "", text, 1, "h-" + text);
+    }
+
+    private static String sha256(String content) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
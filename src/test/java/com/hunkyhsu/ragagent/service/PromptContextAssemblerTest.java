@@ -0,0 +1,198 @@
+package com.hunkyhsu.ragagent.service;
+
+import com.hunkyhsu.ragagent.config.AiProperties;
+import com.hunkyhsu.ragagent.entity.Conversation;
+import com.hunkyhsu.ragagent.entity.ConversationSummary;
+import com.hunkyhsu.ragagent.entity.Message;
+import com.hunkyhsu.ragagent.event.ChatEvent;
+import com.hunkyhsu.ragagent.provider.PromptMessage;
+import com.hunkyhsu.ragagent.repository.ConversationSummaryRepository;
+import com.hunkyhsu.ragagent.repository.MessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 窗口预算为 30 token、每条消息 10 token：验证冷启动和增量推进时的窗口滑动与摘要合并、
+ * 待落库条目的替换、过期和预算，以及缓存条目在持锁期间被淘汰时不会重复合并摘要
+ */
+class PromptContextAssemblerTest {
+
+    private static final String MODEL = "model";
+
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final ConversationSummaryRepository summaryRepository = mock(ConversationSummaryRepository.class);
+    private final ConversationSummarizer summarizer = mock(ConversationSummarizer.class);
+    private final AtomicReference<ConversationSummary> savedSummary = new AtomicReference<>();
+    private final Conversation conversation = Conversation.builder().id(1L).build();
+    private final List<Message> messages = new ArrayList<>();
+    private final AiProperties aiProperties = new AiProperties();
+    private PromptContextAssembler assembler;
+
+    @BeforeEach
+    void setUp() {
+        aiProperties.getContext().setSummaryBudgetTokens(100);
+        aiProperties.getContext().setDefaultBudgetTokens(130);
+        assembler = new PromptContextAssembler(messageRepository, summaryRepository, summarizer,
+                text -> text.length(), aiProperties);
+        when(summaryRepository.findById(1L)).thenAnswer(invocation -> Optional.ofNullable(savedSummary.get()));
+        when(summaryRepository.save(any())).thenAnswer(invocation -> {
+            savedSummary.set(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        when(summarizer.fold(anyString(), anyList(), anyInt())).thenAnswer(invocation -> {
+            List<PromptMessage> evicted = invocation.getArgument(1);
+            return invocation.getArgument(0) + evicted.stream().map(PromptMessage::content).reduce("", String::concat);
+        });
+        when(messageRepository.findByConversationAndIdGreaterThanOrderByIdDesc(eq(conversation), anyLong(), any()))
+                .thenAnswer(invocation -> {
+                    long after = invocation.getArgument(1);
+                    return messages.stream().filter(message -> message.getId() > after)
+                            .sorted((a, b) -> Long.compare(b.getId(), a.getId())).toList();
+                });
+        when(messageRepository.findByConversationAndIdGreaterThanAndIdLessThanOrderByIdAsc(eq(conversation), anyLong(),
+                anyLong(), any())).thenAnswer(invocation -> {
+                    long after = invocation.getArgument(1);
+                    long before = invocation.getArgument(2);
+                    return messages.stream().filter(message -> message.getId() > after && message.getId() < before)
+                            .toList();
+                });
+        when(messageRepository.findByConversationAndIdGreaterThanOrderByIdAsc(eq(conversation), anyLong()))
+                .thenAnswer(invocation -> {
+                    long after = invocation.getArgument(1);
+                    return messages.stream().filter(message -> message.getId() > after).toList();
+                });
+    }
+
+    @Test
+    void windowKeepsTheNewestMessagesAndFoldsOlderOnesIntoTheSummary() {
+        persist(1, 2, 3, 4, 5);
+
+        assertThat(contents(assembler.assemble(conversation, MODEL)))
+                .containsExactly("Summary of the earlier conversation:\nm1m2", "m3", "m4", "m5");
+        assertThat(savedSummary.get().getCoveredUntilMessageId()).isEqualTo(2L);
+
+        persist(6);
+        assertThat(contents(assembler.assemble(conversation, MODEL)))
+                .containsExactly("Summary of the earlier conversation:\nm1m2m3", "m4", "m5", "m6");
+        assertThat(savedSummary.get().getCoveredUntilMessageId()).isEqualTo(3L);
+    }
+
+    @Test
+    void pendingEntriesAreReplacedByTheirRowsAndCountTowardTheBudget() {
+        persist(1, 2);
+        assembler.assemble(conversation, MODEL);
+
+        ChatEvent answer = event("m3", 10);
+        assembler.record(answer);
+        assertThat(contents(assembler.assemble(conversation, MODEL))).containsExactly("m1", "m2", "m3");
+
+        // 待落库条目占用预算，窗口头部随之滑出
+        assembler.record(event("m4", 10));
+        assertThat(contents(assembler.assemble(conversation, MODEL)))
+                .containsExactly("Summary of the earlier conversation:\nm1", "m2", "m3", "m4");
+
+        // 落库后的行取代同一 messageId 的待落库条目，不会出现两次
+        messages.add(message(3, answer.eventId()));
+        assertThat(contents(assembler.assemble(conversation, MODEL)))
+                .containsExactly("Summary of the earlier conversation:\nm1", "m2", "m3", "m4");
+    }
+
+    @Test
+    void pendingEntriesThatNeverArriveExpire() throws InterruptedException {
+        aiProperties.getContext().setPendingTtl(Duration.ofMillis(100));
+        persist(1);
+        assembler.assemble(conversation, MODEL);
+        assembler.record(event("lost", 10));
+        assertThat(contents(assembler.assemble(conversation, MODEL))).containsExactly("m1", "lost");
+
+        Thread.sleep(200);
+
+        assertThat(contents(assembler.assemble(conversation, MODEL))).containsExactly("m1");
+    }
+
+    @Test
+    void pendingEntriesLargerThanTheBudgetAreLeftOutOfThePrompt() {
+        persist(1);
+        assembler.assemble(conversation, MODEL);
+        assembler.record(event("too long", 40));
+
+        assertThat(contents(assembler.assemble(conversation, MODEL)))
+                .containsExactly("Summary of the earlier conversation:\nm1");
+    }
+
+    @Test
+    void evictingTheEntryWhileItsLockIsHeldDoesNotFoldTwice() throws Exception {
+        persist(1, 2, 3);
+        assembler.assemble(conversation, MODEL);
+        persist(4);
+        CountDownLatch folding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(summarizer.fold(anyString(), anyList(), anyInt())).thenAnswer(invocation -> {
+            folding.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return "s1";
+        });
+
+        CompletableFuture<List<PromptMessage>> first =
+                CompletableFuture.supplyAsync(() -> assembler.assemble(conversation, MODEL));
+        assertThat(folding.await(5, TimeUnit.SECONDS)).isTrue();
+        // 第一个请求还在合并摘要时条目被淘汰，第二个请求必须等待同一把锁，之后从已保存的摘要重新组装
+        assembler.invalidate(1L);
+        CompletableFuture<List<PromptMessage>> second =
+                CompletableFuture.supplyAsync(() -> assembler.assemble(conversation, MODEL));
+        Thread.sleep(50);
+        assertThat(second).isNotDone();
+        release.countDown();
+
+        assertThat(contents(first.get(5, TimeUnit.SECONDS))).containsExactly(
+                "Summary of the earlier conversation:\ns1", "m2", "m3", "m4");
+        assertThat(contents(second.get(5, TimeUnit.SECONDS))).containsExactly(
+                "Summary of the earlier conversation:\ns1", "m2", "m3", "m4");
+        verify(summarizer, times(1)).fold(anyString(), anyList(), anyInt());
+    }
+
+    private void persist(int... ids) {
+        for (int id : ids) {
+            messages.add(message(id, "message-" + id));
+        }
+    }
+
+    private static Message message(long id, String messageId) {
+        return Message.builder()
+                .id(id)
+                .messageId(messageId)
+                .role(Message.Role.USER)
+                .content("m" + id)
+                .tokenCount(10)
+                .build();
+    }
+
+    private static ChatEvent event(String content, int tokens) {
+        return ChatEvent.message(1L, 1L, Message.Role.ASSISTANT, content, tokens);
+    }
+
+    private static List<String> contents(List<PromptMessage> history) {
+        return history.stream().map(PromptMessage::content).toList();
+    }
+}
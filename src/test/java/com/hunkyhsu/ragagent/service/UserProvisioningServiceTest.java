@@ -0,0 +1,66 @@
+package com.hunkyhsu.ragagent.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hunkyhsu.ragagent.config.ProvisioningProperties;
+import com.hunkyhsu.ragagent.dto.ProvisionUserRequest;
+import com.hunkyhsu.ragagent.provisioning.UserBatchStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 批量开户结果流的超时随需要哈希的行数增长，预先带入哈希的行不计入
+ */
+class UserProvisioningServiceTest {
+
+    private static final String HASH = "$2a$10$" + "a".repeat(53);
+
+    private final ProvisioningProperties properties = new ProvisioningProperties();
+    private UserProvisioningService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void timeoutGrowsWithRowsThatNeedHashing() {
+        properties.setHashWorkers(4);
+        service = service();
+
+        // 5 万行、4 个线程、每次 250ms 留一倍余量：12500 轮 × 500ms
+        Duration timeout = service.timeoutFor(Collections.nCopies(50_000, user("secret-password", null)));
+
+        assertThat(timeout).isEqualTo(Duration.ofMillis(12_500L * 500));
+        assertThat(timeout).isGreaterThan(properties.getTimeout());
+    }
+
+    @Test
+    void preHashedRowsAndSmallBatchesKeepTheConfiguredFloor() {
+        properties.setHashWorkers(4);
+        service = service();
+
+        assertThat(service.timeoutFor(Collections.nCopies(50_000, user(null, HASH)))).isEqualTo(properties.getTimeout());
+        assertThat(service.timeoutFor(List.of(user("secret-password", null)))).isEqualTo(properties.getTimeout());
+    }
+
+    private UserProvisioningService service() {
+        return new UserProvisioningService(mock(UserBatchStore.class), mock(PasswordEncoder.class),
+                mock(Validator.class), new ObjectMapper(), properties, new SimpleMeterRegistry());
+    }
+
+    private static ProvisionUserRequest user(String password, String passwordHash) {
+        return new ProvisionUserRequest("user", password, passwordHash, "user@example.com", null);
+    }
+}
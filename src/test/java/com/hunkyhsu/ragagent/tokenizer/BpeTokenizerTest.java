@@ -0,0 +1,94 @@
+package com.hunkyhsu.ragagent.tokenizer;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 用一个小词表验证预分词和合并顺序：全部 256 个单字节的 rank 等于字节值，另加少量合并结果，
+ * 期望的 id 按 tiktoken 的合并规则手工推导
+ */
+class BpeTokenizerTest {
+
+    private static final String[] MERGES = {
+            "he", "ll", "hell", "hello", " w", "or", " wor", "'s", "  ", "é", "\n\n"
+    };
+
+    private static BpeTokenizer tokenizer;
+
+    @BeforeAll
+    static void loadVocabulary() throws IOException {
+        StringBuilder vocabulary = new StringBuilder();
+        for (int b = 0; b < 256; b++) {
+            line(vocabulary, new byte[] {(byte) b}, b);
+        }
+        for (int i = 0; i < MERGES.length; i++) {
+            line(vocabulary, MERGES[i].getBytes(StandardCharsets.UTF_8), 256 + i);
+        }
+        // 空行被跳过
+        vocabulary.append('\n');
+        tokenizer = BpeTokenizer.load(new ByteArrayInputStream(vocabulary.toString().getBytes(StandardCharsets.US_ASCII)),
+                BpeEncoding.CL100K_BASE);
+    }
+
+    @Test
+    void wholePieceInTheVocabularyIsASingleToken() {
+        assertThat(tokenizer.vocabularySize()).isEqualTo(256 + MERGES.length);
+        assertThat(tokenizer.encode("hello")).containsExactly(259);
+    }
+
+    @Test
+    void lowestRankedPairIsMergedFirst() {
+        // " world"：先合并 " w"(260)，再 "or"(261)，最后 " wor"(262)，"l" 和 "d" 保持单字节
+        assertThat(tokenizer.encode("hello world")).containsExactly(259, 262, 'l', 'd');
+        // "hel" 中 "he" 先合并，"hel" 不在词表中
+        assertThat(tokenizer.encode("hel")).containsExactly(256, 'l');
+    }
+
+    @Test
+    void contractionsAreSplitOffCaseInsensitively() {
+        assertThat(tokenizer.encode("he's")).containsExactly(256, 263);
+        assertThat(tokenizer.encode("he'S")).containsExactly(256, '\'', 'S');
+    }
+
+    @Test
+    void whitespaceRunsLeaveTheLastSpaceToTheNextWord() {
+        assertThat(tokenizer.encode("a   b")).containsExactly('a', 264, ' ', 'b');
+        assertThat(tokenizer.encode("a\n\nb")).containsExactly('a', 266, 'b');
+    }
+
+    @Test
+    void multiByteCharactersAreEncodedAsUtf8() {
+        assertThat(tokenizer.encode("café")).containsExactly('c', 'a', 'f', 265);
+        assertThat(tokenizer.encode("中")).containsExactly(0xE4, 0xB8, 0xAD);
+        // 代理对按一个码点编码为 4 个字节
+        assertThat(tokenizer.encode("😀")).containsExactly(0xF0, 0x9F, 0x98, 0x80);
+    }
+
+    @Test
+    void countMatchesTheEncodedLength() {
+        for (String text : new String[] {"hello world", "he's", "a   b", "café 中文 😀", "x".repeat(500)}) {
+            assertThat(tokenizer.count(text)).as(text).isEqualTo(tokenizer.encode(text).length);
+        }
+        assertThat(tokenizer.count(null)).isZero();
+        assertThat(tokenizer.encode("")).isEmpty();
+    }
+
+    @Test
+    void malformedVocabularyLineIsRejected() {
+        assertThatThrownBy(() -> BpeTokenizer.load(
+                new ByteArrayInputStream("aGVsbG8=\n".getBytes(StandardCharsets.US_ASCII)), BpeEncoding.CL100K_BASE))
+                .isInstanceOf(IOException.class);
+    }
+
+    private static void line(StringBuilder vocabulary, byte[] token, int rank) {
+        vocabulary.append(Base64.getEncoder().encodeToString(token)).append(' ').append(rank).append('\n');
+    }
+}
@@ -0,0 +1,195 @@
+package com.hunkyhsu.ragagent.tool;
+
+import com.hunkyhsu.ragagent.config.ToolProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 用可控的桩工具验证截止时间、超时取消（有副作用的工具不中断）、线程池拒绝、失败隔离和结果缓存
+ */
+class ToolExecutorTest {
+
+    private static final ToolContext CONTEXT = new ToolContext(null, 7L);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ToolExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void slowCallTimesOutAtTheTurnBudgetAndIsInterrupted() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Tool slow = tool("slow", Duration.ofSeconds(30), false, false, call -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return "late";
+        });
+        Tool fast = tool("fast", Duration.ofSeconds(30), false, false, call -> "done");
+        executor = executor(4, 16, slow, fast);
+
+        long started = System.nanoTime();
+        List<ToolResult> results = executor.executeAll(List.of(call("slow"), call("fast")), CONTEXT,
+                Duration.ofMillis(200));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertThat(results).extracting(ToolResult::outcome)
+                .containsExactly(ToolResult.Outcome.TIMEOUT, ToolResult.Outcome.OK);
+        assertThat(results.get(1).content()).isEqualTo("done");
+        assertThat(elapsedMs).isBetween(150L, 2_000L);
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void toolTimeoutShorterThanTheBudgetWins() {
+        Tool slow = tool("slow", Duration.ofMillis(100), false, false, call -> {
+            release.await();
+            return "late";
+        });
+        executor = executor(4, 16, slow);
+
+        long started = System.nanoTime();
+        List<ToolResult> results = executor.executeAll(List.of(call("slow")), CONTEXT, Duration.ofSeconds(10));
+
+        assertThat(results.get(0).outcome()).isEqualTo(ToolResult.Outcome.TIMEOUT);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)).isLessThan(2_000L);
+    }
+
+    @Test
+    void timedOutToolWithSideEffectsIsLeftToFinish() throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicInteger interruptions = new AtomicInteger();
+        Tool write = tool("write", Duration.ofSeconds(30), true, false, call -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interruptions.incrementAndGet();
+                throw e;
+            }
+            finished.countDown();
+            return "written";
+        });
+        executor = executor(4, 16, write);
+
+        List<ToolResult> results = executor.executeAll(List.of(call("write")), CONTEXT, Duration.ofMillis(100));
+
+        assertThat(results.get(0).outcome()).isEqualTo(ToolResult.Outcome.TIMEOUT);
+        release.countDown();
+        assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(interruptions).hasValue(0);
+    }
+
+    @Test
+    void callsBeyondTheQueueAreRejectedWithoutRunningOnTheCaller() {
+        AtomicInteger executions = new AtomicInteger();
+        Tool blocking = tool("blocking", Duration.ofSeconds(30), false, false, call -> {
+            executions.incrementAndGet();
+            release.await();
+            return "ok";
+        });
+        // 一个工作线程加一个队列位置，第三个调用被拒绝
+        executor = executor(1, 1, blocking);
+
+        List<ToolResult> results = executor.executeAll(List.of(call("blocking"), call("blocking"), call("blocking")),
+                CONTEXT, Duration.ofMillis(200));
+
+        assertThat(results).extracting(ToolResult::outcome).containsExactly(ToolResult.Outcome.TIMEOUT,
+                ToolResult.Outcome.TIMEOUT, ToolResult.Outcome.REJECTED);
+        assertThat(executions.get()).isLessThanOrEqualTo(1);
+        assertThat(meterRegistry.get("tool.calls").tag("tool", "blocking").tag("outcome", "rejected").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void failureAndUnknownToolDoNotAffectOtherCalls() {
+        Tool broken = tool("broken", Duration.ofSeconds(5), false, false, call -> {
+            throw new IllegalArgumentException("missing argument: query");
+        });
+        Tool fine = tool("fine", Duration.ofSeconds(5), false, false, call -> "fine");
+        executor = executor(4, 16, broken, fine);
+
+        List<ToolResult> results = executor.executeAll(List.of(call("broken"), call("missing"), call("fine")),
+                CONTEXT, Duration.ofSeconds(5));
+
+        assertThat(results).extracting(ToolResult::outcome).containsExactly(ToolResult.Outcome.FAILED,
+                ToolResult.Outcome.UNKNOWN_TOOL, ToolResult.Outcome.OK);
+        assertThat(results.get(0).content()).isEqualTo("missing argument: query");
+    }
+
+    @Test
+    void onlyCacheableToolsAreServedFromTheConversationCache() {
+        AtomicInteger computed = new AtomicInteger();
+        AtomicInteger searched = new AtomicInteger();
+        Tool calculator = tool("calculator", Duration.ofSeconds(5), false, true,
+                call -> Integer.toString(computed.incrementAndGet()));
+        Tool search = tool("search", Duration.ofSeconds(5), false, false,
+                call -> Integer.toString(searched.incrementAndGet()));
+        executor = executor(4, 16, calculator, search);
+
+        executor.executeAll(List.of(call("calculator"), call("search")), CONTEXT, Duration.ofSeconds(5));
+        List<ToolResult> second = executor.executeAll(List.of(call("calculator"), call("search")), CONTEXT,
+                Duration.ofSeconds(5));
+
+        assertThat(second).extracting(ToolResult::cached).containsExactly(true, false);
+        assertThat(second).extracting(ToolResult::content).containsExactly("1", "2");
+        assertThat(computed).hasValue(1);
+    }
+
+    @Test
+    void cacheableToolWithSideEffectsIsRejectedAtStartup() {
+        Tool invalid = tool("invalid", Duration.ofSeconds(1), true, true, call -> "x");
+
+        assertThatThrownBy(() -> executor(1, 1, invalid)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private ToolExecutor executor(int workers, int queueCapacity, Tool... tools) {
+        ToolProperties properties = new ToolProperties();
+        properties.setWorkers(workers);
+        properties.setQueueCapacity(queueCapacity);
+        return new ToolExecutor(List.of(tools), new ToolResultCache(properties), properties, meterRegistry);
+    }
+
+    private static ToolCall call(String tool) {
+        return ToolCall.of(tool, "query", "q");
+    }
+
+    private static Tool tool(String name, Duration timeout, boolean sideEffects, boolean cacheable, Body body) {
+        ToolSpec spec = new ToolSpec(name, name, timeout, sideEffects, cacheable);
+        return new Tool() {
+            @Override
+            public ToolSpec spec() {
+                return spec;
+            }
+
+            @Override
+            public String execute(ToolCall call, ToolContext context) throws Exception {
+                return body.run(call);
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        String run(ToolCall call) throws Exception;
+    }
+}
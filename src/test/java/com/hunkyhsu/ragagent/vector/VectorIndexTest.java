@@ -0,0 +1,206 @@
+package com.hunkyhsu.ragagent.vector;
+
+import com.hunkyhsu.ragagent.config.VectorIndexProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * 在临时目录上验证索引的写入、落盘及其失败重试、合并、过滤检索、墓碑回收以及崩溃后的预写日志回放
+ */
+class VectorIndexTest {
+
+    private static final int DIMENSIONS = 16;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsInsertedVectorsAcrossFlushedAndMergedSegments() throws IOException {
+        float[][] vectors = randomVectors(1_000, 1);
+        try (VectorIndex index = VectorIndex.open(directory, DIMENSIONS, properties(200, 2))) {
+            addAll(index, vectors);
+            index.flush();
+            await().atMost(Duration.ofSeconds(30)).until(() -> index.segmentCount() == 1);
+
+            assertThat(index.size()).isEqualTo(vectors.length);
+            for (int id = 0; id < vectors.length; id += 10) {
+                assertThat(index.search(vectors[id], 1)).extracting(VectorHit::id).containsExactly((long) id);
+            }
+        }
+        assertThat(walFiles()).isEmpty();
+    }
+
+    @Test
+    void reopenMapsFlushedSegmentsWithoutRebuilding() throws IOException {
+        float[][] vectors = randomVectors(300, 2);
+        try (VectorIndex index = VectorIndex.open(directory, DIMENSIONS, properties(1_000, 4))) {
+            addAll(index, vectors);
+        }
+        try (VectorIndex reopened = VectorIndex.open(directory, DIMENSIONS, properties(1_000, 4))) {
+            assertThat(reopened.size()).isEqualTo(vectors.length);
+            assertThat(reopened.segmentCount()).isEqualTo(1);
+            assertThat(reopened.search(vectors[42], 1)).extracting(VectorHit::id).containsExactly(42L);
+        }
+    }
+
+    @Test
+    void replaysWriteAheadLogWhenMemtableWasNeverFlushed() throws IOException {
+        float[][] vectors = randomVectors(150, 3);
+        // 不调用 close，模拟进程在内存段落盘前退出
+        VectorIndex crashed = VectorIndex.open(directory, DIMENSIONS, properties(10_000, 4));
+        addAll(crashed, vectors);
+        assertThat(crashed.segmentCount()).isZero();
+
+        try (VectorIndex recovered = VectorIndex.open(directory, DIMENSIONS, properties(10_000, 4))) {
+            assertThat(recovered.size()).isEqualTo(vectors.length);
+            assertThat(recovered.search(vectors[7], 1)).extracting(VectorHit::id).containsExactly(7L);
+        }
+        assertThat(walFiles()).isEmpty();
+        try (VectorIndex reopened = VectorIndex.open(directory, DIMENSIONS, properties(10_000, 4))) {
+            assertThat(reopened.size()).isEqualTo(vectors.length);
+        }
+    }
+
+    @Test
+    void deletedVectorsAreFilteredAndReclaimedByMerge() throws IOException {
+        float[][] vectors = randomVectors(200, 4);
+        VectorIndexProperties properties = properties(100, 100);
+        List<Roaring64Bitmap> reclaimed = new CopyOnWriteArrayList<>();
+        try (VectorIndex index = VectorIndex.open(directory, DIMENSIONS, properties)) {
+            index.onTombstonesReclaimed(reclaimed::add);
+            addAll(index, vectors);
+            index.flush();
+            assertThat(index.segmentCount()).isEqualTo(2);
+
+            index.delete(LongStream.range(0, 50).boxed().toList());
+            assertThat(index.tombstoneCount()).isEqualTo(50);
+            assertThat(index.search(vectors[0], 5)).extracting(VectorHit::id).doesNotContain(0L);
+
+            properties.setMergeFactor(2);
+            index.flush();
+            await().atMost(Duration.ofSeconds(30))
+                    .until(() -> index.segmentCount() == 1 && index.tombstoneCount() == 0 && !reclaimed.isEmpty());
+            assertThat(index.size()).isEqualTo(150);
+            assertThat(index.search(vectors[0], 5)).extracting(VectorHit::id).doesNotContain(0L);
+            assertThat(index.search(vectors[120], 1)).extracting(VectorHit::id).containsExactly(120L);
+            // 回收通知带上被清除的全部 id
+            assertThat(reclaimed).hasSize(1);
+            assertThat(reclaimed.get(0).toArray()).containsExactly(LongStream.range(0, 50).toArray());
+        }
+        try (VectorIndex reopened = VectorIndex.open(directory, DIMENSIONS, properties)) {
+            assertThat(reopened.tombstoneCount()).isZero();
+            assertThat(reopened.size()).isEqualTo(150);
+        }
+    }
+
+    @Test
+    void failedFlushKeepsTheMemtableSearchableAndIsRetried() throws IOException {
+        float[][] vectors = randomVectors(100, 6);
+        try (VectorIndex index = VectorIndex.open(directory, DIMENSIONS, properties(1_000, 100))) {
+            for (int id = 0; id < 50; id++) {
+                index.add(id, vectors[id]);
+            }
+            // 占住第一个段的临时文件名，写盘失败
+            Path blocker = Files.createDirectory(directory.resolve(HnswSegment.fileName(1, 1) + ".tmp"));
+            assertThatThrownBy(index::flush).isInstanceOf(UncheckedIOException.class);
+            assertThat(index.segmentCount()).isZero();
+            assertThat(index.search(vectors[7], 1)).extracting(VectorHit::id).containsExactly(7L);
+
+            Files.delete(blocker);
+            for (int id = 50; id < vectors.length; id++) {
+                index.add(id, vectors[id]);
+            }
+            index.flush();
+            assertThat(index.segmentCount()).isEqualTo(2);
+            assertThat(index.size()).isEqualTo(vectors.length);
+            assertThat(index.search(vectors[7], 1)).extracting(VectorHit::id).containsExactly(7L);
+        }
+        assertThat(walFiles()).isEmpty();
+        try (VectorIndex reopened = VectorIndex.open(directory, DIMENSIONS, properties(1_000, 100))) {
+            assertThat(reopened.size()).isEqualTo(vectors.length);
+        }
+    }
+
+    @Test
+    void selectiveFilterLooksUpAllowedIdsExactly() throws IOException {
+        float[][] vectors = randomVectors(500, 5);
+        Set<Long> allowed = Set.of(3L, 77L, 150L, 260L, 420L, 499L);
+        try (VectorIndex index = VectorIndex.open(directory, DIMENSIONS, properties(200, 100))) {
+            addAll(index, vectors);
+            // 400 个向量在后台落成两个段，其余 100 个还在内存段中
+            await().atMost(Duration.ofSeconds(30)).until(() -> index.segmentCount() == 2);
+
+            float[] query = vectors[260];
+            List<VectorHit> hits = index.search(query, 3, allowed::contains, allowed.size(),
+                    () -> allowed.stream().mapToLong(Long::longValue));
+
+            List<Long> expected = allowed.stream()
+                    .sorted(Comparator.comparingDouble((Long id) -> dot(query, vectors[id.intValue()])).reversed())
+                    .limit(3)
+                    .toList();
+            assertThat(hits).extracting(VectorHit::id).containsExactlyElementsOf(expected);
+        }
+    }
+
+    private static VectorIndexProperties properties(int flushThreshold, int mergeFactor) {
+        VectorIndexProperties properties = new VectorIndexProperties();
+        properties.setFlushThreshold(flushThreshold);
+        properties.setMergeFactor(mergeFactor);
+        properties.setMergeThreads(2);
+        return properties;
+    }
+
+    private static void addAll(VectorIndex index, float[][] vectors) {
+        for (int id = 0; id < vectors.length; id++) {
+            index.add(id, vectors[id]);
+        }
+    }
+
+    private static float[][] randomVectors(int count, long seed) {
+        Random random = new Random(seed);
+        float[][] vectors = new float[count][DIMENSIONS];
+        for (float[] vector : vectors) {
+            double norm = 0;
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] = (float) random.nextGaussian();
+                norm += vector[i] * vector[i];
+            }
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] /= (float) Math.sqrt(norm);
+            }
+        }
+        return vectors;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private List<Path> walFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> VectorWal.matches(file.getFileName().toString())).toList();
+        }
+    }
+}
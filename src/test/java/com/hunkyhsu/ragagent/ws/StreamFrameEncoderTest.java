@@ -0,0 +1,98 @@
+package com.hunkyhsu.ragagent.ws;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hunkyhsu.ragagent.entity.Message;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 以 ObjectMapper 序列化 WsEnvelope 的结果为准，逐字节比较专用编码器的输出，
+ * 覆盖转义、控制字符、代理对、null 字段，以及非 chat.stream 帧回退到 ObjectMapper。
+ * UTF-8 输出时 Jackson 把代理对的两半分别按 Unicode 转义输出，编码器与之保持一致
+ */
+class StreamFrameEncoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void plainDeltaMatchesObjectMapper() throws Exception {
+        assertSameBytes(WsEnvelope.stream(7L, "msg-1", 1, "hello world"));
+        assertSameBytes(WsEnvelope.stream(7L, "msg-1", Long.MAX_VALUE, ""));
+    }
+
+    @Test
+    void quotesBackslashesAndShortEscapesMatchObjectMapper() throws Exception {
+        assertSameBytes(WsEnvelope.stream(7L, "msg-1", 2, "say \"hi\" C:\\tmp\\x\n\r\t\b\f end"));
+    }
+
+    @Test
+    void everyControlCharacterMatchesObjectMapper() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (char c = 0; c < 0x20; c++) {
+            content.append(c);
+        }
+        content.append('\u007F').append('/').append('<');
+        assertSameBytes(WsEnvelope.stream(7L, "msg-1", 3, content.toString()));
+    }
+
+    @Test
+    void nonAsciiIsWrittenAsIsAndSurrogatePairsAreEscaped() throws Exception {
+        WsEnvelope frame = WsEnvelope.stream(7L, "消息-\"1\"", 4, "中文回答 café 😀 \u2028\u2029");
+
+        assertSameBytes(frame);
+        assertThat(encode(frame)).contains("中文回答 café \\uD83D\\uDE00 \u2028\u2029");
+        // 单独出现的半个代理对同样转义
+        assertSameBytes(WsEnvelope.stream(7L, "msg-1", 5, "x\uD83Dy"));
+    }
+
+    @Test
+    void nullFieldsAreOmittedLikeObjectMapper() throws Exception {
+        assertSameBytes(new WsEnvelope(WsEnvelope.CHAT_STREAM, null, "msg-1", 5L, Message.Role.ASSISTANT,
+                null, true, null, null));
+        assertSameBytes(new WsEnvelope(WsEnvelope.CHAT_STREAM, 7L, null, 6L, Message.Role.ASSISTANT,
+                "delta", true, 1L, null));
+    }
+
+    @Test
+    void onlyStreamFramesOfTheSameReplyAreEncoded() {
+        StreamFrameEncoder encoder = StreamFrameEncoder.forStream(7L, "msg-1");
+        List<WsEnvelope> others = List.of(
+                WsEnvelope.queued(7L, "msg-1", 2),
+                WsEnvelope.done(7L, "msg-1", 9),
+                WsEnvelope.error(7L, "msg-1", "UPSTREAM", "stream_lost"),
+                WsEnvelope.reconnect(7L, "msg-1", 9L),
+                WsEnvelope.heartbeat(),
+                new WsEnvelope(WsEnvelope.CHAT_SEND, 7L, "msg-1", null, Message.Role.USER, "q", null, 1L, null),
+                new WsEnvelope(WsEnvelope.CHAT_RESUME, 7L, "msg-1", 3L, null, null, null, 1L, null),
+                // 同一回复流之外的 chat.stream 帧
+                WsEnvelope.stream(8L, "msg-1", 1, "x"),
+                WsEnvelope.stream(7L, "msg-2", 1, "x"),
+                new WsEnvelope(WsEnvelope.CHAT_STREAM, 7L, "msg-1", null, Message.Role.ASSISTANT, "x", true, 1L, null),
+                new WsEnvelope(WsEnvelope.CHAT_STREAM, 7L, "msg-1", 1L, Message.Role.ASSISTANT, "x", false, 1L, null));
+
+        assertThat(others).noneMatch(encoder::supports);
+        assertThat(encoder.supports(WsEnvelope.stream(7L, "msg-1", 1, "x"))).isTrue();
+    }
+
+    @Test
+    void oversizedBufferIsNotRetainedAndOutputStaysCorrect() throws Exception {
+        assertSameBytes(WsEnvelope.stream(7L, "msg-1", 1, "长".repeat(20_000)));
+        assertSameBytes(WsEnvelope.stream(7L, "msg-1", 2, "short"));
+    }
+
+    private void assertSameBytes(WsEnvelope frame) throws Exception {
+        assertThat(encode(frame).getBytes(StandardCharsets.UTF_8))
+                .as(frame.toString())
+                .isEqualTo(objectMapper.writeValueAsBytes(frame));
+    }
+
+    private static String encode(WsEnvelope frame) {
+        StreamFrameEncoder encoder = StreamFrameEncoder.forStream(frame.conversationId(), frame.messageId());
+        assertThat(encoder.supports(frame)).isTrue();
+        return encoder.encode(frame);
+    }
+}